@@ -5,14 +5,15 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rcms.utilities.daqaggregator.datasource.FlashlistCatalog;
 import rcms.utilities.daqaggregator.datasource.FlashlistConfigurationReader;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
-import rcms.utilities.daqaggregator.datasource.LiveAccessServiceExplorer;
 
 public class Application {
 
@@ -20,6 +21,8 @@ public class Application {
 
 	private static Application instance;
 
+	private FlashlistCatalog flashlistCatalog;
+
 	private static final Logger logger = Logger.getLogger(Application.class);
 
 	private Application(String propertiesFile) {
@@ -103,13 +106,15 @@ public class Application {
 		logger.info(
 				lasUrls.size() + " LAS urls will be explored to find " + FlashlistType.values().length + " flashlists");
 
-		LiveAccessServiceExplorer flashlistDiscovery = new LiveAccessServiceExplorer(lasUrls, staticCatalog);
-		flashlistDiscovery.exploreLiveAccessServices();
+		instance.flashlistCatalog = new FlashlistCatalog(lasUrls, staticCatalog,
+				instance.getProp(Settings.LAS_CATALOG_CACHE));
+		/* urls of flashlists are set by the catalog, also when revalidated in background */
+		Map<String, List<String>> flashlistToUrls = instance.flashlistCatalog.resolve();
 
 		for (FlashlistType flashlistType : FlashlistType.values()) {
 
-			String lasUrl = flashlistDiscovery.getFlashlistUrl(flashlistType.getFlashlistName());
-			if (lasUrl == null) {
+			List<String> lasUrlsOfFlashlist = flashlistToUrls.get(flashlistType.getFlashlistName());
+			if (lasUrlsOfFlashlist == null) {
 				if (!flashlistType.isOptional()) {
 					throw new DAQException(DAQExceptionCode.FlashlistNotFound,
 							"Cannot find flashlist " + flashlistType.getFlashlistName() + " in any of the given LASes. "
@@ -120,13 +125,11 @@ public class Application {
 							+ "DAQAggregator will continue as the flashlist is optional according to properties file");
 				}
 			}
-			flashlistType.setUrl(lasUrl);
-
 		}
 
 		logger.info("All required flash-lists successfully discovered:");
 		for (FlashlistType flashlistType : FlashlistType.values()) {
-			logger.info(String.format("%1$-26s", flashlistType.getFlashlistName()) + " " + flashlistType.getUrl());
+			logger.info(String.format("%1$-26s", flashlistType.getFlashlistName()) + " " + flashlistType.getUrls());
 		}
 	}
 
@@ -141,4 +144,8 @@ public class Application {
 	public Properties getProp() {
 		return prop;
 	}
+
+	public FlashlistCatalog getFlashlistCatalog() {
+		return flashlistCatalog;
+	}
 }
@@ -1,134 +1,366 @@
 package rcms.utilities.daqaggregator;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.bind.DatatypeConverter;
 
-import com.fasterxml.jackson.core.JsonGenerationException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.Logger;
 
-import rcms.utilities.daqaggregator.data.DAQ;
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistType;
+import rcms.utilities.daqaggregator.persistence.Codec;
 import rcms.utilities.daqaggregator.persistence.FileSystemConnector;
+import rcms.utilities.daqaggregator.persistence.FlashlistContentStore;
+import rcms.utilities.daqaggregator.persistence.FlashlistSegment;
 import rcms.utilities.daqaggregator.persistence.PersistenceExplorer;
 import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
+import rcms.utilities.daqaggregator.persistence.PersistorManager;
 import rcms.utilities.daqaggregator.persistence.StructureSerializer;
 
 /**
- * Converts flashlists from one format to another
- * 
- * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
+ * Converts archived snapshots or flashlists of a time range from one format to
+ * another. Files are converted by a pool of workers into the time-based
+ * directories of the target directory, source files are kept. Files are
+ * matched by the full extension of the source format, files of other formats
+ * are reported as failed.
  *
+ * Snapshots are copied token by token unless the formats need the DAQ
+ * structure, see {@link StructureSerializer#convert}. Flashlists are
+ * deserialized, so that rows referenced in the content store are written with
+ * the flashlist.
+ *
+ * Files are written to temporary files renamed when complete, existing target
+ * files are not converted again. Timestamp up to which all files were
+ * converted is stored in {@link #CHECKPOINT} file of the target directory,
+ * interrupted conversion resumes from there.
+ *
+ * use e.g. as
+ *
+ * <pre>
+ *   java -cp target/DAQAggregator-...-jar-with-dependencies.jar \
+ *     rcms.utilities.daqaggregator.Converter \
+ *     snapshots /daqdata/snapshots/ smile /daqdata/snapshots-json/ zipped \
+ *     2017-05-31T08:00:00Z 2017-05-31T14:00:00Z 8 lz
+ * </pre>
  */
 public class Converter {
 
-	public static void main(String[] args) throws IOException {
+	private static final Logger logger = Logger.getLogger(Converter.class);
 
-		// Times here are in UTC
-		Long startTimestamp = DatatypeConverter.parseDateTime("2016-10-25T06:50:59+02:00").getTimeInMillis();
-		Long endTimestamp = DatatypeConverter.parseDateTime("2017-10-25T14:09:59+02:00").getTimeInMillis();
-		String sourceDir = "/tmp/flaslhist/";
-		String targetDir = "/tmp/1.12.2/snapshots-json/";
-		PersistenceFormat sourceFormat = PersistenceFormat.SMILE;
-		PersistenceFormat targetFormat = PersistenceFormat.JSON;
+	/** Checkpoint file in target directory */
+	public static final String CHECKPOINT = ".converter-checkpoint";
 
-		Converter converter = new Converter();
+	/** Number of files explored and converted before checkpoint */
+	private static final int CHUNK_SIZE = 2000;
 
-		converter.convertFlashlist(sourceDir);
-	}
+	private final StructureSerializer serializer = new StructureSerializer();
 
-	private void convertFlashlist(String sourceDir) throws JsonGenerationException, JsonMappingException, IOException {
-		StructureSerializer serializer = new StructureSerializer();
-		PersistenceFormat targetFormat = PersistenceFormat.JSON;
+	private final PersistenceExplorer persistenceExplorer = new PersistenceExplorer(new FileSystemConnector());
 
-		File[] listOfFiles = new File(sourceDir).listFiles();
+	private final PersistenceFormat sourceFormat;
 
-		for (File file : listOfFiles) {
+	private final PersistenceFormat targetFormat;
 
-			if (file.isFile() && file.getName().endsWith(".smile")) {
+	private final Codec codec;
 
-				System.out.println("Converting flashlist: " + file.getName());
-				
-				Flashlist flashlist = serializer.deserializeFlashlist(file, PersistenceFormat.SMILE);
+	private final int threads;
 
-				String flashlistFilename = flashlist.getRetrievalDate().getTime() + targetFormat.getExtension();
+	private boolean compact;
 
-				File targetFile = new File(file.getParent() + "/" + flashlistFilename);
+	private final AtomicInteger converted = new AtomicInteger();
 
-				ObjectMapper mapper = targetFormat.getMapper();
+	private final AtomicInteger skipped = new AtomicInteger();
 
-				FileOutputStream fos = new FileOutputStream(targetFile);
-				mapper.writerWithDefaultPrettyPrinter().writeValue(fos, flashlist);
-				file.delete();
-			}
-		}
-	}
+	private final AtomicInteger failed = new AtomicInteger();
 
-	private void convertFlashlists(Long startTimestamp, Long endTimestamp, String sourceDir, String targetDir,
-			PersistenceFormat sourceFormat, PersistenceFormat targetFormat) throws IOException {
-
-		StructureSerializer serializer = new StructureSerializer();
-
-		File[] listOfFiles = new File(sourceDir).listFiles();
+	/**
+	 * @param codec
+	 *            codec of compressed target format
+	 * @param threads
+	 *            number of workers
+	 */
+	public Converter(PersistenceFormat sourceFormat, PersistenceFormat targetFormat, Codec codec, int threads) {
+		this.sourceFormat = sourceFormat;
+		this.targetFormat = targetFormat;
+		this.codec = codec;
+		this.threads = threads;
+	}
 
-		for (File dir : listOfFiles) {
-			if (dir.isDirectory()) {
-				System.out.println("Converting flashlist: " + dir.getName());
-				Entry<Long, List<File>> result = (new PersistenceExplorer(new FileSystemConnector()))
-						.explore(startTimestamp, endTimestamp, dir.getAbsolutePath());
+	/**
+	 * Convert snapshots retrieved after start and not after end
+	 */
+	public void convertSnapshots(String sourceDir, String targetDir, long start, long end)
+			throws IOException, InterruptedException {
+		convert(sourceDir, targetDir, start, end, false);
+	}
 
-				System.out.println("Explored: " + result.getValue());
+	/**
+	 * Convert flashlists of all types retrieved after start and not after end.
+	 * Rows of content store are written with the flashlists referencing them.
+	 * Bundles of flashlists and flashlists of types not monitored anymore are
+	 * not converted.
+	 *
+	 * @param sourceDir
+	 *            flashlist directory with directory per type
+	 */
+	public void convertFlashlists(String sourceDir, String targetDir, long start, long end)
+			throws IOException, InterruptedException {
+		File[] dirs = new File(sourceDir).listFiles();
+		if (dirs == null) {
+			throw new FileNotFoundException("Folder does not exist " + sourceDir);
+		}
+		Arrays.sort(dirs);
+		for (File dir : dirs) {
+			if (!dir.isDirectory() || FlashlistContentStore.DIR.equals(dir.getName())) {
+				continue;
+			} else if (FlashlistSegment.DIR.equals(dir.getName())) {
+				logger.warn("Bundles of flashlists are not converted " + dir.getAbsolutePath());
+				continue;
+			}
+			try {
+				FlashlistType.valueOf(dir.getName());
+			} catch (IllegalArgumentException e) {
+				logger.warn("Flashlists of unknown type are not converted " + dir.getAbsolutePath());
+				continue;
+			}
+			convert(sourceDir + dir.getName() + "/", targetDir + dir.getName() + "/", start, end, true);
+		}
+	}
 
-				for (File file : result.getValue()) {
+	private void convert(final String sourceDir, final String targetDir, long start, long end,
+			final boolean flashlists) throws IOException, InterruptedException {
+		long explored = readCheckpoint(sourceDir, targetDir, start);
+		if (explored > start) {
+			logger.info("Resuming conversion of " + sourceDir + " after " + explored);
+		}
 
-					if (file.getName().endsWith(".json")) {
-						file.delete();
-						continue;
+		final AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "converter-" + threadCount.incrementAndGet());
+			}
+		});
+		try {
+			boolean complete = true;
+			while (true) {
+				Pair<Long, List<File>> chunk = persistenceExplorer.explore(explored, end, sourceDir, CHUNK_SIZE);
+				List<Future<Boolean>> results = new ArrayList<>();
+				for (final File file : chunk.getValue()) {
+					results.add(pool.submit(new Callable<Boolean>() {
+						@Override
+						public Boolean call() {
+							return convertFile(file, targetDir, flashlists);
+						}
+					}));
+				}
+				for (Future<Boolean> result : results) {
+					try {
+						complete &= result.get();
+					} catch (ExecutionException e) {
+						logger.error("Conversion failed", e.getCause());
+						complete = false;
 					}
-					Flashlist flashlist = serializer.deserializeFlashlist(file, sourceFormat);
+				}
+				if (chunk.getValue().isEmpty()) {
+					break;
+				}
+				explored = chunk.getLeft();
 
-					String flashlistFilename = flashlist.getRetrievalDate().getTime() + targetFormat.getExtension();
+				/* failed files are converted again when resumed */
+				if (complete) {
+					writeCheckpoint(sourceDir, targetDir, explored);
+				}
+				logger.info("Converted " + sourceDir + " up to " + explored + ": " + converted + " converted, "
+						+ skipped + " skipped, " + failed + " failed");
+				if (chunk.getValue().size() < CHUNK_SIZE) {
+					break;
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
 
-					File targetFile = new File(file.getParent() + "/" + flashlistFilename);
+	/**
+	 * @return false if conversion failed
+	 */
+	private boolean convertFile(File file, String targetDir, boolean flashlist) {
+		String name = file.getName();
+		if (name.endsWith(".tmp")) {
+			logger.debug("Skipping temporary file " + file.getAbsolutePath());
+			skipped.incrementAndGet();
+			return true;
+		}
+		if (!isSourceFormat(name)) {
+			logger.error("File is not in source format " + sourceFormat + ": " + file.getAbsolutePath());
+			failed.incrementAndGet();
+			return false;
+		}
 
-					ObjectMapper mapper = targetFormat.getMapper();
+		long timestamp;
+		try {
+			timestamp = Long.parseLong(name.substring(0, name.indexOf('.')));
+		} catch (NumberFormatException e) {
+			logger.warn("Skipping file without timestamp " + file.getAbsolutePath());
+			skipped.incrementAndGet();
+			return true;
+		}
 
-					FileOutputStream fos = new FileOutputStream(targetFile);
-					mapper.writerWithDefaultPrettyPrinter().writeValue(fos, flashlist);
-					file.delete();
+		File target = new File(PersistorManager.getTimeDir(targetDir, timestamp) + timestamp + targetFormat.getExtension(codec));
+		if (target.exists()) {
+			skipped.incrementAndGet();
+			return true;
+		}
+		File tmpFile = new File(target.getPath() + ".tmp");
+		try {
+			File dir = target.getParentFile();
+			if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+				throw new IOException("Failed to create following dir: " + dir.getAbsolutePath());
+			}
+			try (OutputStream out = new FileOutputStream(tmpFile)) {
+				if (flashlist) {
+					Flashlist result = serializer.deserializeFlashlist(file, sourceFormat);
+					if (result == null) {
+						throw new IOException("Could not read flashlist " + file.getAbsolutePath());
+					}
+					serializer.serializeFlashlist(result, out, targetFormat, codec, compact);
+				} else {
+					serializer.convert(file.getAbsolutePath(), sourceFormat, out, targetFormat, codec, compact);
 				}
 			}
+			if (!tmpFile.renameTo(target)) {
+				throw new IOException("Problem renaming file: " + tmpFile);
+			}
+			converted.incrementAndGet();
+			return true;
+		} catch (IOException | RuntimeException e) {
+			logger.error("Could not convert " + file.getAbsolutePath(), e);
+			tmpFile.delete();
+			failed.incrementAndGet();
+			return false;
 		}
+	}
 
+	/**
+	 * @return true if file has the full extension of source format, with any
+	 *         codec if compressed, e.g. .ref.json is not json
+	 */
+	private boolean isSourceFormat(String name) {
+		int dotIdx = name.indexOf('.');
+		if (dotIdx == -1) {
+			return false;
+		}
+		String extension = name.substring(dotIdx).toLowerCase();
+		if (extension.equals(sourceFormat.getExtension())) {
+			return true;
+		}
+		Codec sourceCodec = Codec.decodeFromFilename(name);
+		return sourceFormat.isCompressed() && sourceCodec != null
+				&& extension.equals(sourceFormat.getExtension(sourceCodec));
 	}
 
-	private void convertSnapshot(Long startTimestamp, Long endTimestamp, String sourceDir, String targetDir,
-			PersistenceFormat sourceFormat, PersistenceFormat targetFormat) throws IOException {
+	/**
+	 * @return timestamp up to which files were converted, given start if
+	 *         there is no checkpoint of the same conversion
+	 */
+	private long readCheckpoint(String sourceDir, String targetDir, long start) throws IOException {
+		File file = new File(targetDir, CHECKPOINT);
+		if (!file.exists()) {
+			return start;
+		}
+		Properties checkpoint = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			checkpoint.load(in);
+		}
+		if (!new File(sourceDir).getAbsolutePath().equals(checkpoint.getProperty("source"))
+				|| !targetFormat.name().equals(checkpoint.getProperty("format"))) {
+			logger.info("Ignoring checkpoint of other conversion " + file.getAbsolutePath());
+			return start;
+		}
+		return Math.max(start, Long.parseLong(checkpoint.getProperty("timestamp")));
+	}
 
-		StructureSerializer serializer = new StructureSerializer();
+	private void writeCheckpoint(String sourceDir, String targetDir, long timestamp) throws IOException {
+		Properties checkpoint = new Properties();
+		checkpoint.setProperty("source", new File(sourceDir).getAbsolutePath());
+		checkpoint.setProperty("format", targetFormat.name());
+		checkpoint.setProperty("timestamp", Long.toString(timestamp));
 
-		Entry<Long, List<File>> result = (new PersistenceExplorer(new FileSystemConnector())).explore(startTimestamp,
-				endTimestamp, sourceDir);
+		File dir = new File(targetDir);
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new FileNotFoundException("Failed to create following dir: " + dir.getAbsolutePath());
+		}
+		File tmpFile = new File(dir, CHECKPOINT + ".tmp");
+		try (OutputStream out = new FileOutputStream(tmpFile)) {
+			checkpoint.store(out, "Converted " + sourceFormat + " to " + targetFormat);
+		}
+		if (!tmpFile.renameTo(new File(dir, CHECKPOINT))) {
+			throw new IOException("Problem renaming file: " + tmpFile);
+		}
+	}
 
-		System.out.println("Explored: " + result.getValue());
+	public boolean isCompact() {
+		return compact;
+	}
 
-		for (File file : result.getValue()) {
+	public void setCompact(boolean compact) {
+		this.compact = compact;
+	}
 
-			DAQ snapshot = serializer.deserialize(file.getAbsolutePath(), sourceFormat);
+	public int getConverted() {
+		return converted.get();
+	}
 
-			String snapshotFileName = snapshot.getLastUpdate() + targetFormat.getExtension();
+	public int getSkipped() {
+		return skipped.get();
+	}
 
-			File targetFile = new File(targetDir + snapshotFileName);
+	public int getFailed() {
+		return failed.get();
+	}
 
-			FileOutputStream fos = new FileOutputStream(targetFile);
-			serializer.serialize(snapshot, fos, targetFormat);
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 7) {
+			System.err.println("usage: Converter snapshots|flashlists sourceDir sourceFormat targetDir targetFormat "
+					+ "start end [threads [codec [dictionaryDir]]]");
+			System.exit(1);
+		}
+		String sourceDir = args[1].endsWith("/") ? args[1] : args[1] + "/";
+		String targetDir = args[3].endsWith("/") ? args[3] : args[3] + "/";
+		long start = DatatypeConverter.parseDateTime(args[5]).getTimeInMillis();
+		long end = DatatypeConverter.parseDateTime(args[6]).getTimeInMillis();
+		int threads = args.length > 7 ? Integer.parseInt(args[7]) : Runtime.getRuntime().availableProcessors();
+		Codec codec = args.length > 8 ? Codec.decode(args[8], args.length > 9 ? args[9] : null) : Codec.GZIP;
+
+		Converter converter = new Converter(PersistenceFormat.decode(args[2]), PersistenceFormat.decode(args[4]),
+				codec, threads);
+		if ("flashlists".equals(args[0])) {
+			converter.convertFlashlists(sourceDir, targetDir, start, end);
+		} else {
+			converter.convertSnapshots(sourceDir, targetDir, start, end);
 		}
+		System.out.println("Converted " + converter.getConverted() + ", skipped " + converter.getSkipped()
+				+ ", failed " + converter.getFailed());
+		System.exit(converter.getFailed() == 0 ? 0 : 1);
 	}
 
 }
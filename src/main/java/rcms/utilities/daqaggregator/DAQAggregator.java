@@ -1,11 +1,18 @@
 package rcms.utilities.daqaggregator;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
@@ -17,8 +24,14 @@ import rcms.common.db.DBConnectorException;
 import rcms.utilities.daqaggregator.data.DAQ;
 import rcms.utilities.daqaggregator.datasource.*;
 import rcms.utilities.daqaggregator.datasource.F3DataRetriever.CpuLoadType;
+import rcms.utilities.daqaggregator.persistence.Codec;
+import rcms.utilities.daqaggregator.persistence.CompressionDictionary;
 import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
 import rcms.utilities.daqaggregator.persistence.PersistorManager;
+import rcms.utilities.daqaggregator.persistence.SnapshotCompactor;
+import rcms.utilities.daqaggregator.server.SnapshotHistory;
+import rcms.utilities.daqaggregator.server.SnapshotServer;
+import rcms.utilities.daqaggregator.timeseries.TimeSeriesStore;
 import rcms.utilities.hwcfg.HardwareConfigurationException;
 import rcms.utilities.hwcfg.InvalidNodeTypeException;
 import rcms.utilities.hwcfg.PathNotFoundException;
@@ -81,6 +94,10 @@ public class DAQAggregator {
 
             MonitorManager monitorManager = initializedManagers.getLeft();
             PersistorManager persistenceManager = initializedManagers.getRight();
+            SnapshotServer snapshotServer = createSnapshotServer();
+            if (runMode == RunMode.RT && (persistMode == PersistMode.SNAPSHOT || persistMode == PersistMode.ALL)) {
+                scheduleCompaction(persistenceManager.getSnapshotPersistenceDir());
+            }
 
             switch (runMode) {
                 case FILE:
@@ -89,7 +106,7 @@ public class DAQAggregator {
                         while (true) {
                             try {
 
-                                Triple<DAQ, Collection<Flashlist>, Boolean> result = monitor(monitorManager);
+                                Triple<DAQ, Collection<Flashlist>, Boolean> result = monitor(monitorManager, snapshotServer);
 
                                 if (result == null) {
                                     problems++;
@@ -107,9 +124,10 @@ public class DAQAggregator {
                             }
                         }
                     } catch (DAQException e) {
-                        if (e.getCode() == DAQExceptionCode.NoMoreFlashlistSourceFiles)
+                        if (e.getCode() == DAQExceptionCode.NoMoreFlashlistSourceFiles) {
                             logger.info("All flashlist files processed");
-                        else
+                            persistenceManager.flushTimeSeries();
+                        } else
                             throw e;
                     } catch (HardwareConfigurationException | PathNotFoundException | InvalidNodeTypeException e) {
                         e.printStackTrace();
@@ -121,7 +139,7 @@ public class DAQAggregator {
 
                             long start = System.currentTimeMillis();
 
-                            Triple<DAQ, Collection<Flashlist>, Boolean> result = monitor(monitorManager);
+                            Triple<DAQ, Collection<Flashlist>, Boolean> result = monitor(monitorManager, snapshotServer);
                             persist(persistenceManager, persistMode, result);
 
                             long end = System.currentTimeMillis();
@@ -200,6 +218,34 @@ public class DAQAggregator {
         }
     }
 
+    /**
+     * Configure deserialization of next cycles in parallel in file mode, by default 4 cycles ahead on one thread per
+     * processor within 256MB
+     */
+    private static void setReadAhead(FileFlashlistRetriever fileFlashlistRetriever) {
+        int cycles = parseInt(Settings.RUN_READ_AHEAD_CYCLES, 4);
+        int threads = parseInt(Settings.RUN_READ_AHEAD_THREADS, Runtime.getRuntime().availableProcessors());
+        int memory = parseInt(Settings.RUN_READ_AHEAD_MEMORY, 256);
+        fileFlashlistRetriever.setReadAhead(cycles, Math.max(1, threads), memory * 1024L * 1024L);
+        if (cycles > 0) {
+            logger.info("Flashlists of " + cycles + " cycles will be read ahead on " + threads + " threads within "
+                    + memory + "MB");
+        }
+    }
+
+    private static int parseInt(Settings setting, int defaultValue) {
+        String value = Application.get().getProp(setting);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new DAQException(DAQExceptionCode.MissingProperty,
+                    "Could not parse " + setting.getKey() + " from: " + value);
+        }
+    }
+
     private static Triple<DAQ, Collection<Flashlist>, Boolean> monitor(MonitorManager monitorManager)
             throws HardwareConfigurationException, PathNotFoundException, InvalidNodeTypeException {
 
@@ -209,6 +255,7 @@ public class DAQAggregator {
 
     private static void persist(PersistorManager persistorManager, PersistMode persistMode,
                                 Triple<DAQ, Collection<Flashlist>, Boolean> a) {
+        persistorManager.persistTimeSeries(a.getLeft());
         switch (persistMode) {
             case SNAPSHOT:
                 persistorManager.persistSnapshot(a.getLeft());
@@ -223,6 +270,28 @@ public class DAQAggregator {
         }
     }
 
+    /**
+     * Monitor and publish the snapshot to snapshot server, queries of the server wait while the DAQ object is updated
+     */
+    private static Triple<DAQ, Collection<Flashlist>, Boolean> monitor(MonitorManager monitorManager,
+            SnapshotServer snapshotServer)
+            throws HardwareConfigurationException, PathNotFoundException, InvalidNodeTypeException {
+        if (snapshotServer == null) {
+            return monitor(monitorManager);
+        }
+        Triple<DAQ, Collection<Flashlist>, Boolean> a;
+        snapshotServer.beginUpdate();
+        try {
+            a = monitor(monitorManager);
+        } finally {
+            snapshotServer.endUpdate();
+        }
+        if (a != null && a.getLeft() != null) {
+            snapshotServer.publish(a.getLeft());
+        }
+        return a;
+    }
+
     public static Pair<MonitorManager, PersistorManager> initialize(RunMode runMode)
             throws DBConnectorException, HardwareConfigurationException, IOException {
 
@@ -256,6 +325,46 @@ public class DAQAggregator {
 
         PersistorManager persistorManager = new PersistorManager(snapshotPersistenceDir, flashlistPersistenceDir,
                 snapshotFormat, flashlistFormat);
+        persistorManager.setCompact(Boolean.parseBoolean(Application.get().getProp(Settings.PERSISTENCE_COMPACT)));
+        setCodecs(persistorManager);
+
+        String bundle = Application.get().getProp(Settings.PERSISTENCE_FLASHLIST_BUNDLE);
+        if (bundle != null && !bundle.trim().isEmpty()) {
+            try {
+                persistorManager.setFlashlistSegmentSize(Integer.parseInt(bundle.trim()));
+            } catch (NumberFormatException e) {
+                throw new DAQException(DAQExceptionCode.MissingProperty,
+                        "Could not parse " + Settings.PERSISTENCE_FLASHLIST_BUNDLE.getKey() + " from: " + bundle);
+            }
+            logger.info("Flashlists will be persisted in bundles, " + persistorManager.getFlashlistSegmentSize()
+                    + " cycles per segment file");
+        }
+
+        String dedup = Application.get().getProp(Settings.PERSISTENCE_FLASHLIST_DEDUP);
+        if (dedup != null && !dedup.trim().isEmpty()) {
+            Set<FlashlistType> dedupTypes = EnumSet.noneOf(FlashlistType.class);
+            for (String type : dedup.split(",")) {
+                type = type.trim();
+                if ("all".equalsIgnoreCase(type)) {
+                    dedupTypes.addAll(EnumSet.allOf(FlashlistType.class));
+                } else if (!type.isEmpty()) {
+                    try {
+                        dedupTypes.add(FlashlistType.valueOf(type.toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        throw new DAQException(DAQExceptionCode.MissingProperty, "Unknown flashlist type " + type
+                                + " in " + Settings.PERSISTENCE_FLASHLIST_DEDUP.getKey());
+                    }
+                }
+            }
+            persistorManager.setFlashlistDedup(dedupTypes);
+            logger.info("Rows of flashlists " + dedupTypes + " will be stored once per content");
+        }
+
+        String timeSeriesDir = Application.get().getProp(Settings.PERSISTENCE_TIMESERIES_DIR);
+        if (timeSeriesDir != null && !timeSeriesDir.trim().isEmpty()) {
+            logger.info("Metric time series will be persisted at: " + timeSeriesDir);
+            persistorManager.setTimeSeriesStore(new TimeSeriesStore(timeSeriesDir.trim()));
+        }
 
         boolean suppressFailedRequests = false;
         suppressFailedRequests = Boolean.parseBoolean(Application.get().getProp(Settings.SUPPRESS_HTTP_FAILED));
@@ -263,15 +372,20 @@ public class DAQAggregator {
         FlashlistRetriever flashlistRetriever = null;
         switch (runMode) {
             case RT:
-                flashlistRetriever = new LASFlashlistRetriever(suppressFailedRequests);
+                flashlistRetriever = new LASFlashlistRetriever(suppressFailedRequests,
+                        Application.get().getFlashlistCatalog(), createRetrievalPolicy(),
+                        createProjection(persistMode));
                 break;
             case FILE:
             case SPECIAL:
                 FileFlashlistRetriever fileFlashlistRetriever = new FileFlashlistRetriever(flashlistPersistenceDir,
                         flashlistFormat);
                 flashlistRetriever = fileFlashlistRetriever;
+                fileFlashlistRetriever.setTolerance(
+                        parseInt(Settings.RUN_MERGE_TOLERANCE, (int) FileFlashlistRetriever.DEFAULT_TOLERANCE));
                 long startLimit = Long.parseLong(Application.get().getProp(Settings.PERSISTENCE_LIMIT));
                 fileFlashlistRetriever.prepare(startLimit);
+                setReadAhead(fileFlashlistRetriever);
                 break;
         }
 
@@ -312,4 +426,170 @@ public class DAQAggregator {
 
     }
 
+    /**
+     * Projection of flashlist columns, null if full rows are kept. Full rows are kept when flashlists are persisted,
+     * unless persisting projected flashlists is explicitly allowed.
+     */
+    private static FlashlistProjection createProjection(PersistMode persistMode) {
+        String projectionEnabled = Application.get().getProp(Settings.FLASHLIST_PROJECTION);
+        if (projectionEnabled != null && !Boolean.parseBoolean(projectionEnabled.trim())) {
+            logger.info("Flashlist column projection disabled, full rows will be kept");
+            return null;
+        }
+        String fullRows = Application.get().getProp(Settings.PERSISTENCE_FLASHLIST_FULL_ROWS);
+        boolean persistFullRows = fullRows == null || Boolean.parseBoolean(fullRows.trim());
+        if (persistFullRows && (persistMode == PersistMode.FLASHLIST || persistMode == PersistMode.ALL)) {
+            logger.info("Flashlists are persisted, full rows will be kept");
+            return null;
+        }
+        FlashlistProjection projection = FlashlistProjection.create();
+        logger.info("Flashlist columns kept: " + projection);
+        return projection;
+    }
+
+    /**
+     * Retrieval policy for redundant LASes, defaults are used for missing settings
+     */
+    private static LASRetrievalPolicy createRetrievalPolicy() {
+        int hedgePercentile = LASRetrievalPolicy.DEFAULT_HEDGE_PERCENTILE;
+        int circuitFailures = LASRetrievalPolicy.DEFAULT_FAILURES_TO_OPEN;
+        long circuitOpenPeriod = LASRetrievalPolicy.DEFAULT_OPEN_PERIOD_MS;
+        int requestTimeout = LASRetrievalPolicy.DEFAULT_REQUEST_TIMEOUT_MS;
+        try {
+            String value = Application.get().getProp(Settings.LAS_HEDGE_PERCENTILE);
+            if (value != null) {
+                hedgePercentile = Integer.parseInt(value.trim());
+            }
+            value = Application.get().getProp(Settings.LAS_CIRCUIT_FAILURES);
+            if (value != null) {
+                circuitFailures = Integer.parseInt(value.trim());
+            }
+            value = Application.get().getProp(Settings.LAS_CIRCUIT_OPEN_PERIOD);
+            if (value != null) {
+                circuitOpenPeriod = Long.parseLong(value.trim());
+            }
+            value = Application.get().getProp(Settings.LAS_REQUEST_TIMEOUT);
+            if (value != null) {
+                requestTimeout = Integer.parseInt(value.trim());
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("Could not parse LAS retrieval policy settings, using defaults where not parsed: " + e.getMessage());
+        }
+        logger.info("LAS retrieval policy: hedge at p" + hedgePercentile + ", circuit opens after " + circuitFailures
+                + " failures for " + circuitOpenPeriod + "ms, requests time out after " + requestTimeout + "ms");
+        return new LASRetrievalPolicy(hedgePercentile, circuitFailures, circuitOpenPeriod,
+                LASRetrievalPolicy.DEFAULT_HEDGE_DELAY_MS, requestTimeout);
+    }
+
+    /**
+     * Embedded server of latest snapshot, null if no port is configured
+     */
+    private static SnapshotServer createSnapshotServer() throws IOException {
+        String port = Application.get().getProp(Settings.SERVER_PORT);
+        if (port == null || port.trim().isEmpty()) {
+            logger.info("Snapshot server disabled");
+            return null;
+        }
+        int threads = SnapshotServer.DEFAULT_THREADS;
+        int streamSubscribers = SnapshotServer.DEFAULT_STREAM_SUBSCRIBERS;
+        int historyPeriod = 10;
+        int historyMemory = 256;
+        try {
+            String value = Application.get().getProp(Settings.SERVER_THREADS);
+            if (value != null) {
+                threads = Integer.parseInt(value.trim());
+            }
+            value = Application.get().getProp(Settings.SERVER_STREAM_SUBSCRIBERS);
+            if (value != null) {
+                streamSubscribers = Integer.parseInt(value.trim());
+            }
+            value = Application.get().getProp(Settings.SERVER_HISTORY_PERIOD);
+            if (value != null) {
+                historyPeriod = Integer.parseInt(value.trim());
+            }
+            value = Application.get().getProp(Settings.SERVER_HISTORY_MEMORY);
+            if (value != null) {
+                historyMemory = Integer.parseInt(value.trim());
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("Could not parse snapshot server settings, using defaults where not parsed: " + e.getMessage());
+        }
+        PersistenceFormat format = PersistenceFormat
+                .decode(Application.get().getProp(Settings.PERSISTENCE_SNAPSHOT_FORMAT));
+        SnapshotServer snapshotServer;
+        try {
+            snapshotServer = new SnapshotServer(Integer.parseInt(port.trim()), threads, streamSubscribers, format);
+        } catch (NumberFormatException e) {
+            throw new DAQException(DAQExceptionCode.MissingProperty,
+                    "Could not parse " + Settings.SERVER_PORT.getKey() + " from: " + port);
+        }
+        if (historyPeriod > 0) {
+            logger.info("Snapshots of last " + historyPeriod + " minutes are kept, at most " + historyMemory + "MB");
+            snapshotServer.setHistory(new SnapshotHistory(historyPeriod * 60000L, historyMemory * 1024L * 1024L));
+        }
+        snapshotServer.start();
+        return snapshotServer;
+    }
+
+    /**
+     * Set codecs of compressed snapshot and flashlist archives and register dictionaries needed to read them
+     */
+    static void setCodecs(PersistorManager persistorManager) {
+        String dictionaryDir = Application.get().getProp(Settings.PERSISTENCE_DICTIONARY_DIR);
+        if (dictionaryDir != null && dictionaryDir.trim().isEmpty()) {
+            dictionaryDir = null;
+        }
+        Settings setting = Settings.PERSISTENCE_SNAPSHOT_CODEC;
+        try {
+            if (dictionaryDir != null) {
+                CompressionDictionary.loadAll(new File(dictionaryDir.trim()));
+            }
+            persistorManager.setSnapshotCodec(Codec.decode(Application.get().getProp(setting), dictionaryDir));
+            setting = Settings.PERSISTENCE_FLASHLIST_CODEC;
+            persistorManager.setFlashlistCodec(Codec.decode(Application.get().getProp(setting), dictionaryDir));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new DAQException(DAQExceptionCode.MissingProperty,
+                    "Could not set codec " + setting.getKey() + ": " + e.getMessage());
+        }
+        logger.info("Snapshots are compressed with " + persistorManager.getSnapshotCodec() + ", flashlists with "
+                + persistorManager.getFlashlistCodec());
+    }
+
+    /**
+     * Schedule background compaction of snapshot archive, if full resolution period is configured
+     */
+    private static void scheduleCompaction(String snapshotPersistenceDir) {
+        String fullResolution = Application.get().getProp(Settings.PERSISTENCE_COMPACTION_FULL);
+        if (fullResolution == null || fullResolution.trim().isEmpty()) {
+            logger.info("Snapshot compaction disabled");
+            return;
+        }
+        String tiers = Application.get().getProp(Settings.PERSISTENCE_COMPACTION_TIERS);
+        String prune = Application.get().getProp(Settings.PERSISTENCE_COMPACTION_PRUNE);
+        String period = Application.get().getProp(Settings.PERSISTENCE_COMPACTION_PERIOD);
+        SnapshotCompactor compactor;
+        long compactionPeriod;
+        try {
+            compactor = new SnapshotCompactor(snapshotPersistenceDir, Long.parseLong(fullResolution.trim()) * 3600000,
+                    SnapshotCompactor.Tier.parse(tiers != null ? tiers : "1:720,10:0"),
+                    prune == null || Boolean.parseBoolean(prune.trim()));
+            compactionPeriod = period != null ? Long.parseLong(period.trim()) : 60;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Could not parse snapshot compaction settings, compaction disabled: " + e.getMessage());
+            return;
+        }
+        logger.info("Snapshots older than " + fullResolution.trim() + " hours will be compacted every "
+                + compactionPeriod + " minutes");
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "snapshot-compactor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(compactor, 1, compactionPeriod, TimeUnit.MINUTES);
+    }
+
 }
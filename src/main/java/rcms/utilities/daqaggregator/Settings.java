@@ -4,12 +4,22 @@ public enum Settings {
 
 	RUN_MODE("run.mode", true),
 	RUN_SAMPLING("run.sampling.period"),
+	RUN_READ_AHEAD_CYCLES("run.readahead.cycles"),
+	RUN_READ_AHEAD_THREADS("run.readahead.threads"),
+	RUN_READ_AHEAD_MEMORY("run.readahead.memory"),
+	RUN_MERGE_TOLERANCE("run.merge.tolerance"),
 
 	// flashlists
 	LAS_URL("flashlist.urls",true),
 	FLASHLIST_OPTIONAL("flashlist.optional"),
 	STATIC_CATALOG("catalog.static"),
+	LAS_CATALOG_CACHE("flashlist.catalog.cache"),
 	SUPPRESS_HTTP_FAILED("flashlist.suppress.failed"),
+	LAS_HEDGE_PERCENTILE("flashlist.hedge.percentile"),
+	LAS_CIRCUIT_FAILURES("flashlist.circuit.failures"),
+	LAS_CIRCUIT_OPEN_PERIOD("flashlist.circuit.open.period"),
+	LAS_REQUEST_TIMEOUT("flashlist.request.timeout"),
+	FLASHLIST_PROJECTION("flashlist.projection"),
 
 
 	// settings concerning session definition
@@ -47,8 +57,27 @@ public enum Settings {
 	PERSISTENCE_FLASHLIST_DIR("persistence.flashlist.dir"),
 	PERSISTENCE_SNAPSHOT_DIR("persistence.snapshot.dir"),
 	PERSISTENCE_FLASHLIST_FORMAT("persistence.flashlist.format"),
+	PERSISTENCE_FLASHLIST_FULL_ROWS("persistence.flashlist.full.rows"),
+	PERSISTENCE_FLASHLIST_BUNDLE("persistence.flashlist.bundle"),
+	PERSISTENCE_FLASHLIST_DEDUP("persistence.flashlist.dedup"),
 	PERSISTENCE_SNAPSHOT_FORMAT("persistence.snapshot.format"),
-	PERSISTENCE_LIMIT("persistence.flashlist.explore.start"), ;
+	PERSISTENCE_SNAPSHOT_CODEC("persistence.snapshot.codec"),
+	PERSISTENCE_FLASHLIST_CODEC("persistence.flashlist.codec"),
+	PERSISTENCE_DICTIONARY_DIR("persistence.dictionary.dir"),
+	PERSISTENCE_LIMIT("persistence.flashlist.explore.start"),
+	PERSISTENCE_TIMESERIES_DIR("persistence.timeseries.dir"),
+	PERSISTENCE_COMPACT("persistence.compact"),
+	PERSISTENCE_COMPACTION_FULL("persistence.snapshot.compaction.full"),
+	PERSISTENCE_COMPACTION_TIERS("persistence.snapshot.compaction.tiers"),
+	PERSISTENCE_COMPACTION_PRUNE("persistence.snapshot.compaction.prune"),
+	PERSISTENCE_COMPACTION_PERIOD("persistence.snapshot.compaction.period"),
+
+	// settings concerning embedded snapshot server
+	SERVER_PORT("server.port"),
+	SERVER_THREADS("server.threads"),
+	SERVER_STREAM_SUBSCRIBERS("server.stream.subscribers"),
+	SERVER_HISTORY_PERIOD("server.history.period"),
+	SERVER_HISTORY_MEMORY("server.history.memory"), ;
 
 	private Settings(String key, boolean required) {
 		this.key = key;
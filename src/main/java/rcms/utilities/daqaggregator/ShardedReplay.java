@@ -0,0 +1,417 @@
+package rcms.utilities.daqaggregator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.lang3.tuple.Triple;
+import org.apache.log4j.Logger;
+
+import rcms.common.db.DBConnectorException;
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.helper.BackpressureConverter;
+import rcms.utilities.daqaggregator.datasource.FileFlashlistRetriever;
+import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRetriever;
+import rcms.utilities.daqaggregator.datasource.FlashlistType;
+import rcms.utilities.daqaggregator.datasource.HardwareConnector;
+import rcms.utilities.daqaggregator.datasource.MonitorManager;
+import rcms.utilities.daqaggregator.datasource.SessionRetriever;
+import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
+import rcms.utilities.daqaggregator.persistence.PersistorManager;
+import rcms.utilities.hwcfg.HardwareConfigurationException;
+import rcms.utilities.hwcfg.InvalidNodeTypeException;
+import rcms.utilities.hwcfg.PathNotFoundException;
+
+/**
+ * Replays long ranges of persisted flashlists in parallel. The range is split
+ * into shards at session boundaries found with
+ * {@link FlashlistType#LEVEL_ZERO_FM_DYNAMIC} flashlists. Each shard is
+ * replayed by its own {@link MonitorManager} on its own thread and snapshots
+ * are persisted to the snapshot directory as in file mode.
+ *
+ * Fields calculated from previous cycles, e.g. backpressure of
+ * {@link BackpressureConverter}, are warmed up: shard starts replaying given
+ * number of cycles before its first cycle, snapshots of these cycles are not
+ * persisted.
+ *
+ * Usage: ShardedReplay properties-file start end [threads [shards]], e.g.
+ * ShardedReplay DAQAggregator.properties 2017-05-01T00:00:00Z
+ * 2017-05-15T00:00:00Z 8
+ */
+public class ShardedReplay {
+
+	private static final Logger logger = Logger.getLogger(ShardedReplay.class);
+
+	/** Cycles replayed before first cycle of shard by default */
+	public static final int DEFAULT_WARMUP = 2;
+
+	/**
+	 * Creates components replaying a shard
+	 */
+	public interface Environment {
+
+		MonitorManager createMonitorManager(FlashlistRetriever flashlistRetriever)
+				throws DBConnectorException, HardwareConfigurationException;
+
+		PersistorManager createPersistorManager();
+	}
+
+	/**
+	 * Range of cycles replayed together
+	 */
+	public static final class Shard {
+
+		/** Index of first cycle */
+		private final int from;
+
+		/** Index after last cycle */
+		private final int to;
+
+		private final Set<Integer> sessions;
+
+		private int warmup;
+
+		private int persisted;
+
+		/** Timestamp of first and last persisted snapshot, 0 if none */
+		private long firstSnapshot;
+		private long lastSnapshot;
+
+		private long time;
+
+		private String error;
+
+		Shard(int from, int to, Set<Integer> sessions) {
+			this.from = from;
+			this.to = to;
+			this.sessions = sessions;
+		}
+
+		public int getFrom() {
+			return from;
+		}
+
+		public int getTo() {
+			return to;
+		}
+
+		public int getCycles() {
+			return to - from;
+		}
+
+		public Set<Integer> getSessions() {
+			return sessions;
+		}
+
+		public int getWarmup() {
+			return warmup;
+		}
+
+		public int getPersisted() {
+			return persisted;
+		}
+
+		public int getFailed() {
+			return getCycles() - persisted;
+		}
+
+		public long getFirstSnapshot() {
+			return firstSnapshot;
+		}
+
+		public long getLastSnapshot() {
+			return lastSnapshot;
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"cycles %d-%d of sessions %s: %d persisted, %d failed, %d warm-up, snapshots %d-%d in %d ms%s", from,
+					to, sessions, persisted, getFailed(), warmup, firstSnapshot, lastSnapshot, time,
+					error != null ? ", error: " + error : "");
+		}
+	}
+
+	/**
+	 * Consistency report of replay
+	 */
+	public static final class Report {
+
+		private final List<Shard> shards;
+
+		private final List<String> problems = new ArrayList<>();
+
+		private int persisted;
+
+		Report(List<Shard> shards, int cycles) {
+			this.shards = shards;
+			int expectedFrom = 0;
+			Shard previous = null;
+			for (Shard shard : shards) {
+				persisted += shard.persisted;
+				if (shard.from != expectedFrom) {
+					problems.add("Cycles " + expectedFrom + "-" + shard.from + " not covered by shards");
+				}
+				expectedFrom = shard.to;
+				if (shard.error != null) {
+					problems.add("Shard " + shard.from + "-" + shard.to + " failed: " + shard.error);
+				} else if (shard.getFailed() > 0) {
+					problems.add(shard.getFailed() + " cycles of shard " + shard.from + "-" + shard.to
+							+ " not persisted");
+				}
+				if (previous != null && previous.lastSnapshot != 0 && shard.firstSnapshot != 0
+						&& previous.lastSnapshot >= shard.firstSnapshot) {
+					problems.add("Snapshots of shard " + previous.from + "-" + previous.to + " overlap with shard "
+							+ shard.from + "-" + shard.to);
+				}
+				if (shard.persisted > 0) {
+					previous = shard;
+				}
+			}
+			if (expectedFrom != cycles) {
+				problems.add("Cycles " + expectedFrom + "-" + cycles + " not covered by shards");
+			}
+		}
+
+		public boolean isConsistent() {
+			return problems.isEmpty();
+		}
+
+		public List<String> getProblems() {
+			return problems;
+		}
+
+		public List<Shard> getShards() {
+			return shards;
+		}
+
+		public int getPersisted() {
+			return persisted;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Replayed ").append(shards.size()).append(" shards, ").append(persisted)
+					.append(" snapshots persisted");
+			for (Shard shard : shards) {
+				sb.append("\n  ").append(shard);
+			}
+			sb.append(isConsistent() ? "\nConsistent" : "\nInconsistent:");
+			for (String problem : problems) {
+				sb.append("\n  ").append(problem);
+			}
+			return sb.toString();
+		}
+	}
+
+	private final FileFlashlistRetriever flashlistRetriever;
+
+	private final SessionRetriever sessionRetriever;
+
+	private final int warmup;
+
+	/**
+	 * @param flashlistRetriever
+	 *            retriever with prepared cycles to replay
+	 * @param warmup
+	 *            number of cycles replayed before first cycle of shard
+	 */
+	public ShardedReplay(FileFlashlistRetriever flashlistRetriever, SessionRetriever sessionRetriever, int warmup) {
+		this.flashlistRetriever = flashlistRetriever;
+		this.sessionRetriever = sessionRetriever;
+		this.warmup = warmup;
+	}
+
+	/**
+	 * Split cycles into shards of similar size. Shards start where session or
+	 * hardware configuration changes, sessions are not split, so there may be
+	 * less shards than requested.
+	 */
+	public List<Shard> plan(int shardCount) {
+		int cycles = flashlistRetriever.getCycleCount();
+		FileFlashlistRetriever scan = flashlistRetriever.slice(0, cycles);
+
+		/* first cycle and id of each session */
+		List<Integer> sessionStarts = new ArrayList<>();
+		List<Integer> sessionIds = new ArrayList<>();
+		String lastSession = null;
+		for (int i = 0; i < cycles; i++) {
+			try {
+				Flashlist flashlist = scan.retrieveFlashlist(FlashlistType.LEVEL_ZERO_FM_DYNAMIC).getLeft();
+				Triple<String, Integer, Long> session = sessionRetriever.retrieveSession(flashlist);
+				String key = session.getMiddle() + ":" + session.getLeft();
+				if (!key.equals(lastSession)) {
+					sessionStarts.add(i);
+					sessionIds.add(session.getMiddle());
+					lastSession = key;
+				}
+			} catch (RuntimeException e) {
+				/* session not detected, cycle stays in current session */
+				logger.debug("Session not detected in cycle " + i + ": " + e.getMessage());
+			}
+			scan.skip();
+		}
+		if (sessionStarts.isEmpty() || sessionStarts.get(0) != 0) {
+			sessionStarts.add(0, 0);
+			sessionIds.add(0, 0);
+		}
+
+		int target = (cycles + shardCount - 1) / Math.max(1, shardCount);
+		List<Shard> result = new ArrayList<>();
+		int from = 0;
+		Set<Integer> sessions = new LinkedHashSet<>();
+		for (int s = 0; s < sessionStarts.size(); s++) {
+			int end = s + 1 < sessionStarts.size() ? sessionStarts.get(s + 1) : cycles;
+			sessions.add(sessionIds.get(s));
+			if (end - from >= target || end == cycles) {
+				result.add(new Shard(from, end, sessions));
+				from = end;
+				sessions = new LinkedHashSet<>();
+			}
+		}
+		logger.info("Split " + cycles + " cycles of " + sessionStarts.size() + " sessions into " + result.size()
+				+ " shards");
+		return result;
+	}
+
+	/**
+	 * Replay shards in parallel
+	 *
+	 * @return consistency report
+	 */
+	public Report run(List<Shard> shards, int threads, final Environment environment) throws InterruptedException {
+		final AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "replay-shard-" + threadCount.incrementAndGet());
+			}
+		});
+		for (final Shard shard : shards) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					replay(shard, environment);
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+		Report report = new Report(shards, flashlistRetriever.getCycleCount());
+		logger.info(report);
+		return report;
+	}
+
+	private void replay(Shard shard, Environment environment) {
+		long start = System.currentTimeMillis();
+		int replayFrom = Math.max(0, shard.from - warmup);
+		shard.warmup = shard.from - replayFrom;
+		FileFlashlistRetriever retriever = flashlistRetriever.slice(replayFrom, shard.to);
+		try {
+			MonitorManager monitorManager = environment.createMonitorManager(retriever);
+			PersistorManager persistorManager = environment.createPersistorManager();
+
+			/* cycle may be skipped on failure, position is taken from retriever */
+			int cycle;
+			while ((cycle = retriever.getCurrentCycle()) < retriever.getCycleCount()) {
+				try {
+					Triple<DAQ, Collection<Flashlist>, Boolean> result = monitorManager.getSystemSnapshot();
+					if (cycle < shard.warmup) {
+						continue;
+					}
+					DAQ daq = result.getLeft();
+					if (persistorManager.persistSnapshot(daq) != null) {
+						shard.persisted++;
+						if (shard.firstSnapshot == 0) {
+							shard.firstSnapshot = daq.getLastUpdate();
+						}
+						shard.lastSnapshot = daq.getLastUpdate();
+					}
+				} catch (DAQException e) {
+					if (e.getCode() == DAQExceptionCode.NoMoreFlashlistSourceFiles) {
+						break;
+					}
+					logger.error("Problem replaying cycle " + (replayFrom + cycle) + ": " + e.getMessage());
+					monitorManager.skipToNextSnapshot();
+				}
+			}
+		} catch (DBConnectorException | HardwareConfigurationException | PathNotFoundException
+				| InvalidNodeTypeException | RuntimeException e) {
+			logger.error("Problem replaying shard " + shard.from + "-" + shard.to, e);
+			shard.error = e.toString();
+		}
+		shard.time = System.currentTimeMillis() - start;
+		logger.info("Replayed shard " + shard);
+	}
+
+	/**
+	 * Components of shard replay configured in properties file
+	 */
+	private static final class ApplicationEnvironment implements Environment {
+
+		@Override
+		public MonitorManager createMonitorManager(FlashlistRetriever flashlistRetriever)
+				throws DBConnectorException, HardwareConfigurationException {
+			HardwareConnector hardwareConnector = new HardwareConnector();
+			hardwareConnector.initialize(Application.get().getProp());
+			return new MonitorManager(flashlistRetriever, createSessionRetriever(), hardwareConnector, null);
+		}
+
+		@Override
+		public PersistorManager createPersistorManager() {
+			PersistorManager persistorManager = new PersistorManager(
+					Application.get().getProp(Settings.PERSISTENCE_SNAPSHOT_DIR),
+					Application.get().getProp(Settings.PERSISTENCE_FLASHLIST_DIR),
+					PersistenceFormat.decode(Application.get().getProp(Settings.PERSISTENCE_SNAPSHOT_FORMAT)),
+					PersistenceFormat.decode(Application.get().getProp(Settings.PERSISTENCE_FLASHLIST_FORMAT)));
+			persistorManager.setCompact(Boolean.parseBoolean(Application.get().getProp(Settings.PERSISTENCE_COMPACT)));
+			DAQAggregator.setCodecs(persistorManager);
+			return persistorManager;
+		}
+	}
+
+	private static SessionRetriever createSessionRetriever() {
+		return new SessionRetriever(Application.get().getProp(Settings.SESSION_L0FILTER1),
+				Application.get().getProp(Settings.SESSION_L0FILTER2));
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 3) {
+			System.out.println("Usage: ShardedReplay properties-file start end [threads [shards]]");
+			return;
+		}
+		Application.initialize(args[0]);
+		long start = DatatypeConverter.parseDateTime(args[1]).getTimeInMillis();
+		long end = DatatypeConverter.parseDateTime(args[2]).getTimeInMillis();
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		int shards = args.length > 4 ? Integer.parseInt(args[4]) : 2 * threads;
+
+		FileFlashlistRetriever flashlistRetriever = new FileFlashlistRetriever(
+				Application.get().getProp(Settings.PERSISTENCE_FLASHLIST_DIR),
+				PersistenceFormat.decode(Application.get().getProp(Settings.PERSISTENCE_FLASHLIST_FORMAT)));
+		flashlistRetriever.prepare(start, end);
+
+		ShardedReplay replay = new ShardedReplay(flashlistRetriever, createSessionRetriever(), DEFAULT_WARMUP);
+		Report report = replay.run(replay.plan(shards), threads, new ApplicationEnvironment());
+		System.out.println(report);
+		System.exit(report.isConsistent() ? 0 : 1);
+	}
+
+}
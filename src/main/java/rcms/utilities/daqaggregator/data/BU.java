@@ -2,10 +2,13 @@ package rcms.utilities.daqaggregator.data;
 
 import java.util.Comparator;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
 
 /**
  * Builder Unit
@@ -14,7 +17,7 @@ import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-public class BU implements FlashlistUpdatable {
+public class BU implements FlashlistUpdatable, Identifiable {
 
 	// ----------------------------------------
 	// fields set at beginning of session
@@ -105,6 +108,20 @@ public class BU implements FlashlistUpdatable {
 
 	// ----------------------------------------------------------------------
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		projection.declare(FlashlistType.BU, "stateName", "context", "errorMsg", "eventRate", "throughput", "eventSize",
+				"eventSizeStdDev", "nbEventsBuilt", "nbEventsInBU", "priority", "nbSentResources", "nbUsedResources",
+				"nbBlockedResources", "fuSlotsHLT", "fuSlotsQuarantined", "fuSlotsStale", "fuSlotsCloud", "ramDiskUsed",
+				"ramDiskSizeInGB", "nbFilesWritten", "nbLumiSections", "currentLumiSection", "queuedLumiSections",
+				"queuedLumiSectionsOnFUs", "fuOutputBandwidthInMB", "requestRate", "requestRetryRate", "fragmentRate",
+				"slowestRUtid", "nbCorruptedEvents", "nbEventsMissingData", "nbEventsWithCRCerrors", "nbTotalResources");
+		projection.declare(FlashlistType.JOB_CONTROL, "jobTable");
+	}
+
 	/**
 	 * Update object based on given flashlist fragment
 	 * 
@@ -652,4 +669,22 @@ public class BU implements FlashlistUpdatable {
 
 	// ----------------------------------------------------------------------
 
+	/** id in serialized snapshots, assigned when structure is mapped */
+	private String objectId;
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		if (objectId == null) {
+			objectId = ObjectIdHelper.objectId(this);
+		}
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
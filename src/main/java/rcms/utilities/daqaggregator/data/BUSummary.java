@@ -1,5 +1,7 @@
 package rcms.utilities.daqaggregator.data;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import rcms.utilities.daqaggregator.mappers.Derivable;
 
 /**
@@ -10,7 +12,7 @@ import rcms.utilities.daqaggregator.mappers.Derivable;
  */
 
 
-public class BUSummary implements Derivable {
+public class BUSummary implements Derivable, Identifiable {
 
 	// ----------------------------------------
 	// fields set at beginning of session
@@ -498,4 +500,19 @@ public class BUSummary implements Derivable {
 		return true;
 	}
 
+	/** id in serialized snapshots, the same in all snapshots */
+	private String objectId = "BUS";
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
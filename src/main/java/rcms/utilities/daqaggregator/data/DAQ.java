@@ -4,10 +4,12 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.util.ArrayList;
 
 import rcms.utilities.daqaggregator.datasource.DateParser;
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
 
@@ -18,7 +20,7 @@ import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  * @author Michail Vougioukas (michail.vougioukas@cern.ch)
  */
-public class DAQ implements FlashlistUpdatable {
+public class DAQ implements FlashlistUpdatable, Identifiable {
 
 	private String daqAggregatorProducer;
 
@@ -230,6 +232,16 @@ public class DAQ implements FlashlistUpdatable {
 		this.dpsetPath = dpsetPath;
 	}
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		projection.declare(FlashlistType.LEVEL_ZERO_FM_SUBSYS, "STATE");
+		projection.declare(FlashlistType.LEVEL_ZERO_FM_DYNAMIC, "STATE", "CLOCK_SOURCE", "LHC_CLOCK_STABLE", "LHC_BEAM_MODE",
+				"LHC_MACHINE_MODE", "HLT_KEY", "HLT_KEY_DESCRIPTION", "RUN_NUMBER", "RUN_START_TIME", "STATE_ENTRY_TIME");
+	}
+
 	/**
 	 * TODO: some columns were added later to the flashlists - accessing them in old flashlists should be fail-safe
 	 */
@@ -611,4 +623,19 @@ public class DAQ implements FlashlistUpdatable {
 				+ ", hltRate=" + hltRate + ", hltKey=" + hltKey + ", hltKeyDescription=" + hltKeyDescription + "]";
 	}
 
+	/** id in serialized snapshots, the same in all snapshots */
+	private String objectId = "DAQ";
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
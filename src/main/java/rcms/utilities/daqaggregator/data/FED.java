@@ -8,8 +8,10 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import rcms.utilities.daqaggregator.data.helper.BackpressureConverter;
 import rcms.utilities.daqaggregator.data.helper.FEDHelper;
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
 
 /**
  * Front End Driver
@@ -17,7 +19,7 @@ import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
  * @author Andre Georg Holzner (andre.georg.holzner@cern.ch)
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  */
-public class FED implements FlashlistUpdatable {
+public class FED implements FlashlistUpdatable, Identifiable {
 
 	// ----------------------------------------
 	// fields set at beginning of session
@@ -97,6 +99,26 @@ public class FED implements FlashlistUpdatable {
 	@JsonIgnore
 	private BackpressureConverter converter = new BackpressureConverter();
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		projection.declare(FlashlistType.FMM_INPUT, "fractionWarning", "fractionBusy", "inputState", "isActive");
+		String[] inputStreamColumns = { "WrongFEDIdDetected", "WrongFEDId", "SLinkCRCError", "FEDCRCError", "TriggerNumber",
+				"EventCounter", "AccSlinkFullSeconds", "LatchedTimeFrontendSeconds", "AccBackpressureSeconds" };
+		projection.declare(FlashlistType.FEROL_INPUT_STREAM, inputStreamColumns);
+		projection.declare(FlashlistType.FEROL40_INPUT_STREAM, inputStreamColumns);
+		projection.declare(FlashlistType.FEROL_CONFIGURATION, "enableStream0", "enableStream1", "DataSource");
+		projection.declare(FlashlistType.FEROL40_STREAM_CONFIGURATION, "enable");
+		projection.declare(FlashlistType.RU, "fedIdsWithErrors", "fedBXerrors", "fedCRCerrors", "fedDataCorruption",
+				"fedOutOfSync", "fedIdsWithoutFragments");
+		for (int slot = 1; slot <= 10; slot++) {
+			projection.declare(FlashlistType.TCDS_PI_TTS_SUMMARY, "tts_slot" + slot);
+		}
+		projection.declare(FlashlistType.FEROL_TCP_STREAM, "AccBIFIBackpressureSeconds", "LatchedTimeBackendSeconds");
+	}
+
 	@Override
 	public void updateFromFlashlist(FlashlistType flashlistType, JsonNode flashlistRow) {
 
@@ -645,4 +667,22 @@ public class FED implements FlashlistUpdatable {
 				+ frlMasked + "]";
 	}
 
+	/** id in serialized snapshots, assigned when structure is mapped */
+	private String objectId;
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		if (objectId == null) {
+			objectId = ObjectIdHelper.objectId(this);
+		}
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
@@ -3,13 +3,17 @@ package rcms.utilities.daqaggregator.data;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
+
 /**
  * Front End Driver Builder
  * 
  * @author Andre Georg Holzner (andre.georg.holzner@cern.ch)
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  */
-public class FEDBuilder {
+public class FEDBuilder implements Identifiable {
 
 	// ----------------------------------------
 	// fields set at beginning of session
@@ -88,4 +92,22 @@ public class FEDBuilder {
 
 	// ----------------------------------------------------------------------
 
+	/** id in serialized snapshots, assigned when structure is mapped */
+	private String objectId;
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		if (objectId == null) {
+			objectId = ObjectIdHelper.objectId(this);
+		}
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
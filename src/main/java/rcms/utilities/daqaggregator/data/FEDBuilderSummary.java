@@ -1,5 +1,7 @@
 package rcms.utilities.daqaggregator.data;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import rcms.utilities.daqaggregator.mappers.Derivable;
 
 /**
@@ -9,7 +11,7 @@ import rcms.utilities.daqaggregator.mappers.Derivable;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  */
 
-public class FEDBuilderSummary implements Derivable {
+public class FEDBuilderSummary implements Derivable, Identifiable {
 
 	// ----------------------------------------
 	// fields set at beginning of session
@@ -233,7 +235,19 @@ public class FEDBuilderSummary implements Derivable {
 		return true;
 	}
 
+	/** id in serialized snapshots, the same in all snapshots */
+	private String objectId = "FEDBS";
 
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		return objectId;
+	}
 
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
 
 }
@@ -3,10 +3,13 @@ package rcms.utilities.daqaggregator.data;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
 
 /**
  * Fast Merging Module
@@ -14,7 +17,7 @@ import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
  * @author Andre Georg Holzner (andre.georg.holzner@cern.ch)
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  */
-public class FMM implements FlashlistUpdatable {
+public class FMM implements FlashlistUpdatable, Identifiable {
 
 	private String id;
 
@@ -115,6 +118,14 @@ public class FMM implements FlashlistUpdatable {
 		this.stateName = stateName;
 	}
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		projection.declare(FlashlistType.FMM_STATUS, "context", "stateName");
+	}
+
 	@Override
 	public void updateFromFlashlist(FlashlistType flashlistType, JsonNode flashlistRow) {
 		if (flashlistType == FlashlistType.FMM_STATUS) {
@@ -192,4 +203,22 @@ public class FMM implements FlashlistUpdatable {
 		this.takeB = takeB;
 	}
 
+	/** id in serialized snapshots, assigned when structure is mapped */
+	private String objectId;
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		if (objectId == null) {
+			objectId = ObjectIdHelper.objectId(this);
+		}
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
@@ -3,10 +3,13 @@ package rcms.utilities.daqaggregator.data;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
 
 /**
  * Front-end Readout Link
@@ -14,7 +17,7 @@ import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
  * @author Andre Georg Holzner (andre.georg.holzner@cern.ch)
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  */
-public class FRL implements FlashlistUpdatable {
+public class FRL implements FlashlistUpdatable, Identifiable {
 
 	// ----------------------------------------
 	// fields set at beginning of session
@@ -100,6 +103,15 @@ public class FRL implements FlashlistUpdatable {
 		this.substate = substate;
 	}
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		projection.declare(FlashlistType.FEROL_STATUS, "stateName", "subState", "context");
+		projection.declare(FlashlistType.FEROL40_STATUS, "stateName", "subState", "context");
+	}
+
 	@Override
 	public void updateFromFlashlist(FlashlistType flashlistType, JsonNode flashlistRow) {
 
@@ -197,4 +209,22 @@ public class FRL implements FlashlistUpdatable {
 
 	// ----------------------------------------------------------------------
 
+	/** id in serialized snapshots, assigned when structure is mapped */
+	private String objectId;
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		if (objectId == null) {
+			objectId = ObjectIdHelper.objectId(this);
+		}
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
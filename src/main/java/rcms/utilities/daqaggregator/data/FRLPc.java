@@ -3,11 +3,14 @@ package rcms.utilities.daqaggregator.data;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.Derivable;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
 
 /**
  * Front-end Readout Link PC
@@ -16,7 +19,7 @@ import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  */
 
-public class FRLPc implements FlashlistUpdatable, Derivable {
+public class FRLPc implements FlashlistUpdatable, Derivable, Identifiable {
 
 	// ----------------------------------------
 	// fields set at beginning of session
@@ -77,6 +80,16 @@ public class FRLPc implements FlashlistUpdatable, Derivable {
 		this.frls = frls;
 	}
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		projection.declare(FlashlistType.JOB_CONTROL, "jobTable");
+		projection.declare(FlashlistType.FEROL_CONFIGURATION, "context");
+		projection.declare(FlashlistType.FEROL40_CONFIGURATION, "context");
+	}
+
 	@Override
 	public void updateFromFlashlist(FlashlistType flashlistType, JsonNode flashlistRow) {
 
@@ -165,4 +178,22 @@ public class FRLPc implements FlashlistUpdatable, Derivable {
 		return true;
 	}
 
+	/** id in serialized snapshots, assigned when structure is mapped */
+	private String objectId;
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		if (objectId == null) {
+			objectId = ObjectIdHelper.objectId(this);
+		}
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
@@ -0,0 +1,20 @@
+package rcms.utilities.daqaggregator.data;
+
+/**
+ * Object of DAQ structure referenced by id in serialized snapshots. Ids are
+ * assigned once when the structure is mapped (see
+ * {@link rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper}) and
+ * restored when snapshots are deserialized. They depend only on hardware
+ * configuration, so that objects can be matched by id across snapshots of the
+ * same session.
+ */
+public interface Identifiable {
+
+	/**
+	 * @return id of object in serialized snapshot, e.g. FED_1234
+	 */
+	String getObjectId();
+
+	void setObjectId(String objectId);
+
+}
@@ -4,14 +4,17 @@ package rcms.utilities.daqaggregator.data;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.Derivable;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
 
 /**
  * Readout Unit
@@ -21,7 +24,7 @@ import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
  * @author Michail Vougioukas (michail.vougioukas@cern.ch)
  */
 
-public class RU implements FlashlistUpdatable, Derivable {
+public class RU implements FlashlistUpdatable, Derivable, Identifiable {
 
 	// ----------------------------------------
 	// fields set at beginning of session
@@ -390,6 +393,20 @@ public class RU implements FlashlistUpdatable, Derivable {
 
 	}
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		String[] columns = { "stateName", "errorMsg", "activeRequests", "context", "eventRate", "eventsInRU", "eventCount",
+				"superFragmentSize", "superFragmentSizeStdDev", "incompleteSuperFragmentCount", "throughputPerBU", "buTids",
+				"fragmentRatePerBU", "retryRatePerBU" };
+		projection.declare(FlashlistType.RU, columns);
+		projection.declare(FlashlistType.EVM, columns);
+		projection.declare(FlashlistType.EVM, "allocateRate");
+		projection.declare(FlashlistType.JOB_CONTROL, "jobTable");
+	}
+
 	/**
 	 * Update object based on given flashlist fragment
 	 * 
@@ -635,4 +652,23 @@ public class RU implements FlashlistUpdatable, Derivable {
 	}
 
 	
+
+	/** id in serialized snapshots, assigned when structure is mapped */
+	private String objectId;
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		if (objectId == null) {
+			objectId = ObjectIdHelper.objectId(this);
+		}
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
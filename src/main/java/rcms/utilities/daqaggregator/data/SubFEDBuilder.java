@@ -3,6 +3,10 @@ package rcms.utilities.daqaggregator.data;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
+
 /**
  * 
  * Class representing one line in DAQView
@@ -11,7 +15,7 @@ import java.util.List;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  * 
  */
-public class SubFEDBuilder {
+public class SubFEDBuilder implements Identifiable {
 
 	
 	// ----------------------------------------
@@ -183,7 +187,23 @@ public class SubFEDBuilder {
 		return "SubFEDBuilder [fedBuilder=" + fedBuilder + ", ttcPartition=" + ttcPartition + ", frlPc=" + frlPc
 				+ ", frls=" + frls + ", (pseudo)feds=" + feds + ", minTrig=" + minTrig + ", maxTrig=" + maxTrig + "]";
 	}
-	
 
-	
+	/** id in serialized snapshots, assigned when structure is mapped */
+	private String objectId;
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		if (objectId == null) {
+			objectId = ObjectIdHelper.objectId(this);
+		}
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
@@ -3,12 +3,15 @@ package rcms.utilities.daqaggregator.data;
 import java.util.HashSet;
 import java.util.Set;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
 
-public class SubSystem implements FlashlistUpdatable {
+public class SubSystem implements FlashlistUpdatable, Identifiable {
 
 	private String name;
 
@@ -40,6 +43,14 @@ public class SubSystem implements FlashlistUpdatable {
 		this.ttcPartitions = ttcPartitions;
 	}
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		projection.declare(FlashlistType.LEVEL_ZERO_FM_SUBSYS, "STATE");
+	}
+
 	@Override
 	public void updateFromFlashlist(FlashlistType flashlistType, JsonNode flashlistRow) {
 
@@ -100,4 +111,22 @@ public class SubSystem implements FlashlistUpdatable {
 		return "SubSystem [name=" + name + ", status=" + status + ", ttcPartitions=" + ttcPartitions + "]";
 	}
 
+	/** id in serialized snapshots, assigned when structure is mapped */
+	private String objectId;
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		if (objectId == null) {
+			objectId = ObjectIdHelper.objectId(this);
+		}
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
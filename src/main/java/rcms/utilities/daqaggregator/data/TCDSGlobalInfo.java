@@ -9,6 +9,7 @@ import java.util.regex.Pattern;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
 
@@ -301,6 +302,19 @@ public class TCDSGlobalInfo implements FlashlistUpdatable{
 		this.tcdsControllerServiceName = tcdsControllerServiceName;
 	}
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		/* counters per trigger type and deadtimes are read by iterating over all fields */
+		projection.declareAll(FlashlistType.TCDS_CPM_COUNTS);
+		projection.declareAll(FlashlistType.TCDS_CPM_RATES);
+		projection.declareAll(FlashlistType.TCDS_CPM_DEADTIMES);
+		projection.declareAll(FlashlistType.TCDS_CPM_DEADTIMES_1HZ);
+		projection.declareAll(FlashlistType.TCDS_PM_ACTION_COUNTS);
+	}
+
 	@Override
 	public void updateFromFlashlist(FlashlistType flashlistType, JsonNode flashlistRow) {
 
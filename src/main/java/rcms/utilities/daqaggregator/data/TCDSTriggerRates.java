@@ -7,6 +7,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
 
@@ -40,6 +41,15 @@ public class TCDSTriggerRates implements FlashlistUpdatable {
 		
 	}
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		/* rates per trigger type are read by iterating over all fields */
+		projection.declareAll(FlashlistType.TCDS_CPM_RATES_1HZ);
+	}
+
 	public void updateFromFlashlist(FlashlistType flashlistType, JsonNode flashlistRow) {
 	
 		//reset arrays to flush old entries
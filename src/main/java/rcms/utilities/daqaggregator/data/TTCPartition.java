@@ -3,11 +3,14 @@ package rcms.utilities.daqaggregator.data;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import rcms.utilities.daqaggregator.datasource.FlashlistProjection;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 import rcms.utilities.daqaggregator.mappers.Derivable;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
 
 /**
  * Timing Trigger and Control Partition
@@ -16,7 +19,7 @@ import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  */
 
-public class TTCPartition implements FlashlistUpdatable, Derivable {
+public class TTCPartition implements FlashlistUpdatable, Derivable, Identifiable {
 
 	// ----------------------------------------
 	// fields set at beginning of session
@@ -159,6 +162,15 @@ public class TTCPartition implements FlashlistUpdatable, Derivable {
 		this.ttsState = null;
 	}
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #updateFromFlashlist(FlashlistType, JsonNode)}
+	 */
+	public static void declareFlashlistColumns(FlashlistProjection projection) {
+		projection.declare(FlashlistType.FMM_STATUS, "outputFractionBusyA", "outputFractionWarningA", "outputStateA",
+				"outputFractionBusyB", "outputFractionWarningB", "outputStateB");
+	}
+
 	@Override
 	public void updateFromFlashlist(FlashlistType flashlistType, JsonNode flashlistRow) {
 
@@ -277,4 +289,22 @@ public class TTCPartition implements FlashlistUpdatable, Derivable {
 				+ percentWarning + ", percentBusy=" + percentBusy + ", feds=" + feds + "]";
 	}
 
+	/** id in serialized snapshots, assigned when structure is mapped */
+	private String objectId;
+
+	@JsonIgnore
+	@Override
+	public String getObjectId() {
+		if (objectId == null) {
+			objectId = ObjectIdHelper.objectId(this);
+		}
+		return objectId;
+	}
+
+	@JsonIgnore
+	@Override
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
 }
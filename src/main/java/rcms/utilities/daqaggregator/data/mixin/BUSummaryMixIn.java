@@ -12,7 +12,7 @@ import rcms.utilities.daqaggregator.data.DAQ;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.BUSummaryIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.BUSummaryIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 @JsonIgnoreProperties(ignoreUnknown = true)
 public interface BUSummaryMixIn {
 
@@ -16,7 +16,7 @@ import rcms.utilities.daqaggregator.data.SubFEDBuilder;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.FEDBuilderIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.FEDBuilderIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface FEDBuilderMixIn {
 
 	@JsonIdentityReference(alwaysAsId = true)
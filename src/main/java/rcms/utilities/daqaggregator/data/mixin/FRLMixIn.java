@@ -15,7 +15,7 @@ import rcms.utilities.daqaggregator.data.SubFEDBuilder;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.FRLIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.FRLIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface FRLMixIn {
 
 	@JsonIdentityReference(alwaysAsId = true)
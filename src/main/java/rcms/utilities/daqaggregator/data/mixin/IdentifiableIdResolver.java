@@ -0,0 +1,29 @@
+package rcms.utilities.daqaggregator.data.mixin;
+
+import com.fasterxml.jackson.annotation.ObjectIdGenerator.IdKey;
+import com.fasterxml.jackson.annotation.ObjectIdResolver;
+import com.fasterxml.jackson.annotation.SimpleObjectIdResolver;
+
+import rcms.utilities.daqaggregator.data.Identifiable;
+
+/**
+ * Resolves object ids like the default resolver and restores the id of each
+ * deserialized {@link Identifiable} object, so that deserialized snapshots
+ * are serialized again with the same ids without computing them.
+ */
+public class IdentifiableIdResolver extends SimpleObjectIdResolver {
+
+	@Override
+	public void bindItem(IdKey id, Object pojo) {
+		super.bindItem(id, pojo);
+		if (pojo instanceof Identifiable && id.key instanceof String) {
+			((Identifiable) pojo).setObjectId((String) id.key);
+		}
+	}
+
+	@Override
+	public ObjectIdResolver newForDeserialization(Object context) {
+		return new IdentifiableIdResolver();
+	}
+
+}
@@ -12,7 +12,7 @@ import rcms.utilities.daqaggregator.data.FEDBuilder;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.RUIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.RUIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface RUMixIn {
 
 	@JsonIdentityReference(alwaysAsId = true)
@@ -16,7 +16,7 @@ import rcms.utilities.daqaggregator.data.TTCPartition;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.SubFEDBuilderIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.SubFEDBuilderIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface SubFEDBuilderMixIn {
 
 	@JsonIdentityReference(alwaysAsId = true)
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonIdentityReference;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -12,7 +13,7 @@ import rcms.utilities.daqaggregator.data.DAQ;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.BUIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.BUIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface BUMixIn {
 
 	@JsonProperty("ref_daq")
@@ -13,6 +13,7 @@ import rcms.utilities.daqaggregator.data.FEDBuilderSummary;
 import rcms.utilities.daqaggregator.data.FMMApplication;
 import rcms.utilities.daqaggregator.data.FRLPc;
 import rcms.utilities.daqaggregator.data.SubSystem;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -20,7 +21,7 @@ import rcms.utilities.daqaggregator.data.SubSystem;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.DAQIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.DAQIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 @JsonPropertyOrder({ "sessionId", "runNumber", "lhcMachineMode", "lhcBeamMode", "daqState", "levelZeroState",
 		"dpsetPath", "lastUpdate", "buSummary", "fedBuilderSummary", "subSystems", "ttcPartitions", "bus", "rus",
 		"fmmApplications", "fmms", "fedBuilders", "subFEDBuilders", "frlPcs", "frls", "feds" })
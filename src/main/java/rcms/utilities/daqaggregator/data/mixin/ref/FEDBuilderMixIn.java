@@ -11,6 +11,7 @@ import rcms.utilities.daqaggregator.data.FED;
 import rcms.utilities.daqaggregator.data.FRL;
 import rcms.utilities.daqaggregator.data.RU;
 import rcms.utilities.daqaggregator.data.SubFEDBuilder;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -18,7 +19,7 @@ import rcms.utilities.daqaggregator.data.SubFEDBuilder;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.FEDBuilderIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.FEDBuilderIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface FEDBuilderMixIn {
 
 	@JsonProperty("ref_subFedbuilders")
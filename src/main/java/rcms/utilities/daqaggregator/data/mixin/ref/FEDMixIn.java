@@ -10,6 +10,7 @@ import rcms.utilities.daqaggregator.data.FED;
 import rcms.utilities.daqaggregator.data.FMM;
 import rcms.utilities.daqaggregator.data.FRL;
 import rcms.utilities.daqaggregator.data.TTCPartition;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -17,7 +18,7 @@ import rcms.utilities.daqaggregator.data.TTCPartition;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.FEDIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.FEDIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface FEDMixIn {
 
 	@JsonProperty("ref_frl")
@@ -8,6 +8,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 import rcms.utilities.daqaggregator.data.DAQ;
 import rcms.utilities.daqaggregator.data.FMM;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -15,7 +16,7 @@ import rcms.utilities.daqaggregator.data.FMM;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.FMMApplicationIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.FMMApplicationIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface FMMApplicationMixIn {
 
 	@JsonProperty("ref_daq")
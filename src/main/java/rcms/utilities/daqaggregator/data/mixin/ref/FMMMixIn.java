@@ -10,6 +10,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import rcms.utilities.daqaggregator.data.FED;
 import rcms.utilities.daqaggregator.data.FMMApplication;
 import rcms.utilities.daqaggregator.data.TTCPartition;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -17,7 +18,7 @@ import rcms.utilities.daqaggregator.data.TTCPartition;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.FMMIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.FMMIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface FMMMixIn {
 
 	@JsonProperty("ref_ttcPartition")
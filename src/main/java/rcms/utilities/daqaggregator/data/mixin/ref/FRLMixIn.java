@@ -9,6 +9,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import rcms.utilities.daqaggregator.data.FED;
 import rcms.utilities.daqaggregator.data.FRLPc;
 import rcms.utilities.daqaggregator.data.SubFEDBuilder;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -16,7 +17,7 @@ import rcms.utilities.daqaggregator.data.SubFEDBuilder;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.FRLIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.FRLIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface FRLMixIn {
 	
 	@JsonProperty("ref_subFedbuilder")
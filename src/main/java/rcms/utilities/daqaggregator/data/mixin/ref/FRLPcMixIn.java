@@ -7,6 +7,7 @@ import com.fasterxml.jackson.annotation.JsonIdentityReference;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import rcms.utilities.daqaggregator.data.FRL;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -14,7 +15,7 @@ import rcms.utilities.daqaggregator.data.FRL;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.FRLPcIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.FRLPcIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface FRLPcMixIn {
 
 	@JsonProperty("ref_frls")
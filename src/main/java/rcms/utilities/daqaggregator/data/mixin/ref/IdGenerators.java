@@ -19,10 +19,10 @@ import rcms.utilities.daqaggregator.data.RU;
 import rcms.utilities.daqaggregator.data.SubFEDBuilder;
 import rcms.utilities.daqaggregator.data.SubSystem;
 import rcms.utilities.daqaggregator.data.TTCPartition;
-import rcms.utilities.daqaggregator.mappers.helper.ContextHelper;
-
 /**
- * Contains id generators required for serialization.
+ * Contains id generators required for serialization. Ids are assigned to
+ * objects when the structure is mapped, generators only read them (see
+ * {@link rcms.utilities.daqaggregator.data.Identifiable}).
  * 
  * @author Philipp Maximilian Brummer (philipp.maximilian.brummer@cern.ch)
  * @author Michail Vougioukas (michail.vougioukas@cern.ch)
@@ -125,7 +125,6 @@ public class IdGenerators {
 	}
 	
 	 public final static class BUIdGenerator extends Base<String> {
-	        private static final String prefix = "BU_";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -162,23 +161,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof BU)) {
 	                return null;
 	            }
-	           
-	            BU bu = (BU) forPojo;
-
-	            String buHostname = bu.getHostname();
-	            buHostname = ContextHelper.removeSuffixFromHostname(buHostname, ".cms");
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length() + buHostname.length());
-	           
-	            sb.append(prefix);
-	            sb.append(buHostname);
-	           
-	            return sb.toString();
+
+	            return ((BU) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class RUIdGenerator extends Base<String> {
-	        private static final String prefix = "RU_";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -215,23 +203,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof RU)) {
 	                return null;
 	            }
-	           
-	            RU ru = (RU) forPojo;
-
-	            String ruHostname = ru.getHostname();
-	            ruHostname = ContextHelper.removeSuffixFromHostname(ruHostname, ".cms");
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length() + ruHostname.length());
-	           
-	            sb.append(prefix);
-	            sb.append(ruHostname);
-	           
-	            return sb.toString();
+
+	            return ((RU) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class FRLPcIdGenerator extends Base<String> {
-	        private static final String prefix = "FRLPC_";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -268,23 +245,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof FRLPc)) {
 	                return null;
 	            }
-	           
-	            FRLPc frlpc = (FRLPc) forPojo;
-
-	            String frlpcHostname = frlpc.getHostname();
-	            frlpcHostname = ContextHelper.removeSuffixFromHostname(frlpcHostname, ".cms");
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length() + frlpcHostname.length());
-	           
-	            sb.append(prefix);
-	            sb.append(frlpcHostname);
-	           
-	            return sb.toString();
+
+	            return ((FRLPc) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class FEDIdGenerator extends Base<String> {
-	        private static final String prefix = "FED_";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -321,22 +287,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof FED)) {
 	                return null;
 	            }
-	           
-	            FED fed = (FED) forPojo;
-
-	            String fedHwcfgDBid = String.valueOf(fed.getId());
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length() + fedHwcfgDBid.length());
-	           
-	            sb.append(prefix);
-	            sb.append(fedHwcfgDBid);
-	           
-	            return sb.toString();
+
+	            return ((FED) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class SubSystemIdGenerator extends Base<String> {
-	        private static final String prefix = "SS_";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -373,22 +329,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof SubSystem)) {
 	                return null;
 	            }
-	           
-	            SubSystem subsys = (SubSystem) forPojo;
-
-	            String subsysName = subsys.getName();
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length() + subsysName.length());
-	           
-	            sb.append(prefix);
-	            sb.append(subsysName);
-	           
-	            return sb.toString();
+
+	            return ((SubSystem) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class TTCPartitionIdGenerator extends Base<String> {
-	        private static final String prefix = "TTCP_";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -425,22 +371,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof TTCPartition)) {
 	                return null;
 	            }
-	           
-	            TTCPartition ttcp = (TTCPartition) forPojo;
-
-	            String ttcpName = ttcp.getName();
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length() + ttcpName.length());
-	           
-	            sb.append(prefix);
-	            sb.append(ttcpName);
-	           
-	            return sb.toString();
+
+	            return ((TTCPartition) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class FEDBuilderIdGenerator extends Base<String> {
-	        private static final String prefix = "FEDB_";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -477,22 +413,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof FEDBuilder)) {
 	                return null;
 	            }
-	           
-	            FEDBuilder fedbuilder = (FEDBuilder) forPojo;
-
-	            String fedbuilderName = fedbuilder.getName();
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length() + fedbuilderName.length());
-	           
-	            sb.append(prefix);
-	            sb.append(fedbuilderName);
-	           
-	            return sb.toString();
+
+	            return ((FEDBuilder) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class FMMApplicationIdGenerator extends Base<String> {
-	        private static final String prefix = "FMMA_";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -529,23 +455,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof FMMApplication)) {
 	                return null;
 	            }
-	           
-	            FMMApplication fmmapp = (FMMApplication) forPojo;
-
-	            String fmmappHostname = fmmapp.getHostname();
-	            fmmappHostname = ContextHelper.removeSuffixFromHostname(fmmappHostname, ".cms");
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length() + fmmappHostname.length());
-	           
-	            sb.append(prefix);
-	            sb.append(fmmappHostname);
-	           
-	            return sb.toString();
+
+	            return ((FMMApplication) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class FMMIdGenerator extends Base<String> {
-	        private static final String prefix = "FMM_";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -582,25 +497,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof FMM)) {
 	                return null;
 	            }
-	           
-	            
-	            FMM fmm = (FMM) forPojo;
-	            
-	            String fmmHwcfgDBId = fmm.getId();
-	            
-	            StringBuilder sb = new StringBuilder(prefix.length() + fmmHwcfgDBId.length());
-	           
-	            sb.append(prefix);
-	            sb.append(fmmHwcfgDBId);
-	            
-	            return sb.toString();
-	            
+
+	            return ((FMM) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class SubFEDBuilderIdGenerator extends Base<String> {
-	        private static final String prefix = "SFB_";
-	        private static final String delimiter = "$";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -637,30 +539,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof SubFEDBuilder)) {
 	                return null;
 	            }
-	           
-	            SubFEDBuilder sfb = (SubFEDBuilder) forPojo;
-
-	            String fedBuilderName = sfb.getFedBuilder().getName();
-	            String ttcpName = sfb.getTtcPartition().getName();
-				String frlpcHostname = sfb.getFrlPc() != null ? sfb.getFrlPc().getHostname() : "-";
-	            frlpcHostname = ContextHelper.removeSuffixFromHostname(frlpcHostname, ".cms");
-
-	            StringBuilder sb = new StringBuilder(prefix.length() + fedBuilderName.length() + delimiter.length() + ttcpName.length() + delimiter.length() + frlpcHostname.length());
-	           
-	            sb.append(prefix);
-	            sb.append(fedBuilderName);
-	            sb.append(delimiter);
-	            sb.append(ttcpName);
-	            sb.append(delimiter);
-	            sb.append(frlpcHostname);
-	           
-	            return sb.toString();
+
+	            return ((SubFEDBuilder) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class FRLIdGenerator extends Base<String> {
-	        private static final String prefix = "FRL_";
-	        private static final String delimiter = "$";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -697,28 +581,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof FRL)) {
 	                return null;
 	            }
-	           
-	            FRL frl = (FRL) forPojo;
-
-	            String frlGeoslot = String.valueOf(frl.getGeoSlot());
-	            
-	            String frlpcHostname = frl.getFrlPc().getHostname();
-	            frlpcHostname = ContextHelper.removeSuffixFromHostname(frlpcHostname, ".cms");
-	            
-	            StringBuilder sb = new StringBuilder(prefix.length() + frlGeoslot.length() + delimiter.length() + frlpcHostname.length());
-	           
-	            sb.append(prefix);
-	            sb.append(frlGeoslot);
-	            sb.append(delimiter);
-	            sb.append(frlpcHostname);
-	            
-	            
-	            return sb.toString();
+
+	            return ((FRL) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class DAQIdGenerator extends Base<String> {
-	        private static final String prefix = "DAQ";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -755,17 +623,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof DAQ)) {
 	                return null;
 	            }
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length());
-	           
-	            sb.append(prefix);
-	           
-	            return sb.toString();
+
+	            return ((DAQ) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class FEDBuilderSummaryIdGenerator extends Base<String> {
-	        private static final String prefix = "FEDBS";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -802,17 +665,12 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof FEDBuilderSummary)) {
 	                return null;
 	            }
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length());
-	           
-	            sb.append(prefix);
-	           
-	            return sb.toString();
+
+	            return ((FEDBuilderSummary) forPojo).getObjectId();
 	        }
 	    }
 	 
 	 public final static class BUSummaryIdGenerator extends Base<String> {
-	        private static final String prefix = "BUS";
 	       
 	        private static final long serialVersionUID = 1L;
 
@@ -849,12 +707,8 @@ public class IdGenerators {
 	            } else if (!(forPojo instanceof BUSummary)) {
 	                return null;
 	            }
-	           
-	            StringBuilder sb = new StringBuilder(prefix.length());
-	           
-	            sb.append(prefix);
-	           
-	            return sb.toString();
+
+	            return ((BUSummary) forPojo).getObjectId();
 	        }
 	    }
 }
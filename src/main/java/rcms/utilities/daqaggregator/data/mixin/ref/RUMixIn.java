@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonIdentityReference;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import rcms.utilities.daqaggregator.data.FEDBuilder;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -12,7 +13,7 @@ import rcms.utilities.daqaggregator.data.FEDBuilder;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.RUIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.RUIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface RUMixIn {
 
 	@JsonProperty("ref_fedBuilder")
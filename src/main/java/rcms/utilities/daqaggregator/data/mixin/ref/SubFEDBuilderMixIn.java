@@ -11,6 +11,7 @@ import rcms.utilities.daqaggregator.data.FEDBuilder;
 import rcms.utilities.daqaggregator.data.FRL;
 import rcms.utilities.daqaggregator.data.FRLPc;
 import rcms.utilities.daqaggregator.data.TTCPartition;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -18,7 +19,7 @@ import rcms.utilities.daqaggregator.data.TTCPartition;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.SubFEDBuilderIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.SubFEDBuilderIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface SubFEDBuilderMixIn {
 
 	@JsonProperty("ref_fedBuilder")
@@ -7,6 +7,7 @@ import com.fasterxml.jackson.annotation.JsonIdentityReference;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import rcms.utilities.daqaggregator.data.TTCPartition;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -14,7 +15,7 @@ import rcms.utilities.daqaggregator.data.TTCPartition;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.SubSystemIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.SubSystemIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface SubSystemMixIn {
 
 	@JsonProperty("ref_ttcPartitions")
@@ -9,6 +9,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import rcms.utilities.daqaggregator.data.FED;
 import rcms.utilities.daqaggregator.data.FMM;
 import rcms.utilities.daqaggregator.data.SubSystem;
+import rcms.utilities.daqaggregator.data.mixin.IdentifiableIdResolver;
 
 /**
  * Class configuring json serialization
@@ -16,7 +17,7 @@ import rcms.utilities.daqaggregator.data.SubSystem;
  * @author Maciej Gladki (maciej.szymon.gladki@cern.ch)
  *
  */
-@JsonIdentityInfo(generator = IdGenerators.TTCPartitionIdGenerator.class, property = "@id")
+@JsonIdentityInfo(generator = IdGenerators.TTCPartitionIdGenerator.class, property = "@id", resolver = IdentifiableIdResolver.class)
 public interface TTCPartitionMixIn {
 
 	@JsonProperty("ref_feds")
@@ -1,13 +1,16 @@
 package rcms.utilities.daqaggregator.datasource;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
@@ -16,61 +19,181 @@ public class Connector {
 
 	private static final Logger logger = Logger.getLogger(Connector.class);
 
+	/** Default connect and read timeout in ms */
+	public static final int DEFAULT_TIMEOUT_MS = 30000;
+
 	private final boolean suppressFailedRequests;
 
+	/** Connect and read timeout in ms, 0 for infinite */
+	private final int timeout;
+
+	/** Last retrieval failed on connect or read timeout */
+	private boolean timedOut;
+
+	/** Bytes received on the wire in last retrieval, compressed if server supports it */
+	private long wireBytes;
+
+	/** Bytes after decompression in last retrieval */
+	private long decodedBytes;
+
 	public Connector(boolean suppressFailedRequests) {
+		this(suppressFailedRequests, DEFAULT_TIMEOUT_MS);
+	}
+
+	/**
+	 * @param timeout
+	 *            connect and read timeout in ms, hung servers do not block the
+	 *            calling thread longer than that
+	 */
+	public Connector(boolean suppressFailedRequests, int timeout) {
 		this.suppressFailedRequests = suppressFailedRequests;
+		this.timeout = timeout;
 	}
 
 	/**
-	 * Retrieve, generic function
+	 * Reads body of successful response
+	 */
+	public interface ResponseReader {
+
+		void read(InputStream in) throws IOException;
+	}
+
+	/**
+	 * Retrieve, generic function. Compressed transfer is requested, gzip
+	 * response is decompressed while reading.
 	 */
 	public Pair<Integer, List<String>> retrieveLines(String urlString) throws IOException {
 
-		List<String> result = new ArrayList<>();
+		final List<String> result = new ArrayList<>();
+
+		int httpCode = retrieve(urlString, new ResponseReader() {
+			@Override
+			public void read(InputStream in) throws IOException {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					result.add(line);
+				}
+			}
+		});
+
+		logger.debug("Generic rows fetched: " + result.size() + " for request " + urlString);
+
+		return Pair.of(httpCode, result);
+	}
+
+	/**
+	 * Retrieve and pass the response body to given reader as a stream, so that
+	 * it can be parsed without buffering. Compressed transfer is requested,
+	 * gzip response is decompressed while reading.
+	 * 
+	 * @return http status code, -1 if connection failed
+	 */
+	public int retrieve(String urlString, ResponseReader responseReader) throws IOException {
+
 		URL url = new URL(urlString);
 
 		HttpURLConnection conn = null;
 		InputStream in = null;
-		InputStreamReader isr = null;
-		BufferedReader reader = null;
 		int httpCode = -1;
+		CountingInputStream wire = null;
+		CountingInputStream decoded = null;
+		timedOut = false;
 
 		try {
 			conn = (HttpURLConnection) url.openConnection();
+			conn.setConnectTimeout(timeout);
+			conn.setReadTimeout(timeout);
+			conn.setRequestProperty("Accept-Encoding", "gzip");
 			httpCode = conn.getResponseCode();
 
 			if (conn.getResponseCode() == 200) {
-				in = conn.getInputStream();
-				isr = new InputStreamReader(in);
-				reader = new BufferedReader(isr);
-
-				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-					result.add(line);
+				wire = new CountingInputStream(conn.getInputStream());
+				in = wire;
+				if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+					in = new GZIPInputStream(in);
 				}
+				decoded = new CountingInputStream(in);
+				in = decoded;
+
+				responseReader.read(in);
 			} else {
 				if (!suppressFailedRequests) {
 					logger.error("HTTP error " + conn.getResponseCode() + " in retrieving flashlist lines at: " + url);
 				}
 			}
 
+		} catch (SocketTimeoutException e) {
+			timedOut = true;
+			logger.warn("Request " + url + " timed out after " + timeout + "ms");
 		} catch (IOException e) {
 			System.out.println("\n\nError retrieving ctatalog from URL=" + url);
 			e.printStackTrace();
 			System.out.println("\n\nContinuing catalog retrieve...");
 		} finally {
-			if (reader != null)
-				reader.close();
-			if (isr != null)
-				isr.close();
 			if (in != null)
 				in.close();
 			if (conn != null)
 				conn.disconnect();
 		}
 
-		logger.debug("Generic rows fetched: " + result.size() + " for request " + urlString);
+		wireBytes = wire != null ? wire.count : 0;
+		decodedBytes = decoded != null ? decoded.count : 0;
 
-		return Pair.of(httpCode, result);
+		logger.debug("Request " + urlString + " finished with " + httpCode + ", " + wireBytes + " bytes on wire, "
+				+ decodedBytes + " bytes decoded");
+
+		return httpCode;
+	}
+
+	/**
+	 * @return true if last retrieval failed on connect or read timeout
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	public long getWireBytes() {
+		return wireBytes;
+	}
+
+	public long getDecodedBytes() {
+		return decodedBytes;
+	}
+
+	/**
+	 * Counts bytes read through the stream
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long count;
+
+		public CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int result = super.read();
+			if (result != -1) {
+				count++;
+			}
+			return result;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int result = super.read(b, off, len);
+			if (result != -1) {
+				count += result;
+			}
+			return result;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long result = super.skip(n);
+			count += result;
+			return result;
+		}
 	}
 }
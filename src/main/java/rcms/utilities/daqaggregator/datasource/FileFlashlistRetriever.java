@@ -1,14 +1,20 @@
 package rcms.utilities.daqaggregator.datasource;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
@@ -16,6 +22,7 @@ import org.apache.log4j.Logger;
 import rcms.utilities.daqaggregator.DAQException;
 import rcms.utilities.daqaggregator.DAQExceptionCode;
 import rcms.utilities.daqaggregator.persistence.FileSystemConnector;
+import rcms.utilities.daqaggregator.persistence.FlashlistSegment;
 import rcms.utilities.daqaggregator.persistence.PersistenceExplorer;
 import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
 import rcms.utilities.daqaggregator.persistence.StructureSerializer;
@@ -33,16 +40,85 @@ public class FileFlashlistRetriever implements FlashlistRetriever {
 	protected static final String EXCEPTION_NO_FLASHLISTS_AVAILABLE = "No (more) flashlists available";
 	protected static final String EXCEPTION_OTHER_PROBLEM = "Problem retrieving flashlists occurred";
 
-	private int flashlistSnapshotCount;
+	private static final long HOUR = 3600000;
+
+	/** Replay throughput is reported every given number of cycles */
+	private static final int REPORT_PERIOD = 100;
+
+	/**
+	 * Size of files of compressed formats is multiplied by this to estimate
+	 * memory of deserialized flashlists
+	 */
+	private static final int COMPRESSION_RATIO = 20;
+
+	/** Default tolerance of retrieval timestamps of flashlists of a cycle */
+	public static final long DEFAULT_TOLERANCE = 1000;
 
 	/**
-	 * Files with flashists explored to process
+	 * Files of flashlists by type of cycles merged so far, see
+	 * {@link FlashlistMerger}
 	 */
-	private Map<FlashlistType, List<File>> exploredFlashlists = new HashMap<>();
+	private List<Map<FlashlistType, File>> cycles = new ArrayList<>();
+
+	/** Merger of files of next cycles, null if all cycles are merged */
+	private FlashlistMerger merger;
+
+	private long tolerance = DEFAULT_TOLERANCE;
+
+	/** Flashlist read last and its file, by type */
+	private final Map<FlashlistType, Pair<File, Flashlist>> lastRead = new ConcurrentHashMap<>();
+
+	/**
+	 * Bundles of flashlists explored to process, null if flashlists are
+	 * persisted in separate files per type
+	 */
+	private List<FlashlistSegment.Record> exploredBundles;
+
+	/** Index of bundle read last */
+	private int bundleIndex = -1;
+
+	/** Flashlists of bundle read last */
+	private Map<FlashlistType, Flashlist> bundle;
 
 	/** Index of current flashlist to count */
 	private int i;
 
+	/** Number of cycles deserialized ahead, 0 if deserialized on demand */
+	private int readAhead;
+
+	/** Estimated memory of cycles deserialized ahead, in bytes */
+	private long readAheadBudget;
+
+	private ExecutorService readAheadPool;
+
+	/** Cycles being deserialized ahead, by index */
+	private final Map<Integer, Cycle> readAheadCycles = new HashMap<>();
+
+	/** Index of next cycle to deserialize ahead */
+	private int readAheadNext;
+
+	/** Estimated memory of cycles being deserialized ahead, in bytes */
+	private long readAheadSize;
+
+	private long replayStart;
+
+	private int replayed;
+
+	/**
+	 * Cycle deserialized ahead
+	 */
+	private static final class Cycle {
+
+		private final Future<Map<FlashlistType, Flashlist>> flashlists;
+
+		private final long size;
+
+		private Cycle(Future<Map<FlashlistType, Flashlist>> flashlists, long size) {
+			this.flashlists = flashlists;
+			this.size = size;
+		}
+	}
+
 	private final String persistenceDirectory;
 
 	/** Serializer */
@@ -59,53 +135,298 @@ public class FileFlashlistRetriever implements FlashlistRetriever {
 		this.persistenceExplorer = new PersistenceExplorer(new FileSystemConnector());
 	}
 
+	/**
+	 * Deserialize next cycles in parallel while current cycle is processed.
+	 * Cycles are returned in order.
+	 * 
+	 * @param cycles
+	 *            number of cycles deserialized ahead, 0 disables read ahead
+	 * @param threads
+	 *            number of threads deserializing cycles
+	 * @param memoryBudget
+	 *            estimated memory of cycles deserialized ahead in bytes, at
+	 *            least one cycle is deserialized ahead regardless
+	 */
+	public void setReadAhead(int cycles, int threads, long memoryBudget) {
+		if (readAheadPool != null) {
+			readAheadPool.shutdownNow();
+			readAheadPool = null;
+		}
+		discardReadAhead();
+		this.readAhead = cycles;
+		this.readAheadBudget = memoryBudget;
+		if (cycles > 0) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			readAheadPool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "flashlist-read-ahead-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
 	/**
 	 * Prepare flashists to process. Explore files in peristence dir.
 	 * 
 	 * @throws IOException
 	 */
 	public void prepare(Long startLimit) throws IOException {
-		Set<Integer> exploredFlashlistCount = new HashSet<>();
-		for (FlashlistType flashlistType : FlashlistType.values()) {
-
-			try {
-				Entry<Long, List<File>> explored = persistenceExplorer.explore(startLimit, Long.MAX_VALUE,
-						persistenceDirectory + flashlistType.name(), Integer.MAX_VALUE);
-				exploredFlashlists.put(flashlistType, explored.getValue());
-				logger.info("Explored " + explored.getValue().size() + " for flashlist " + flashlistType.name());
-
-				exploredFlashlistCount.add(explored.getValue().size());
-			} catch (FileNotFoundException e) {
-				logger.warn("Flashlist " + flashlistType + " unavailable: " + e.getMessage());
-			}
+		prepare(startLimit, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Prepare flashists retrieved between given timestamps to process. Files
+	 * of flashlist types are merged into cycles by retrieval timestamp while
+	 * cycles are retrieved.
+	 */
+	public void prepare(Long startLimit, Long endLimit) throws IOException {
+		if (new File(persistenceDirectory + FlashlistSegment.DIR).isDirectory()) {
+			prepareBundles(startLimit, endLimit);
+			return;
+		}
+
+		merger = new FlashlistMerger(persistenceExplorer, persistenceDirectory, startLimit, endLimit, tolerance);
+		if (merger.getAvailableTypes() == 0) {
+			throw new RuntimeException(EXCEPTION_OTHER_PROBLEM);
+		}
+	}
+
+	/**
+	 * Set maximum difference of retrieval timestamps of flashlists of a cycle
+	 * in ms, flashlists persisted per type are grouped into cycles with it
+	 */
+	public void setTolerance(long tolerance) {
+		this.tolerance = tolerance;
+	}
 
+	/**
+	 * @return true if there is cycle with given index, cycles are merged as
+	 *         needed
+	 */
+	private boolean hasCycle(int index) {
+		if (exploredBundles != null) {
+			return index < exploredBundles.size();
+		}
+		try {
+			while (cycles.size() <= index && merger != null) {
+				Map<FlashlistType, File> cycle = merger.next();
+				if (cycle != null) {
+					cycles.add(cycle);
+				} else {
+					logger.info("Merged " + cycles.size() + " cycles of flashlists, " + merger.getReused()
+							+ " flashlists reused from previous cycles");
+					merger = null;
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(EXCEPTION_OTHER_PROBLEM, e);
 		}
+		return index < cycles.size();
+	}
 
-		int flashlistCount = 0;
-		if (exploredFlashlistCount.size() > 1) {
-			logger.warn(
-					"Flashlist snapshot count is not equal, some of them will be ommited. Here is flashlist summaries: "
-							+ exploredFlashlistCount);
+	/**
+	 * Explore segments of bundles of flashlists, see {@link FlashlistSegment}
+	 */
+	private void prepareBundles(long startLimit, long endLimit) throws IOException {
+		/* segment holds bundles of one hour and is named by the first one */
+		long hourStart = startLimit - startLimit % HOUR;
+		Entry<Long, List<File>> explored = persistenceExplorer.explore(hourStart - 1, endLimit,
+				persistenceDirectory + FlashlistSegment.DIR, Integer.MAX_VALUE);
 
-			flashlistCount = Integer.MAX_VALUE;
-			for (int currCount : exploredFlashlistCount) {
-				if (flashlistCount > currCount)
-					flashlistCount = currCount;
+		exploredBundles = new ArrayList<>();
+		for (File segment : explored.getValue()) {
+			if (FlashlistSegment.getFormat(segment) == null) {
+				continue;
 			}
-		} else if (exploredFlashlistCount.size() == 1) {
-			logger.info("All flashlists has the same number of snapshots");
-			flashlistCount = exploredFlashlistCount.iterator().next();
+			for (FlashlistSegment.Record record : FlashlistSegment.index(segment)) {
+				if (record.getTimestamp() > startLimit && record.getTimestamp() < endLimit) {
+					exploredBundles.add(record);
+				}
+			}
+		}
+		logger.info("Explored " + exploredBundles.size() + " bundles of flashlists in " + explored.getValue().size()
+				+ " segments");
+	}
+
+	/**
+	 * @return number of prepared cycles, all cycles are merged
+	 */
+	public int getCycleCount() {
+		hasCycle(Integer.MAX_VALUE - 1);
+		return exploredBundles != null ? exploredBundles.size() : cycles.size();
+	}
+
+	/**
+	 * @return index of cycle to be retrieved next
+	 */
+	public int getCurrentCycle() {
+		return i;
+	}
+
+	/**
+	 * Retriever of prepared cycles from given index (inclusive) to given index
+	 * (exclusive). Explored files are shared, so that cycles are the same as
+	 * retrieved by this retriever.
+	 */
+	public FileFlashlistRetriever slice(int from, int to) {
+		int count = getCycleCount();
+		if (from < 0 || to > count || from > to) {
+			throw new IllegalArgumentException("Cannot slice cycles " + from + "-" + to + " of " + count);
+		}
+		FileFlashlistRetriever result = new FileFlashlistRetriever(persistenceDirectory, flashlistFormat);
+		if (exploredBundles != null) {
+			result.exploredBundles = exploredBundles.subList(from, to);
 		} else {
-			throw new RuntimeException(EXCEPTION_OTHER_PROBLEM);
+			result.cycles = cycles.subList(from, to);
 		}
-		logger.info("Explored " + flashlistCount + " sets of flashlists");
-		flashlistSnapshotCount = flashlistCount;
+		return result;
+	}
+
+	/**
+	 * Read bundle with given index, bundle read last is not read again
+	 */
+	private Map<FlashlistType, Flashlist> readBundle(int index) {
+		if (index == bundleIndex) {
+			return bundle;
+		}
+		bundle = readCycle(exploredBundles.get(index));
+		bundleIndex = index;
+		return bundle;
 	}
 
 	public void skip() {
+		Cycle cycle = readAheadCycles.remove(i);
+		if (cycle != null) {
+			cycle.flashlists.cancel(true);
+			readAheadSize -= cycle.size;
+		}
 		i++;
 	}
 
+	/**
+	 * Read all flashlists of bundle
+	 */
+	private Map<FlashlistType, Flashlist> readCycle(FlashlistSegment.Record record) {
+		Map<FlashlistType, Flashlist> result = new HashMap<>();
+		try {
+			for (Flashlist flashlist : structureSerialzier.deserializeFlashlistBundle(record)) {
+				result.put(flashlist.getFlashlistType(), flashlist);
+			}
+		} catch (IOException e) {
+			logger.error("Bundle incompatible: " + record, e);
+		}
+		return result;
+	}
+
+	/**
+	 * Read all flashlists of cycle of files by type
+	 */
+	private Map<FlashlistType, Flashlist> readCycle(Map<FlashlistType, File> cycle) {
+		Map<FlashlistType, Flashlist> result = new HashMap<>();
+		for (Entry<FlashlistType, File> file : cycle.entrySet()) {
+			result.put(file.getKey(), readFlashlist(file.getKey(), file.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * Read flashlist of given type, flashlist reused from previous cycle is
+	 * not read again
+	 */
+	private Flashlist readFlashlist(FlashlistType flashlistType, File file) {
+		Pair<File, Flashlist> last = lastRead.get(flashlistType);
+		if (last != null && last.getLeft().equals(file)) {
+			return last.getRight();
+		}
+		logger.trace("Deserializing flashlist " + flashlistType);
+		Flashlist flashlist = structureSerialzier.deserializeFlashlist(file, flashlistFormat);
+		if (flashlist != null) {
+			lastRead.put(flashlistType, Pair.of(file, flashlist));
+		}
+		logger.trace("Flashlist " + flashlistType + " successfully deserialized");
+		return flashlist;
+	}
+
+	/**
+	 * Estimate memory of deserialized cycle with given index
+	 */
+	private long estimateSize(int index) {
+		long size = 0;
+		if (exploredBundles != null) {
+			FlashlistSegment.Record record = exploredBundles.get(index);
+			size = record.getLength();
+			PersistenceFormat format = FlashlistSegment.getFormat(record.getFile());
+			return format != null && format.isCompressed() ? size * COMPRESSION_RATIO : size;
+		}
+		for (File file : cycles.get(index).values()) {
+			size += file.length();
+		}
+		return flashlistFormat.isCompressed() ? size * COMPRESSION_RATIO : size;
+	}
+
+	/**
+	 * Schedule deserialization of next cycles, as many as allowed by number of
+	 * cycles and memory budget
+	 */
+	private void scheduleReadAhead() {
+		readAheadNext = Math.max(readAheadNext, i);
+		while (readAheadNext < i + readAhead && hasCycle(readAheadNext)) {
+			long size = estimateSize(readAheadNext);
+			if (!readAheadCycles.isEmpty() && readAheadSize + size > readAheadBudget) {
+				break;
+			}
+			final FlashlistSegment.Record record = exploredBundles != null ? exploredBundles.get(readAheadNext) : null;
+			final Map<FlashlistType, File> files = record == null ? cycles.get(readAheadNext) : null;
+			Future<Map<FlashlistType, Flashlist>> flashlists = readAheadPool
+					.submit(new Callable<Map<FlashlistType, Flashlist>>() {
+						@Override
+						public Map<FlashlistType, Flashlist> call() {
+							return record != null ? readCycle(record) : readCycle(files);
+						}
+					});
+			readAheadCycles.put(readAheadNext, new Cycle(flashlists, size));
+			readAheadSize += size;
+			readAheadNext++;
+		}
+	}
+
+	/**
+	 * Wait for current cycle deserialized ahead
+	 */
+	private Map<FlashlistType, Flashlist> getReadAhead() {
+		scheduleReadAhead();
+		Cycle cycle = readAheadCycles.get(i);
+		try {
+			return cycle.flashlists.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(EXCEPTION_OTHER_PROBLEM, e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(EXCEPTION_OTHER_PROBLEM, e.getCause());
+		}
+	}
+
+	private void discardReadAhead() {
+		for (Cycle cycle : readAheadCycles.values()) {
+			cycle.flashlists.cancel(true);
+		}
+		readAheadCycles.clear();
+		readAheadSize = 0;
+		readAheadNext = i;
+	}
+
+	private void reportThroughput() {
+		replayed++;
+		if (replayed % REPORT_PERIOD == 0 || !hasCycle(i)) {
+			long time = System.currentTimeMillis() - replayStart;
+			logger.info(String.format("Replayed %d cycles in %d ms, %.1f cycles/s", i, time,
+					replayed * 1000.0 / Math.max(1, time)));
+		}
+	}
+
 	/**
 	 * Retrieve next batch of flashlists to process
 	 * 
@@ -118,19 +439,33 @@ public class FileFlashlistRetriever implements FlashlistRetriever {
 	@Override
 	public Map<FlashlistType, Flashlist> retrieveAllFlashlists(int sessionId) {
 
-		if (i >= flashlistSnapshotCount)
+		if (!hasCycle(i))
 			throw new RuntimeException(EXCEPTION_NO_FLASHLISTS_AVAILABLE);
 
+		if (replayed == 0) {
+			replayStart = System.currentTimeMillis();
+		}
+
 		HashMap<FlashlistType, Flashlist> result = new HashMap<>();
 
-		for (FlashlistType flashlistType : exploredFlashlists.keySet()) {
-			logger.trace("Deserializing flashlist " + flashlistType);
-			File flashistFile = exploredFlashlists.get(flashlistType).get(i);
-			Flashlist flashlist = structureSerialzier.deserializeFlashlist(flashistFile, flashlistFormat);
-			result.put(flashlistType, flashlist);
-			logger.trace("Flashlist " + flashlistType + " successfully deserialized");
+		if (readAhead > 0) {
+			result.putAll(getReadAhead());
+			readAheadSize -= readAheadCycles.remove(i).size;
+		} else if (exploredBundles != null) {
+			result.putAll(readBundle(i));
+		} else {
+			result.putAll(readCycle(cycles.get(i)));
 		}
 		i++;
+
+		if (readAhead > 0) {
+			if (hasCycle(i)) {
+				scheduleReadAhead();
+			} else {
+				readAheadPool.shutdown();
+			}
+		}
+		reportThroughput();
 		return result;
 	}
 
@@ -140,12 +475,25 @@ public class FileFlashlistRetriever implements FlashlistRetriever {
 	 */
 	@Override
 	public Pair<Flashlist, String> retrieveFlashlist(FlashlistType flashlistType) {
-		if (exploredFlashlists.get(flashlistType).size() <= i)
+		if (exploredBundles != null) {
+			if (exploredBundles.size() <= i)
+				throw new DAQException(DAQExceptionCode.NoMoreFlashlistSourceFiles,
+						"Cannot retrieve flashlist, all flashlist bundles has been processed");
+			long start = System.currentTimeMillis();
+			Flashlist flashlist = readAhead > 0 ? getReadAhead().get(flashlistType) : readBundle(i).get(flashlistType);
+			return Pair.of(flashlist, (System.currentTimeMillis() - start) + "ms");
+		}
+		if (!hasCycle(i))
 			throw new DAQException(DAQExceptionCode.NoMoreFlashlistSourceFiles,
 					"Cannot retrieve flashlist, all flashlist source files has been processed");
-		File flashistFile = exploredFlashlists.get(flashlistType).get(i);
+		if (readAhead > 0) {
+			long start = System.currentTimeMillis();
+			Flashlist flashlist = getReadAhead().get(flashlistType);
+			return Pair.of(flashlist, (System.currentTimeMillis() - start) + "ms");
+		}
+		File flashistFile = cycles.get(i).get(flashlistType);
 		long start = System.currentTimeMillis();
-		Flashlist flashlist = structureSerialzier.deserializeFlashlist(flashistFile, flashlistFormat);
+		Flashlist flashlist = flashistFile != null ? readFlashlist(flashlistType, flashistFile) : null;
 		long end = System.currentTimeMillis();
 		int time = (int) (end - start);
 		return Pair.of(flashlist, time+"ms");
@@ -2,24 +2,46 @@ package rcms.utilities.daqaggregator.datasource;
 
 import java.io.IOException;
 import java.util.Date;
-import java.util.List;
+import java.util.Set;
 
 import javax.xml.ws.http.HTTPException;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
 import rcms.utilities.daqaggregator.DAQAggregator;
 import rcms.utilities.daqaggregator.DAQException;
 import rcms.utilities.daqaggregator.DAQExceptionCode;
 
+@JsonPropertyOrder({ "flashlistType", "rowsNode", "rowsHash", "definitionNode", "retrievalDate", "address", "name", "unknownAtLAS" })
 public class Flashlist {
 
 	private FlashlistType flashlistType;
 
-	private JsonNode rowsNode;
+	/**
+	 * Rows of the flashlist, kept in columnar form. Json rows are materialized
+	 * on request.
+	 */
+	private FlashlistTable table;
+
+	/**
+	 * Rows node kept as is if it could not be converted to table (not an
+	 * array of objects)
+	 */
+	private JsonNode rawRowsNode;
+
+	/**
+	 * Hash of rows in content store if rows are persisted by reference, see
+	 * {@link rcms.utilities.daqaggregator.persistence.FlashlistContentStore}
+	 */
+	private String rowsHash;
 
 	private JsonNode definitionNode;
 
@@ -61,12 +83,30 @@ public class Flashlist {
 	}
 
 	public Flashlist(FlashlistType flashlistType, int sessionId, boolean suppressFailedRequests) {
+		this(flashlistType, flashlistType.getUrl(), sessionId, suppressFailedRequests);
+	}
+
+	/**
+	 * @param url
+	 *            LAS url to retrieve the flashlist from, one of
+	 *            {@link FlashlistType#getUrls()}
+	 */
+	public Flashlist(FlashlistType flashlistType, String url, int sessionId, boolean suppressFailedRequests) {
+		this(flashlistType, url, sessionId, suppressFailedRequests, Connector.DEFAULT_TIMEOUT_MS);
+	}
+
+	/**
+	 * @param timeout
+	 *            connect and read timeout of the request in ms
+	 */
+	public Flashlist(FlashlistType flashlistType, String url, int sessionId, boolean suppressFailedRequests,
+			int timeout) {
 		super();
-		this.connector = new Connector(suppressFailedRequests);
+		this.connector = new Connector(suppressFailedRequests, timeout);
 		this.flashlistType = flashlistType;
 		this.sessionId = sessionId;
 		this.name = "urn:xdaq-flashlist:" + flashlistType.getFlashlistName();
-		this.address = flashlistType.getUrl() + "/retrieveCollection?flash=" + name + "&fmt=json";
+		this.address = url + "/retrieveCollection?flash=" + name + "&fmt=json";
 
 		if (flashlistType.isSessionContext()) {
 			if (sessionId != 0) {
@@ -78,12 +118,94 @@ public class Flashlist {
 		}
 	}
 
+	/**
+	 * Rows as json array. Note that the rows are materialized from columnar
+	 * representation on each call, use {@link #getTable()} to access the data.
+	 * Serialization writes the table directly, see
+	 * {@link #getSerializedRows()}.
+	 */
+	@JsonIgnore
 	public JsonNode getRowsNode() {
-		return rowsNode;
+		if (table != null) {
+			return table.toRowsNode();
+		}
+		return rawRowsNode;
+	}
+
+	/**
+	 * Rows written in serialization, table is written from its columns
+	 * without materializing json rows
+	 */
+	@JsonProperty("rowsNode")
+	public Object getSerializedRows() {
+		return table != null ? table : rawRowsNode;
+	}
+
+	/**
+	 * Set rows returned by {@link #getSerializedRows()} of other flashlist,
+	 * rows are shared and must not be modified
+	 */
+	@JsonIgnore
+	public void setSerializedRows(Object rows) {
+		if (rows instanceof FlashlistTable) {
+			setTable((FlashlistTable) rows);
+		} else {
+			this.table = null;
+			this.rawRowsNode = (JsonNode) rows;
+		}
+	}
+
+	@JsonInclude(Include.NON_NULL)
+	public String getRowsHash() {
+		return rowsHash;
+	}
+
+	public void setRowsHash(String rowsHash) {
+		this.rowsHash = rowsHash;
+	}
+
+	/**
+	 * @return copy of this flashlist without rows, referencing rows by hash
+	 */
+	public Flashlist toRowsReference(String rowsHash) {
+		Flashlist reference = new Flashlist();
+		reference.flashlistType = flashlistType;
+		reference.definitionNode = definitionNode;
+		reference.sessionId = sessionId;
+		reference.retrievalDate = retrievalDate;
+		reference.address = address;
+		reference.name = name;
+		reference.unknownAtLAS = unknownAtLAS;
+		reference.rowsHash = rowsHash;
+		return reference;
 	}
 
+	@JsonProperty("rowsNode")
 	public void setRowsNode(JsonNode rowsNode) {
-		this.rowsNode = rowsNode;
+		if (FlashlistTable.isTabular(rowsNode)) {
+			this.table = FlashlistTable.fromRows(rowsNode);
+			this.rawRowsNode = null;
+		} else {
+			this.table = null;
+			this.rawRowsNode = rowsNode;
+		}
+	}
+
+	/**
+	 * @return rows in columnar form, empty table if flashlist has no rows
+	 */
+	@JsonIgnore
+	public FlashlistTable getTable() {
+		if (table == null) {
+			return FlashlistTable.fromRows(JsonNodeFactory.instance.arrayNode());
+		}
+		return table;
+	}
+
+	@JsonIgnore
+	public void setTable(FlashlistTable table) {
+		this.table = table;
+		this.rawRowsNode = null;
 	}
 
 	public JsonNode getDefinitionNode() {
@@ -102,13 +224,27 @@ public class Flashlist {
 	 * @throws IOException
 	 */
 	public int download(Date date) throws IOException {
+		return download(date, null);
+	}
+
+	/**
+	 * Initializes the flashlist keeping only given columns
+	 * 
+	 * @param date
+	 * @param columns
+	 *            columns to keep, null to keep all, see
+	 *            {@link FlashlistProjection}
+	 * @return request processing time
+	 * @throws IOException
+	 */
+	public int download(Date date, Set<String> columns) throws IOException {
 
 		/* Setting the retrieval date */
 		retrievalDate = date;
 		logger.debug("Reading flashlist from endpoint: " + address);
 
 		long startTime = System.currentTimeMillis();
-		download();
+		download(columns);
 		long stopTime = System.currentTimeMillis();
 
 		int timeResult = (int) (stopTime - startTime);
@@ -117,37 +253,46 @@ public class Flashlist {
 		 * Warning if there was no data retrieved (while the flashlist itself
 		 * was found at LAS)
 		 */
-		if ((!unknownAtLAS) && (definitionNode.size() == 0 || rowsNode.size() == 0))
-			logger.warn("Reading " + flashlistType + " finished in " + timeResult + "ms, fetched " + rowsNode.size()
+		if ((!unknownAtLAS) && (definitionNode.size() == 0 || getTable().size() == 0))
+			logger.warn("Reading " + flashlistType + " finished in " + timeResult + "ms, fetched " + getTable().size()
 					+ " rows and " + definitionNode.size() + " columns");
 
 		return timeResult;
 	}
 
 	/**
-	 * Downloads the data of flashlist
+	 * Downloads the data of flashlist. Response is parsed while it's
+	 * streamed, columns not needed are skipped.
 	 * 
 	 * @throws IOException
 	 * @throws HTTPException
 	 */
-	private void download() throws IOException, HTTPException {
-		Pair<Integer, List<String>> result = connector.retrieveLines(address);
-		// List<String> result = Connector.get().retrieveLines(address);
+	private void download(Set<String> columns) throws IOException, HTTPException {
+		FlashlistParser parser = new FlashlistParser(columns);
+		int httpCode = connector.retrieve(address, parser);
 
 		/* Codes that may come with a successful request (usually 200) */
-		if (result.getLeft() == 200) {
+		if (httpCode == 200) {
 
-			com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-			JsonNode rootNode = mapper.readValue(result.getRight().get(0), JsonNode.class);
+			if (!parser.isComplete()) {
+				throw new IOException("Incomplete response reading flashlist " + flashlistType + " from " + address);
+			}
+			if (parser.getDefinitionNode() == null) {
+				throw new DAQException(DAQExceptionCode.ProblemRetrievingFlashlists,
+						"No flashlist table in response from " + address);
+			}
 
-			definitionNode = rootNode.get("table").get("definition");
-			rowsNode = rootNode.get("table").get("rows");
+			definitionNode = parser.getDefinitionNode();
+			table = parser.getTable();
+			rawRowsNode = parser.getRawRowsNode();
+			logger.debug("Flashlist " + flashlistType + " parsed, " + parser.getSkippedValues()
+					+ " values of not needed columns skipped");
 
 			this.unknownAtLAS = false;
 
 		} else {
 			this.unknownAtLAS = true;
-			throw new DAQException(DAQExceptionCode.ProblemRetrievingFlashlists, "HTTP-" + result.getLeft());
+			throw new DAQException(DAQExceptionCode.ProblemRetrievingFlashlists, "HTTP-" + httpCode);
 		}
 	}
 
@@ -161,7 +306,7 @@ public class Flashlist {
 
 	@Override
 	public String toString() {
-		return "Flashlist [sessionId=" + sessionId + ", rowsNode=" + rowsNode + ", definitionNode=" + definitionNode
+		return "Flashlist [sessionId=" + sessionId + ", rowsNode=" + getRowsNode() + ", definitionNode=" + definitionNode
 				+ ", flashlistType=" + flashlistType + ", retrievalDate=" + retrievalDate + "]";
 	}
 
@@ -181,6 +326,31 @@ public class Flashlist {
 		this.name = name;
 	}
 
+	/**
+	 * @return bytes transferred on the wire in download, compressed if LAS
+	 *         supports it
+	 */
+	@JsonIgnore
+	public long getWireBytes() {
+		return connector.getWireBytes();
+	}
+
+	/**
+	 * @return bytes of flashlist after decompression in download
+	 */
+	@JsonIgnore
+	public long getDecodedBytes() {
+		return connector.getDecodedBytes();
+	}
+
+	/**
+	 * @return true if download failed on connect or read timeout
+	 */
+	@JsonIgnore
+	public boolean isTimedOut() {
+		return connector.isTimedOut();
+	}
+
 	public boolean isUnknownAtLAS() {
 		return unknownAtLAS;
 	}
@@ -0,0 +1,348 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Resolves flashlist to LAS urls mapping. The mapping resolved by
+ * {@link LiveAccessServiceExplorer} is persisted to a local cache file so that
+ * on restart it can be used immediately while LASes are revalidated in the
+ * background. Flashlists repeatedly failing at their url trigger the
+ * re-resolution as well.
+ */
+public class FlashlistCatalog {
+
+	private static final Logger logger = Logger.getLogger(FlashlistCatalog.class);
+
+	/** Number of consecutive failures of a flashlist triggering re-resolution */
+	protected static final int FAILURES_TO_RERESOLVE = 3;
+
+	/** Minimum time between two re-resolutions triggered by failures */
+	protected static final long RERESOLVE_MIN_PERIOD_MS = 60000;
+
+	private final List<String> lasUrls;
+
+	private final boolean staticCatalog;
+
+	/** Cache file, null if caching disabled */
+	private final File cacheFile;
+
+	private final ObjectMapper mapper;
+
+	private final ConcurrentHashMap<FlashlistType, AtomicInteger> consecutiveFailures;
+
+	private final AtomicBoolean resolving;
+
+	private final ExecutorService executor;
+
+	private final long reresolveMinPeriod;
+
+	private volatile long lastResolved;
+
+	public FlashlistCatalog(List<String> lasUrls, boolean staticCatalog, String cacheFile) {
+		this(lasUrls, staticCatalog, cacheFile, RERESOLVE_MIN_PERIOD_MS);
+	}
+
+	/**
+	 * @param reresolveMinPeriod
+	 *            minimum time in ms between two re-resolutions triggered by
+	 *            failures
+	 */
+	protected FlashlistCatalog(List<String> lasUrls, boolean staticCatalog, String cacheFile, long reresolveMinPeriod) {
+		this.reresolveMinPeriod = reresolveMinPeriod;
+		this.lasUrls = lasUrls;
+		this.staticCatalog = staticCatalog;
+		this.cacheFile = cacheFile != null && !cacheFile.trim().isEmpty() ? new File(cacheFile.trim()) : null;
+		this.mapper = new ObjectMapper();
+		this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		this.consecutiveFailures = new ConcurrentHashMap<>();
+		this.resolving = new AtomicBoolean(false);
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "flashlist-catalog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Resolve flashlist to LAS url mapping and set urls of all flashlists. If
+	 * valid cache is available it is applied immediately and LASes are
+	 * revalidated in the background, so that fresh urls always override the
+	 * cached ones. Otherwise LASes are explored synchronously.
+	 *
+	 * @return map of flashlist name to LAS urls hosting it, primary first
+	 */
+	public Map<String, List<String>> resolve() {
+		Map<String, List<String>> cached = readCache();
+		if (cached != null && coversRequiredFlashlists(cached)) {
+			logger.info("Using cached flashlist catalog from " + cacheFile + ", revalidating in background");
+			lastResolved = System.currentTimeMillis();
+			apply(cached);
+			resolveInBackground();
+			return cached;
+		}
+		Map<String, List<String>> explored = explore();
+		apply(explored);
+		return explored;
+	}
+
+	/**
+	 * Set urls of all flashlists, flashlists not found get no url
+	 */
+	protected void apply(Map<String, List<String>> flashlistToUrls) {
+		for (FlashlistType flashlistType : FlashlistType.values()) {
+			flashlistType.setUrls(flashlistToUrls.get(flashlistType.getFlashlistName()));
+		}
+	}
+
+	/**
+	 * Report that flashlist could not be retrieved from its current url
+	 */
+	public void reportFailure(FlashlistType flashlistType) {
+		int failures = getCounter(flashlistType).incrementAndGet();
+		if (failures >= FAILURES_TO_RERESOLVE
+				&& System.currentTimeMillis() - lastResolved >= reresolveMinPeriod) {
+			logger.warn("Flashlist " + flashlistType + " failed " + failures + " times in a row at "
+					+ flashlistType.getUrls() + ", re-resolving LAS urls");
+			resolveInBackground();
+		}
+	}
+
+	/**
+	 * Report that flashlist was successfully retrieved from its current url
+	 */
+	public void reportSuccess(FlashlistType flashlistType) {
+		getCounter(flashlistType).set(0);
+	}
+
+	/**
+	 * Explore LASes in background and update urls of flashlists. Only one
+	 * resolution runs at a time.
+	 */
+	public void resolveInBackground() {
+		if (!resolving.compareAndSet(false, true)) {
+			return;
+		}
+		executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					update(explore());
+				} catch (RuntimeException e) {
+					logger.warn("Problem revalidating flashlist catalog: " + e.getMessage());
+				} finally {
+					resolving.set(false);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Explore LASes synchronously. Result is stored in cache only if all LASes
+	 * answered, otherwise LASes which did not answer keep the flashlists they
+	 * were hosting so that alternatives are not dropped.
+	 */
+	protected Map<String, List<String>> explore() {
+		LiveAccessServiceExplorer explorer = new LiveAccessServiceExplorer(lasUrls, staticCatalog);
+		explorer.exploreLiveAccessServices();
+		lastResolved = System.currentTimeMillis();
+
+		Map<String, List<String>> result = new HashMap<>(explorer.getFlashlistToUrls());
+		if (explorer.isComplete()) {
+			if (!result.isEmpty()) {
+				writeCache(result);
+			}
+			return result;
+		}
+		Set<String> failedUrls = explorer.getFailedUrls();
+		logger.warn("LASes " + failedUrls + " not explored, keeping their previous flashlists, catalog not cached");
+		return merge(result, failedUrls);
+	}
+
+	/**
+	 * Merge partial exploration with current urls of flashlists. LAS is kept
+	 * for a flashlist if it was explored hosting it or if it could not be
+	 * explored and was hosting it before. Configured order of LASes is kept.
+	 */
+	protected Map<String, List<String>> merge(Map<String, List<String>> explored, Set<String> failedUrls) {
+		Map<String, List<String>> result = new HashMap<>(explored);
+		for (FlashlistType flashlistType : FlashlistType.values()) {
+			List<String> previous = flashlistType.getUrls();
+			if (previous == null || previous.isEmpty()) {
+				continue;
+			}
+			List<String> found = explored.get(flashlistType.getFlashlistName());
+			List<String> merged = new ArrayList<>();
+			for (String url : lasUrls) {
+				if ((found != null && found.contains(url)) || (failedUrls.contains(url) && previous.contains(url))) {
+					merged.add(url);
+				}
+			}
+			if (!merged.isEmpty()) {
+				result.put(flashlistType.getFlashlistName(), merged);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Update urls of flashlists with result of exploration. Flashlists not
+	 * found keep their previous url.
+	 */
+	protected void update(Map<String, List<String>> flashlistToUrls) {
+		for (FlashlistType flashlistType : FlashlistType.values()) {
+			List<String> urls = flashlistToUrls.get(flashlistType.getFlashlistName());
+			if (urls != null && !urls.equals(flashlistType.getUrls())) {
+				logger.info("Flashlist " + flashlistType + " moved from " + flashlistType.getUrls() + " to " + urls);
+				flashlistType.setUrls(urls);
+				getCounter(flashlistType).set(0);
+			}
+		}
+	}
+
+	protected boolean coversRequiredFlashlists(Map<String, List<String>> flashlistToUrl) {
+		for (FlashlistType flashlistType : FlashlistType.values()) {
+			if (!flashlistType.isOptional() && !flashlistToUrl.containsKey(flashlistType.getFlashlistName())) {
+				logger.info("Cached flashlist catalog does not contain " + flashlistType);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Read cache file
+	 *
+	 * @return cached mapping or null if there is no valid cache for currently
+	 *         configured LASes
+	 */
+	protected Map<String, List<String>> readCache() {
+		if (cacheFile == null || !cacheFile.exists()) {
+			return null;
+		}
+		try {
+			CatalogCache cache = mapper.readValue(cacheFile, CatalogCache.class);
+			if (!lasUrls.equals(cache.getLasUrls()) || staticCatalog != cache.isStaticCatalog()) {
+				logger.info("Flashlist catalog cache was built for different LASes, ignoring it");
+				return null;
+			}
+			return cache.getFlashlists();
+		} catch (IOException e) {
+			logger.warn("Could not read flashlist catalog cache " + cacheFile + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	protected void writeCache(Map<String, List<String>> flashlistToUrl) {
+		if (cacheFile == null) {
+			return;
+		}
+		CatalogCache cache = new CatalogCache();
+		cache.setLasUrls(lasUrls);
+		cache.setStaticCatalog(staticCatalog);
+		cache.setTimestamp(System.currentTimeMillis());
+		cache.setFlashlists(flashlistToUrl);
+
+		File tmpFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+		try {
+			if (cacheFile.getParentFile() != null) {
+				cacheFile.getParentFile().mkdirs();
+			}
+			mapper.writerWithDefaultPrettyPrinter().writeValue(tmpFile, cache);
+			if (!tmpFile.renameTo(cacheFile)) {
+				logger.warn("Problem renaming flashlist catalog cache file: " + tmpFile);
+			}
+		} catch (IOException e) {
+			logger.warn("Could not write flashlist catalog cache " + cacheFile + ": " + e.getMessage());
+		}
+	}
+
+	private AtomicInteger getCounter(FlashlistType flashlistType) {
+		AtomicInteger counter = consecutiveFailures.get(flashlistType);
+		if (counter == null) {
+			AtomicInteger previous = consecutiveFailures.putIfAbsent(flashlistType, new AtomicInteger());
+			counter = previous != null ? previous : consecutiveFailures.get(flashlistType);
+		}
+		return counter;
+	}
+
+	public boolean isResolving() {
+		return resolving.get();
+	}
+
+	/**
+	 * Persisted form of resolved catalog
+	 */
+	public static class CatalogCache {
+
+		private List<String> lasUrls;
+
+		private boolean staticCatalog;
+
+		private long timestamp;
+
+		private Map<String, List<String>> flashlists;
+
+		public List<String> getLasUrls() {
+			return lasUrls;
+		}
+
+		public void setLasUrls(List<String> lasUrls) {
+			this.lasUrls = lasUrls;
+		}
+
+		public boolean isStaticCatalog() {
+			return staticCatalog;
+		}
+
+		public void setStaticCatalog(boolean staticCatalog) {
+			this.staticCatalog = staticCatalog;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public void setTimestamp(long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+		public Map<String, List<String>> getFlashlists() {
+			return flashlists;
+		}
+
+		public void setFlashlists(Map<String, List<String>> flashlists) {
+			this.flashlists = flashlists;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (Entry<String, List<String>> entry : flashlists.entrySet()) {
+				sb.append(entry.getKey()).append("=").append(entry.getValue()).append(" ");
+			}
+			return sb.toString();
+		}
+	}
+
+}
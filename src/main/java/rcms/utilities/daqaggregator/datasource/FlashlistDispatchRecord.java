@@ -0,0 +1,78 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
+import rcms.utilities.daqaggregator.mappers.MappingReporter;
+
+/**
+ * Updates of objects made while dispatching single flashlist. If the same
+ * flashlist (same fingerprint) is retrieved in the next cycle, the recorded
+ * updates are replayed on the cleaned structure instead of matching the rows
+ * again.
+ */
+public class FlashlistDispatchRecord {
+
+	private final FlashlistType flashlistType;
+
+	/** Fingerprint of dispatched flashlist */
+	private final long fingerprint;
+
+	private final List<FlashlistUpdatable> targets;
+
+	private final List<JsonNode> rows;
+
+	private int missing;
+
+	private int total;
+
+	public FlashlistDispatchRecord(FlashlistType flashlistType, long fingerprint) {
+		this.flashlistType = flashlistType;
+		this.fingerprint = fingerprint;
+		this.targets = new ArrayList<>();
+		this.rows = new ArrayList<>();
+	}
+
+	/**
+	 * Record update of object from flashlist row
+	 */
+	public void recordUpdate(FlashlistUpdatable target, JsonNode row) {
+		targets.add(target);
+		rows.add(row);
+	}
+
+	/**
+	 * Record mapping report of matcher
+	 */
+	public void recordReport(int missing, int total) {
+		this.missing += missing;
+		this.total += total;
+	}
+
+	/**
+	 * Apply recorded updates in original order
+	 */
+	public void replay() {
+		for (int i = 0; i < targets.size(); i++) {
+			targets.get(i).updateFromFlashlist(flashlistType, rows.get(i));
+		}
+		MappingReporter.get().increaseMissing(flashlistType.name(), missing);
+		MappingReporter.get().increaseTotal(flashlistType.name(), total);
+	}
+
+	public FlashlistType getFlashlistType() {
+		return flashlistType;
+	}
+
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	public int size() {
+		return targets.size();
+	}
+
+}
@@ -3,6 +3,7 @@ package rcms.utilities.daqaggregator.datasource;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -14,10 +15,19 @@ import org.apache.log4j.Logger;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import rcms.utilities.daqaggregator.data.BU;
+import rcms.utilities.daqaggregator.data.DAQ;
 import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.data.FMM;
+import rcms.utilities.daqaggregator.data.FMMApplication;
 import rcms.utilities.daqaggregator.data.FMMType;
+import rcms.utilities.daqaggregator.data.FRL;
+import rcms.utilities.daqaggregator.data.FRLPc;
 import rcms.utilities.daqaggregator.data.GlobalTTSState;
 import rcms.utilities.daqaggregator.data.RU;
+import rcms.utilities.daqaggregator.data.SubSystem;
+import rcms.utilities.daqaggregator.data.TCDSGlobalInfo;
+import rcms.utilities.daqaggregator.data.TCDSTriggerRates;
 import rcms.utilities.daqaggregator.data.TTCPartition;
 import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
 import rcms.utilities.daqaggregator.mappers.MappingManager;
@@ -71,6 +81,43 @@ public class FlashlistDispatcher {
 
 	private static final Logger logger = Logger.getLogger(FlashlistDispatcher.class);
 
+	/**
+	 * Flashlists dispatched only by updating objects from their rows, without
+	 * depending on state other than the mapped structure. Their dispatch can
+	 * be recorded and replayed, see {@link FlashlistDispatchRecord}
+	 */
+	private static final Set<FlashlistType> replayable = EnumSet.of(FlashlistType.RU, FlashlistType.BU,
+			FlashlistType.FEROL_INPUT_STREAM, FlashlistType.FEROL_TCP_STREAM, FlashlistType.FMM_INPUT,
+			FlashlistType.FEROL_STATUS, FlashlistType.EVM, FlashlistType.JOB_CONTROL,
+			FlashlistType.LEVEL_ZERO_FM_SUBSYS, FlashlistType.LEVEL_ZERO_FM_DYNAMIC,
+			FlashlistType.FEROL_CONFIGURATION, FlashlistType.FMM_STATUS, FlashlistType.FEROL40_STREAM_CONFIGURATION,
+			FlashlistType.FEROL40_INPUT_STREAM, FlashlistType.FEROL40_STATUS, FlashlistType.FEROL40_CONFIGURATION,
+			FlashlistType.TCDS_PI_TTS_SUMMARY);
+
+	/** Record of updates made in dispatch, null if not recording */
+	private final FlashlistDispatchRecord record;
+
+	public FlashlistDispatcher() {
+		this(null);
+	}
+
+	/**
+	 * @param record
+	 *            record to collect updates made in dispatch, null if not
+	 *            recording
+	 */
+	public FlashlistDispatcher(FlashlistDispatchRecord record) {
+		this.record = record;
+	}
+
+	/**
+	 * @return true if dispatch of given flashlist type can be recorded and
+	 *         replayed
+	 */
+	public static boolean isReplayable(FlashlistType flashlistType) {
+		return replayable.contains(flashlistType);
+	}
+
 	/**
 	 * 
 	 * Dispatch rows of a flashlist to appropriate objects using 2 elements geo
@@ -94,7 +141,7 @@ public class FlashlistDispatcher {
 		logger.debug("Elements matched by geolocation: " + dispatchMap.size() + "/" + collection.size());
 
 		for (Entry<T, JsonNode> match : dispatchMap.entrySet()) {
-			match.getKey().updateFromFlashlist(flashlistType, match.getValue());
+			update(match.getKey(), flashlistType, match.getValue());
 		}
 
 		int failed = matcher.getFailded();
@@ -102,6 +149,19 @@ public class FlashlistDispatcher {
 
 		MappingReporter.get().increaseMissing(flashlistType.name(), failed);
 		MappingReporter.get().increaseTotal(flashlistType.name(), all);
+		if (record != null) {
+			record.recordReport(failed, all);
+		}
+	}
+
+	/**
+	 * Update object from flashlist row, update is recorded if recording
+	 */
+	private void update(FlashlistUpdatable target, FlashlistType flashlistType, JsonNode row) {
+		target.updateFromFlashlist(flashlistType, row);
+		if (record != null) {
+			record.recordUpdate(target, row);
+		}
 
 	}
 
@@ -162,13 +222,13 @@ public class FlashlistDispatcher {
 					new FRLGeoFinder(sessionId));
 			break;
 		case EVM:
-			if (flashlist.getRowsNode().isArray() && flashlist.getRowsNode().size() > 0) {
+			if (flashlist.getTable().size() > 0) {
 
-				for (JsonNode row : getRowsFilteredBySessionId(flashlist.getRowsNode(), flashlist.getFlashlistType(),
-						sessionId)) {
+				for (FlashlistRow row : getRowsFilteredBySessionId(flashlist, sessionId)) {
+					JsonNode rowNode = row.toJsonNode();
 					for (RU ru : mappingManager.getObjectMapper().rus.values()) {
 						if (ru.isEVM())
-							ru.updateFromFlashlist(flashlist.getFlashlistType(), row);
+							update(ru, flashlist.getFlashlistType(), rowNode);
 					}
 				}
 
@@ -180,11 +240,10 @@ public class FlashlistDispatcher {
 			break;
 		case LEVEL_ZERO_FM_STATIC:
 
-			for (JsonNode rowNode : getRowsFilteredBySessionId(flashlist.getRowsNode(), flashlist.getFlashlistType(),
-					sessionId)) {
-				if (rowNode.has(fedEnableMask) && !rowNode.get(fedEnableMask).isNull()) {
+			for (FlashlistRow rowNode : getRowsFilteredBySessionId(flashlist, sessionId)) {
+				if (rowNode.hasValue(fedEnableMask)) {
 
-					String listToDecode = rowNode.get(fedEnableMask).textValue();
+					String listToDecode = rowNode.getText(fedEnableMask);
 
 					// 1. decode the list & 2. decode the states
 					Map<Integer, Pair<Boolean, Boolean>> fedFrlAndFmmMasks = FEDEnableMaskParser
@@ -234,12 +293,12 @@ public class FlashlistDispatcher {
 			dispatchRowsUsingMatcher(flashlist, mappingManager.getObjectMapper().subSystems.values(),
 					new SubsystemMatcher(sessionId));
 
-			for (JsonNode rowNode : getRowsFilteredBySessionId(flashlist.getRowsNode(), flashlist.getFlashlistType(),
-					sessionId)) {
-				if (rowNode.get(subsystemKey) != null) {
-					String subsystemName = rowNode.get(subsystemKey).textValue();
+			for (FlashlistRow rowNode : getRowsFilteredBySessionId(flashlist, sessionId)) {
+				if (rowNode.has(subsystemKey)) {
+					String subsystemName = rowNode.getText(subsystemKey);
 					if (subsystemName.equals("DAQ")) {
-						mappingManager.getObjectMapper().daq.updateFromFlashlist(flashlist.getFlashlistType(), rowNode);
+						update(mappingManager.getObjectMapper().daq, flashlist.getFlashlistType(),
+								rowNode.toJsonNode());
 					}
 				} else {
 					logger.warn("Flashlist cell for: " + subsystemKey + " is empty");
@@ -403,10 +462,11 @@ public class FlashlistDispatcher {
 			if (tcds_serviceField == null || tcds_url == null) {
 				return;
 			}
-			for (JsonNode rowNode : flashlist.getRowsNode()) {
+			for (FlashlistRow row : flashlist.getTable()) {
 
 				// get flashlist row corresponding to service
-				if (rowNode.get("service").asText().equalsIgnoreCase(tcds_serviceField)) {
+				if (row.getText("service").equalsIgnoreCase(tcds_serviceField)) {
+					JsonNode rowNode = row.toJsonNode();
 					mappingManager.getObjectMapper().daq.getTcdsGlobalInfo()
 							.updateFromFlashlist(flashlist.getFlashlistType(), rowNode);
 					break;
@@ -419,10 +479,11 @@ public class FlashlistDispatcher {
 			if (tcds_serviceField == null || tcds_url == null) {
 				return;
 			}
-			for (JsonNode rowNode : flashlist.getRowsNode()) {
+			for (FlashlistRow row : flashlist.getTable()) {
 
 				// get flashlist row corresponding to service
-				if (rowNode.get("service").asText().equalsIgnoreCase(tcds_serviceField)) {
+				if (row.getText("service").equalsIgnoreCase(tcds_serviceField)) {
+					JsonNode rowNode = row.toJsonNode();
 					mappingManager.getObjectMapper().daq.getTcdsGlobalInfo()
 							.updateFromFlashlist(flashlist.getFlashlistType(), rowNode);
 					break;
@@ -435,10 +496,11 @@ public class FlashlistDispatcher {
 			if (tcds_serviceField == null || tcds_url == null) {
 				return;
 			}
-			for (JsonNode rowNode : flashlist.getRowsNode()) {
+			for (FlashlistRow row : flashlist.getTable()) {
 
 				// get flashlist row corresponding to service
-				if (rowNode.get("service").asText().equalsIgnoreCase(tcds_serviceField)) {
+				if (row.getText("service").equalsIgnoreCase(tcds_serviceField)) {
+					JsonNode rowNode = row.toJsonNode();
 					mappingManager.getObjectMapper().daq.getTcdsGlobalInfo()
 							.updateFromFlashlist(flashlist.getFlashlistType(), rowNode);
 					break;
@@ -451,10 +513,11 @@ public class FlashlistDispatcher {
 			if (tcds_serviceField == null || tcds_url == null) {
 				return;
 			}
-			for (JsonNode rowNode : flashlist.getRowsNode()) {
+			for (FlashlistRow row : flashlist.getTable()) {
 
 				// get flashlist row corresponding to service
-				if (rowNode.get("service").asText().equalsIgnoreCase(tcds_serviceField)) {
+				if (row.getText("service").equalsIgnoreCase(tcds_serviceField)) {
+					JsonNode rowNode = row.toJsonNode();
 					mappingManager.getObjectMapper().daq.getTcdsGlobalInfo()
 							.updateFromFlashlist(flashlist.getFlashlistType(), rowNode);
 					break;
@@ -467,10 +530,11 @@ public class FlashlistDispatcher {
 			if (tcds_serviceField == null || tcds_url == null) {
 				return;
 			}
-			for (JsonNode rowNode : flashlist.getRowsNode()) {
+			for (FlashlistRow row : flashlist.getTable()) {
 
 				// get flashlist row corresponding to service
-				if (rowNode.get("service").asText().equalsIgnoreCase(tcds_serviceField)) {
+				if (row.getText("service").equalsIgnoreCase(tcds_serviceField)) {
+					JsonNode rowNode = row.toJsonNode();
 					mappingManager.getObjectMapper().daq.getTcdsGlobalInfo().getTriggerRatesInstant()
 							.updateFromFlashlist(flashlist.getFlashlistType(), rowNode);
 					break;
@@ -483,10 +547,11 @@ public class FlashlistDispatcher {
 			if (tcds_serviceField == null || tcds_url == null) {
 				return;
 			}
-			for (JsonNode rowNode : flashlist.getRowsNode()) {
+			for (FlashlistRow row : flashlist.getTable()) {
 
 				// get flashlist row corresponding to service
-				if (rowNode.get("service").asText().equalsIgnoreCase(tcds_serviceField)) {
+				if (row.getText("service").equalsIgnoreCase(tcds_serviceField)) {
+					JsonNode rowNode = row.toJsonNode();
 					mappingManager.getObjectMapper().daq.getTcdsGlobalInfo()
 							.updateFromFlashlist(flashlist.getFlashlistType(), rowNode);
 					break;
@@ -519,27 +584,93 @@ public class FlashlistDispatcher {
 		}
 	}
 
+	/**
+	 * Declare flashlist columns read while dispatching, by matchers and by
+	 * updated objects. Note that matchers have to be declared the same way
+	 * they are used in {@link #dispatch(Flashlist, MappingManager)}
+	 * 
+	 * @param projection
+	 *            registry of columns to fill
+	 */
+	public static void declareColumns(FlashlistProjection projection) {
+
+		BU.declareFlashlistColumns(projection);
+		DAQ.declareFlashlistColumns(projection);
+		FED.declareFlashlistColumns(projection);
+		FMM.declareFlashlistColumns(projection);
+		FMMApplication.declareFlashlistColumns(projection);
+		FRL.declareFlashlistColumns(projection);
+		FRLPc.declareFlashlistColumns(projection);
+		RU.declareFlashlistColumns(projection);
+		SubSystem.declareFlashlistColumns(projection);
+		TCDSGlobalInfo.declareFlashlistColumns(projection);
+		TCDSTriggerRates.declareFlashlistColumns(projection);
+		TTCPartition.declareFlashlistColumns(projection);
+
+		declareMatcher(projection, FlashlistType.RU, new RuMatcher(0, "context"));
+		declareMatcher(projection, FlashlistType.RU, new FedInErrorMatcher(0));
+		declareMatcher(projection, FlashlistType.BU, new BuMatcher(0, "context"));
+		declareMatcher(projection, FlashlistType.FEROL_INPUT_STREAM,
+				new FedFromFerolInputStreamGeoFinder("streamNumber", 0));
+		declareMatcher(projection, FlashlistType.FEROL_TCP_STREAM,
+				new FedFromFerolInputStreamGeoFinder("streamNumber", 0));
+		declareMatcher(projection, FlashlistType.FMM_INPUT, new FedInFmmGeoFinder(0));
+		declareMatcher(projection, FlashlistType.FEROL_STATUS, new FRLGeoFinder(0));
+		declareMatcher(projection, FlashlistType.JOB_CONTROL, new FrlPcMatcher(0, "context", true));
+		declareMatcher(projection, FlashlistType.JOB_CONTROL, new FmmApplicationMatcher(0, "context", true));
+		declareMatcher(projection, FlashlistType.JOB_CONTROL, new RuMatcher(0, "context", true));
+		declareMatcher(projection, FlashlistType.JOB_CONTROL, new BuMatcher(0, "context", true));
+		declareMatcher(projection, FlashlistType.LEVEL_ZERO_FM_SUBSYS, new SubsystemMatcher(0));
+		declareMatcher(projection, FlashlistType.LEVEL_ZERO_FM_DYNAMIC, new DAQMatcher(0));
+		declareMatcher(projection, FlashlistType.FEROL_CONFIGURATION, new FrlPcMatcher(0, "context"));
+		declareMatcher(projection, FlashlistType.FEROL_CONFIGURATION, new FedInFrlGeoFinder("io", 0));
+		declareMatcher(projection, FlashlistType.FMM_STATUS, new FMMGeoMatcher(0));
+		declareMatcher(projection, FlashlistType.FMM_STATUS, new TTCPartitionGeoFinder(0));
+		declareMatcher(projection, FlashlistType.FEROL40_STREAM_CONFIGURATION, new FedInFrl40GeoFinder(0));
+		declareMatcher(projection, FlashlistType.FEROL40_INPUT_STREAM, new FedInFrl40GeoFinder(0));
+		declareMatcher(projection, FlashlistType.FEROL40_STATUS, new FRLGeoFinder(0));
+		declareMatcher(projection, FlashlistType.FEROL40_CONFIGURATION, new FrlPcMatcher(0, "context"));
+		declareMatcher(projection, FlashlistType.TCDS_PI_TTS_SUMMARY, new TcdsTtsPiMatcher());
+
+		/* columns read directly in dispatch */
+		projection.declare(FlashlistType.LEVEL_ZERO_FM_STATIC, fedEnableMask);
+		projection.declare(FlashlistType.LEVEL_ZERO_FM_SUBSYS, subsystemKey);
+		for (FlashlistType tcdsType : Arrays.asList(FlashlistType.TCDS_CPM_COUNTS, FlashlistType.TCDS_CPM_DEADTIMES,
+				FlashlistType.TCDS_CPM_DEADTIMES_1HZ, FlashlistType.TCDS_CPM_RATES, FlashlistType.TCDS_CPM_RATES_1HZ,
+				FlashlistType.TCDS_PM_ACTION_COUNTS)) {
+			projection.declare(tcdsType, "service");
+		}
+
+		/* all fields of flashlist definition are read, see TCDSFlashlistHelpers */
+		projection.declareAll(FlashlistType.TCDS_PM_TTS_CHANNEL);
+	}
+
+	private static void declareMatcher(FlashlistProjection projection, FlashlistType flashlistType,
+			Matcher<?> matcher) {
+		projection.declare(flashlistType, matcher.getFlashlistColumns());
+	}
+
 	/**
 	 * TODO: this method is coppied from SessionFilteringMatcher, refactor this
 	 * so that it's only in one place
 	 * 
-	 * @param rowsToFilter
-	 * @param flashlistType
+	 * @param flashlist
 	 * @param sessionId
 	 * @return
 	 */
-	protected List<JsonNode> getRowsFilteredBySessionId(JsonNode rowsToFilter, FlashlistType flashlistType,
-			int sessionId) {
-		List<JsonNode> result = new ArrayList<>();
+	protected List<FlashlistRow> getRowsFilteredBySessionId(Flashlist flashlist, int sessionId) {
+		FlashlistType flashlistType = flashlist.getFlashlistType();
+		FlashlistTable rowsToFilter = flashlist.getTable();
+		List<FlashlistRow> result = new ArrayList<>();
 		logger.debug("Before the sid filter: " + rowsToFilter.size());
 
-		for (JsonNode rowNode : rowsToFilter) {
+		for (FlashlistRow rowNode : rowsToFilter) {
 
 			if (flashlistType.isSessionContext()) {
 				if (flashlistType.getSessionIdColumnName() != null) {
 					if (rowNode.has(flashlistType.getSessionIdColumnName())) {
 						try {
-							int rowSessionContext = rowNode.get(flashlistType.getSessionIdColumnName()).asInt();
+							int rowSessionContext = rowNode.getInt(flashlistType.getSessionIdColumnName());
 							if (rowSessionContext == sessionId) {
 								result.add(rowNode);
 							} else {
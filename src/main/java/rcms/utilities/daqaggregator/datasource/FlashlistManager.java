@@ -1,6 +1,7 @@
 package rcms.utilities.daqaggregator.datasource;
 
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,8 +28,15 @@ public class FlashlistManager {
 
 	private static final Logger logger = Logger.getLogger(FlashlistManager.class);
 
+	/**
+	 * Updates recorded in last dispatch of each flashlist. Manager is created
+	 * with new structure, so records never outlive the objects they update.
+	 */
+	private final Map<FlashlistType, FlashlistDispatchRecord> records;
+
 	public FlashlistManager(MappingManager mappingManager) {
 		this.mappingManager = mappingManager;
+		this.records = new EnumMap<>(FlashlistType.class);
 	}
 
 	/**
@@ -42,18 +50,53 @@ public class FlashlistManager {
 		cleanStructure(); // first clean structure and set default values
 
 		Map<String, Long> mappingTimes = new HashMap<>(flashlists.size(), 1);
+		int unchanged = 0;
 
 		for (Flashlist flashlist : flashlists) {
 
-			FlashlistDispatcher dispatcher = new FlashlistDispatcher();
-
 			long dispatchStartTime = System.currentTimeMillis();
-			dispatcher.dispatch(flashlist, mappingManager);
+			if (replayIfUnchanged(flashlist)) {
+				unchanged++;
+			} else {
+				FlashlistDispatchRecord record = null;
+				if (!flashlist.isUnknownAtLAS() && FlashlistDispatcher.isReplayable(flashlist.getFlashlistType())) {
+					record = new FlashlistDispatchRecord(flashlist.getFlashlistType(),
+							flashlist.getTable().fingerprint());
+				}
+				FlashlistDispatcher dispatcher = new FlashlistDispatcher(record);
+				dispatcher.dispatch(flashlist, mappingManager);
+				if (record != null) {
+					records.put(flashlist.getFlashlistType(), record);
+				} else {
+					records.remove(flashlist.getFlashlistType());
+				}
+			}
 			mappingTimes.put(flashlist.getName(), System.currentTimeMillis() - dispatchStartTime);
 		}
 		long stopTime = System.currentTimeMillis();
 		int time = (int) (stopTime - startTime);
-		logger.info("Mapping all flashlists finished in " + time + "ms. Detailed times: " + mappingTimes);
+		logger.info("Mapping all flashlists finished in " + time + "ms, " + unchanged
+				+ " unchanged flashlists replayed. Detailed times: " + mappingTimes);
+	}
+
+	/**
+	 * Structure is cleaned in every cycle, objects updated by unchanged
+	 * flashlist get the same updates as in the last dispatch without matching
+	 * the rows again
+	 *
+	 * @return true if flashlist is unchanged and its last dispatch was
+	 *         replayed
+	 */
+	private boolean replayIfUnchanged(Flashlist flashlist) {
+		FlashlistDispatchRecord record = records.get(flashlist.getFlashlistType());
+		if (record == null || flashlist.isUnknownAtLAS()
+				|| record.getFingerprint() != flashlist.getTable().fingerprint()) {
+			return false;
+		}
+		logger.debug("Flashlist " + flashlist.getFlashlistType() + " unchanged, replaying " + record.size()
+				+ " updates");
+		record.replay();
+		return true;
 	}
 
 	private void cleanStructure() {
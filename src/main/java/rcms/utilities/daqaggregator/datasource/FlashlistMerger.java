@@ -0,0 +1,180 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.Logger;
+
+import rcms.utilities.daqaggregator.persistence.PersistenceExplorer;
+
+/**
+ * Merges files of flashlists persisted per type into cycles ordered by
+ * retrieval timestamp. Files of all types retrieved within tolerance window
+ * from the earliest one form a cycle, at most one file per type. Type without
+ * a file in the window keeps its previous file.
+ *
+ * Files are explored in chunks while merging, so that long ranges are not
+ * explored up front.
+ */
+class FlashlistMerger {
+
+	private static final Logger logger = Logger.getLogger(FlashlistMerger.class);
+
+	/** Number of files of a type explored at once */
+	private static final int CHUNK_SIZE = 500;
+
+	/**
+	 * Files of one flashlist type in order of retrieval timestamp
+	 */
+	private final class Stream {
+
+		private final FlashlistType type;
+
+		private final String dir;
+
+		private final Deque<File> files = new ArrayDeque<>();
+
+		/** Timestamp of last explored file */
+		private long explored;
+
+		private boolean exhausted;
+
+		private long timestamp;
+
+		private Stream(FlashlistType type, String dir, long startLimit) {
+			this.type = type;
+			this.dir = dir;
+			this.explored = startLimit;
+		}
+
+		/**
+		 * @return false if there are no more files
+		 */
+		private boolean advance() throws IOException {
+			if (files.isEmpty() && !exhausted) {
+				Pair<Long, List<File>> chunk = persistenceExplorer.explore(explored, endLimit, dir, CHUNK_SIZE);
+				files.addAll(chunk.getValue());
+				explored = chunk.getLeft();
+				exhausted = chunk.getValue().size() < CHUNK_SIZE;
+			}
+			if (files.isEmpty()) {
+				return false;
+			}
+			String name = files.peek().getName();
+			timestamp = Long.parseLong(name.substring(0, name.indexOf('.')));
+			return true;
+		}
+	}
+
+	private final PersistenceExplorer persistenceExplorer;
+
+	private final long endLimit;
+
+	private final long tolerance;
+
+	private final PriorityQueue<Stream> streams = new PriorityQueue<>(FlashlistType.values().length,
+			new Comparator<Stream>() {
+				@Override
+				public int compare(Stream o1, Stream o2) {
+					return Long.compare(o1.timestamp, o2.timestamp);
+				}
+			});
+
+	/** Files of last merged cycle */
+	private final Map<FlashlistType, File> previous = new EnumMap<>(FlashlistType.class);
+
+	private int reused;
+
+	/** Number of types with directory */
+	private int availableTypes;
+
+	/**
+	 * @param persistenceDirectory
+	 *            flashlist directory with directory per type
+	 * @param tolerance
+	 *            maximum difference of retrieval timestamps of files in a
+	 *            cycle in ms
+	 */
+	FlashlistMerger(PersistenceExplorer persistenceExplorer, String persistenceDirectory, long startLimit,
+			long endLimit, long tolerance) throws IOException {
+		this.persistenceExplorer = persistenceExplorer;
+		this.endLimit = endLimit;
+		this.tolerance = tolerance;
+		for (FlashlistType flashlistType : FlashlistType.values()) {
+			Stream stream = new Stream(flashlistType, persistenceDirectory + flashlistType.name(), startLimit);
+			try {
+				boolean hasFiles = stream.advance();
+				availableTypes++;
+				if (hasFiles) {
+					streams.add(stream);
+				} else {
+					logger.warn("No files of flashlist " + flashlistType);
+				}
+			} catch (FileNotFoundException e) {
+				logger.warn("Flashlist " + flashlistType + " unavailable: " + e.getMessage());
+			}
+		}
+		logger.info("Merging flashlists of " + streams.size() + " types");
+	}
+
+	/**
+	 * @return files of next cycle by type, null if there are no more files
+	 */
+	Map<FlashlistType, File> next() throws IOException {
+		if (streams.isEmpty()) {
+			return null;
+		}
+		long windowEnd = streams.peek().timestamp + tolerance;
+		Set<FlashlistType> merged = EnumSet.noneOf(FlashlistType.class);
+		List<Stream> nextWindow = new ArrayList<>();
+		while (!streams.isEmpty() && streams.peek().timestamp <= windowEnd) {
+			Stream stream = streams.poll();
+			if (merged.contains(stream.type)) {
+				/* second file of the type in the window belongs to next cycle */
+				nextWindow.add(stream);
+				continue;
+			}
+			previous.put(stream.type, stream.files.poll());
+			merged.add(stream.type);
+			if (stream.advance()) {
+				streams.add(stream);
+			}
+		}
+		streams.addAll(nextWindow);
+
+		if (merged.size() < previous.size()) {
+			Set<FlashlistType> missing = EnumSet.copyOf(previous.keySet());
+			missing.removeAll(merged);
+			reused += missing.size();
+			logger.debug("Previous flashlists reused in cycle ending " + windowEnd + " for " + missing);
+		}
+		return new EnumMap<>(previous);
+	}
+
+	/**
+	 * @return number of flashlist types with directory
+	 */
+	int getAvailableTypes() {
+		return availableTypes;
+	}
+
+	/**
+	 * @return number of flashlists reused from previous cycles
+	 */
+	int getReused() {
+		return reused;
+	}
+
+}
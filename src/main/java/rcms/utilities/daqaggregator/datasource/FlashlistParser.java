@@ -0,0 +1,149 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * Streaming parser of LAS flashlist response. Rows are read directly into
+ * {@link FlashlistTable}, columns not included in the projection are skipped
+ * without being materialized.
+ */
+public class FlashlistParser implements Connector.ResponseReader {
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	/** Columns to keep, null if all columns are kept */
+	private final Set<String> columns;
+
+	private JsonNode definitionNode;
+
+	private FlashlistTable table;
+
+	/** Rows kept as json if they are not an array of objects */
+	private JsonNode rawRowsNode;
+
+	private int skippedValues;
+
+	private boolean complete;
+
+	/**
+	 * @param columns
+	 *            columns to keep, null to keep all, see
+	 *            {@link FlashlistProjection#getColumns(FlashlistType)}
+	 */
+	public FlashlistParser(Set<String> columns) {
+		this.columns = columns;
+	}
+
+	@Override
+	public void read(InputStream in) throws IOException {
+		try (JsonParser parser = mapper.getFactory().createParser(in)) {
+			parse(parser);
+		}
+	}
+
+	public void parse(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new JsonParseException(parser, "Flashlist response is not a json object");
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			parser.nextToken();
+			if ("table".equals(name) && parser.getCurrentToken() == JsonToken.START_OBJECT) {
+				parseTable(parser);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		complete = true;
+	}
+
+	private void parseTable(JsonParser parser) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			parser.nextToken();
+			if ("definition".equals(name)) {
+				definitionNode = parser.readValueAsTree();
+			} else if ("rows".equals(name)) {
+				parseRows(parser);
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	private void parseRows(JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+			rawRowsNode = parser.readValueAsTree();
+			return;
+		}
+
+		FlashlistTable.Builder builder = new FlashlistTable.Builder();
+		ArrayNode raw = null;
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			if (raw == null && parser.getCurrentToken() == JsonToken.START_OBJECT) {
+				builder.nextRow();
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String column = parser.getCurrentName();
+					parser.nextToken();
+					if (columns == null || columns.contains(column)) {
+						builder.add(column, parser);
+					} else {
+						parser.skipChildren();
+						skippedValues++;
+					}
+				}
+			} else {
+				/* not a table, keep rows as they are */
+				if (raw == null) {
+					raw = builder.build().toRowsNode();
+				}
+				raw.add(parser.<JsonNode> readValueAsTree());
+			}
+		}
+
+		if (raw != null) {
+			rawRowsNode = raw;
+		} else {
+			table = builder.build();
+		}
+	}
+
+	public JsonNode getDefinitionNode() {
+		return definitionNode;
+	}
+
+	/**
+	 * @return parsed rows, null if rows are not an array of objects
+	 */
+	public FlashlistTable getTable() {
+		return table;
+	}
+
+	public JsonNode getRawRowsNode() {
+		return rawRowsNode;
+	}
+
+	/**
+	 * @return number of values skipped by projection
+	 */
+	public int getSkippedValues() {
+		return skippedValues;
+	}
+
+	/**
+	 * @return true if the whole response was parsed
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+}
@@ -0,0 +1,98 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of flashlist columns read by consumers of each
+ * {@link FlashlistType}. Columns are declared next to the code reading them
+ * (matchers, flashlist updatables, retrievers) and are used to skip unneeded
+ * columns while parsing downloaded flashlists.
+ *
+ * Flashlist types without any declared column have no consumer, only their
+ * session id column is kept. Consumers reading columns which cannot be
+ * enumerated (e.g. iterating over all fields of a row) declare the flashlist
+ * as fully read.
+ */
+public class FlashlistProjection {
+
+	private final Map<FlashlistType, Set<String>> columns;
+
+	private final Set<FlashlistType> fullyRead;
+
+	public FlashlistProjection() {
+		this.columns = new EnumMap<>(FlashlistType.class);
+		this.fullyRead = EnumSet.noneOf(FlashlistType.class);
+	}
+
+	/**
+	 * Projection with columns declared by all consumers of flashlists
+	 */
+	public static FlashlistProjection create() {
+		FlashlistProjection projection = new FlashlistProjection();
+		FlashlistDispatcher.declareColumns(projection);
+		SessionRetriever.declareColumns(projection);
+		TCDSFMInfoRetriever.declareColumns(projection);
+		return projection;
+	}
+
+	/**
+	 * Declare columns of flashlist read by consumer
+	 */
+	public FlashlistProjection declare(FlashlistType flashlistType, String... columns) {
+		return declare(flashlistType, Arrays.asList(columns));
+	}
+
+	public FlashlistProjection declare(FlashlistType flashlistType, Collection<String> columns) {
+		Set<String> declared = this.columns.get(flashlistType);
+		if (declared == null) {
+			declared = new HashSet<>();
+			this.columns.put(flashlistType, declared);
+		}
+		declared.addAll(columns);
+		return this;
+	}
+
+	/**
+	 * Declare that consumer reads all columns of flashlist
+	 */
+	public FlashlistProjection declareAll(FlashlistType flashlistType) {
+		fullyRead.add(flashlistType);
+		return this;
+	}
+
+	/**
+	 * @return columns to keep for given flashlist, including session id
+	 *         column, null if all columns are needed
+	 */
+	public Set<String> getColumns(FlashlistType flashlistType) {
+		if (fullyRead.contains(flashlistType)) {
+			return null;
+		}
+		Set<String> result = new HashSet<>();
+		if (columns.containsKey(flashlistType)) {
+			result.addAll(columns.get(flashlistType));
+		}
+		if (flashlistType.getSessionIdColumnName() != null) {
+			result.add(flashlistType.getSessionIdColumnName());
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (FlashlistType flashlistType : FlashlistType.values()) {
+			Set<String> kept = getColumns(flashlistType);
+			sb.append(flashlistType).append("=").append(kept == null ? "all" : kept.size()).append(" ");
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,115 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import rcms.utilities.daqaggregator.datasource.FlashlistTable.Column;
+
+/**
+ * Lightweight handle of a single row of {@link FlashlistTable}. Values are read
+ * directly from columns, conversions follow the semantics of Jackson
+ * {@link JsonNode} as* methods. Use {@link #toJsonNode()} to pass the row to
+ * code expecting json.
+ */
+public final class FlashlistRow {
+
+	private final FlashlistTable table;
+
+	private final int index;
+
+	protected FlashlistRow(FlashlistTable table, int index) {
+		this.table = table;
+		this.index = index;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return true if row has given column, even with null value
+	 */
+	public boolean has(String key) {
+		Column column = table.getColumn(key);
+		return column != null && column.has(index);
+	}
+
+	/**
+	 * @return true if row has given column with non-null value
+	 */
+	public boolean hasValue(String key) {
+		Column column = table.getColumn(key);
+		return column != null && column.has(index) && !column.isNull(index);
+	}
+
+	/**
+	 * @return value node, null if row has no such column
+	 */
+	public JsonNode get(String key) {
+		Column column = table.getColumn(key);
+		return column != null ? column.get(index) : null;
+	}
+
+	/**
+	 * @return text value as {@link JsonNode#asText()}, null if row has no such
+	 *         column
+	 */
+	public String getText(String key) {
+		Column column = table.getColumn(key);
+		return column != null && column.has(index) ? column.asText(index) : null;
+	}
+
+	/**
+	 * @return value as {@link JsonNode#asInt()}, 0 if row has no such column
+	 */
+	public int getInt(String key) {
+		Column column = table.getColumn(key);
+		return column != null && column.has(index) ? column.asInt(index) : 0;
+	}
+
+	/**
+	 * @return value as {@link JsonNode#asLong()}, 0 if row has no such column
+	 */
+	public long getLong(String key) {
+		Column column = table.getColumn(key);
+		return column != null && column.has(index) ? column.asLong(index) : 0;
+	}
+
+	/**
+	 * @return value as {@link JsonNode#asDouble()}, 0 if row has no such
+	 *         column
+	 */
+	public double getDouble(String key) {
+		Column column = table.getColumn(key);
+		return column != null && column.has(index) ? column.asDouble(index) : 0;
+	}
+
+	/**
+	 * @return value as {@link JsonNode#asBoolean()}, false if row has no such
+	 *         column
+	 */
+	public boolean getBoolean(String key) {
+		Column column = table.getColumn(key);
+		return column != null && column.has(index) && column.asBoolean(index);
+	}
+
+	/**
+	 * Materialize the row as json object
+	 */
+	public JsonNode toJsonNode() {
+		return table.toJsonNode(index);
+	}
+
+	/**
+	 * @return 64-bit fingerprint of row content, see
+	 *         {@link FlashlistTable#fingerprint()}
+	 */
+	public long fingerprint() {
+		return table.rowFingerprint(index);
+	}
+
+	@Override
+	public String toString() {
+		return toJsonNode().toString();
+	}
+
+}
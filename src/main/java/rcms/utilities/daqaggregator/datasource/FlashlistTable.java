@@ -0,0 +1,827 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.NumberInput;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * Columnar representation of flashlist rows. Each column is stored as a
+ * primitive array (integer, floating point and boolean columns) or as
+ * dictionary-encoded strings. Columns with nested or mixed values keep their
+ * json nodes.
+ *
+ * Rows are accessed with lightweight {@link FlashlistRow} handles. Json rows
+ * can be materialized with {@link #toRowsNode()} and
+ * {@link FlashlistRow#toJsonNode()}, they are equal to the rows the table was
+ * built from. Table is serialized directly from its columns.
+ */
+public class FlashlistTable implements Iterable<FlashlistRow>, JsonSerializable {
+
+	private final int size;
+
+	/** Columns by key, in order of first appearance in rows */
+	private final LinkedHashMap<String, Column> columns;
+
+	/** Hashes of column keys, in order of columns */
+	private final long[] keyHashes;
+
+	/** Fingerprint of the whole table, computed on first request */
+	private Long fingerprint;
+
+	private static final long HASH_OFFSET = 0xcbf29ce484222325L;
+
+	private static final long HASH_PRIME = 0x100000001b3L;
+
+	/** Hashed in place of value of rows with explicit null */
+	private static final long NULL_HASH = 0x9e3779b97f4a7c15L;
+
+	private FlashlistTable(int size, LinkedHashMap<String, Column> columns) {
+		this.size = size;
+		this.columns = columns;
+		this.keyHashes = new long[columns.size()];
+		int i = 0;
+		for (String key : columns.keySet()) {
+			keyHashes[i++] = hash(key);
+		}
+	}
+
+	/**
+	 * Build table from json array of rows
+	 */
+	public static FlashlistTable fromRows(JsonNode rowsNode) {
+		Builder builder = new Builder();
+		for (JsonNode row : rowsNode) {
+			builder.nextRow();
+			Iterator<Entry<String, JsonNode>> fields = row.fields();
+			while (fields.hasNext()) {
+				Entry<String, JsonNode> field = fields.next();
+				builder.add(field.getKey(), field.getValue());
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @return true if given node is an array of row objects and can be
+	 *         represented as table
+	 */
+	public static boolean isTabular(JsonNode rowsNode) {
+		if (rowsNode == null || !rowsNode.isArray()) {
+			return false;
+		}
+		for (JsonNode row : rowsNode) {
+			if (!row.isObject()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Materialize rows as json array
+	 */
+	public ArrayNode toRowsNode() {
+		ArrayNode rowsNode = JsonNodeFactory.instance.arrayNode();
+		for (int i = 0; i < size; i++) {
+			rowsNode.add(toJsonNode(i));
+		}
+		return rowsNode;
+	}
+
+	protected ObjectNode toJsonNode(int row) {
+		ObjectNode rowNode = JsonNodeFactory.instance.objectNode();
+		for (Entry<String, Column> column : columns.entrySet()) {
+			if (column.getValue().has(row)) {
+				rowNode.set(column.getKey(), column.getValue().get(row));
+			}
+		}
+		return rowNode;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 64-bit fingerprint of table content (keys, rows and values in order).
+	 * Tables with equal content have equal fingerprints, used to detect
+	 * flashlists not changed since last retrieval.
+	 */
+	public long fingerprint() {
+		if (fingerprint == null) {
+			long hash = mix(HASH_OFFSET, size);
+			for (int row = 0; row < size; row++) {
+				hash = mix(hash, rowFingerprint(row));
+			}
+			fingerprint = hash;
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * 64-bit fingerprint of single row content
+	 */
+	protected long rowFingerprint(int row) {
+		long hash = HASH_OFFSET;
+		int i = 0;
+		for (Column column : columns.values()) {
+			if (column.has(row)) {
+				hash = mix(hash, keyHashes[i]);
+				hash = mix(hash, column.isNull(row) ? NULL_HASH : column.hash(row));
+			}
+			i++;
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, long value) {
+		/* finalizer of MurmurHash3, spreads all bits of value */
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return (hash ^ value) * HASH_PRIME;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of string
+	 */
+	private static long hash(String value) {
+		long hash = HASH_OFFSET;
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * HASH_PRIME;
+		}
+		return hash;
+	}
+
+	public List<String> getKeys() {
+		return new ArrayList<>(columns.keySet());
+	}
+
+	public FlashlistRow getRow(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Row " + index + " of " + size);
+		}
+		return new FlashlistRow(this, index);
+	}
+
+	@Override
+	public Iterator<FlashlistRow> iterator() {
+		return new Iterator<FlashlistRow>() {
+
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public FlashlistRow next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				return new FlashlistRow(FlashlistTable.this, next++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	protected Column getColumn(String key) {
+		return columns.get(key);
+	}
+
+	/**
+	 * Builds the table row by row. Values are appended directly to typed
+	 * column arrays, either from parser tokens or from json nodes, so that no
+	 * intermediate json node is kept for primitive values.
+	 */
+	public static class Builder {
+
+		private int size = 0;
+
+		private final LinkedHashMap<String, ColumnBuilder> columns = new LinkedHashMap<>();
+
+		/**
+		 * Start next row
+		 */
+		public void nextRow() {
+			size++;
+		}
+
+		/**
+		 * Add value to the current row
+		 */
+		public void add(String key, JsonNode value) {
+			getColumnBuilder(key).add(size - 1, value);
+		}
+
+		/**
+		 * Add value at current token of the parser to the current row. Scalar
+		 * values are read from the token, structured values are read as tree.
+		 */
+		public void add(String key, JsonParser parser) throws IOException {
+			getColumnBuilder(key).add(size - 1, parser);
+		}
+
+		private ColumnBuilder getColumnBuilder(String key) {
+			ColumnBuilder column = columns.get(key);
+			if (column == null) {
+				column = new ColumnBuilder();
+				columns.put(key, column);
+			}
+			return column;
+		}
+
+		public FlashlistTable build() {
+			LinkedHashMap<String, Column> result = new LinkedHashMap<>();
+			for (Entry<String, ColumnBuilder> entry : columns.entrySet()) {
+				result.put(entry.getKey(), entry.getValue().build(size));
+			}
+			return new FlashlistTable(size, result);
+		}
+	}
+
+	private enum ColumnType {
+		LONG, DOUBLE, BOOLEAN, STRING, NODE;
+	}
+
+	/**
+	 * Builds single column in the most compact type able to reproduce its
+	 * values. Column starts typed by its first non-null value and falls back to
+	 * json nodes when a value of other type appears.
+	 *
+	 * Only values reproduced exactly are accepted in primitive columns: integer
+	 * numbers are reproduced as int or long nodes based on magnitude, as
+	 * Jackson parser does.
+	 */
+	private static class ColumnBuilder {
+
+		/** Type of column, null if there were only null values so far */
+		private ColumnType type;
+
+		private final BitSet present = new BitSet();
+
+		private final BitSet nulls = new BitSet();
+
+		private long[] longs;
+
+		private double[] doubles;
+
+		private BitSet booleans;
+
+		private int[] codes;
+
+		private Map<String, Integer> codeByValue;
+
+		private List<String> dictionary;
+
+		private JsonNode[] nodes;
+
+		public void add(int row, JsonParser parser) throws IOException {
+			switch (parser.getCurrentToken()) {
+			case VALUE_NULL:
+				addNull(row);
+				break;
+			case VALUE_NUMBER_INT:
+				if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+					addNode(row, parser.<JsonNode> readValueAsTree());
+				} else {
+					addLong(row, parser.getLongValue());
+				}
+				break;
+			case VALUE_NUMBER_FLOAT:
+				addDouble(row, parser.getDoubleValue());
+				break;
+			case VALUE_TRUE:
+			case VALUE_FALSE:
+				addBoolean(row, parser.getBooleanValue());
+				break;
+			case VALUE_STRING:
+				addString(row, parser.getText());
+				break;
+			default:
+				addNode(row, parser.<JsonNode> readValueAsTree());
+			}
+		}
+
+		public void add(int row, JsonNode value) {
+			if (value == null || value.isNull()) {
+				addNull(row);
+			} else if (value instanceof IntNode) {
+				addLong(row, value.longValue());
+			} else if (value instanceof LongNode && !value.canConvertToInt()) {
+				addLong(row, value.longValue());
+			} else if (value instanceof DoubleNode) {
+				addDouble(row, value.doubleValue());
+			} else if (value instanceof BooleanNode) {
+				addBoolean(row, value.booleanValue());
+			} else if (value instanceof TextNode) {
+				addString(row, value.textValue());
+			} else {
+				addNode(row, value);
+			}
+		}
+
+		private void addNull(int row) {
+			present.set(row);
+			nulls.set(row);
+		}
+
+		private void addLong(int row, long value) {
+			if (accept(ColumnType.LONG, row)) {
+				longs = ensureCapacity(longs, row);
+				longs[row] = value;
+			} else {
+				nodes[row] = toNode(value);
+			}
+		}
+
+		private void addDouble(int row, double value) {
+			if (accept(ColumnType.DOUBLE, row)) {
+				doubles = ensureCapacity(doubles, row);
+				doubles[row] = value;
+			} else {
+				nodes[row] = DoubleNode.valueOf(value);
+			}
+		}
+
+		private void addBoolean(int row, boolean value) {
+			if (accept(ColumnType.BOOLEAN, row)) {
+				booleans.set(row, value);
+			} else {
+				nodes[row] = BooleanNode.valueOf(value);
+			}
+		}
+
+		private void addString(int row, String value) {
+			if (accept(ColumnType.STRING, row)) {
+				Integer code = codeByValue.get(value);
+				if (code == null) {
+					code = dictionary.size();
+					value = StringPool.intern(value);
+					codeByValue.put(value, code);
+					dictionary.add(value);
+				}
+				codes = ensureCapacity(codes, row);
+				codes[row] = code;
+			} else {
+				nodes[row] = TextNode.valueOf(value);
+			}
+		}
+
+		private void addNode(int row, JsonNode value) {
+			accept(ColumnType.NODE, row);
+			nodes[row] = value;
+		}
+
+		/**
+		 * Mark row as present and check if value of given type can be stored
+		 * in typed column. If not, column is converted to json nodes.
+		 *
+		 * @return true if value is stored in typed column, false if it is
+		 *         stored as node
+		 */
+		private boolean accept(ColumnType valueType, int row) {
+			present.set(row);
+			if (type == null) {
+				type = valueType;
+				switch (valueType) {
+				case BOOLEAN:
+					booleans = new BitSet();
+					break;
+				case STRING:
+					codeByValue = new HashMap<>();
+					dictionary = new ArrayList<>();
+					break;
+				case NODE:
+					nodes = new JsonNode[16];
+					break;
+				default:
+					break;
+				}
+			} else if (type != valueType && type != ColumnType.NODE) {
+				convertToNodes();
+			}
+			if (type == ColumnType.NODE) {
+				nodes = ensureCapacity(nodes, row);
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Convert values stored so far to json nodes, column will keep nodes
+		 */
+		private void convertToNodes() {
+			Column typed = build(present.length());
+			JsonNode[] converted = new JsonNode[Math.max(16, present.length())];
+			for (int i = 0; i < present.length(); i++) {
+				if (typed.isValue(i)) {
+					converted[i] = typed.getNode(i);
+				}
+			}
+			type = ColumnType.NODE;
+			nodes = converted;
+			longs = null;
+			doubles = null;
+			booleans = null;
+			codes = null;
+			codeByValue = null;
+			dictionary = null;
+		}
+
+		public Column build(int size) {
+			BitSet missing = null;
+			if (present.cardinality() < size) {
+				missing = new BitSet(size);
+				missing.set(0, size);
+				missing.andNot(present);
+			}
+			BitSet nullRows = nulls.isEmpty() ? null : (BitSet) nulls.clone();
+
+			if (type == null) {
+				return new NodeColumn(missing, nullRows, new JsonNode[size]);
+			}
+			switch (type) {
+			case LONG:
+				return new LongColumn(missing, nullRows, Arrays.copyOf(longs, size));
+			case DOUBLE:
+				return new DoubleColumn(missing, nullRows, Arrays.copyOf(doubles, size));
+			case BOOLEAN:
+				return new BooleanColumn(missing, nullRows, (BitSet) booleans.clone());
+			case STRING:
+				return new StringColumn(missing, nullRows, Arrays.copyOf(codes, size),
+						dictionary.toArray(new String[dictionary.size()]));
+			default:
+				return new NodeColumn(missing, nullRows, Arrays.copyOf(nodes, size));
+			}
+		}
+
+		private static long[] ensureCapacity(long[] array, int row) {
+			if (array == null) {
+				return new long[Math.max(16, row + 1)];
+			}
+			return array.length > row ? array : Arrays.copyOf(array, Math.max(row + 1, array.length * 2));
+		}
+
+		private static double[] ensureCapacity(double[] array, int row) {
+			if (array == null) {
+				return new double[Math.max(16, row + 1)];
+			}
+			return array.length > row ? array : Arrays.copyOf(array, Math.max(row + 1, array.length * 2));
+		}
+
+		private static int[] ensureCapacity(int[] array, int row) {
+			if (array == null) {
+				return new int[Math.max(16, row + 1)];
+			}
+			return array.length > row ? array : Arrays.copyOf(array, Math.max(row + 1, array.length * 2));
+		}
+
+		private static JsonNode[] ensureCapacity(JsonNode[] array, int row) {
+			return array.length > row ? array : Arrays.copyOf(array, Math.max(row + 1, array.length * 2));
+		}
+	}
+
+	/**
+	 * Node reproducing integer value as Jackson parser does
+	 */
+	private static JsonNode toNode(long value) {
+		if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+			return IntNode.valueOf((int) value);
+		}
+		return LongNode.valueOf(value);
+	}
+
+	/**
+	 * Column of a table. Missing values (key not present in the row) and null
+	 * values are tracked separately.
+	 */
+	protected static abstract class Column {
+
+		/** Rows without this key, null if all rows have it */
+		private final BitSet missing;
+
+		/** Rows with explicit null value, null if there are none */
+		private final BitSet nulls;
+
+		protected Column(BitSet missing, BitSet nulls) {
+			this.missing = missing;
+			this.nulls = nulls;
+		}
+
+		public boolean has(int row) {
+			return missing == null || !missing.get(row);
+		}
+
+		public boolean isNull(int row) {
+			return nulls != null && nulls.get(row);
+		}
+
+		public JsonNode get(int row) {
+			if (!has(row)) {
+				return null;
+			}
+			if (isNull(row)) {
+				return NullNode.getInstance();
+			}
+			return getNode(row);
+		}
+
+		/** Value node of present non-null row */
+		protected abstract JsonNode getNode(int row);
+
+		/** Hash of value of present non-null row */
+		protected long hash(int row) {
+			return getNode(row).hashCode();
+		}
+
+		/** Write value of present non-null row */
+		protected void writeValue(int row, JsonGenerator gen, SerializerProvider provider) throws IOException {
+			getNode(row).serialize(gen, provider);
+		}
+
+		public String asText(int row) {
+			return get(row).asText();
+		}
+
+		public int asInt(int row) {
+			return get(row).asInt();
+		}
+
+		public long asLong(int row) {
+			return get(row).asLong();
+		}
+
+		public double asDouble(int row) {
+			return get(row).asDouble();
+		}
+
+		public boolean asBoolean(int row) {
+			return get(row).asBoolean();
+		}
+
+		protected boolean isValue(int row) {
+			return has(row) && !isNull(row);
+		}
+	}
+
+	private static class LongColumn extends Column {
+
+		private final long[] data;
+
+		public LongColumn(BitSet missing, BitSet nulls, long[] data) {
+			super(missing, nulls);
+			this.data = data;
+		}
+
+		@Override
+		protected JsonNode getNode(int row) {
+			return toNode(data[row]);
+		}
+
+		@Override
+		protected void writeValue(int row, JsonGenerator gen, SerializerProvider provider) throws IOException {
+			gen.writeNumber(data[row]);
+		}
+
+		@Override
+		protected long hash(int row) {
+			return data[row];
+		}
+
+		@Override
+		public int asInt(int row) {
+			return isValue(row) ? (int) data[row] : super.asInt(row);
+		}
+
+		@Override
+		public long asLong(int row) {
+			return isValue(row) ? data[row] : super.asLong(row);
+		}
+
+		@Override
+		public double asDouble(int row) {
+			return isValue(row) ? data[row] : super.asDouble(row);
+		}
+	}
+
+	private static class DoubleColumn extends Column {
+
+		private final double[] data;
+
+		public DoubleColumn(BitSet missing, BitSet nulls, double[] data) {
+			super(missing, nulls);
+			this.data = data;
+		}
+
+		@Override
+		protected JsonNode getNode(int row) {
+			return DoubleNode.valueOf(data[row]);
+		}
+
+		@Override
+		protected long hash(int row) {
+			return Double.doubleToLongBits(data[row]);
+		}
+
+		@Override
+		protected void writeValue(int row, JsonGenerator gen, SerializerProvider provider) throws IOException {
+			gen.writeNumber(data[row]);
+		}
+
+		@Override
+		public int asInt(int row) {
+			return isValue(row) ? (int) data[row] : super.asInt(row);
+		}
+
+		@Override
+		public long asLong(int row) {
+			return isValue(row) ? (long) data[row] : super.asLong(row);
+		}
+
+		@Override
+		public double asDouble(int row) {
+			return isValue(row) ? data[row] : super.asDouble(row);
+		}
+	}
+
+	private static class BooleanColumn extends Column {
+
+		private final BitSet data;
+
+		public BooleanColumn(BitSet missing, BitSet nulls, BitSet data) {
+			super(missing, nulls);
+			this.data = data;
+		}
+
+		@Override
+		protected JsonNode getNode(int row) {
+			return BooleanNode.valueOf(data.get(row));
+		}
+
+		@Override
+		protected void writeValue(int row, JsonGenerator gen, SerializerProvider provider) throws IOException {
+			gen.writeBoolean(data.get(row));
+		}
+
+		@Override
+		protected long hash(int row) {
+			return data.get(row) ? 1231 : 1237;
+		}
+
+		@Override
+		public boolean asBoolean(int row) {
+			return isValue(row) ? data.get(row) : super.asBoolean(row);
+		}
+	}
+
+	/**
+	 * Dictionary-encoded string column. Flashlists repeat the same strings
+	 * (states, service names, empty messages) in many rows.
+	 */
+	private static class StringColumn extends Column {
+
+		private final int[] codes;
+
+		private final String[] dictionary;
+
+		/** Hashes of dictionary entries, computed on first request */
+		private long[] hashes;
+
+		public StringColumn(BitSet missing, BitSet nulls, int[] codes, String[] dictionary) {
+			super(missing, nulls);
+			this.codes = codes;
+			this.dictionary = dictionary;
+		}
+
+		@Override
+		protected JsonNode getNode(int row) {
+			return TextNode.valueOf(dictionary[codes[row]]);
+		}
+
+		@Override
+		protected void writeValue(int row, JsonGenerator gen, SerializerProvider provider) throws IOException {
+			gen.writeString(dictionary[codes[row]]);
+		}
+
+		@Override
+		protected long hash(int row) {
+			if (hashes == null) {
+				long[] hashes = new long[dictionary.length];
+				for (int i = 0; i < dictionary.length; i++) {
+					hashes[i] = FlashlistTable.hash(dictionary[i]);
+				}
+				this.hashes = hashes;
+			}
+			return hashes[codes[row]];
+		}
+
+		@Override
+		public String asText(int row) {
+			return isValue(row) ? dictionary[codes[row]] : super.asText(row);
+		}
+
+		@Override
+		public int asInt(int row) {
+			return isValue(row) ? NumberInput.parseAsInt(dictionary[codes[row]], 0) : super.asInt(row);
+		}
+
+		@Override
+		public long asLong(int row) {
+			return isValue(row) ? NumberInput.parseAsLong(dictionary[codes[row]], 0) : super.asLong(row);
+		}
+
+		@Override
+		public double asDouble(int row) {
+			return isValue(row) ? NumberInput.parseAsDouble(dictionary[codes[row]], 0) : super.asDouble(row);
+		}
+	}
+
+	/**
+	 * Column keeping json nodes, used for nested and mixed values
+	 */
+	private static class NodeColumn extends Column {
+
+		private final JsonNode[] data;
+
+		public NodeColumn(BitSet missing, BitSet nulls, JsonNode[] data) {
+			super(missing, nulls);
+			this.data = data;
+		}
+
+		@Override
+		protected JsonNode getNode(int row) {
+			return data[row];
+		}
+	}
+
+	/**
+	 * Write rows as json array directly from columns, without materializing
+	 * json rows
+	 */
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider provider) throws IOException {
+		gen.writeStartArray();
+		for (int row = 0; row < size; row++) {
+			gen.writeStartObject();
+			for (Entry<String, Column> column : columns.entrySet()) {
+				Column value = column.getValue();
+				if (value.has(row)) {
+					gen.writeFieldName(column.getKey());
+					if (value.isNull(row)) {
+						gen.writeNull();
+					} else {
+						value.writeValue(row, gen, provider);
+					}
+				}
+			}
+			gen.writeEndObject();
+		}
+		gen.writeEndArray();
+	}
+
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer)
+			throws IOException {
+		serialize(gen, provider);
+	}
+
+	@Override
+	public String toString() {
+		return "FlashlistTable [size=" + size + ", columns=" + Collections.unmodifiableSet(columns.keySet()) + "]";
+	}
+
+}
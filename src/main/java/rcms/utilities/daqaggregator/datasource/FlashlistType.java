@@ -1,5 +1,9 @@
 package rcms.utilities.daqaggregator.datasource;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Definition of flashlist set that will be downloaded and mapped in each
  * iteration of DAQAggregator.
@@ -74,7 +78,14 @@ public enum FlashlistType {
 	 * This field is autodiscovered since the configuration of LAS may change
 	 * (flashlist may be hosted by differed LAS)
 	 */
-	private String url;
+	private volatile String url;
+
+	/**
+	 * All LAS urls hosting this flashlist, in order of configuration. First
+	 * one is the same as {@link #url}, others are used for failover and
+	 * hedged requests.
+	 */
+	private volatile List<String> urls;
 
 	/**
 	 * Is the flashlist optional. If it's optional DAQAggregator will produce
@@ -88,6 +99,23 @@ public enum FlashlistType {
 
 	public void setUrl(String url) {
 		this.url = url;
+		this.urls = url != null ? Collections.singletonList(url) : null;
+	}
+
+	public List<String> getUrls() {
+		if (urls == null) {
+			return Collections.emptyList();
+		}
+		return urls;
+	}
+
+	public void setUrls(List<String> urls) {
+		if (urls == null || urls.isEmpty()) {
+			setUrl(null);
+		} else {
+			this.urls = Collections.unmodifiableList(new ArrayList<>(urls));
+			this.url = urls.get(0);
+		}
 	}
 
 	private FlashlistType(String name, String sessionIdColumnName) {
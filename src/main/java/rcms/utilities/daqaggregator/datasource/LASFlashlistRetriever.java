@@ -1,15 +1,25 @@
 package rcms.utilities.daqaggregator.datasource;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
@@ -25,6 +35,13 @@ import rcms.utilities.daqaggregator.DAQExceptionCode;
  */
 public class LASFlashlistRetriever implements FlashlistRetriever {
 
+	/**
+	 * Maximum number of concurrent hedged and failover requests. Requests
+	 * over the limit wait in queue, hung requests are bounded by request
+	 * timeout of the policy.
+	 */
+	private static final int HEDGE_THREADS = 20;
+
 	/**
 	 * Executor for flashlist retrieval process. Note that flashlists are
 	 * downloaded in parallel.
@@ -33,13 +50,62 @@ public class LASFlashlistRetriever implements FlashlistRetriever {
 	
 	private final boolean suppressFailedRequests;
 
+	/**
+	 * Catalog notified about flashlist retrieval results, may be null
+	 */
+	private final FlashlistCatalog flashlistCatalog;
+
+	/**
+	 * Decides which of redundant LASes are requested
+	 */
+	private final LASRetrievalPolicy policy;
+
+	/**
+	 * Executor for hedged and failover requests to alternative LASes
+	 */
+	private final ExecutorService hedgeExecutor;
+
+	/**
+	 * Columns kept while parsing flashlists, null if full rows are kept
+	 */
+	private final FlashlistProjection projection;
+
 	public LASFlashlistRetriever(boolean suppressFailedRequests) {
+		this(suppressFailedRequests, null, new LASRetrievalPolicy());
+	}
+
+	public LASFlashlistRetriever(boolean suppressFailedRequests, FlashlistCatalog flashlistCatalog,
+			LASRetrievalPolicy policy) {
+		this(suppressFailedRequests, flashlistCatalog, policy, null);
+	}
+
+	public LASFlashlistRetriever(boolean suppressFailedRequests, FlashlistCatalog flashlistCatalog,
+			LASRetrievalPolicy policy, FlashlistProjection projection) {
 		this.executor = Executors.newFixedThreadPool(10);
+		this.hedgeExecutor = createHedgeExecutor();
 		this.suppressFailedRequests = suppressFailedRequests;
+		this.flashlistCatalog = flashlistCatalog;
+		this.policy = policy;
+		this.projection = projection;
 	}
 
 	private static final Logger logger = Logger.getLogger(LASFlashlistRetriever.class);
 
+	private static ExecutorService createHedgeExecutor() {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		ThreadPoolExecutor hedgeExecutor = new ThreadPoolExecutor(HEDGE_THREADS, HEDGE_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "las-hedge-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		hedgeExecutor.allowCoreThreadTimeOut(true);
+		return hedgeExecutor;
+	}
+
 	@Override
 	public Map<FlashlistType, Flashlist> retrieveAllFlashlists(final int sessionId) {
 		logger.debug("Downloading flashlists ...");
@@ -78,6 +144,7 @@ public class LASFlashlistRetriever implements FlashlistRetriever {
 							logger.debug("Flashlist definition:" + result.getLeft().getDefinitionNode());
 
 						} catch (IOException e) {
+							/* failure already reported to catalog */
 							logger.error("Error reading flashlist " + flashlistType);
 							e.printStackTrace();
 						}
@@ -99,7 +166,14 @@ public class LASFlashlistRetriever implements FlashlistRetriever {
 
 		long stopTime = System.currentTimeMillis();
 		int time = (int) (stopTime - startTime);
-		logger.info("Reading all flashlists finished in " + time + "ms, flashlist specific results: " + statuses);
+		long wireBytes = 0;
+		long decodedBytes = 0;
+		for (Flashlist flashlist : flashlists.values()) {
+			wireBytes += flashlist.getWireBytes();
+			decodedBytes += flashlist.getDecodedBytes();
+		}
+		logger.info("Reading all flashlists finished in " + time + "ms, " + formatSize(wireBytes) + " on wire, "
+				+ formatSize(decodedBytes) + " decoded, flashlist specific results (wire/decoded): " + statuses);
 		return flashlists;
 	}
 
@@ -117,30 +191,180 @@ public class LASFlashlistRetriever implements FlashlistRetriever {
 
 	private Pair<Flashlist, String> downloadNonSessionContextFlashlist(FlashlistType flashlistType, Date retrievalDate)
 			throws IOException {
+		return download(flashlistType, retrievalDate, 0);
+	}
+
+	private Pair<Flashlist, String> downloadSessionContextFlashlist(FlashlistType flashlistType, Date retrievalDate,
+			int sessionId) throws IOException {
+		return download(flashlistType, retrievalDate, sessionId);
+	}
+
+	/**
+	 * Download flashlist from the LASes hosting it. The healthiest LAS is
+	 * requested first. If it fails the next one is requested (failover), if it
+	 * does not respond within its latency percentile the next one is requested
+	 * in parallel (hedging) and the first successful response is used.
+	 */
+	private Pair<Flashlist, String> download(FlashlistType flashlistType, Date retrievalDate, int sessionId)
+			throws IOException {
+
+		List<String> candidates = policy.order(flashlistType.getUrls());
+
+		if (candidates.size() == 1) {
+			Attempt attempt = new Attempt(flashlistType, candidates.get(0), retrievalDate, sessionId).call();
+			return finish(flashlistType, attempt, false);
+		}
+
+		CompletionService<Attempt> completionService = new ExecutorCompletionService<>(hedgeExecutor);
+		List<Future<Attempt>> running = new ArrayList<>();
+		int next = 0;
+		int pending = 0;
+		boolean hedged = false;
+		Attempt lastFailed = null;
 
-		Flashlist flashlistSnapshot = new Flashlist(flashlistType, suppressFailedRequests);
 		try {
-			int time = flashlistSnapshot.download(retrievalDate);
-			logger.debug("Flashlist " + flashlistType + " downloaded in " + time + "ms, without sessionId.");
-			return Pair.of(flashlistSnapshot, "HTTP-200 in " + time + "ms");
-		} catch (DAQException e) {
-			return Pair.of(flashlistSnapshot, e.getMessage());
+			running.add(completionService
+					.submit(new Attempt(flashlistType, candidates.get(next++), retrievalDate, sessionId)));
+			pending++;
+
+			while (pending > 0) {
+				Future<Attempt> done;
+				if (next < candidates.size()) {
+					done = completionService.poll(policy.getHedgeDelay(candidates.get(next - 1)),
+							TimeUnit.MILLISECONDS);
+					if (done == null) {
+						logger.debug("Flashlist " + flashlistType + " slow at " + candidates.get(next - 1)
+								+ ", sending hedged request to " + candidates.get(next));
+						running.add(completionService
+								.submit(new Attempt(flashlistType, candidates.get(next++), retrievalDate, sessionId)));
+						pending++;
+						hedged = true;
+						continue;
+					}
+				} else {
+					done = completionService.take();
+				}
+				pending--;
+
+				Attempt attempt = done.get();
+				if (attempt.isSuccessful()) {
+					return finish(flashlistType, attempt, hedged);
+				}
+
+				lastFailed = attempt;
+				if (next < candidates.size()) {
+					logger.debug("Flashlist " + flashlistType + " failed at " + attempt.url + ", failing over to "
+							+ candidates.get(next));
+					running.add(completionService
+							.submit(new Attempt(flashlistType, candidates.get(next++), retrievalDate, sessionId)));
+					pending++;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while downloading flashlist " + flashlistType, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Problem downloading flashlist " + flashlistType, e.getCause());
+		} finally {
+			for (Future<Attempt> future : running) {
+				future.cancel(true);
+			}
 		}
 
+		return finish(flashlistType, lastFailed, hedged);
 	}
 
-	private Pair<Flashlist, String> downloadSessionContextFlashlist(FlashlistType flashlistType, Date retrievalDate,
-			int sessionId) throws IOException {
+	private Pair<Flashlist, String> finish(FlashlistType flashlistType, Attempt attempt, boolean hedged)
+			throws IOException {
+		if (attempt.isSuccessful()) {
+			reportSuccess(flashlistType);
+			String status = "HTTP-200 in " + attempt.time + "ms, " + formatSize(attempt.flashlist.getWireBytes()) + "/"
+					+ formatSize(attempt.flashlist.getDecodedBytes());
+			if (hedged || !attempt.url.equals(flashlistType.getUrl())) {
+				status += " from " + attempt.url;
+			}
+			return Pair.of(attempt.flashlist, status);
+		}
+		reportFailure(flashlistType);
+		if (attempt.ioException != null) {
+			throw attempt.ioException;
+		}
+		return Pair.of(attempt.flashlist, attempt.message);
+	}
 
-		Flashlist flashlistSnapshot = new Flashlist(flashlistType, sessionId, suppressFailedRequests);
-		try {
-			int time = flashlistSnapshot.download(retrievalDate);
-			logger.debug("Flashlist " + flashlistType + " downloaded in " + time + "ms, with sessionId: " + sessionId);
-			return Pair.of(flashlistSnapshot, "HTTP-200 in " + time + "ms");
-		} catch (DAQException e) {
-			return Pair.of(flashlistSnapshot, e.getMessage());
+	/**
+	 * Single request of flashlist to single LAS. Results are recorded in
+	 * retrieval policy.
+	 */
+	private class Attempt implements Callable<Attempt> {
+
+		private final String url;
+
+		private final Flashlist flashlist;
+
+		private final Date retrievalDate;
+
+		private int time;
+
+		private String message;
+
+		private IOException ioException;
+
+		public Attempt(FlashlistType flashlistType, String url, Date retrievalDate, int sessionId) {
+			this.url = url;
+			this.retrievalDate = retrievalDate;
+			this.flashlist = new Flashlist(flashlistType, url, sessionId, suppressFailedRequests,
+					policy.getRequestTimeout());
+		}
+
+		@Override
+		public Attempt call() {
+			try {
+				time = flashlist.download(retrievalDate,
+						projection != null ? projection.getColumns(flashlist.getFlashlistType()) : null);
+				policy.recordSuccess(url, time);
+				logger.debug("Flashlist " + flashlist.getFlashlistType() + " downloaded in " + time + "ms from "
+						+ flashlist.getAddress());
+			} catch (DAQException e) {
+				recordFailure();
+				message = e.getMessage();
+			} catch (IOException e) {
+				recordFailure();
+				message = e.getMessage();
+				ioException = e;
+			}
+			return this;
+		}
+
+		/**
+		 * Attempts cancelled because other LAS responded first are not
+		 * counted as failures, unless they have timed out
+		 */
+		private void recordFailure() {
+			if (flashlist.isTimedOut() || !Thread.currentThread().isInterrupted()) {
+				policy.recordFailure(url);
+			}
 		}
 
+		public boolean isSuccessful() {
+			return message == null;
+		}
+	}
+
+	private static String formatSize(long bytes) {
+		return bytes < 1024 ? bytes + "B" : (bytes / 1024) + "kB";
+	}
+
+	private void reportSuccess(FlashlistType flashlistType) {
+		if (flashlistCatalog != null) {
+			flashlistCatalog.reportSuccess(flashlistType);
+		}
+	}
+
+	private void reportFailure(FlashlistType flashlistType) {
+		if (flashlistCatalog != null) {
+			flashlistCatalog.reportFailure(flashlistType);
+		}
 	}
 
 }
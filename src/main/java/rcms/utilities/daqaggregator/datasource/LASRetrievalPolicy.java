@@ -0,0 +1,247 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Retrieval policy for flashlists hosted by redundant LAS instances. Keeps
+ * health of each LAS (success rate, latency history) and decides the order in
+ * which LASes are tried, when a hedged request should be sent to the next LAS
+ * and which LASes are temporarily excluded by circuit breaker.
+ */
+public class LASRetrievalPolicy {
+
+	private static final Logger logger = Logger.getLogger(LASRetrievalPolicy.class);
+
+	public static final int DEFAULT_HEDGE_PERCENTILE = 95;
+
+	public static final int DEFAULT_FAILURES_TO_OPEN = 3;
+
+	public static final long DEFAULT_OPEN_PERIOD_MS = 30000;
+
+	/** Hedge delay used until enough latency samples are collected */
+	public static final long DEFAULT_HEDGE_DELAY_MS = 2000;
+
+	/**
+	 * Connect and read timeout of single request, hung LASes are counted as
+	 * failed after this time
+	 */
+	public static final int DEFAULT_REQUEST_TIMEOUT_MS = 10000;
+
+	/** Lower bound of hedge delay, avoids doubling every request */
+	protected static final long MIN_HEDGE_DELAY_MS = 20;
+
+	/** Number of latency samples needed to compute percentile */
+	protected static final int MIN_SAMPLES = 10;
+
+	/** Number of most recent latency samples kept per LAS */
+	protected static final int SAMPLES = 64;
+
+	/** Weight of the newest observation in success rate and latency averages */
+	private static final double ALPHA = 0.2;
+
+	private final int hedgePercentile;
+
+	private final int failuresToOpen;
+
+	private final long openPeriod;
+
+	private final long defaultHedgeDelay;
+
+	private final int requestTimeout;
+
+	private final Map<String, HostHealth> hosts;
+
+	public LASRetrievalPolicy() {
+		this(DEFAULT_HEDGE_PERCENTILE, DEFAULT_FAILURES_TO_OPEN, DEFAULT_OPEN_PERIOD_MS, DEFAULT_HEDGE_DELAY_MS);
+	}
+
+	public LASRetrievalPolicy(int hedgePercentile, int failuresToOpen, long openPeriod, long defaultHedgeDelay) {
+		this(hedgePercentile, failuresToOpen, openPeriod, defaultHedgeDelay, DEFAULT_REQUEST_TIMEOUT_MS);
+	}
+
+	/**
+	 * @param hedgePercentile
+	 *            latency percentile of LAS after which hedged request is sent
+	 * @param failuresToOpen
+	 *            consecutive failures after which LAS is excluded
+	 * @param openPeriod
+	 *            time in ms for which LAS is excluded before it's tried again
+	 * @param defaultHedgeDelay
+	 *            hedge delay in ms used until latency percentile is known
+	 * @param requestTimeout
+	 *            connect and read timeout in ms of single request
+	 */
+	public LASRetrievalPolicy(int hedgePercentile, int failuresToOpen, long openPeriod, long defaultHedgeDelay,
+			int requestTimeout) {
+		this.hedgePercentile = hedgePercentile;
+		this.failuresToOpen = failuresToOpen;
+		this.openPeriod = openPeriod;
+		this.defaultHedgeDelay = defaultHedgeDelay;
+		this.requestTimeout = requestTimeout;
+		this.hosts = new HashMap<>();
+	}
+
+	/**
+	 * Order LAS urls for next request. LASes with open circuit are skipped,
+	 * remaining are sorted by health score, ties keep configured order. If
+	 * circuits of all LASes are open, the one closest to be retried is
+	 * returned.
+	 *
+	 * @param urls
+	 *            LAS urls hosting the flashlist, in configured order
+	 * @return urls to try, in order
+	 */
+	public synchronized List<String> order(List<String> urls) {
+		if (urls.size() <= 1) {
+			return urls;
+		}
+
+		long now = System.currentTimeMillis();
+		double worstLatency = 0;
+		for (String url : urls) {
+			HostHealth health = hosts.get(url);
+			if (health != null && health.count > 0) {
+				worstLatency = Math.max(worstLatency, health.latency);
+			}
+		}
+
+		final Map<String, Double> scores = new HashMap<>();
+		List<String> available = new ArrayList<>();
+		String closestToRetry = null;
+		long closestRetryTime = Long.MAX_VALUE;
+		for (String url : urls) {
+			HostHealth health = hosts.get(url);
+			if (health != null && health.openUntil > now) {
+				if (health.openUntil < closestRetryTime) {
+					closestRetryTime = health.openUntil;
+					closestToRetry = url;
+				}
+				continue;
+			}
+			available.add(url);
+			scores.put(url, score(health, worstLatency));
+		}
+
+		if (available.isEmpty()) {
+			return Collections.singletonList(closestToRetry);
+		}
+
+		Collections.sort(available, new Comparator<String>() {
+			@Override
+			public int compare(String o1, String o2) {
+				return Double.compare(scores.get(o2), scores.get(o1));
+			}
+		});
+		return available;
+	}
+
+	/**
+	 * Score of LAS, higher is better. LASes without latency history are
+	 * assumed as slow as the slowest known one.
+	 */
+	private double score(HostHealth health, double worstLatency) {
+		if (health == null) {
+			return 1000 / (1000 + worstLatency);
+		}
+		double latency = health.count > 0 ? health.latency : worstLatency;
+		return health.successRate * 1000 / (1000 + latency);
+	}
+
+	/**
+	 * Time to wait for response of given LAS before hedged request is sent to
+	 * the next one
+	 */
+	public synchronized long getHedgeDelay(String url) {
+		HostHealth health = hosts.get(url);
+		if (health == null || health.count < MIN_SAMPLES) {
+			return defaultHedgeDelay;
+		}
+		return Math.max(MIN_HEDGE_DELAY_MS, health.percentile(hedgePercentile));
+	}
+
+	/**
+	 * Connect and read timeout of single request in ms
+	 */
+	public int getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	public synchronized void recordSuccess(String url, long latency) {
+		HostHealth health = getHealth(url);
+		if (health.consecutiveFailures >= failuresToOpen) {
+			logger.info("LAS " + url + " responding again, closing circuit");
+		}
+		health.consecutiveFailures = 0;
+		health.openUntil = 0;
+		health.successRate = ALPHA + (1 - ALPHA) * health.successRate;
+		health.latency = health.count == 0 ? latency : ALPHA * latency + (1 - ALPHA) * health.latency;
+		health.samples[health.position] = latency;
+		health.position = (health.position + 1) % SAMPLES;
+		health.count = Math.min(SAMPLES, health.count + 1);
+	}
+
+	public synchronized void recordFailure(String url) {
+		HostHealth health = getHealth(url);
+		health.consecutiveFailures++;
+		health.successRate = (1 - ALPHA) * health.successRate;
+		if (health.consecutiveFailures >= failuresToOpen) {
+			if (health.consecutiveFailures == failuresToOpen) {
+				logger.warn("LAS " + url + " failed " + health.consecutiveFailures + " times in a row, excluding it for "
+						+ openPeriod + "ms");
+			}
+			health.openUntil = System.currentTimeMillis() + openPeriod;
+		}
+	}
+
+	public synchronized boolean isOpen(String url) {
+		HostHealth health = hosts.get(url);
+		return health != null && health.openUntil > System.currentTimeMillis();
+	}
+
+	private HostHealth getHealth(String url) {
+		HostHealth health = hosts.get(url);
+		if (health == null) {
+			health = new HostHealth();
+			hosts.put(url, health);
+		}
+		return health;
+	}
+
+	/**
+	 * Health statistics of single LAS
+	 */
+	private static class HostHealth {
+
+		private double successRate = 1;
+
+		/** Moving average of latency in ms */
+		private double latency;
+
+		private final long[] samples = new long[SAMPLES];
+
+		private int position;
+
+		private int count;
+
+		private int consecutiveFailures;
+
+		/** Timestamp until which circuit is open */
+		private long openUntil;
+
+		private long percentile(int percentile) {
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+			return sorted[Math.max(0, Math.min(count - 1, index))];
+		}
+	}
+
+}
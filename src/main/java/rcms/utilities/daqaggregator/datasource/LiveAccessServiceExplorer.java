@@ -1,8 +1,22 @@
 package rcms.utilities.daqaggregator.datasource;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
@@ -15,6 +29,12 @@ import rcms.utilities.daqaggregator.DAQExceptionCode;
 
 public class LiveAccessServiceExplorer {
 
+	/**
+	 * Maximum time to wait for all LAS catalogs. LASes which do not respond
+	 * within this time are skipped.
+	 */
+	private static final long EXPLORE_TIMEOUT_MS = 10000;
+
 	/**
 	 * Based on order matched urls will be used or ignored
 	 */
@@ -22,6 +42,16 @@ public class LiveAccessServiceExplorer {
 
 	private final HashMap<String, String> flashlistToUrl;
 
+	/**
+	 * All LASes hosting given flashlist, in order of urls
+	 */
+	private final HashMap<String, List<String>> flashlistToUrls;
+
+	/**
+	 * LASes which answered in last exploration
+	 */
+	private final Set<String> exploredUrls;
+
 	private final Connector connector;
 
 	private final boolean staticCatalog;
@@ -31,28 +61,95 @@ public class LiveAccessServiceExplorer {
 	public LiveAccessServiceExplorer(List<String> urls, boolean staticCatalog) {
 		this.urls = urls;
 		this.flashlistToUrl = new HashMap<>();
-		this.connector = new Connector(false);
+		this.flashlistToUrls = new HashMap<>();
+		this.exploredUrls = new HashSet<>();
+		this.connector = new Connector(false, (int) EXPLORE_TIMEOUT_MS);
 		this.staticCatalog = staticCatalog;
 	}
 
+	/**
+	 * Explore all LAS catalogs. Catalogs are requested in parallel, results are
+	 * merged in the order of given urls so that the first LAS hosting a
+	 * flashlist is the primary one, others are kept as alternatives. LASes
+	 * that fail or do not answer in time are skipped.
+	 */
 	public void exploreLiveAccessServices() {
-		for (String url : urls) {
+
+		long startTime = System.currentTimeMillis();
+		/* daemon threads, LASes hung after timeout must not block shutdown */
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, urls.size()), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "las-explorer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		Map<String, Future<List<String>>> futures = new LinkedHashMap<>();
+		for (final String url : urls) {
+			logger.info("Exploring url: " + url);
+			futures.put(url, executor.submit(new Callable<List<String>>() {
+				@Override
+				public List<String> call() throws Exception {
+					return exploreLiveAccessService(url);
+				}
+			}));
+		}
+		executor.shutdown();
+
+		long deadline = startTime + EXPLORE_TIMEOUT_MS;
+		for (Entry<String, Future<List<String>>> entry : futures.entrySet()) {
+			String url = entry.getKey();
 			try {
-				logger.info("Exploring url: " + url);
-				exploreLiveAccessService(url);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				long remaining = Math.max(0, deadline - System.currentTimeMillis());
+				List<String> flashlists = entry.getValue().get(remaining, TimeUnit.MILLISECONDS);
+				merge(url, flashlists);
+				exploredUrls.add(url);
+			} catch (TimeoutException e) {
+				entry.getValue().cancel(true);
+				logger.warn("LAS " + url + " did not respond within " + EXPLORE_TIMEOUT_MS + "ms, skipping");
+			} catch (ExecutionException e) {
+				logger.warn("Problem exploring LAS " + url + ": " + e.getCause().getMessage());
+			} catch (InterruptedException e) {
+				logger.warn("Interrupted while exploring LAS " + url);
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		executor.shutdownNow();
+
+		logger.info("Explored " + urls.size() + " LAS urls in " + (System.currentTimeMillis() - startTime) + "ms");
+	}
+
+	private void merge(String url, List<String> flashlists) {
+		for (String shortName : flashlists) {
+			if (flashlistToUrl.containsKey(shortName)) {
+				logger.info("Flashlist " + shortName + " hosted by more than one LAS, " + url
+						+ " will be used as alternative to " + flashlistToUrl.get(shortName));
+				flashlistToUrls.get(shortName).add(url);
+
+			} else {
+				flashlistToUrl.put(shortName, url);
+				List<String> hosts = new ArrayList<>();
+				hosts.add(url);
+				flashlistToUrls.put(shortName, hosts);
 			}
 		}
 	}
 
-	private void exploreLiveAccessService(String url) throws IOException {
+	/**
+	 * Explore single LAS catalog
+	 *
+	 * @return names of flashlists hosted by given LAS
+	 */
+	private List<String> exploreLiveAccessService(String url) throws IOException {
 		Pair<Integer, List<String>> a = connector
 				.retrieveLines(url + "/retrieve" + (staticCatalog ? "Static" : "") + "Catalog?fmt=json");
-		
+
 		if (a.getLeft() == 200) {
 
+			List<String> result = new ArrayList<>();
 			com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
 			JsonNode rootNode = mapper.readValue(a.getRight().get(0), JsonNode.class);
 
@@ -64,22 +161,12 @@ public class LiveAccessServiceExplorer {
 					String name = b.get("Name").asText();
 					if (name.startsWith("urn:xdaq-flashlist:")) {
 						String shortName = name.substring(19);
-						// System.out.println(shortName + ": " + b);
-
-						if (flashlistToUrl.containsKey(shortName)) {
-							logger.warn("Name collision across different LAS for flashlist: " + shortName);
-							logger.warn("LAS url for flashlist " + shortName
-									+ " with be ignored, first match will be used");
-							logger.warn(" - first match: " + flashlistToUrl.get(shortName));
-							logger.warn(" - ignored:     " + url);
-
-						} else {
-							flashlistToUrl.put(shortName, url);
-						}
+						result.add(shortName);
 					}
 				}
 
-				logger.info("Explored " + arrayNode.size() + " flashlists");
+				logger.info("Explored " + arrayNode.size() + " flashlists in " + url);
+				return result;
 
 			} else {
 				throw new DAQException(DAQExceptionCode.ProblemExploringLAS, "Problem exploring LAS with url: " + url);
@@ -91,6 +178,24 @@ public class LiveAccessServiceExplorer {
 		}
 	}
 
+	/**
+	 * @return true if all LASes were explored successfully in last
+	 *         exploration
+	 */
+	public boolean isComplete() {
+		return exploredUrls.size() == urls.size();
+	}
+
+	/**
+	 * @return LASes which failed or did not respond in time in last
+	 *         exploration
+	 */
+	public Set<String> getFailedUrls() {
+		Set<String> failedUrls = new HashSet<>(urls);
+		failedUrls.removeAll(exploredUrls);
+		return failedUrls;
+	}
+
 	public String getFlashlistUrl(String flashlistName) {
 		return flashlistToUrl.get(flashlistName);
 	}
@@ -99,4 +204,15 @@ public class LiveAccessServiceExplorer {
 		return flashlistToUrl;
 	}
 
+	/**
+	 * @return all LAS urls hosting given flashlist, primary first
+	 */
+	public List<String> getFlashlistUrls(String flashlistName) {
+		return flashlistToUrls.get(flashlistName);
+	}
+
+	public HashMap<String, List<String>> getFlashlistToUrls() {
+		return flashlistToUrls;
+	}
+
 }
@@ -8,8 +8,6 @@ import javax.xml.bind.DatatypeConverter;
 import org.apache.commons.lang3.tuple.Triple;
 import org.apache.log4j.Logger;
 
-import com.fasterxml.jackson.databind.JsonNode;
-
 import rcms.utilities.daqaggregator.DAQException;
 import rcms.utilities.daqaggregator.DAQExceptionCode;
 
@@ -36,6 +34,14 @@ public class SessionRetriever {
 		this.filter2 = filter2;
 	}
 
+	/**
+	 * Declare flashlist columns read in {@link #retrieveSession(Flashlist)}
+	 */
+	public static void declareColumns(FlashlistProjection projection) {
+		projection.declare(FlashlistType.LEVEL_ZERO_FM_DYNAMIC, FMURL_COLUMN_NAME, TIMESTAMP_COLUMN_NAME,
+				SID_COLUMN_NAME, HWKEY_COLUMN_NAME);
+	}
+
 	/**
 	 * Retrieve session information from flashlist
 	 * 
@@ -50,26 +56,26 @@ public class SessionRetriever {
 		if (flashlist.getFlashlistType() != FlashlistType.LEVEL_ZERO_FM_DYNAMIC)
 			throw new DAQException(DAQExceptionCode.WrongFlaslhist,
 					"Wrong flashlist type: " + flashlist.getFlashlistType());
-		if (flashlist.getRowsNode() == null || flashlist.getRowsNode().size() == 0)
+		if (flashlist.getTable().size() == 0)
 			throw new DAQException(DAQExceptionCode.EmptyFlashlistDetectingSession,
 					"Empty flashlist at timestamp " + flashlist.getRetrievalDate());
 
-		Iterator<JsonNode> rowIterator = flashlist.getRowsNode().iterator();
+		Iterator<FlashlistRow> rowIterator = flashlist.getTable().iterator();
 		Triple<String, Integer, Long> result = null;
 		boolean foundRowSatisfyingFilters = false;
 
 		while (rowIterator.hasNext()) {
-			JsonNode row = rowIterator.next();
+			FlashlistRow row = rowIterator.next();
 
-			String fmUrl = row.get(FMURL_COLUMN_NAME).asText();
+			String fmUrl = row.getText(FMURL_COLUMN_NAME);
 
 			/* Retrieve data only from rows containing filters */
 			if (fmUrl.contains(filter1) && fmUrl.contains(filter2)) {
 				foundRowSatisfyingFilters = true;
 
-				long timestamp = parseTimestamp(row.get(TIMESTAMP_COLUMN_NAME).asText());
-				int sid = row.get(SID_COLUMN_NAME).asInt();
-				String hwcfgKey = row.get(HWKEY_COLUMN_NAME).asText();
+				long timestamp = parseTimestamp(row.getText(TIMESTAMP_COLUMN_NAME));
+				int sid = row.getInt(SID_COLUMN_NAME);
+				String hwcfgKey = row.getText(HWKEY_COLUMN_NAME);
 
 				logger.debug(timestamp + ", " + hwcfgKey + ", " + sid + ", " + fmUrl);
 
@@ -0,0 +1,49 @@
+package rcms.utilities.daqaggregator.datasource;
+
+/**
+ * Bounded pool of strings repeated in every cycle, e.g. hostnames, contexts,
+ * state names and service names. Repeated values parsed from flashlists
+ * share one instance, so that cycles kept in memory do not hold copies of
+ * them.
+ *
+ * Pool is a fixed table indexed by hash of the string, a string replaces
+ * the string of other value in its slot. Memory of the pool does not grow
+ * with the number of distinct values, but pooled strings are not guaranteed
+ * to be the same instance and must still be compared with equals, which
+ * returns at the identity check for pooled strings.
+ *
+ * Slots are read and written without synchronization. Strings are immutable,
+ * a thread sees either the previous or the new string of a slot.
+ */
+public final class StringPool {
+
+	/** Number of slots, power of two */
+	private static final int SIZE = 1 << 14;
+
+	/** Longer strings, e.g. error messages, are not pooled */
+	static final int MAX_LENGTH = 128;
+
+	private static final String[] slots = new String[SIZE];
+
+	private StringPool() {
+	}
+
+	/**
+	 * @return pooled string equal to given value, given value if there is none
+	 *         or the value is not pooled
+	 */
+	public static String intern(String value) {
+		if (value == null || value.length() > MAX_LENGTH) {
+			return value;
+		}
+		int hash = value.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+		String pooled = slots[slot];
+		if (value.equals(pooled)) {
+			return pooled;
+		}
+		slots[slot] = value;
+		return value;
+	}
+
+}
@@ -28,6 +28,14 @@ public class TCDSFMInfoRetriever {
 		this.flashlistRetriever = flashlistRetriever;
 	}
 
+	/**
+	 * Declare flashlist columns read in
+	 * {@link #setTcdsFmFlashlistValues(Flashlist)}
+	 */
+	public static void declareColumns(FlashlistProjection projection) {
+		projection.declare(FlashlistType.TCDSFM, "FMURL", "pmContext", "pmLID", "pmService");
+	}
+
 	/**
 	 * Gets TCDS info from flashlists
 	 */
@@ -67,14 +75,15 @@ public class TCDSFMInfoRetriever {
 						"TCDSFM flashlist was not downloaded correctly, either due to a bad request or due to not having been found at LAS"
 								+ flashlist.getRetrievalDate());
 			}
-			if (flashlist.getRowsNode() == null || flashlist.getRowsNode().size() == 0)
+			if (flashlist.getTable().size() == 0)
 				throw new DAQException(DAQExceptionCode.EmptyFlashlistDetectingSession,
 						"Empty TCDSFM flashlist at timestamp " + flashlist.getRetrievalDate());
 
-			this.tcdsfm_fmUrl = flashlist.getRowsNode().get(0).get("FMURL").asText();
-			this.tcdsfm_pmContext = flashlist.getRowsNode().get(0).get("pmContext").asText();
-			this.tcdsfm_pmLid = flashlist.getRowsNode().get(0).get("pmLID").asInt();
-			this.tcdsfm_pmService = flashlist.getRowsNode().get(0).get("pmService").asText();
+			FlashlistRow row = flashlist.getTable().getRow(0);
+			this.tcdsfm_fmUrl = row.getText("FMURL");
+			this.tcdsfm_pmContext = row.getText("pmContext");
+			this.tcdsfm_pmLid = row.getInt("pmLID");
+			this.tcdsfm_pmService = row.getText("pmService");
 
 		} catch (DAQException e) {
 			logger.warn(e.getMessage());
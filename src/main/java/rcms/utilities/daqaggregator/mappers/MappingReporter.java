@@ -5,19 +5,30 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+/**
+ * Reports objects which could not be updated from flashlists. Mapping of a
+ * cycle runs on a single thread, so each thread has its own reporter, e.g.
+ * shards of parallel replay do not share counts.
+ */
 public class MappingReporter {
 
-	private static MappingReporter instance;
+	private static final ThreadLocal<MappingReporter> instance = new ThreadLocal<MappingReporter>() {
+		@Override
+		protected MappingReporter initialValue() {
+			return new MappingReporter();
+		}
+	};
 
 	private Logger logger = Logger.getLogger(MappingReporter.class);
 
 	private final Map<String, Integer> missingObjects;
 	private final Map<String, Integer> totalObjects;
 
+	/**
+	 * @return reporter of current thread
+	 */
 	public static MappingReporter get() {
-		if (instance == null)
-			instance = new MappingReporter();
-		return instance;
+		return instance.get();
 	}
 
 	public void clear() {
@@ -17,6 +17,7 @@ import org.apache.log4j.Logger;
 import rcms.utilities.daqaggregator.data.*;
 import rcms.utilities.hwcfg.HardwareConfigurationException;
 import rcms.utilities.daqaggregator.datasource.TCDSFMInfoRetriever;
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
 import rcms.utilities.hwcfg.HardwareConfigurationException;
 import rcms.utilities.hwcfg.dp.DAQPartition;
 import rcms.utilities.hwcfg.dp.DPGenericHost;
@@ -203,11 +204,47 @@ public class ObjectMapper {
 		daq.setSubFEDBuilders(new ArrayList<>(subFedBuilders.values()));
 		daq.setHltInfo(new HltInfo());
 
+		assignObjectIds();
+
 		logger.info("Retrieval summary " + this.toString());
 		logger.info("Subsystem summary " + subSystems.values());
 
 	}
 
+	/**
+	 * Assign ids of objects which do not depend on relations, the others are
+	 * assigned by {@link RelationMapper}
+	 */
+	private void assignObjectIds() {
+		for (BU bu : bus.values()) {
+			bu.setObjectId(ObjectIdHelper.objectId(bu));
+		}
+		for (RU ru : rus.values()) {
+			ru.setObjectId(ObjectIdHelper.objectId(ru));
+		}
+		for (FRLPc frlPc : frlPcs.values()) {
+			frlPc.setObjectId(ObjectIdHelper.objectId(frlPc));
+		}
+		for (FMMApplication fmmApplication : fmmApplications.values()) {
+			fmmApplication.setObjectId(ObjectIdHelper.objectId(fmmApplication));
+		}
+		for (FED fed : feds.values()) {
+			fed.setObjectId(ObjectIdHelper.objectId(fed));
+		}
+		for (FMM fmm : fmms.values()) {
+			fmm.setObjectId(ObjectIdHelper.objectId(fmm));
+		}
+		for (SubSystem subSystem : subSystems.values()) {
+			subSystem.setObjectId(ObjectIdHelper.objectId(subSystem));
+		}
+		for (TTCPartition ttcPartition : ttcpartitionsById.values()) {
+			ttcPartition.setObjectId(ObjectIdHelper.objectId(ttcPartition));
+		}
+		for (FEDBuilder fedBuilder : fedBuilders.values()) {
+			fedBuilder.setObjectId(ObjectIdHelper.objectId(fedBuilder));
+		}
+	}
+
 	@Override
 	public String toString() {
 
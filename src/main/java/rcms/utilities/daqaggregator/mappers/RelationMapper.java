@@ -27,6 +27,7 @@ import rcms.utilities.daqaggregator.data.SubSystem;
 import rcms.utilities.daqaggregator.data.TCDSPartitionInfo;
 import rcms.utilities.daqaggregator.data.TTCPartition;
 import rcms.utilities.daqaggregator.datasource.TCDSFMInfoRetriever;
+import rcms.utilities.daqaggregator.mappers.helper.ObjectIdHelper;
 import rcms.utilities.hwcfg.HardwareConfigurationException;
 import rcms.utilities.hwcfg.dp.DAQPartition;
 import rcms.utilities.hwcfg.dp.DAQPartitionStructureExtractor.HalfFMM;
@@ -320,9 +321,25 @@ public class RelationMapper implements Serializable {
 
 		fetchRelations(daqPartition);
 		buildRelations();
+		assignObjectIds();
 
 	}
 
+	/**
+	 * Assign ids of objects depending on relations, the others are assigned by
+	 * {@link ObjectMapper}
+	 */
+	private void assignObjectIds() {
+		for (SubFEDBuilder subFedBuilder : objectMapper.subFedBuilders.values()) {
+			subFedBuilder.setObjectId(ObjectIdHelper.objectId(subFedBuilder));
+		}
+		for (FRL frl : objectMapper.frls.values()) {
+			if (frl.getFrlPc() != null) {
+				frl.setObjectId(ObjectIdHelper.objectId(frl));
+			}
+		}
+	}
+
 	/**
 	 * Retrieve FED-mainFED relations
 	 * 
@@ -2,6 +2,8 @@ package rcms.utilities.daqaggregator.mappers.helper;
 
 import org.apache.log4j.Logger;
 
+import rcms.utilities.daqaggregator.datasource.StringPool;
+
 /**
  * This class strips urls to hostname e.g. http://bu-0000:9999 -> bu-0000.cms
  * 
@@ -13,11 +15,10 @@ public class ContextHelper {
 	private static final Logger logger = Logger.getLogger(ContextHelper.class);
 
 	public static Integer getPortFromContext(String context) {
-		String hostname = new String(context);
 		String portString;
 		Integer result;
 
-		hostname = stripFromProtocol(hostname);
+		String hostname = stripFromProtocol(context);
 
 		// get port
 		if (hostname.contains(":")) {
@@ -36,9 +37,12 @@ public class ContextHelper {
 		}
 	}
 
+	/**
+	 * @return hostname shared with other equal hostnames, see
+	 *         {@link StringPool}
+	 */
 	public static String getHostnameFromContext(String context) {
-		String hostname = new String(context);
-		hostname = stripFromProtocol(hostname);
+		String hostname = stripFromProtocol(context);
 
 		// remove port
 		if (hostname.contains(":")) {
@@ -47,11 +51,11 @@ public class ContextHelper {
 		if (!hostname.endsWith(".cms")) {
 			hostname = hostname + ".cms";
 		}
-		return hostname;
+		return StringPool.intern(hostname);
 	}
 
 	private static String stripFromProtocol(String context) {
-		String result = new String(context);
+		String result = context;
 		if (result.startsWith("http://")) {
 			result = result.substring(7);
 		}
@@ -1,5 +1,6 @@
 package rcms.utilities.daqaggregator.mappers.helper;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -22,14 +23,32 @@ public class FEDEnableMaskParser {
 	private static final String fedEnableMaskFedKeyValueSeparator = "&";
 	private static final Logger logger = Logger.getLogger(FEDEnableMaskParser.class);
 
+	/**
+	 * Last parsed mask and its result. The mask changes only with new
+	 * configuration, it's not parsed again while it's the same.
+	 */
+	private static volatile Pair<String, Map<Integer, Pair<Boolean, Boolean>>> lastParsed;
+
 	/**
 	 * Key is the srcExpectedId of a FED Value is a pair that contains two
 	 * booleans, the first of which is the flag for the frlmasked and the second
-	 * is the flag for the fmmmasked
+	 * is the flag for the fmmmasked. Result of the same mask as in previous
+	 * call is returned without parsing.
 	 * 
-	 * @return
+	 * @return unmodifiable map
 	 */
 	public static Map<Integer, Pair<Boolean, Boolean>> parseMask(String listToDecode) {
+		Pair<String, Map<Integer, Pair<Boolean, Boolean>>> last = lastParsed;
+		if (last != null && last.getLeft().equals(listToDecode)) {
+			logger.debug("FED enable mask unchanged, using previously parsed");
+			return last.getRight();
+		}
+		Map<Integer, Pair<Boolean, Boolean>> result = Collections.unmodifiableMap(decodeMask(listToDecode));
+		lastParsed = Pair.of(listToDecode, result);
+		return result;
+	}
+
+	private static Map<Integer, Pair<Boolean, Boolean>> decodeMask(String listToDecode) {
 		Map<Integer, Pair<Boolean, Boolean>> targetMap = new HashMap<>();
 		String[] pairs = listToDecode.split(fedEnableMaskFedListSeparator);
 		logger.info("FED enable mask has been parsed and contains " + pairs.length + " entries");
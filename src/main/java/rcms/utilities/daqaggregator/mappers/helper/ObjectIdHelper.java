@@ -0,0 +1,83 @@
+package rcms.utilities.daqaggregator.mappers.helper;
+
+import rcms.utilities.daqaggregator.data.BU;
+import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.data.FEDBuilder;
+import rcms.utilities.daqaggregator.data.FMM;
+import rcms.utilities.daqaggregator.data.FMMApplication;
+import rcms.utilities.daqaggregator.data.FRL;
+import rcms.utilities.daqaggregator.data.FRLPc;
+import rcms.utilities.daqaggregator.data.RU;
+import rcms.utilities.daqaggregator.data.SubFEDBuilder;
+import rcms.utilities.daqaggregator.data.SubSystem;
+import rcms.utilities.daqaggregator.data.TTCPartition;
+
+/**
+ * Builds ids of objects of DAQ structure, e.g. BU_bu-c2e18-35-01 or
+ * FRL_2$frlpc40-s2d19-40-01. Ids depend only on hardware configuration, so
+ * the same object has the same id in all snapshots of a session.
+ * 
+ * Ids are assigned once by {@link rcms.utilities.daqaggregator.mappers.ObjectMapper}
+ * and {@link rcms.utilities.daqaggregator.mappers.RelationMapper} when the
+ * structure is built.
+ */
+public class ObjectIdHelper {
+
+	private static final String SUFFIX = ".cms";
+
+	private static final String DELIMITER = "$";
+
+	public static String objectId(BU bu) {
+		return "BU_" + ContextHelper.removeSuffixFromHostname(bu.getHostname(), SUFFIX);
+	}
+
+	public static String objectId(RU ru) {
+		return "RU_" + ContextHelper.removeSuffixFromHostname(ru.getHostname(), SUFFIX);
+	}
+
+	public static String objectId(FRLPc frlPc) {
+		return "FRLPC_" + ContextHelper.removeSuffixFromHostname(frlPc.getHostname(), SUFFIX);
+	}
+
+	public static String objectId(FMMApplication fmmApplication) {
+		return "FMMA_" + ContextHelper.removeSuffixFromHostname(fmmApplication.getHostname(), SUFFIX);
+	}
+
+	public static String objectId(FED fed) {
+		return "FED_" + fed.getId();
+	}
+
+	public static String objectId(FMM fmm) {
+		return "FMM_" + fmm.getId();
+	}
+
+	public static String objectId(SubSystem subSystem) {
+		return "SS_" + subSystem.getName();
+	}
+
+	public static String objectId(TTCPartition ttcPartition) {
+		return "TTCP_" + ttcPartition.getName();
+	}
+
+	public static String objectId(FEDBuilder fedBuilder) {
+		return "FEDB_" + fedBuilder.getName();
+	}
+
+	/**
+	 * Requires FED builder, TTC partition and FRL PC relations to be mapped
+	 */
+	public static String objectId(SubFEDBuilder subFedBuilder) {
+		String frlPcHostname = subFedBuilder.getFrlPc() != null ? subFedBuilder.getFrlPc().getHostname() : "-";
+		return "SFB_" + subFedBuilder.getFedBuilder().getName() + DELIMITER + subFedBuilder.getTtcPartition().getName()
+				+ DELIMITER + ContextHelper.removeSuffixFromHostname(frlPcHostname, SUFFIX);
+	}
+
+	/**
+	 * Requires FRL PC relation to be mapped
+	 */
+	public static String objectId(FRL frl) {
+		return "FRL_" + frl.getGeoSlot() + DELIMITER
+				+ ContextHelper.removeSuffixFromHostname(frl.getFrlPc().getHostname(), SUFFIX);
+	}
+
+}
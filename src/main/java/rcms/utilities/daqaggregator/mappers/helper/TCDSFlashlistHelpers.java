@@ -5,9 +5,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.fasterxml.jackson.databind.JsonNode;
-
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRow;
+import rcms.utilities.daqaggregator.datasource.StringPool;
 
 public class TCDSFlashlistHelpers {
 
@@ -48,9 +48,9 @@ public class TCDSFlashlistHelpers {
 		}
 
 		if (tts_value < 0xf)
-			return "I_" + String.format("%x",tts_value); 
+			return StringPool.intern("I_" + Integer.toHexString(tts_value));
 		else 
-			return "X_" + String.format("%x",tts_value); // new TCDS error code
+			return StringPool.intern("X_" + Integer.toHexString(tts_value)); // new TCDS error code
 
 	}
 
@@ -62,26 +62,26 @@ public class TCDSFlashlistHelpers {
 		Map<String, Map<String, Map<Integer, Map<Integer, Map<String, String>>>>> rootToReturn = new HashMap<String, Map<String, Map<Integer, Map<Integer, Map<String, String>>>>>();
 
 		//initialize tree branches based on data combinations in the flashlist
-		for (JsonNode row : flashlist.getRowsNode()) {
-			String service = row.get("service").asText();
+		for (FlashlistRow row : flashlist.getTable()) {
+			String service = row.getText("service");
 
 			if (!rootToReturn.containsKey(service)){
 				rootToReturn.put(service, new HashMap<String, Map<Integer, Map<Integer, Map<String, String>>>>());
 			}
 			
-			String type = row.get("type").asText();
+			String type = row.getText("type");
 			
 			if (!rootToReturn.get(service).containsKey(type)){
 				rootToReturn.get(service).put(type, new HashMap<Integer, Map<Integer, Map<String, String>>>());
 			}
 			
-			int pmNr = row.get("pm_number").asInt();
+			int pmNr = row.getInt("pm_number");
 
 			if (!rootToReturn.get(service).get(type).containsKey(pmNr)){
 				rootToReturn.get(service).get(type).put(pmNr, new HashMap<Integer, Map<String, String>>());
 			}
 			
-			int idNr = row.get("id_number").asInt();
+			int idNr = row.getInt("id_number");
 
 			if (!rootToReturn.get(service).get(type).get(pmNr).containsKey(idNr)){
 				rootToReturn.get(service).get(type).get(pmNr).put(idNr, new HashMap<String, String>()); //innermost map contains rest attributes by name
@@ -98,16 +98,16 @@ public class TCDSFlashlistHelpers {
 		}
 
 		//iterate over data tuples and index them by fieldName:value in the innermost map
-		for (JsonNode row : flashlist.getRowsNode()) {
+		for (FlashlistRow row : flashlist.getTable()) {
 
 			//needed to insert into index as defined above
-			String service = row.get("service").asText();
-			String type = row.get("type").asText();
-			int pmNr = row.get("pm_number").asInt();
-			int idNr = row.get("id_number").asInt();
+			String service = row.getText("service");
+			String type = row.getText("type");
+			int pmNr = row.getInt("pm_number");
+			int idNr = row.getInt("id_number");
 
 			for (String field : fields){
-				rootToReturn.get(service).get(type).get(pmNr).get(idNr).put(field, row.get(field).asText());
+				rootToReturn.get(service).get(type).get(pmNr).get(idNr).put(field, row.getText(field));
 			}
 		}
 
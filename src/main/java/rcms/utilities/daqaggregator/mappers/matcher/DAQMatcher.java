@@ -11,6 +11,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import rcms.utilities.daqaggregator.data.DAQ;
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRow;
 
 public class DAQMatcher extends SessionFilteringMatcher<DAQ> {
 
@@ -28,15 +29,15 @@ public class DAQMatcher extends SessionFilteringMatcher<DAQ> {
 		/* there is always one daq in the structure */
 		DAQ daq = collection.iterator().next();
 
-		List<JsonNode> filteredRows = getRowsFilteredBySessionId(flashlist.getRowsNode(), flashlist.getFlashlistType());
+		List<FlashlistRow> filteredRows = getRowsFilteredBySessionId(flashlist);
 
 		if (filteredRows.size() != 1) {
 			logger.warn("More than one row filtered based on session id in flashlist " + flashlist.getFlashlistType()
 					+ ": " + filteredRows.size() + " , expected 1");
 		}
 
-		for (JsonNode rowNode : filteredRows) {
-			dispatchMap.put(daq, rowNode);
+		for (FlashlistRow rowNode : filteredRows) {
+			dispatchMap.put(daq, rowNode.toJsonNode());
 		}
 
 		return dispatchMap;
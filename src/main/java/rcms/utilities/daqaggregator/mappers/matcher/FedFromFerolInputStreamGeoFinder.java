@@ -3,10 +3,9 @@ package rcms.utilities.daqaggregator.mappers.matcher;
 import java.util.HashMap;
 import java.util.Map;
 
-import com.fasterxml.jackson.databind.JsonNode;
-
 import rcms.utilities.daqaggregator.data.FED;
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRow;
 import rcms.utilities.daqaggregator.mappers.helper.ContextHelper;
 
 /**
@@ -64,23 +63,23 @@ public class FedFromFerolInputStreamGeoFinder extends ThreeElementGeoMatcher<FED
 	}
 
 	@Override
-	protected Map<String, Map<Integer, Map<Integer, JsonNode>>> prepareFlashlistMap(Flashlist flashlist) {
-		Map<String, Map<Integer, Map<Integer, JsonNode>>> flashlistMap = new HashMap<>();
+	protected Map<String, Map<Integer, Map<Integer, FlashlistRow>>> prepareFlashlistMap(Flashlist flashlist) {
+		Map<String, Map<Integer, Map<Integer, FlashlistRow>>> flashlistMap = new HashMap<>();
 
-		for (JsonNode row : flashlist.getRowsNode()) {
+		for (FlashlistRow row : flashlist.getTable()) {
 
-			String hostname = row.get(this.getFlashlistHostnameKey()).asText();
+			String hostname = row.getText(this.getFlashlistHostnameKey());
 
 			hostname = ContextHelper.getHostnameFromContext(hostname);
-			Integer geoslot = row.get(this.getFlashlistGeoslotKey()).asInt();
-			Integer ioKey = row.get(this.getFlashlistIoKey()).asInt();
+			Integer geoslot = row.getInt(this.getFlashlistGeoslotKey());
+			Integer ioKey = row.getInt(this.getFlashlistIoKey());
 
 			if (!flashlistMap.containsKey(hostname)) {
-				flashlistMap.put(hostname, new HashMap<Integer, Map<Integer, JsonNode>>());
+				flashlistMap.put(hostname, new HashMap<Integer, Map<Integer, FlashlistRow>>());
 			}
 
 			if (!flashlistMap.get(hostname).containsKey(geoslot)) {
-				flashlistMap.get(hostname).put(geoslot, new HashMap<Integer, JsonNode>());
+				flashlistMap.get(hostname).put(geoslot, new HashMap<Integer, FlashlistRow>());
 			}
 
 			flashlistMap.get(hostname).get(geoslot).put(ioKey, row);
@@ -1,5 +1,6 @@
 package rcms.utilities.daqaggregator.mappers.matcher;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -10,6 +11,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import rcms.utilities.daqaggregator.data.FED;
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRow;
 
 public class FedInErrorMatcher extends SessionFilteringMatcher<FED> {
 
@@ -19,6 +21,11 @@ public class FedInErrorMatcher extends SessionFilteringMatcher<FED> {
 		super(sessionId);
 	}
 
+	@Override
+	public Collection<String> getFlashlistColumns() {
+		return Arrays.asList("fedIdsWithErrors", "fedIdsWithoutFragments");
+	}
+
 	@Override
 	public Map<FED, JsonNode> match(Flashlist flashlist, Collection<FED> collection) {
 
@@ -29,13 +36,14 @@ public class FedInErrorMatcher extends SessionFilteringMatcher<FED> {
 			fedsByExpectedId.put(object.getSrcIdExpected(), object);
 		}
 
-		for (JsonNode row : getRowsFilteredBySessionId(flashlist.getRowsNode(), flashlist.getFlashlistType())) {
+		for (FlashlistRow row : getRowsFilteredBySessionId(flashlist)) {
 			if (row.get("fedIdsWithErrors").isArray()) {
+				JsonNode rowNode = row.toJsonNode();
 				for (JsonNode fedIdWithErrors : row.get("fedIdsWithErrors")) {
 					int fedId = fedIdWithErrors.asInt();
 					if (fedsByExpectedId.containsKey(fedId)) {
 						FED fed = fedsByExpectedId.get(fedId);
-						fedToFlashlistRow.put(fed, row);
+						fedToFlashlistRow.put(fed, rowNode);
 
 					} else {
 						logger.debug(
@@ -47,7 +55,7 @@ public class FedInErrorMatcher extends SessionFilteringMatcher<FED> {
 					int fedId = fedIdWithoutFragment.asInt();
 					if (fedsByExpectedId.containsKey(fedId)) {
 						FED fed = fedsByExpectedId.get(fedId);
-						fedToFlashlistRow.put(fed, row);
+						fedToFlashlistRow.put(fed, rowNode);
 
 					} else {
 						logger.debug(
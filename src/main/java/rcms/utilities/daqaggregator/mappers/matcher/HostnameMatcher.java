@@ -1,6 +1,7 @@
 package rcms.utilities.daqaggregator.mappers.matcher;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -9,6 +10,7 @@ import org.apache.log4j.Logger;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRow;
 import rcms.utilities.daqaggregator.mappers.helper.ContextHelper;
 
 public abstract class HostnameMatcher<E> extends SessionFilteringMatcher<E> {
@@ -28,6 +30,11 @@ public abstract class HostnameMatcher<E> extends SessionFilteringMatcher<E> {
 		this.flashlistKey = flashlistKey;
 	}
 
+	@Override
+	public Collection<String> getFlashlistColumns() {
+		return Collections.singletonList(flashlistKey);
+	}
+
 	@Override
 	public Map<E, JsonNode> match(Flashlist flashlist, Collection<E> collection) {
 
@@ -39,12 +46,12 @@ public abstract class HostnameMatcher<E> extends SessionFilteringMatcher<E> {
 			objectsByHostname.put(hostname, object);
 		}
 
-		for (JsonNode row : getRowsFilteredBySessionId(flashlist.getRowsNode(), flashlist.getFlashlistType())) {
+		for (FlashlistRow row : getRowsFilteredBySessionId(flashlist)) {
 
-			String hostname = row.get(flashlistKey).asText();
+			String hostname = row.getText(flashlistKey);
 			hostname = ContextHelper.getHostnameFromContext(hostname);
 			if (objectsByHostname.containsKey(hostname)) {
-				dispatchMap.put(objectsByHostname.get(hostname), row);
+				dispatchMap.put(objectsByHostname.get(hostname), row.toJsonNode());
 				successful++;
 			} else {
 				logger.debug("Cannot find object " + hostname + " by name in " + objectsByHostname.keySet());
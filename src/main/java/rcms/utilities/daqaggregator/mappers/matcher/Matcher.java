@@ -1,6 +1,7 @@
 package rcms.utilities.daqaggregator.mappers.matcher;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -20,6 +21,14 @@ public abstract class Matcher<E> {
 	 */
 	public abstract Map<E, JsonNode> match(Flashlist flashlist, Collection<E> collection);
 
+	/**
+	 * Columns of flashlist rows read by this matcher to find the objects, see
+	 * {@link rcms.utilities.daqaggregator.datasource.FlashlistProjection}
+	 */
+	public Collection<String> getFlashlistColumns() {
+		return Collections.emptyList();
+	}
+
 	protected int failed = 0;
 	protected int successful = 0;
 
@@ -5,8 +5,9 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
-import com.fasterxml.jackson.databind.JsonNode;
-
+import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRow;
+import rcms.utilities.daqaggregator.datasource.FlashlistTable;
 import rcms.utilities.daqaggregator.datasource.FlashlistType;
 
 public abstract class SessionFilteringMatcher<E> extends Matcher<E> {
@@ -30,18 +31,20 @@ public abstract class SessionFilteringMatcher<E> extends Matcher<E> {
 		this.ignoreFiltering = ignoreFiltering;
 	}
 
-	protected List<JsonNode> getRowsFilteredBySessionId(JsonNode rowsToFilter, FlashlistType flashlistType) {
-		List<JsonNode> result = new ArrayList<>();
+	protected List<FlashlistRow> getRowsFilteredBySessionId(Flashlist flashlist) {
+		FlashlistType flashlistType = flashlist.getFlashlistType();
+		FlashlistTable rowsToFilter = flashlist.getTable();
+		List<FlashlistRow> result = new ArrayList<>();
 		logger.debug("Before the sid filter: " + rowsToFilter.size());
 		filtered = 0;
 
-		for (JsonNode rowNode : rowsToFilter) {
+		for (FlashlistRow rowNode : rowsToFilter) {
 
 			if (flashlistType.isSessionContext() && !ignoreFiltering) {
 				if (flashlistType.getSessionIdColumnName() != null) {
 					if (rowNode.has(flashlistType.getSessionIdColumnName())) {
 						try {
-							int rowSessionContext = rowNode.get(flashlistType.getSessionIdColumnName()).asInt();
+							int rowSessionContext = rowNode.getInt(flashlistType.getSessionIdColumnName());
 							if (rowSessionContext == sessionId) {
 								result.add(rowNode);
 							} else {
@@ -1,6 +1,7 @@
 package rcms.utilities.daqaggregator.mappers.matcher;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -10,6 +11,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import rcms.utilities.daqaggregator.data.SubSystem;
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRow;
 
 public class SubsystemMatcher extends SessionFilteringMatcher<SubSystem> {
 
@@ -21,6 +23,11 @@ public class SubsystemMatcher extends SessionFilteringMatcher<SubSystem> {
 		super(sessionId);
 	}
 
+	@Override
+	public Collection<String> getFlashlistColumns() {
+		return Collections.singletonList(key);
+	}
+
 	@Override
 	public Map<SubSystem, JsonNode> match(Flashlist flashlist, Collection<SubSystem> collection) {
 
@@ -32,15 +39,15 @@ public class SubsystemMatcher extends SessionFilteringMatcher<SubSystem> {
 			subsystemByName.put(subsystem.getName(), subsystem);
 		}
 
-		for (JsonNode rowNode : getRowsFilteredBySessionId(flashlist.getRowsNode(), flashlist.getFlashlistType())) {
+		for (FlashlistRow rowNode : getRowsFilteredBySessionId(flashlist)) {
 
 			if (rowNode.has(key)) {
 				if (rowNode.get(key) != null) {
-					String flashlistSubsystemName = rowNode.get(key).asText();
+					String flashlistSubsystemName = rowNode.getText(key);
 
 					if (subsystemByName.containsKey(flashlistSubsystemName)) {
 						SubSystem matchedSubsystem = subsystemByName.get(flashlistSubsystemName);
-						dispatchMap.put(matchedSubsystem, rowNode);
+						dispatchMap.put(matchedSubsystem, rowNode.toJsonNode());
 						successful++;
 					} else {
 						logger.warn("Subsystem " + flashlistSubsystemName
@@ -16,6 +16,7 @@ import rcms.utilities.daqaggregator.data.FED;
 import rcms.utilities.daqaggregator.data.FMM;
 import rcms.utilities.daqaggregator.data.helper.FEDHelper;
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRow;
 import rcms.utilities.daqaggregator.mappers.helper.ContextHelper;
 
 /**
@@ -35,12 +36,23 @@ public class TcdsTtsPiMatcher extends Matcher<FED> {
 		super();
 	}
 
-	protected Map<String, Map<Integer, Map<String, Map<Integer, JsonNode>>>> prepareFlashlistMap(Flashlist flashlist) {
-		Map<String, Map<Integer, Map<String, Map<Integer, JsonNode>>>> flashlistMap = new HashMap<>();
+	@Override
+	public Collection<String> getFlashlistColumns() {
+		List<String> columns = new ArrayList<>();
+		columns.add(HOSTNAME_PORT_KEY);
+		columns.add(SERVICE_KEY);
+		for (int i = 1; i <= 10; i++) {
+			columns.add("tts_slot" + i);
+		}
+		return columns;
+	}
+
+	protected Map<String, Map<Integer, Map<String, Map<Integer, FlashlistRow>>>> prepareFlashlistMap(Flashlist flashlist) {
+		Map<String, Map<Integer, Map<String, Map<Integer, FlashlistRow>>>> flashlistMap = new HashMap<>();
 
-		for (JsonNode row : flashlist.getRowsNode()) {
+		for (FlashlistRow row : flashlist.getTable()) {
 
-			String context = row.get(HOSTNAME_PORT_KEY).asText();
+			String context = row.getText(HOSTNAME_PORT_KEY);
 			logger.debug("Hostname plus port to split: " + context);
 
 			String hostname = ContextHelper.getHostnameFromContext(context);
@@ -49,18 +61,18 @@ public class TcdsTtsPiMatcher extends Matcher<FED> {
 
 			hostname = ContextHelper.getHostnameFromContext(hostname);
 
-			String serviceName = row.get(SERVICE_KEY).asText();
+			String serviceName = row.getText(SERVICE_KEY);
 
 			if (!flashlistMap.containsKey(hostname)) {
-				flashlistMap.put(hostname, new HashMap<Integer, Map<String, Map<Integer, JsonNode>>>());
+				flashlistMap.put(hostname, new HashMap<Integer, Map<String, Map<Integer, FlashlistRow>>>());
 			}
 
 			if (!flashlistMap.get(hostname).containsKey(port)) {
-				flashlistMap.get(hostname).put(port, new HashMap<String, Map<Integer, JsonNode>>());
+				flashlistMap.get(hostname).put(port, new HashMap<String, Map<Integer, FlashlistRow>>());
 			}
 
 			if (!flashlistMap.get(hostname).get(port).containsKey(serviceName)) {
-				flashlistMap.get(hostname).get(port).put(serviceName, new HashMap<Integer, JsonNode>());
+				flashlistMap.get(hostname).get(port).put(serviceName, new HashMap<Integer, FlashlistRow>());
 			}
 
 			flashlistMap.get(hostname).get(port).get(serviceName).put(1, row);
@@ -85,14 +97,14 @@ public class TcdsTtsPiMatcher extends Matcher<FED> {
 	public Map<FED, JsonNode> match(Flashlist flashlist, Collection<FED> collection) {
 
 		all = collection;
-		logger.info("Matching " + flashlist.getRowsNode().size() + " flashlist rows to " + collection.size()
+		logger.info("Matching " + flashlist.getTable().size() + " flashlist rows to " + collection.size()
 				+ " FED objects");
 
 		//List<String> report = new ArrayList<>();
 		int all = 0, ignored = 0;
-		for (JsonNode a : flashlist.getRowsNode()) {
+		for (FlashlistRow a : flashlist.getTable()) {
 			for (int i = 1; i <= 10; i++) {
-				int b = a.get("tts_slot" + i).asInt();
+				int b = a.getInt("tts_slot" + i);
 				all++;
 				if (b == 152) {
 					ignored++;
@@ -103,7 +115,7 @@ public class TcdsTtsPiMatcher extends Matcher<FED> {
 
 		Map<FED, JsonNode> dispatchMap = new HashMap<>();
 
-		Map<String, Map<Integer, Map<String, Map<Integer, JsonNode>>>> flashlistMap = this
+		Map<String, Map<Integer, Map<String, Map<Integer, FlashlistRow>>>> flashlistMap = this
 				.prepareFlashlistMap(flashlist);
 
 		for (FED findable : collection) {
@@ -122,13 +134,13 @@ public class TcdsTtsPiMatcher extends Matcher<FED> {
 
 					logger.debug("Dispatching fed: " + hostname + ":" + port + ":" + serviceName + ":" + io);
 					try {
-						JsonNode matchedRow = flashlistMap.get(hostname).get(port).get(serviceName).get(io);
+						FlashlistRow matchedRow = flashlistMap.get(hostname).get(port).get(serviceName).get(io);
 
 						if (matchedRow != null) {
 							/*report.add(formatFedToRaport("matched", findable, hostname, port.toString(), serviceName,
 									io.toString())); */
 
-							dispatchMap.put(findable, matchedRow);
+							dispatchMap.put(findable, matchedRow.toJsonNode());
 							successful++;
 						} else {
 							failed++;
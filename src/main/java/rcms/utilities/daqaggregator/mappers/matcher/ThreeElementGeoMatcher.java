@@ -1,5 +1,6 @@
 package rcms.utilities.daqaggregator.mappers.matcher;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -9,6 +10,7 @@ import org.apache.log4j.Logger;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRow;
 import rcms.utilities.daqaggregator.mappers.helper.ContextHelper;
 
 /**
@@ -44,24 +46,29 @@ public abstract class ThreeElementGeoMatcher<E> extends SessionFilteringMatcher<
 
 	public abstract String getFlashlistIoKey();
 
-	protected Map<String, Map<Integer, Map<Integer, JsonNode>>> prepareFlashlistMap(Flashlist flashlist) {
-		Map<String, Map<Integer, Map<Integer, JsonNode>>> flashlistMap = new HashMap<>();
+	@Override
+	public Collection<String> getFlashlistColumns() {
+		return Arrays.asList(getFlashlistHostnameKey(), getFlashlistGeoslotKey(), getFlashlistIoKey());
+	}
+
+	protected Map<String, Map<Integer, Map<Integer, FlashlistRow>>> prepareFlashlistMap(Flashlist flashlist) {
+		Map<String, Map<Integer, Map<Integer, FlashlistRow>>> flashlistMap = new HashMap<>();
 
-		for (JsonNode row : getRowsFilteredBySessionId(flashlist.getRowsNode(), flashlist.getFlashlistType())) {
+		for (FlashlistRow row : getRowsFilteredBySessionId(flashlist)) {
 
-			String hostname = row.get(this.getFlashlistHostnameKey()).asText();
+			String hostname = row.getText(this.getFlashlistHostnameKey());
 
 			hostname = ContextHelper.getHostnameFromContext(hostname);
-			Integer geoslot = row.get(this.getFlashlistGeoslotKey()).asInt();
+			Integer geoslot = row.getInt(this.getFlashlistGeoslotKey());
 
-			Integer io = row.get(this.getFlashlistIoKey()).asInt();
+			Integer io = row.getInt(this.getFlashlistIoKey());
 
 			if (!flashlistMap.containsKey(hostname)) {
-				flashlistMap.put(hostname, new HashMap<Integer, Map<Integer, JsonNode>>());
+				flashlistMap.put(hostname, new HashMap<Integer, Map<Integer, FlashlistRow>>());
 			}
 
 			if (!flashlistMap.get(hostname).containsKey(geoslot)) {
-				flashlistMap.get(hostname).put(geoslot, new HashMap<Integer, JsonNode>());
+				flashlistMap.get(hostname).put(geoslot, new HashMap<Integer, FlashlistRow>());
 			}
 
 			flashlistMap.get(hostname).get(geoslot).put(io, row);
@@ -78,17 +85,17 @@ public abstract class ThreeElementGeoMatcher<E> extends SessionFilteringMatcher<
 
 		Map<E, JsonNode> dispatchMap = new HashMap<>();
 
-		Map<String, Map<Integer, Map<Integer, JsonNode>>> flashlistMap = this.prepareFlashlistMap(flashlist);
+		Map<String, Map<Integer, Map<Integer, FlashlistRow>>> flashlistMap = this.prepareFlashlistMap(flashlist);
 
 		int geoslots = 0;
 		int ios = 0;
-		for (Map<Integer, Map<Integer, JsonNode>> geoslotMap : flashlistMap.values()) {
+		for (Map<Integer, Map<Integer, FlashlistRow>> geoslotMap : flashlistMap.values()) {
 			geoslots += geoslotMap.size();
-			for (Map<Integer, JsonNode> ioMap : geoslotMap.values()) {
+			for (Map<Integer, FlashlistRow> ioMap : geoslotMap.values()) {
 				ios += ioMap.size();
 			}
 		}
-		logger.debug(flashlist.getRowsNode().size() + " flashlist rows mapped by hostname:geoslot:io "
+		logger.debug(flashlist.getTable().size() + " flashlist rows mapped by hostname:geoslot:io "
 				+ flashlistMap.size() + ":" + geoslots + ":" + ios);
 
 		for (E findable : collection) {
@@ -98,10 +105,10 @@ public abstract class ThreeElementGeoMatcher<E> extends SessionFilteringMatcher<
 
 			if (hostname != null && geoslot != null && io != null) {
 				try {
-					JsonNode matchedRow = flashlistMap.get(hostname).get(geoslot).get(io);
+					FlashlistRow matchedRow = flashlistMap.get(hostname).get(geoslot).get(io);
 
 					if (matchedRow != null) {
-						dispatchMap.put(findable, matchedRow);
+						dispatchMap.put(findable, matchedRow.toJsonNode());
 						successful++;
 					} else {
 						failed++;
@@ -1,5 +1,6 @@
 package rcms.utilities.daqaggregator.mappers.matcher;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -9,6 +10,7 @@ import org.apache.log4j.Logger;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistRow;
 import rcms.utilities.daqaggregator.mappers.helper.ContextHelper;
 
 /**
@@ -40,6 +42,11 @@ public abstract class TwoElementGeoMatcher<E> extends SessionFilteringMatcher<E>
 
 	public abstract String getFlashlistGeoslotKey();
 
+	@Override
+	public Collection<String> getFlashlistColumns() {
+		return Arrays.asList(getFlashlistHostnameKey(), getFlashlistGeoslotKey());
+	}
+
 	/**
 	 * Match rows from flashlist to objects from collection
 	 * 
@@ -59,27 +66,27 @@ public abstract class TwoElementGeoMatcher<E> extends SessionFilteringMatcher<E>
 
 		Map<E, JsonNode> dispatchMap = new HashMap<>();
 
-		Map<String, Map<Integer, JsonNode>> flashlistMap = new HashMap<>();
+		Map<String, Map<Integer, FlashlistRow>> flashlistMap = new HashMap<>();
 
-		for (JsonNode row : getRowsFilteredBySessionId(flashlist.getRowsNode(), flashlist.getFlashlistType())) {
+		for (FlashlistRow row : getRowsFilteredBySessionId(flashlist)) {
 
-			String hostname = row.get(this.getFlashlistHostnameKey()).asText();
+			String hostname = row.getText(this.getFlashlistHostnameKey());
 
 			hostname = ContextHelper.getHostnameFromContext(hostname);
-			Integer geoslot = row.get(this.getFlashlistGeoslotKey()).asInt();
+			Integer geoslot = row.getInt(this.getFlashlistGeoslotKey());
 
 			if (!flashlistMap.containsKey(hostname)) {
-				flashlistMap.put(hostname, new HashMap<Integer, JsonNode>());
+				flashlistMap.put(hostname, new HashMap<Integer, FlashlistRow>());
 			}
 
 			flashlistMap.get(hostname).put(geoslot, row);
 
 		}
 		int geoslots = 0;
-		for (Map<Integer, JsonNode> geoslotMap : flashlistMap.values()) {
+		for (Map<Integer, FlashlistRow> geoslotMap : flashlistMap.values()) {
 			geoslots += geoslotMap.size();
 		}
-		logger.debug(flashlist.getRowsNode().size() + " flashlist rows mapped by hostname:geoslot "
+		logger.debug(flashlist.getTable().size() + " flashlist rows mapped by hostname:geoslot "
 				+ flashlistMap.size() + ":" + geoslots);
 
 		for (E findable : collection) {
@@ -88,10 +95,10 @@ public abstract class TwoElementGeoMatcher<E> extends SessionFilteringMatcher<E>
 
 			if (hostname != null && geoslot != null) {
 				try {
-					JsonNode matchedRow = flashlistMap.get(hostname).get(geoslot);
+					FlashlistRow matchedRow = flashlistMap.get(hostname).get(geoslot);
 
 					if (matchedRow != null) {
-						dispatchMap.put(findable, matchedRow);
+						dispatchMap.put(findable, matchedRow.toJsonNode());
 						successful++;
 					} else {
 						failed++;
@@ -0,0 +1,517 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import rcms.utilities.daqaggregator.persistence.BinarySnapshotSchema.Descriptor;
+import rcms.utilities.daqaggregator.persistence.BinarySnapshotSchema.Field;
+import rcms.utilities.daqaggregator.persistence.BinarySnapshotSchema.Kind;
+import rcms.utilities.daqaggregator.persistence.BinarySnapshotSchema.Type;
+
+/**
+ * Reader of snapshots in {@link PersistenceFormat#BINARY}. Files are memory
+ * mapped and values are read from the mapping when accessed, e.g.
+ *
+ * <pre>
+ * BinarySnapshot snapshot = BinarySnapshot.open(file);
+ * float rate = snapshot.getRoot().getRecord("fedBuilderSummary").getFloat("rate");
+ * Record fed = snapshot.find("FED", "FED_1234");
+ * </pre>
+ *
+ * reads only the header and the accessed fields, the rest of the snapshot is
+ * not decoded. The whole snapshot can be written as json with
+ * {@link #writeJson(JsonGenerator)}.
+ *
+ * @see BinarySnapshotWriter
+ */
+public class BinarySnapshot {
+
+	/** DAQB */
+	static final int MAGIC = 0x44415142;
+
+	static final int VERSION = 1;
+
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final ByteBuffer buffer;
+
+	private final BinarySnapshotSchema schema;
+
+	private final int[] counts;
+
+	private final int[] tableOffsets;
+
+	private final int heapOffset;
+
+	private final int stringsOffset;
+
+	/** Record index by object id per type, built on first lookup */
+	private final Map<Type, Map<String, Integer>> ids = new HashMap<>();
+
+	private BinarySnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.remaining() < 12 || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a binary snapshot");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported version of binary snapshot " + buffer.getInt(4));
+		}
+		int headerLength = buffer.getInt(8);
+		if (headerLength < 0 || headerLength > buffer.limit() - 12) {
+			throw new IOException("Truncated binary snapshot header");
+		}
+		byte[] header = new byte[headerLength];
+		ByteBuffer headerBuffer = buffer.duplicate();
+		headerBuffer.position(12);
+		headerBuffer.get(header);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+
+		schema = BinarySnapshotSchema.read(in);
+		int typeCount = schema.getTypes().size();
+		counts = new int[typeCount];
+		tableOffsets = new int[typeCount];
+		long offset = 12 + headerLength;
+		for (int i = 0; i < typeCount; i++) {
+			counts[i] = in.readInt();
+			tableOffsets[i] = (int) offset;
+			offset += (long) counts[i] * schema.getType(i).getRecordSize();
+		}
+		heapOffset = (int) offset;
+		offset += in.readInt();
+		stringsOffset = (int) offset;
+		offset += in.readInt();
+		if (offset != buffer.limit()) {
+			throw new IOException("Size of binary snapshot " + buffer.limit() + " does not match header " + offset);
+		}
+	}
+
+	/**
+	 * Memory map given file
+	 */
+	public static BinarySnapshot open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return new BinarySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Read snapshot from given buffer, from position 0 to limit
+	 */
+	public static BinarySnapshot wrap(ByteBuffer buffer) throws IOException {
+		return new BinarySnapshot(buffer);
+	}
+
+	public BinarySnapshotSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * @return number of records of given type
+	 */
+	public int getCount(String type) {
+		return counts[type(type).getIndex()];
+	}
+
+	public Record getRecord(String type, int index) {
+		return record(type(type), index);
+	}
+
+	/**
+	 * @return record of DAQ
+	 */
+	public Record getRoot() {
+		return record(schema.getType(0), 0);
+	}
+
+	/**
+	 * @return record of object with given id, null if there is no such object
+	 */
+	public Record find(String type, String objectId) {
+		Type found = type(type);
+		if (!found.isIdentified()) {
+			throw new IllegalArgumentException("Objects of type " + type + " have no id");
+		}
+		Map<String, Integer> index;
+		synchronized (ids) {
+			index = ids.get(found);
+			if (index == null) {
+				index = new HashMap<>();
+				Field id = found.getField(BinarySnapshotSchema.ID);
+				for (int i = 0; i < counts[found.getIndex()]; i++) {
+					index.put(string(buffer.getInt(position(found, i) + id.getOffset())), i);
+				}
+				ids.put(found, index);
+			}
+		}
+		Integer i = index.get(objectId);
+		return i != null ? record(found, i) : null;
+	}
+
+	private Type type(String name) {
+		Type type = schema.getType(name);
+		if (type == null) {
+			throw new IllegalArgumentException("No type " + name + " in snapshot");
+		}
+		return type;
+	}
+
+	private Record record(Type type, int index) {
+		if (index < 0 || index >= counts[type.getIndex()]) {
+			throw new IndexOutOfBoundsException("No record " + index + " of " + type.getName());
+		}
+		return new Record(type, index);
+	}
+
+	private int position(Type type, int index) {
+		return tableOffsets[type.getIndex()] + index * type.getRecordSize();
+	}
+
+	private String string(int offset) {
+		if (offset == BinarySnapshotSchema.NULL) {
+			return null;
+		}
+		int position = stringsOffset + offset;
+		byte[] bytes = new byte[buffer.getInt(position)];
+		ByteBuffer view = buffer.duplicate();
+		view.position(position + 4);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Record of one object, values are read from the snapshot on access
+	 */
+	public final class Record {
+
+		private final Type type;
+
+		private final int index;
+
+		private final int position;
+
+		private Record(Type type, int index) {
+			this.type = type;
+			this.index = index;
+			this.position = position(type, index);
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public String getObjectId() {
+			return getString(BinarySnapshotSchema.ID);
+		}
+
+		/**
+		 * @return true if value of field is null
+		 */
+		public boolean isNull(String name) {
+			Field field = field(name);
+			if (field.getDescriptor().getKind().isPrimitive()) {
+				return isNullBit(field);
+			}
+			return buffer.getInt(position + field.getOffset()) == BinarySnapshotSchema.NULL;
+		}
+
+		/**
+		 * Primitive getters return 0 or false for null values, see
+		 * {@link #isNull(String)}
+		 */
+		public boolean getBoolean(String name) {
+			return buffer.get(offset(name, Kind.BOOLEAN)) != 0;
+		}
+
+		public int getInt(String name) {
+			return buffer.getInt(offset(name, Kind.INT));
+		}
+
+		public long getLong(String name) {
+			return buffer.getLong(offset(name, Kind.LONG));
+		}
+
+		public float getFloat(String name) {
+			return buffer.getFloat(offset(name, Kind.FLOAT));
+		}
+
+		public double getDouble(String name) {
+			return buffer.getDouble(offset(name, Kind.DOUBLE));
+		}
+
+		public String getString(String name) {
+			return string(buffer.getInt(offset(name, Kind.STRING)));
+		}
+
+		/**
+		 * @return referenced record, null if reference is null
+		 */
+		public Record getRecord(String name) {
+			Field field = field(name);
+			check(field, Kind.REF);
+			int target = buffer.getInt(position + field.getOffset());
+			return target == BinarySnapshotSchema.NULL ? null
+					: record(schema.getType(field.getDescriptor().getType()), target);
+		}
+
+		/**
+		 * @return value of field decoded to boxed primitive, string,
+		 *         {@link Record}, list, map or json node
+		 */
+		public Object getValue(String name) throws IOException {
+			Field field = field(name);
+			if (field.getDescriptor().getKind().isPrimitive() && isNullBit(field)) {
+				return null;
+			}
+			return value(field.getDescriptor(), position + field.getOffset(), false);
+		}
+
+		private Field field(String name) {
+			Field field = type.getField(name);
+			if (field == null) {
+				throw new IllegalArgumentException("No field " + name + " in " + type.getName());
+			}
+			return field;
+		}
+
+		private void check(Field field, Kind kind) {
+			if (field.getDescriptor().getKind() != kind) {
+				throw new IllegalArgumentException(
+						"Field " + field.getName() + " of " + type.getName() + " is " + field.getDescriptor());
+			}
+		}
+
+		private int offset(String name, Kind kind) {
+			Field field = field(name);
+			check(field, kind);
+			return position + field.getOffset();
+		}
+
+		private boolean isNullBit(Field field) {
+			int bit = field.getNullBit();
+			return bit != BinarySnapshotSchema.NULL && (buffer.get(position + bit / 8) & (1 << (bit % 8))) != 0;
+		}
+
+		@Override
+		public String toString() {
+			return type.getName() + "[" + index + "]";
+		}
+	}
+
+	/**
+	 * Decode value at given position of record or heap
+	 *
+	 * @param element
+	 *            true for list elements and map entries, primitives are
+	 *            preceded by presence byte
+	 */
+	private Object value(Descriptor descriptor, int position, boolean element) throws IOException {
+		if (element && descriptor.getKind().isPrimitive()) {
+			if (buffer.get(position) == 0) {
+				return null;
+			}
+			position++;
+		}
+		switch (descriptor.getKind()) {
+		case BOOLEAN:
+			return buffer.get(position) != 0;
+		case INT:
+			return buffer.getInt(position);
+		case LONG:
+			return buffer.getLong(position);
+		case FLOAT:
+			return buffer.getFloat(position);
+		case DOUBLE:
+			return buffer.getDouble(position);
+		default:
+			break;
+		}
+		int offset = buffer.getInt(position);
+		if (offset == BinarySnapshotSchema.NULL) {
+			return null;
+		}
+		switch (descriptor.getKind()) {
+		case STRING:
+			return string(offset);
+		case REF:
+			return record(schema.getType(descriptor.getType()), offset);
+		case LIST: {
+			int count = buffer.getInt(heapOffset + offset);
+			int size = descriptor.getElement().getHeapSize();
+			List<Object> result = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				result.add(value(descriptor.getElement(), heapOffset + offset + 4 + i * size, true));
+			}
+			return result;
+		}
+		case MAP: {
+			int count = buffer.getInt(heapOffset + offset);
+			int keySize = descriptor.getKey().getHeapSize();
+			int size = keySize + descriptor.getElement().getHeapSize();
+			Map<Object, Object> result = new LinkedHashMap<>();
+			for (int i = 0; i < count; i++) {
+				int entry = heapOffset + offset + 4 + i * size;
+				result.put(value(descriptor.getKey(), entry, true), value(descriptor.getElement(), entry + keySize, true));
+			}
+			return result;
+		}
+		default:
+			return mapper.readTree(string(offset));
+		}
+	}
+
+	// ----------------------------------------
+	// json
+	// ----------------------------------------
+
+	/**
+	 * Write the whole snapshot as json format, token by token the same as the
+	 * object mapper would write the snapshot it was created from. Generator is
+	 * not closed.
+	 */
+	public void writeJson(JsonGenerator gen) throws IOException {
+		writeJson(gen, null);
+	}
+
+	/**
+	 * Write the snapshot as json format with given fields of the root record
+	 * only, all fields if null. Objects are written where first referenced by
+	 * the given fields. Generator is not closed.
+	 */
+	public void writeJson(JsonGenerator gen, Set<String> fields) throws IOException {
+		boolean[][] written = new boolean[counts.length][];
+		for (int i = 0; i < counts.length; i++) {
+			written[i] = new boolean[counts[i]];
+		}
+		writeRecord(schema.getType(0), 0, gen, written, fields);
+	}
+
+	/**
+	 * @param fields
+	 *            fields to write besides id, null to write all
+	 */
+	private void writeRecord(Type type, int index, JsonGenerator gen, boolean[][] written, Set<String> fields)
+			throws IOException {
+		int position = position(type, index);
+		gen.writeStartObject();
+		for (Field field : type.getFields()) {
+			if (fields != null && !fields.contains(field.getName())
+					&& !BinarySnapshotSchema.ID.equals(field.getName())) {
+				continue;
+			}
+			gen.writeFieldName(field.getName());
+			int bit = field.getNullBit();
+			if (bit != BinarySnapshotSchema.NULL && (buffer.get(position + bit / 8) & (1 << (bit % 8))) != 0) {
+				gen.writeNull();
+			} else {
+				writeValue(field.getDescriptor(), position + field.getOffset(), false, field.isAlwaysAsId(), gen,
+						written);
+			}
+		}
+		gen.writeEndObject();
+	}
+
+	private void writeValue(Descriptor descriptor, int position, boolean element, boolean alwaysAsId,
+			JsonGenerator gen, boolean[][] written) throws IOException {
+		if (element && descriptor.getKind().isPrimitive()) {
+			if (buffer.get(position) == 0) {
+				gen.writeNull();
+				return;
+			}
+			position++;
+		}
+		switch (descriptor.getKind()) {
+		case BOOLEAN:
+			gen.writeBoolean(buffer.get(position) != 0);
+			return;
+		case INT:
+			gen.writeNumber(buffer.getInt(position));
+			return;
+		case LONG:
+			gen.writeNumber(buffer.getLong(position));
+			return;
+		case FLOAT:
+			gen.writeNumber(buffer.getFloat(position));
+			return;
+		case DOUBLE:
+			gen.writeNumber(buffer.getDouble(position));
+			return;
+		default:
+			break;
+		}
+
+		int offset = buffer.getInt(position);
+		if (offset == BinarySnapshotSchema.NULL) {
+			gen.writeNull();
+			return;
+		}
+		switch (descriptor.getKind()) {
+		case STRING:
+			gen.writeString(string(offset));
+			break;
+		case REF:
+			Type type = schema.getType(descriptor.getType());
+			if (!type.isIdentified()) {
+				writeRecord(type, offset, gen, written, null);
+			} else if (!alwaysAsId && !written[type.getIndex()][offset]) {
+				written[type.getIndex()][offset] = true;
+				writeRecord(type, offset, gen, written, null);
+			} else {
+				gen.writeString(
+						string(buffer.getInt(position(type, offset) + type.getField(BinarySnapshotSchema.ID).getOffset())));
+			}
+			break;
+		case LIST: {
+			int count = buffer.getInt(heapOffset + offset);
+			int size = descriptor.getElement().getHeapSize();
+			gen.writeStartArray();
+			for (int i = 0; i < count; i++) {
+				writeValue(descriptor.getElement(), heapOffset + offset + 4 + i * size, true, alwaysAsId, gen, written);
+			}
+			gen.writeEndArray();
+			break;
+		}
+		case MAP: {
+			int count = buffer.getInt(heapOffset + offset);
+			int keySize = descriptor.getKey().getHeapSize();
+			int size = keySize + descriptor.getElement().getHeapSize();
+			gen.writeStartObject();
+			for (int i = 0; i < count; i++) {
+				int entry = heapOffset + offset + 4 + i * size;
+				gen.writeFieldName(String.valueOf(value(descriptor.getKey(), entry, true)));
+				writeValue(descriptor.getElement(), entry + keySize, true, alwaysAsId, gen, written);
+			}
+			gen.writeEndObject();
+			break;
+		}
+		default:
+			try (JsonParser parser = jsonFactory.createParser(string(offset))) {
+				parser.nextToken();
+				gen.copyCurrentStructure(parser);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,535 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIdentityReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializer;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.Identifiable;
+
+/**
+ * Schema of {@link PersistenceFormat#BINARY} snapshots. Each class of the
+ * {@code data} package reachable from {@link DAQ} is a type with a table of
+ * fixed size records. Properties and their order are taken from the bean
+ * serializers and mixins of the json format, so that a binary snapshot can be
+ * written back as json token by token.
+ *
+ * Record of a type starts with a bitmap of null primitive wrappers, followed
+ * by fields in schema order. Primitive values are stored inline, strings,
+ * references to other records, collections and maps are stored as offsets.
+ * Identified types have the object id as first field, named {@value #ID}.
+ *
+ * The schema is stored in the header of each file, readers do not need the
+ * classes it was derived from.
+ */
+public class BinarySnapshotSchema {
+
+	/** Name of object id field, the same as in json format */
+	public static final String ID = "@id";
+
+	/** Value of offset fields and elements pointing to nothing */
+	static final int NULL = -1;
+
+	private static final String DATA_PACKAGE = DAQ.class.getPackage().getName() + ".";
+
+	public enum Kind {
+		BOOLEAN(1), INT(4), LONG(8), FLOAT(4), DOUBLE(8),
+		/** offset in string table, also used for enums */
+		STRING(4),
+		/** index of record in table of referenced type */
+		REF(4),
+		/** offset in heap of element count followed by elements */
+		LIST(4),
+		/** offset in heap of entry count followed by keys and values */
+		MAP(4),
+		/** offset in string table of value written as json */
+		JSON(4);
+
+		private final int size;
+
+		private Kind(int size) {
+			this.size = size;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * @return true if stored inline, false if stored as offset
+		 */
+		public boolean isPrimitive() {
+			return this == BOOLEAN || this == INT || this == LONG || this == FLOAT || this == DOUBLE;
+		}
+	}
+
+	/**
+	 * Description of a value: kind, referenced type and element descriptors
+	 */
+	public static final class Descriptor {
+
+		private final Kind kind;
+
+		/** Index of referenced type for {@link Kind#REF} */
+		private final int type;
+
+		/** Element of list, value of map */
+		private final Descriptor element;
+
+		/** Key of map */
+		private final Descriptor key;
+
+		/** Primitive wrapper which may be null */
+		private final boolean nullable;
+
+		Descriptor(Kind kind, int type, Descriptor element, Descriptor key, boolean nullable) {
+			this.kind = kind;
+			this.type = type;
+			this.element = element;
+			this.key = key;
+			this.nullable = nullable;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public int getType() {
+			return type;
+		}
+
+		public Descriptor getElement() {
+			return element;
+		}
+
+		public Descriptor getKey() {
+			return key;
+		}
+
+		public boolean isNullable() {
+			return nullable;
+		}
+
+		/**
+		 * Size of a list element or map entry part in heap, primitives are
+		 * preceded by a presence byte
+		 */
+		int getHeapSize() {
+			return kind.isPrimitive() ? kind.getSize() + 1 : kind.getSize();
+		}
+
+		private void write(DataOutput out) throws IOException {
+			out.writeByte(kind.ordinal());
+			out.writeBoolean(nullable);
+			if (kind == Kind.REF) {
+				out.writeInt(type);
+			} else if (kind == Kind.LIST) {
+				element.write(out);
+			} else if (kind == Kind.MAP) {
+				key.write(out);
+				element.write(out);
+			}
+		}
+
+		private static Descriptor read(DataInput in) throws IOException {
+			int ordinal = in.readByte();
+			if (ordinal < 0 || ordinal >= Kind.values().length) {
+				throw new IOException("Unknown kind of value " + ordinal);
+			}
+			Kind kind = Kind.values()[ordinal];
+			boolean nullable = in.readBoolean();
+			if (kind == Kind.REF) {
+				return new Descriptor(kind, in.readInt(), null, null, nullable);
+			} else if (kind == Kind.LIST) {
+				return new Descriptor(kind, NULL, read(in), null, nullable);
+			} else if (kind == Kind.MAP) {
+				Descriptor key = read(in);
+				return new Descriptor(kind, NULL, read(in), key, nullable);
+			}
+			return new Descriptor(kind, NULL, null, null, nullable);
+		}
+
+		@Override
+		public String toString() {
+			switch (kind) {
+			case REF:
+				return "REF(" + type + ")";
+			case LIST:
+				return "LIST(" + element + ")";
+			case MAP:
+				return "MAP(" + key + "," + element + ")";
+			default:
+				return nullable ? kind + "?" : kind.toString();
+			}
+		}
+	}
+
+	/**
+	 * Field of a record
+	 */
+	public static final class Field {
+
+		private final String name;
+
+		private final Descriptor descriptor;
+
+		/** Offset in record */
+		private final int offset;
+
+		/** Bit in null bitmap, -1 if field is not nullable primitive */
+		private final int nullBit;
+
+		/** Referenced object always written as id in json format */
+		private final boolean alwaysAsId;
+
+		/** Property writer of the json format, null if read from file */
+		final BeanPropertyWriter property;
+
+		Field(String name, Descriptor descriptor, int offset, int nullBit, boolean alwaysAsId,
+				BeanPropertyWriter property) {
+			this.name = name;
+			this.descriptor = descriptor;
+			this.offset = offset;
+			this.nullBit = nullBit;
+			this.alwaysAsId = alwaysAsId;
+			this.property = property;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Descriptor getDescriptor() {
+			return descriptor;
+		}
+
+		public int getOffset() {
+			return offset;
+		}
+
+		public int getNullBit() {
+			return nullBit;
+		}
+
+		public boolean isAlwaysAsId() {
+			return alwaysAsId;
+		}
+	}
+
+	/**
+	 * Type with its table of records
+	 */
+	public static final class Type {
+
+		private final int index;
+
+		private final String name;
+
+		private final boolean identified;
+
+		private final List<Field> fields = new ArrayList<>();
+
+		private final Map<String, Field> fieldsByName = new HashMap<>();
+
+		private int nullBytes;
+
+		private int recordSize;
+
+		/** Class the type was derived from, null if read from file */
+		final Class<?> javaClass;
+
+		Type(int index, String name, boolean identified, Class<?> javaClass) {
+			this.index = index;
+			this.name = name;
+			this.identified = identified;
+			this.javaClass = javaClass;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isIdentified() {
+			return identified;
+		}
+
+		public List<Field> getFields() {
+			return Collections.unmodifiableList(fields);
+		}
+
+		/**
+		 * @return field of given name, null if type has no such field
+		 */
+		public Field getField(String name) {
+			return fieldsByName.get(name);
+		}
+
+		public int getRecordSize() {
+			return recordSize;
+		}
+
+		public int getNullBytes() {
+			return nullBytes;
+		}
+
+		private void add(Field field) {
+			fields.add(field);
+			fieldsByName.put(field.getName(), field);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(name).append(" [");
+			for (Field field : fields) {
+				sb.append(field.getName()).append(":").append(field.getDescriptor()).append(" ");
+			}
+			return sb.append("]").toString();
+		}
+	}
+
+	private final List<Type> types = new ArrayList<>();
+
+	private final Map<String, Type> typesByName = new HashMap<>();
+
+	private final Map<Class<?>, Type> typesByClass = new HashMap<>();
+
+	private BinarySnapshotSchema() {
+	}
+
+	public List<Type> getTypes() {
+		return Collections.unmodifiableList(types);
+	}
+
+	/**
+	 * @return type of given name (simple name of class), null if there is no
+	 *         such type
+	 */
+	public Type getType(String name) {
+		return typesByName.get(name);
+	}
+
+	public Type getType(int index) {
+		return types.get(index);
+	}
+
+	Type getType(Class<?> javaClass) {
+		return typesByClass.get(javaClass);
+	}
+
+	// ----------------------------------------
+	// schema derived from json format
+	// ----------------------------------------
+
+	/**
+	 * Derive schema from serializers of given mapper, the root type is
+	 * {@link DAQ}
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the model has properties the schema cannot describe
+	 */
+	public static BinarySnapshotSchema create(ObjectMapper mapper) {
+		BinarySnapshotSchema schema = new BinarySnapshotSchema();
+		schema.derive(mapper, DAQ.class);
+		return schema;
+	}
+
+	private Type derive(ObjectMapper mapper, Class<?> javaClass) {
+		Type type = typesByClass.get(javaClass);
+		if (type != null) {
+			return type;
+		}
+
+		SerializationConfig config = mapper.getSerializationConfig();
+		JsonSerializer<Object> serializer;
+		try {
+			serializer = mapper.getSerializerProviderInstance().findValueSerializer(javaClass);
+		} catch (JsonMappingException e) {
+			throw new IllegalArgumentException("No serializer for " + javaClass, e);
+		}
+		if (serializer.getClass() != BeanSerializer.class) {
+			throw new IllegalArgumentException("Not a plain bean serializer for " + javaClass + ": " + serializer);
+		}
+		AnnotatedClass annotatedClass = config.introspectClassAnnotations(javaClass).getClassInfo();
+		boolean identified = config.getAnnotationIntrospector().findObjectIdInfo(annotatedClass) != null;
+		if (identified && !Identifiable.class.isAssignableFrom(javaClass)) {
+			throw new IllegalArgumentException("Identified type does not provide its id " + javaClass);
+		}
+
+		type = new Type(types.size(), javaClass.getSimpleName(), identified, javaClass);
+		types.add(type);
+		typesByName.put(type.getName(), type);
+		typesByClass.put(javaClass, type);
+
+		/* descriptors first, referenced types are derived recursively */
+		List<BeanPropertyWriter> properties = new ArrayList<>();
+		List<Descriptor> descriptors = new ArrayList<>();
+		Iterator<PropertyWriter> iterator = ((BeanSerializerBase) serializer).properties();
+		while (iterator.hasNext()) {
+			PropertyWriter writer = iterator.next();
+			if (!(writer instanceof BeanPropertyWriter)) {
+				throw new IllegalArgumentException("Unsupported property " + writer.getName() + " of " + javaClass);
+			}
+			BeanPropertyWriter property = (BeanPropertyWriter) writer;
+			if (config.getAnnotationIntrospector().findSerializer(property.getMember()) != null
+					|| config.getAnnotationIntrospector().findContentSerializer(property.getMember()) != null
+					|| property.willSuppressNulls() || property.getViews() != null) {
+				throw new IllegalArgumentException("Custom serialization of " + property.getName() + " of " + javaClass);
+			}
+			properties.add(property);
+			descriptors.add(describe(mapper, property.getType()));
+		}
+
+		int nullBits = 0;
+		for (Descriptor descriptor : descriptors) {
+			if (descriptor.isNullable()) {
+				nullBits++;
+			}
+		}
+		type.nullBytes = (nullBits + 7) / 8;
+
+		int offset = type.nullBytes;
+		int nullBit = 0;
+		if (identified) {
+			type.add(new Field(ID, new Descriptor(Kind.STRING, NULL, null, null, false), offset, NULL, false, null));
+			offset += Kind.STRING.getSize();
+		}
+		for (int i = 0; i < properties.size(); i++) {
+			BeanPropertyWriter property = properties.get(i);
+			Descriptor descriptor = descriptors.get(i);
+			JsonIdentityReference reference = property.getMember().getAnnotation(JsonIdentityReference.class);
+			boolean alwaysAsId = reference != null && reference.alwaysAsId();
+			type.add(new Field(property.getName(), descriptor, offset, descriptor.isNullable() ? nullBit++ : NULL,
+					alwaysAsId, property));
+			offset += descriptor.getKind().getSize();
+		}
+		type.recordSize = offset;
+		return type;
+	}
+
+	private Descriptor describe(ObjectMapper mapper, JavaType javaType) {
+		Class<?> raw = javaType.getRawClass();
+		if (raw == boolean.class || raw == Boolean.class) {
+			return new Descriptor(Kind.BOOLEAN, NULL, null, null, !raw.isPrimitive());
+		} else if (raw == int.class || raw == Integer.class) {
+			return new Descriptor(Kind.INT, NULL, null, null, !raw.isPrimitive());
+		} else if (raw == long.class || raw == Long.class) {
+			return new Descriptor(Kind.LONG, NULL, null, null, !raw.isPrimitive());
+		} else if (raw == float.class || raw == Float.class) {
+			return new Descriptor(Kind.FLOAT, NULL, null, null, !raw.isPrimitive());
+		} else if (raw == double.class || raw == Double.class) {
+			return new Descriptor(Kind.DOUBLE, NULL, null, null, !raw.isPrimitive());
+		} else if (raw == String.class || raw.isEnum()) {
+			return new Descriptor(Kind.STRING, NULL, null, null, false);
+		} else if (Collection.class.isAssignableFrom(raw) && !javaType.isArrayType()) {
+			Descriptor element = describe(mapper, javaType.getContentType());
+			if (element.getKind() == Kind.JSON) {
+				return element(Kind.JSON);
+			}
+			return new Descriptor(Kind.LIST, NULL, element, null, false);
+		} else if (Map.class.isAssignableFrom(raw)) {
+			Descriptor key = describe(mapper, javaType.getKeyType());
+			Descriptor value = describe(mapper, javaType.getContentType());
+			if ((key.getKind() != Kind.STRING && key.getKind() != Kind.INT && key.getKind() != Kind.LONG)
+					|| value.getKind() == Kind.JSON) {
+				return element(Kind.JSON);
+			}
+			return new Descriptor(Kind.MAP, NULL, value, key, false);
+		} else if (raw.getName().startsWith(DATA_PACKAGE)) {
+			return new Descriptor(Kind.REF, derive(mapper, raw).getIndex(), null, null, false);
+		}
+		return element(Kind.JSON);
+	}
+
+	private static Descriptor element(Kind kind) {
+		return new Descriptor(kind, NULL, null, null, false);
+	}
+
+	// ----------------------------------------
+	// schema stored in file
+	// ----------------------------------------
+
+	void write(DataOutput out) throws IOException {
+		out.writeInt(types.size());
+		for (Type type : types) {
+			out.writeUTF(type.getName());
+			out.writeBoolean(type.isIdentified());
+			out.writeInt(type.getNullBytes());
+			out.writeInt(type.getRecordSize());
+			out.writeInt(type.getFields().size());
+			for (Field field : type.getFields()) {
+				out.writeUTF(field.getName());
+				out.writeInt(field.getOffset());
+				out.writeInt(field.getNullBit());
+				out.writeBoolean(field.isAlwaysAsId());
+				field.getDescriptor().write(out);
+			}
+		}
+	}
+
+	static BinarySnapshotSchema read(DataInput in) throws IOException {
+		BinarySnapshotSchema schema = new BinarySnapshotSchema();
+		int typeCount = in.readInt();
+		for (int i = 0; i < typeCount; i++) {
+			Type type = new Type(i, in.readUTF(), in.readBoolean(), null);
+			type.nullBytes = in.readInt();
+			type.recordSize = in.readInt();
+			int fieldCount = in.readInt();
+			for (int j = 0; j < fieldCount; j++) {
+				String name = in.readUTF();
+				int offset = in.readInt();
+				int nullBit = in.readInt();
+				boolean alwaysAsId = in.readBoolean();
+				type.add(new Field(name, Descriptor.read(in), offset, nullBit, alwaysAsId, null));
+			}
+			schema.types.add(type);
+			schema.typesByName.put(type.getName(), type);
+		}
+		for (Type type : schema.types) {
+			for (Field field : type.getFields()) {
+				schema.validate(field.getDescriptor());
+			}
+		}
+		return schema;
+	}
+
+	private void validate(Descriptor descriptor) throws IOException {
+		if (descriptor.getKind() == Kind.REF && (descriptor.getType() < 0 || descriptor.getType() >= types.size())) {
+			throw new IOException("Reference to unknown type " + descriptor.getType());
+		}
+		if (descriptor.getElement() != null) {
+			validate(descriptor.getElement());
+		}
+		if (descriptor.getKey() != null) {
+			validate(descriptor.getKey());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return types.toString();
+	}
+
+}
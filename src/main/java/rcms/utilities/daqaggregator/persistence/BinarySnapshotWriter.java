@@ -0,0 +1,321 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.Identifiable;
+import rcms.utilities.daqaggregator.persistence.BinarySnapshotSchema.Descriptor;
+import rcms.utilities.daqaggregator.persistence.BinarySnapshotSchema.Field;
+import rcms.utilities.daqaggregator.persistence.BinarySnapshotSchema.Kind;
+import rcms.utilities.daqaggregator.persistence.BinarySnapshotSchema.Type;
+
+/**
+ * Writes DAQ snapshots in {@link PersistenceFormat#BINARY}. Layout of file:
+ *
+ * <pre>
+ * magic, version, header length
+ * header: schema, record count per type, heap size, string table size
+ * record table of each type, in schema order
+ * heap of collections and maps
+ * string table
+ * </pre>
+ *
+ * All objects reachable from {@link DAQ} are stored once in the table of
+ * their type, DAQ is the first record of its table. Strings are stored once
+ * per file.
+ */
+public class BinarySnapshotWriter {
+
+	private final ObjectMapper mapper;
+
+	private final BinarySnapshotSchema schema;
+
+	/**
+	 * @param mapper
+	 *            mapper of json format the schema is derived from, values
+	 *            not described by the schema are written with it as json
+	 */
+	public BinarySnapshotWriter(ObjectMapper mapper) {
+		this.mapper = mapper;
+		this.schema = BinarySnapshotSchema.create(mapper);
+	}
+
+	public BinarySnapshotSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Write snapshot to given stream. Stream is not closed.
+	 */
+	public void write(DAQ daq, OutputStream outputStream) throws IOException {
+		new Snapshot(daq).write(outputStream);
+	}
+
+	/**
+	 * State of writing one snapshot
+	 */
+	private final class Snapshot {
+
+		private final List<List<Object>> objects = new ArrayList<>();
+
+		private final List<Map<Object, Integer>> indexes = new ArrayList<>();
+
+		private final ByteArrayOutputStream heap = new ByteArrayOutputStream();
+
+		private final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+
+		private final DataOutputStream stringsOut = new DataOutputStream(strings);
+
+		private final Map<String, Integer> stringOffsets = new HashMap<>();
+
+		Snapshot(DAQ daq) throws IOException {
+			for (int i = 0; i < schema.getTypes().size(); i++) {
+				objects.add(new ArrayList<>());
+				indexes.add(new IdentityHashMap<Object, Integer>());
+			}
+			index(daq);
+		}
+
+		/**
+		 * Assign records to all objects reachable from DAQ
+		 */
+		private void index(DAQ daq) throws IOException {
+			Deque<Object> pending = new ArrayDeque<>();
+			register(schema.getType(DAQ.class), daq, pending);
+			while (!pending.isEmpty()) {
+				Object bean = pending.pop();
+				for (Field field : schema.getType(bean.getClass()).getFields()) {
+					if (field.property != null) {
+						collect(field.getDescriptor(), get(field, bean), pending);
+					}
+				}
+			}
+		}
+
+		private void collect(Descriptor descriptor, Object value, Deque<Object> pending) {
+			if (value == null) {
+				return;
+			}
+			switch (descriptor.getKind()) {
+			case REF:
+				register(schema.getType(descriptor.getType()), value, pending);
+				break;
+			case LIST:
+				for (Object element : (Collection<?>) value) {
+					collect(descriptor.getElement(), element, pending);
+				}
+				break;
+			case MAP:
+				for (Object element : ((Map<?, ?>) value).values()) {
+					collect(descriptor.getElement(), element, pending);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		private void register(Type type, Object bean, Deque<Object> pending) {
+			if (bean.getClass() != type.javaClass) {
+				throw new IllegalArgumentException(
+						"Subclass " + bean.getClass() + " of " + type.getName() + " not described by schema");
+			}
+			Map<Object, Integer> index = indexes.get(type.getIndex());
+			if (!index.containsKey(bean)) {
+				List<Object> table = objects.get(type.getIndex());
+				index.put(bean, table.size());
+				table.add(bean);
+				pending.push(bean);
+			}
+		}
+
+		void write(OutputStream outputStream) throws IOException {
+			List<ByteBuffer> tables = new ArrayList<>();
+			for (Type type : schema.getTypes()) {
+				List<Object> table = objects.get(type.getIndex());
+				ByteBuffer records = ByteBuffer.allocate(table.size() * type.getRecordSize());
+				for (int i = 0; i < table.size(); i++) {
+					writeRecord(type, table.get(i), records, i * type.getRecordSize());
+				}
+				tables.add(records);
+			}
+
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			DataOutputStream headerOut = new DataOutputStream(header);
+			schema.write(headerOut);
+			for (List<Object> table : objects) {
+				headerOut.writeInt(table.size());
+			}
+			headerOut.writeInt(heap.size());
+			headerOut.writeInt(strings.size());
+			headerOut.flush();
+
+			DataOutputStream out = new DataOutputStream(outputStream);
+			out.writeInt(BinarySnapshot.MAGIC);
+			out.writeInt(BinarySnapshot.VERSION);
+			out.writeInt(header.size());
+			header.writeTo(out);
+			for (ByteBuffer records : tables) {
+				out.write(records.array());
+			}
+			heap.writeTo(out);
+			strings.writeTo(out);
+			out.flush();
+		}
+
+		private void writeRecord(Type type, Object bean, ByteBuffer records, int position) throws IOException {
+			for (Field field : type.getFields()) {
+				int offset = position + field.getOffset();
+				if (field.property == null) {
+					records.putInt(offset, string(((Identifiable) bean).getObjectId()));
+					continue;
+				}
+				Object value = get(field, bean);
+				Descriptor descriptor = field.getDescriptor();
+				if (value == null && descriptor.getKind().isPrimitive()) {
+					int bit = field.getNullBit();
+					records.put(position + bit / 8, (byte) (records.get(position + bit / 8) | (1 << (bit % 8))));
+					continue;
+				}
+				switch (descriptor.getKind()) {
+				case BOOLEAN:
+					records.put(offset, (byte) ((Boolean) value ? 1 : 0));
+					break;
+				case INT:
+					records.putInt(offset, ((Number) value).intValue());
+					break;
+				case LONG:
+					records.putLong(offset, ((Number) value).longValue());
+					break;
+				case FLOAT:
+					records.putFloat(offset, ((Number) value).floatValue());
+					break;
+				case DOUBLE:
+					records.putDouble(offset, ((Number) value).doubleValue());
+					break;
+				default:
+					records.putInt(offset, offset(descriptor, value));
+				}
+			}
+		}
+
+		/**
+		 * @return offset or index of non primitive value
+		 */
+		private int offset(Descriptor descriptor, Object value) throws IOException {
+			if (value == null) {
+				return BinarySnapshotSchema.NULL;
+			}
+			switch (descriptor.getKind()) {
+			case STRING:
+				return string(value instanceof Enum ? ((Enum<?>) value).name() : (String) value);
+			case REF:
+				return indexes.get(descriptor.getType()).get(value);
+			case LIST:
+				return list(descriptor.getElement(), (Collection<?>) value);
+			case MAP:
+				return map(descriptor, (Map<?, ?>) value);
+			case JSON:
+				return string(mapper.writeValueAsString(value));
+			default:
+				throw new IllegalArgumentException("Not an offset " + descriptor);
+			}
+		}
+
+		private int list(Descriptor element, Collection<?> values) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + values.size() * element.getHeapSize());
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(values.size());
+			for (Object value : values) {
+				writeElement(element, value, out);
+			}
+			return append(bytes);
+		}
+
+		private int map(Descriptor descriptor, Map<?, ?> values) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(values.size());
+			for (Entry<?, ?> entry : values.entrySet()) {
+				if (entry.getKey() == null) {
+					throw new IllegalArgumentException("Null map key");
+				}
+				writeElement(descriptor.getKey(), entry.getKey(), out);
+				writeElement(descriptor.getElement(), entry.getValue(), out);
+			}
+			return append(bytes);
+		}
+
+		private int append(ByteArrayOutputStream bytes) throws IOException {
+			int offset = heap.size();
+			bytes.writeTo(heap);
+			return offset;
+		}
+
+		private void writeElement(Descriptor descriptor, Object value, DataOutputStream out) throws IOException {
+			if (!descriptor.getKind().isPrimitive()) {
+				/* nested collections are appended to heap before this one */
+				out.writeInt(offset(descriptor, value));
+				return;
+			}
+			out.writeBoolean(value != null);
+			switch (descriptor.getKind()) {
+			case BOOLEAN:
+				out.writeBoolean(value != null && (Boolean) value);
+				break;
+			case INT:
+				out.writeInt(value != null ? ((Number) value).intValue() : 0);
+				break;
+			case LONG:
+				out.writeLong(value != null ? ((Number) value).longValue() : 0);
+				break;
+			case FLOAT:
+				out.writeFloat(value != null ? ((Number) value).floatValue() : 0);
+				break;
+			default:
+				out.writeDouble(value != null ? ((Number) value).doubleValue() : 0);
+			}
+		}
+
+		private int string(String value) throws IOException {
+			if (value == null) {
+				return BinarySnapshotSchema.NULL;
+			}
+			Integer offset = stringOffsets.get(value);
+			if (offset == null) {
+				offset = strings.size();
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				stringsOut.writeInt(bytes.length);
+				stringsOut.write(bytes);
+				stringsOut.flush();
+				stringOffsets.put(value, offset);
+			}
+			return offset;
+		}
+
+		private Object get(Field field, Object bean) throws IOException {
+			try {
+				return field.property.get(bean);
+			} catch (Exception e) {
+				throw new IOException("Problem reading property " + field.getName() + " of " + bean.getClass(), e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of archived snapshots and flashlists in compressed formats
+ * ({@link PersistenceFormat#isCompressed()}). Codec of a file is recognized by
+ * the last extension of its name, e.g. 1496217954303.json.lz, so that archives
+ * written with different codecs can be read the same way.
+ */
+public abstract class Codec {
+
+	/** Size of buffer of compressing and decompressing streams */
+	static final int BUFFER_SIZE = 65536;
+
+	/** Gzip at default level, codec of archives written so far */
+	public static final Codec GZIP = new GzipCodec("gzip", Deflater.DEFAULT_COMPRESSION);
+
+	/** Gzip at best compression, slower to write, read as any gzip file */
+	public static final Codec GZIP_BEST = new GzipCodec("gzip-best", Deflater.BEST_COMPRESSION);
+
+	/** Fast to write and to read, lower ratio than gzip */
+	public static final Codec LZ = new LZCodec();
+
+	/**
+	 * Deflate with dictionary given in file header, only for reading. Use
+	 * {@link #dictionary(CompressionDictionary)} for writing.
+	 */
+	public static final Codec DICTIONARY = new DictionaryCodec(null);
+
+	private final String name;
+
+	private final String extension;
+
+	protected Codec(String name, String extension) {
+		this.name = name;
+		this.extension = extension;
+	}
+
+	/**
+	 * @return name of codec as in properties
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return extension appended to extension of format, e.g. .gz
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Wrap stream in compressing stream. Closing returned stream finishes
+	 * compression and closes given stream.
+	 */
+	public abstract OutputStream compress(OutputStream outputStream) throws IOException;
+
+	/**
+	 * Wrap stream in decompressing stream. Given stream is not closed if
+	 * header could not be read.
+	 */
+	public abstract InputStream decompress(InputStream inputStream) throws IOException;
+
+	/**
+	 * Codec compressing with trained dictionary. Files are read with any
+	 * dictionary codec, given that the dictionary was registered (see
+	 * {@link CompressionDictionary#register(CompressionDictionary)}).
+	 */
+	public static Codec dictionary(CompressionDictionary dictionary) {
+		CompressionDictionary.register(dictionary);
+		return new DictionaryCodec(dictionary);
+	}
+
+	/**
+	 * @return codec of file with given name, null if not compressed
+	 */
+	public static Codec decodeFromFilename(String filename) {
+		String lowerCaseFilename = filename.toLowerCase();
+		if (lowerCaseFilename.endsWith(GZIP.getExtension())) {
+			return GZIP;
+		} else if (lowerCaseFilename.endsWith(LZ.getExtension())) {
+			return LZ;
+		} else if (lowerCaseFilename.endsWith(DICTIONARY.getExtension())) {
+			return DICTIONARY;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Decode codec property. Possible values are gzip (default), gzip-best, lz
+	 * and dictionary:&lt;file&gt;, where file is a dictionary trained with
+	 * {@link CompressionDictionary#train(java.util.List, int)}, relative to
+	 * given directory.
+	 *
+	 * @param dictionaryDir
+	 *            directory of dictionaries, may be null
+	 * @throws IOException
+	 *             if dictionary could not be read
+	 * @throws IllegalArgumentException
+	 *             if codec is unknown
+	 */
+	public static Codec decode(String codecProperty, String dictionaryDir) throws IOException {
+		if (codecProperty == null || codecProperty.trim().isEmpty()) {
+			return GZIP;
+		}
+		String value = codecProperty.trim();
+		if (value.toLowerCase().startsWith(DictionaryCodec.NAME + ":")) {
+			File file = new File(value.substring(DictionaryCodec.NAME.length() + 1).trim());
+			if (!file.isAbsolute() && dictionaryDir != null) {
+				file = new File(dictionaryDir, file.getPath());
+			}
+			return dictionary(CompressionDictionary.load(file));
+		}
+		for (Codec codec : new Codec[] { GZIP, GZIP_BEST, LZ }) {
+			if (codec.getName().equalsIgnoreCase(value)) {
+				return codec;
+			}
+		}
+		throw new IllegalArgumentException("Unknown codec " + value);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Gzip at given compression level
+	 */
+	private static final class GzipCodec extends Codec {
+
+		private final int level;
+
+		GzipCodec(String name, int level) {
+			super(name, ".gz");
+			this.level = level;
+		}
+
+		@Override
+		public OutputStream compress(OutputStream outputStream) throws IOException {
+			return new GZIPOutputStream(outputStream, BUFFER_SIZE) {
+				{
+					def.setLevel(level);
+				}
+			};
+		}
+
+		@Override
+		public InputStream decompress(InputStream inputStream) throws IOException {
+			return new GZIPInputStream(inputStream, BUFFER_SIZE);
+		}
+	}
+
+}
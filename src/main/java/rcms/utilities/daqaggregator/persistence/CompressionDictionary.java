@@ -0,0 +1,280 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Dictionary of content common to archived files, used as preset dictionary of
+ * deflate by {@link Codec#dictionary(CompressionDictionary)}. Snapshots and
+ * flashlists repeat the same property names, hostnames and states in every
+ * file, with a dictionary they are compressed well even in small files.
+ *
+ * Dictionary is identified by checksum of its content, which is stored in
+ * header of compressed files. Dictionaries needed to read an archive have to
+ * be registered, e.g. with {@link #loadAll(File)}.
+ */
+public final class CompressionDictionary {
+
+	private static final Logger logger = Logger.getLogger(CompressionDictionary.class);
+
+	/** Size of deflate window, larger dictionaries are not used */
+	public static final int MAX_SIZE = 32768;
+
+	public static final String EXTENSION = ".dict";
+
+	/** Length of sequences which are counted in samples */
+	private static final int GRAM = 8;
+
+	/** Length of segments of samples the dictionary is built from */
+	private static final int SEGMENT = 64;
+
+	/** Distance of candidate segments in samples */
+	private static final int STEP = 16;
+
+	private static final Map<Integer, CompressionDictionary> registry = new ConcurrentHashMap<>();
+
+	private final byte[] content;
+
+	private final int id;
+
+	public CompressionDictionary(byte[] content) {
+		if (content.length == 0 || content.length > MAX_SIZE) {
+			throw new IllegalArgumentException("Dictionary size must be 1-" + MAX_SIZE + " bytes");
+		}
+		this.content = content.clone();
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		this.id = (int) crc.getValue();
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public int getSize() {
+		return content.length;
+	}
+
+	byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * @return name of file of dictionary, derived from id
+	 */
+	public String getFilename() {
+		return String.format("%08x", id) + EXTENSION;
+	}
+
+	/**
+	 * Make dictionary available for reading files compressed with it
+	 */
+	public static void register(CompressionDictionary dictionary) {
+		registry.put(dictionary.getId(), dictionary);
+	}
+
+	/**
+	 * @return registered dictionary with given id, null if not registered
+	 */
+	public static CompressionDictionary get(int id) {
+		return registry.get(id);
+	}
+
+	/**
+	 * Read and register dictionary
+	 */
+	public static CompressionDictionary load(File file) throws IOException {
+		if (!file.isFile()) {
+			throw new FileNotFoundException("Dictionary file not found " + file.getAbsolutePath());
+		}
+		CompressionDictionary dictionary = new CompressionDictionary(Files.readAllBytes(file.toPath()));
+		register(dictionary);
+		return dictionary;
+	}
+
+	/**
+	 * Read and register all dictionaries of given directory
+	 */
+	public static List<CompressionDictionary> loadAll(File dir) throws IOException {
+		List<CompressionDictionary> result = new ArrayList<>();
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new FileNotFoundException("Dictionary directory not found " + dir.getAbsolutePath());
+		}
+		for (File file : files) {
+			if (file.getName().endsWith(EXTENSION)) {
+				result.add(load(file));
+			}
+		}
+		logger.info("Loaded " + result.size() + " compression dictionaries from " + dir.getAbsolutePath());
+		return result;
+	}
+
+	/**
+	 * Write dictionary to given directory
+	 *
+	 * @return file of dictionary
+	 */
+	public File write(File dir) throws IOException {
+		File file = new File(dir, getFilename());
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	/**
+	 * Train dictionary on sample files. Segments of samples are selected
+	 * greedily by the number of samples which contain their 8 byte sequences,
+	 * sequences already covered by selected segments do not count again. Most
+	 * valuable segments are placed at the end of dictionary, where they are
+	 * cheapest to reference.
+	 *
+	 * @param samples
+	 *            uncompressed content of files, e.g. snapshots of different
+	 *            sessions
+	 * @param size
+	 *            maximal size of dictionary
+	 * @throws IllegalArgumentException
+	 *             if samples have no content in common
+	 */
+	public static CompressionDictionary train(List<byte[]> samples, int size) {
+		size = Math.min(size, MAX_SIZE);
+		Trainer trainer = new Trainer();
+		for (byte[] sample : samples) {
+			trainer.count(sample);
+		}
+
+		PriorityQueue<Segment> candidates = new PriorityQueue<>();
+		for (byte[] sample : samples) {
+			for (int start = 0; start + SEGMENT <= sample.length; start += STEP) {
+				Segment segment = new Segment(sample, start);
+				if (trainer.score(segment) > 0) {
+					candidates.add(segment);
+				}
+			}
+		}
+
+		List<Segment> selected = new ArrayList<>();
+		int selectedSize = 0;
+		while (selectedSize < size && !candidates.isEmpty()) {
+			Segment best = candidates.poll();
+			/* score only decreases as sequences are covered */
+			int score = trainer.score(best);
+			if (score <= 0) {
+				continue;
+			}
+			if (!candidates.isEmpty() && score < candidates.peek().score) {
+				candidates.add(best);
+				continue;
+			}
+			selected.add(best);
+			selectedSize += SEGMENT;
+			trainer.cover(best);
+		}
+		if (selected.isEmpty()) {
+			throw new IllegalArgumentException("Samples have no content in common");
+		}
+
+		Collections.reverse(selected);
+		byte[] content = new byte[Math.min(selectedSize, size)];
+		int position = content.length;
+		for (Segment segment : selected) {
+			int length = Math.min(SEGMENT, position);
+			position -= length;
+			System.arraycopy(segment.sample, segment.start + SEGMENT - length, content, position, length);
+		}
+		return new CompressionDictionary(content);
+	}
+
+	/**
+	 * Number of samples containing sequences, counted in hash table.
+	 * Collisions only make the selection of segments less precise.
+	 */
+	private static final class Trainer {
+
+		private static final int TABLE_LOG = 20;
+
+		private final int[] frequencies = new int[1 << TABLE_LOG];
+
+		/** Stamp of sample or segment which counted sequence last */
+		private final int[] stamps = new int[1 << TABLE_LOG];
+
+		private int stamp;
+
+		void count(byte[] sample) {
+			stamp++;
+			for (int i = 0; i + GRAM <= sample.length; i++) {
+				int hash = hash(sample, i);
+				if (stamps[hash] != stamp) {
+					stamps[hash] = stamp;
+					frequencies[hash]++;
+				}
+			}
+		}
+
+		/**
+		 * Update score of segment, sequences contained in single sample do not
+		 * count
+		 */
+		int score(Segment segment) {
+			stamp++;
+			int score = 0;
+			for (int i = segment.start; i + GRAM <= segment.start + SEGMENT; i++) {
+				int hash = hash(segment.sample, i);
+				if (stamps[hash] != stamp && frequencies[hash] > 1) {
+					stamps[hash] = stamp;
+					score += frequencies[hash] - 1;
+				}
+			}
+			segment.score = score;
+			return score;
+		}
+
+		void cover(Segment segment) {
+			for (int i = segment.start; i + GRAM <= segment.start + SEGMENT; i++) {
+				frequencies[hash(segment.sample, i)] = 0;
+			}
+		}
+
+		private static int hash(byte[] data, int position) {
+			long gram = 0;
+			for (int i = 0; i < GRAM; i++) {
+				gram = gram << 8 | (data[position + i] & 0xFF);
+			}
+			return (int) ((gram * 0x9E3779B97F4A7C15L) >>> (64 - TABLE_LOG));
+		}
+	}
+
+	/**
+	 * Candidate segment of sample
+	 */
+	private static final class Segment implements Comparable<Segment> {
+
+		private final byte[] sample;
+
+		private final int start;
+
+		private int score;
+
+		Segment(byte[] sample, int start) {
+			this.sample = sample;
+			this.start = start;
+		}
+
+		@Override
+		public int compareTo(Segment o) {
+			return Integer.compare(o.score, score);
+		}
+	}
+
+}
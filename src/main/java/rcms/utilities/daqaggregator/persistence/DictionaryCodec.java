@@ -0,0 +1,160 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Deflate with trained preset dictionary.
+ *
+ * <pre>
+ * magic, dictionary id, raw deflate stream, crc32 and length of content
+ * </pre>
+ */
+final class DictionaryCodec extends Codec {
+
+	static final String NAME = "dictionary";
+
+	static final int MAGIC = 0x4451445A;
+
+	/** Dictionary used for writing, null if only for reading */
+	private final CompressionDictionary dictionary;
+
+	DictionaryCodec(CompressionDictionary dictionary) {
+		super(NAME, ".dz");
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	public OutputStream compress(OutputStream outputStream) throws IOException {
+		if (dictionary == null) {
+			throw new IllegalStateException("No dictionary to compress with");
+		}
+		DataOutputStream out = new DataOutputStream(outputStream);
+		out.writeInt(MAGIC);
+		out.writeInt(dictionary.getId());
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setDictionary(dictionary.getContent());
+		return new DictionaryOutputStream(outputStream, deflater);
+	}
+
+	@Override
+	public InputStream decompress(InputStream inputStream) throws IOException {
+		DataInputStream in = new DataInputStream(inputStream);
+		if (in.readInt() != MAGIC) {
+			throw new ZipException("Not in dictionary format");
+		}
+		int id = in.readInt();
+		CompressionDictionary found = dictionary != null && dictionary.getId() == id ? dictionary
+				: CompressionDictionary.get(id);
+		if (found == null) {
+			throw new ZipException("Unknown compression dictionary " + String.format("%08x", id));
+		}
+		Inflater inflater = new Inflater(true);
+		inflater.setDictionary(found.getContent());
+		return new DictionaryInputStream(inputStream, inflater);
+	}
+
+	@Override
+	public String toString() {
+		return dictionary != null ? NAME + ":" + dictionary.getFilename() : NAME;
+	}
+
+	private static final class DictionaryOutputStream extends DeflaterOutputStream {
+
+		private final CRC32 crc = new CRC32();
+
+		private int length;
+
+		DictionaryOutputStream(OutputStream outputStream, Deflater deflater) {
+			super(outputStream, deflater, BUFFER_SIZE);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			super.write(b, off, len);
+			crc.update(b, off, len);
+			length += len;
+		}
+
+		@Override
+		public void finish() throws IOException {
+			if (!def.finished()) {
+				super.finish();
+				DataOutputStream trailer = new DataOutputStream(out);
+				trailer.writeInt((int) crc.getValue());
+				trailer.writeInt(length);
+				trailer.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				def.end();
+			}
+		}
+	}
+
+	private static final class DictionaryInputStream extends InflaterInputStream {
+
+		private final CRC32 crc = new CRC32();
+
+		private int length;
+
+		private boolean checked;
+
+		DictionaryInputStream(InputStream inputStream, Inflater inflater) {
+			super(inputStream, inflater, BUFFER_SIZE);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count = super.read(b, off, len);
+			if (count > 0) {
+				crc.update(b, off, count);
+				length += count;
+			} else if (count == -1 && !checked) {
+				checked = true;
+				checkTrailer();
+			}
+			return count;
+		}
+
+		/**
+		 * Trailer follows end of deflate stream, partially read to buffer
+		 * already
+		 */
+		private void checkTrailer() throws IOException {
+			byte[] trailer = new byte[8];
+			int buffered = Math.min(inf.getRemaining(), trailer.length);
+			System.arraycopy(buf, len - inf.getRemaining(), trailer, 0, buffered);
+			new DataInputStream(in).readFully(trailer, buffered, trailer.length - buffered);
+			DataInputStream trailerIn = new DataInputStream(new ByteArrayInputStream(trailer));
+			if (trailerIn.readInt() != (int) crc.getValue() || trailerIn.readInt() != length) {
+				throw new ZipException("Corrupt dictionary compressed stream");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				inf.end();
+			}
+		}
+	}
+
+}
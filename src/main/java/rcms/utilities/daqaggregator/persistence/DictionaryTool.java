@@ -0,0 +1,66 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Train compression dictionary on archived snapshots or flashlists.
+ *
+ * use e.g. as
+ *
+ * <pre>
+ *   java -cp target/DAQAggregator-...-jar-with-dependencies.jar \
+ *     rcms.utilities.daqaggregator.persistence.DictionaryTool \
+ *     /daqdata/dictionaries/ 32768 /daqdata/snapshots/2017/5/31/8/*.json.gz
+ * </pre>
+ *
+ * Samples should come from different sessions and runs. Compressed samples
+ * are decompressed with codec recognized by filename. Name of the written
+ * dictionary is printed, use it as persistence.snapshot.codec =
+ * dictionary:&lt;name&gt; with persistence.dictionary.dir set to the
+ * directory.
+ */
+public class DictionaryTool {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 4) {
+			System.err.println("usage: DictionaryTool dir size sample sample [sample ...]");
+			System.exit(1);
+		}
+
+		List<byte[]> samples = new ArrayList<>();
+		for (int i = 2; i < args.length; i++) {
+			samples.add(read(new File(args[i])));
+		}
+		CompressionDictionary dictionary = CompressionDictionary.train(samples, Integer.parseInt(args[1]));
+		System.out.println(dictionary.write(new File(args[0])).getName());
+	}
+
+	/**
+	 * @return uncompressed content of file
+	 */
+	static byte[] read(File file) throws IOException {
+		Codec codec = Codec.decodeFromFilename(file.getName());
+		InputStream in = new FileInputStream(file);
+		try {
+			if (codec != null) {
+				in = codec.decompress(in);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[Codec.BUFFER_SIZE];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+}
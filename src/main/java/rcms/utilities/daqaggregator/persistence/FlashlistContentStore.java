@@ -0,0 +1,209 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistTable;
+import rcms.utilities.daqaggregator.datasource.FlashlistType;
+
+/**
+ * Content addressed store of flashlist rows. Rows which repeat, e.g. rows of
+ * static flashlists, are stored once in a file named by SHA-1 hash of their
+ * serialized content. Persisted flashlists reference the rows by hash, see
+ * {@link Flashlist#getRowsHash()}.
+ *
+ * Store is kept in {@link #DIR} of flashlist directory, e.g.
+ * CONTENT/3f/3f786850e387550fdab836ed7e6dc881de23001b.json.gz
+ *
+ * Rows read from the store are cached by hash, rows referenced by consecutive
+ * flashlists are parsed once.
+ */
+public class FlashlistContentStore {
+
+	private static final Logger logger = Logger.getLogger(FlashlistContentStore.class);
+
+	/** Directory of store in flashlist directory, next to flashlist types */
+	public static final String DIR = "CONTENT";
+
+	/** Number of parsed rows kept in cache */
+	private static final int CACHE_SIZE = 64;
+
+	/** Directories between flashlist directory and flashlist file */
+	private static final int DEPTH = 6;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final Map<String, Object> cache = Collections
+			.synchronizedMap(new LinkedHashMap<String, Object>(CACHE_SIZE, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			});
+
+	private final String flashlistDir;
+
+	private final PersistenceFormat format;
+
+	private final Codec codec;
+
+	private final ObjectWriter writer;
+
+	/** Fingerprint and hash of rows stored last, per type */
+	private final Map<FlashlistType, Long> fingerprints = new EnumMap<>(FlashlistType.class);
+	private final Map<FlashlistType, String> hashes = new EnumMap<>(FlashlistType.class);
+
+	/**
+	 * @param flashlistDir
+	 *            base directory of flashlists
+	 */
+	public FlashlistContentStore(String flashlistDir, PersistenceFormat format, Codec codec) {
+		this.flashlistDir = flashlistDir;
+		this.format = format;
+		this.codec = codec;
+		this.writer = format.getMapper().writer();
+	}
+
+	public String getFlashlistDir() {
+		return flashlistDir;
+	}
+
+	/**
+	 * Store rows of flashlist, unless stored already
+	 *
+	 * @return flashlist referencing stored rows, given flashlist if it has no
+	 *         rows
+	 */
+	public Flashlist store(Flashlist flashlist) throws IOException {
+		Object rows = flashlist.getSerializedRows();
+		if (rows == null) {
+			return flashlist;
+		}
+		FlashlistType type = flashlist.getFlashlistType();
+
+		/* rows not changed since last stored are not serialized again */
+		Long fingerprint = rows instanceof FlashlistTable ? ((FlashlistTable) rows).fingerprint() : null;
+		if (fingerprint != null && fingerprint.equals(fingerprints.get(type))) {
+			return flashlist.toRowsReference(hashes.get(type));
+		}
+
+		byte[] content = writer.writeValueAsBytes(rows);
+		String hash = hash(content);
+		File file = new File(flashlistDir + DIR + "/" + hash.substring(0, 2), hash + format.getExtension(codec));
+		if (!file.exists()) {
+			write(file, content);
+			logger.debug("Stored rows of " + type + " as " + hash);
+		}
+		fingerprints.put(type, fingerprint);
+		hashes.put(type, hash);
+		return flashlist.toRowsReference(hash);
+	}
+
+	private void write(File file, byte[] content) throws IOException {
+		File dir = file.getParentFile();
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Failed to create following dir: " + dir.getAbsolutePath());
+		}
+		File tmpFile = new File(dir, file.getName() + ".tmp");
+		OutputStream out = new FileOutputStream(tmpFile);
+		if (format.isCompressed()) {
+			out = codec.compress(out);
+		}
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		if (!tmpFile.renameTo(file)) {
+			throw new IOException("Problem renaming file: " + tmpFile);
+		}
+	}
+
+	/**
+	 * Set rows of flashlist referencing stored rows
+	 *
+	 * @param flashlistFile
+	 *            file or segment the flashlist was read from, store is found
+	 *            relative to it
+	 */
+	public static void resolve(Flashlist flashlist, File flashlistFile) throws IOException {
+		String hash = flashlist.getRowsHash();
+		Object rows = cache.get(hash);
+		if (rows == null) {
+			rows = read(find(flashlistFile, hash));
+			cache.put(hash, rows);
+		}
+		flashlist.setSerializedRows(rows);
+		flashlist.setRowsHash(null);
+	}
+
+	private static File find(File flashlistFile, String hash) throws IOException {
+		File base = flashlistFile.getAbsoluteFile();
+		for (int i = 0; i < DEPTH && base != null; i++) {
+			base = base.getParentFile();
+		}
+		File dir = new File(base, DIR + "/" + (hash.length() > 2 ? hash.substring(0, 2) : hash));
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().startsWith(hash + ".") && !file.getName().endsWith(".tmp")) {
+					return file;
+				}
+			}
+		}
+		throw new FileNotFoundException("Rows " + hash + " not found in " + dir.getAbsolutePath());
+	}
+
+	private static Object read(File file) throws IOException {
+		PersistenceFormat format = PersistenceFormat.decodeFromFilename(file.getName());
+		if (format == null) {
+			throw new IOException("Unknown format of stored rows " + file.getAbsolutePath());
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			if (format.isCompressed()) {
+				in = Codec.decodeFromFilename(file.getName()).decompress(in);
+			}
+			JsonNode rowsNode = format.getMapper().readTree(in);
+			Flashlist holder = new Flashlist();
+			holder.setRowsNode(rowsNode);
+			return holder.getSerializedRows();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String hash(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+			char[] result = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				result[2 * i] = HEX[(digest[i] >> 4) & 0x0F];
+				result[2 * i + 1] = HEX[digest[i] & 0x0F];
+			}
+			return new String(result);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Segment file of flashlist bundles. A bundle holds all flashlists of one
+ * cycle serialized as array in flashlist format, compressed independently of
+ * other bundles, so that a cycle is read with one sequential read.
+ *
+ * <pre>
+ * record: timestamp (8 bytes), length of bundle (4 bytes), bundle
+ * </pre>
+ *
+ * Segments are stored in time based directories of {@link #DIR} in flashlist
+ * directory, named by timestamp of first bundle and extension of flashlist
+ * format followed by {@link #EXTENSION}, e.g. 1472743072594.json.gz.seg. All
+ * bundles of a segment are of the same hour.
+ */
+public class FlashlistSegment {
+
+	private static final Logger logger = Logger.getLogger(FlashlistSegment.class);
+
+	/** Directory of segments in flashlist directory, next to flashlist types */
+	public static final String DIR = "BUNDLE";
+
+	public static final String EXTENSION = ".seg";
+
+	private static final int HEADER_SIZE = 12;
+
+	/**
+	 * Position of bundle in segment file
+	 */
+	public static final class Record {
+
+		private final File file;
+
+		private final long timestamp;
+
+		private final long offset;
+
+		private final int length;
+
+		Record(File file, long timestamp, long offset, int length) {
+			this.file = file;
+			this.timestamp = timestamp;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		@Override
+		public String toString() {
+			return file.getName() + "@" + offset;
+		}
+	}
+
+	private FlashlistSegment() {
+	}
+
+	/**
+	 * Append bundle to segment file, file is created if it does not exist
+	 */
+	static void append(File file, long timestamp, ByteArrayOutputStream bundle) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER_SIZE);
+		DataOutputStream headerOut = new DataOutputStream(header);
+		headerOut.writeLong(timestamp);
+		headerOut.writeInt(bundle.size());
+		try (FileOutputStream fos = new FileOutputStream(file, true)) {
+			header.writeTo(fos);
+			bundle.writeTo(fos);
+		}
+	}
+
+	/**
+	 * Read positions of all bundles in segment, without reading bundles. Bundle
+	 * which was not completely written, e.g. on crash, is skipped.
+	 */
+	public static List<Record> index(File file) throws IOException {
+		List<Record> result = new ArrayList<>();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long offset = 0;
+			long fileLength = raf.length();
+			while (offset + HEADER_SIZE <= fileLength) {
+				raf.seek(offset);
+				long timestamp = raf.readLong();
+				int length = raf.readInt();
+				if (length < 0 || offset + HEADER_SIZE + length > fileLength) {
+					break;
+				}
+				result.add(new Record(file, timestamp, offset + HEADER_SIZE, length));
+				offset += HEADER_SIZE + length;
+			}
+			if (offset != fileLength) {
+				logger.warn("Skipping incomplete bundle at " + offset + " of segment " + file.getAbsolutePath());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Read bundle with single read
+	 */
+	public static byte[] read(Record record) throws IOException {
+		byte[] bundle = new byte[record.length];
+		try (RandomAccessFile raf = new RandomAccessFile(record.file, "r")) {
+			raf.seek(record.offset);
+			raf.readFully(bundle);
+		} catch (EOFException e) {
+			throw new IOException("Segment truncated " + record, e);
+		}
+		return bundle;
+	}
+
+	/**
+	 * @return extension of segments of given format and codec
+	 */
+	public static String getExtension(PersistenceFormat format, Codec codec) {
+		return format.getExtension(codec) + EXTENSION;
+	}
+
+	/**
+	 * @return format of bundles in segment, null if not a segment
+	 */
+	public static PersistenceFormat getFormat(File file) {
+		String name = file.getName();
+		if (!name.endsWith(EXTENSION)) {
+			return null;
+		}
+		return PersistenceFormat.decodeFromFilename(name.substring(0, name.length() - EXTENSION.length()));
+	}
+
+	/**
+	 * @return codec of bundles in segment of compressed format
+	 */
+	public static Codec getCodec(File file) {
+		String name = file.getName();
+		Codec codec = Codec.decodeFromFilename(name.substring(0, name.length() - EXTENSION.length()));
+		return codec != null ? codec : Codec.GZIP;
+	}
+
+}
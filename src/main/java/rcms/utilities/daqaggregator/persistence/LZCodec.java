@@ -0,0 +1,397 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * LZ77 codec of the LZ4 family. Input is split into blocks, each block is
+ * compressed independently with single pass over hash table of 4 byte
+ * sequences, without entropy coding. Writing and reading is several times
+ * faster than gzip, at lower ratio.
+ *
+ * <pre>
+ * stream: magic, block size, blocks, 0
+ * block: raw length, stored length, data (stored as is if not smaller)
+ * sequence: token (4 bits literal length, 4 bits match length - 4),
+ *           extra literal length, literals, offset (2 bytes), extra match length
+ * </pre>
+ *
+ * Last sequence of block has literals only.
+ */
+final class LZCodec extends Codec {
+
+	static final int MAGIC = 0x44514C5A;
+
+	static final int BLOCK_SIZE = 1 << 18;
+
+	private static final int MAX_BLOCK_SIZE = 1 << 24;
+
+	private static final int MIN_MATCH = 4;
+
+	/** Last bytes of block are always literals */
+	private static final int LAST_LITERALS = 5;
+
+	/** No match starts in last bytes of block */
+	private static final int MATCH_FIND_LIMIT = 12;
+
+	private static final int MAX_OFFSET = 65535;
+
+	private static final int HASH_LOG = 14;
+
+	/** Misses before step of match search grows */
+	private static final int SKIP_TRIGGER = 6;
+
+	LZCodec() {
+		super("lz", ".lz");
+	}
+
+	@Override
+	public OutputStream compress(OutputStream outputStream) throws IOException {
+		return new LZOutputStream(outputStream, BLOCK_SIZE);
+	}
+
+	@Override
+	public InputStream decompress(InputStream inputStream) throws IOException {
+		return new LZInputStream(inputStream);
+	}
+
+	static int maxCompressedLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	/**
+	 * Compress block
+	 *
+	 * @param table
+	 *            hash table of 1 &lt;&lt; {@link #HASH_LOG} entries, reused
+	 *            between blocks
+	 * @return length of compressed block in destination
+	 */
+	static int compress(byte[] src, int length, byte[] dst, int[] table) {
+		Arrays.fill(table, -1);
+		int ip = 0;
+		int anchor = 0;
+		int op = 0;
+		int matchFindLimit = length - MATCH_FIND_LIMIT;
+		int matchLimit = length - LAST_LITERALS;
+		int misses = 1 << SKIP_TRIGGER;
+
+		while (ip < matchFindLimit) {
+			int sequence = readInt(src, ip);
+			int hash = hash(sequence);
+			int ref = table[hash];
+			table[hash] = ip;
+			if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+				ip += misses++ >>> SKIP_TRIGGER;
+				continue;
+			}
+			misses = 1 << SKIP_TRIGGER;
+
+			while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+				ip--;
+				ref--;
+			}
+			int matchLength = MIN_MATCH;
+			while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+				matchLength++;
+			}
+
+			op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+			ip += matchLength;
+			anchor = ip;
+			if (ip < matchFindLimit) {
+				table[hash(readInt(src, ip - 2))] = ip - 2;
+			}
+		}
+		return writeSequence(src, anchor, length - anchor, dst, op, 0, 0);
+	}
+
+	/**
+	 * Decompress block
+	 *
+	 * @return length of decompressed block
+	 * @throws IOException
+	 *             if block is corrupted
+	 */
+	static int decompress(byte[] src, int length, byte[] dst, int dstLength) throws IOException {
+		int ip = 0;
+		int op = 0;
+		while (ip < length) {
+			int token = src[ip++] & 0xFF;
+
+			int literals = token >>> 4;
+			if (literals == 15) {
+				int b;
+				do {
+					checkBounds(ip < length);
+					b = src[ip++] & 0xFF;
+					literals += b;
+				} while (b == 255);
+			}
+			checkBounds(literals >= 0 && literals <= length - ip && literals <= dstLength - op);
+			System.arraycopy(src, ip, dst, op, literals);
+			ip += literals;
+			op += literals;
+			if (ip == length) {
+				break;
+			}
+
+			checkBounds(ip + 2 <= length);
+			int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+			ip += 2;
+			checkBounds(offset > 0 && offset <= op);
+
+			int matchLength = token & 0x0F;
+			if (matchLength == 15) {
+				int b;
+				do {
+					checkBounds(ip < length);
+					b = src[ip++] & 0xFF;
+					matchLength += b;
+				} while (b == 255);
+			}
+			matchLength += MIN_MATCH;
+			checkBounds(matchLength >= MIN_MATCH && matchLength <= dstLength - op);
+			int ref = op - offset;
+			if (offset >= matchLength) {
+				System.arraycopy(dst, ref, dst, op, matchLength);
+				op += matchLength;
+			} else {
+				/* overlapping match repeats last bytes */
+				for (int i = 0; i < matchLength; i++) {
+					dst[op++] = dst[ref++];
+				}
+			}
+		}
+		return op;
+	}
+
+	private static void checkBounds(boolean condition) throws IOException {
+		if (!condition) {
+			throw new IOException("Corrupted lz block");
+		}
+	}
+
+	private static int writeSequence(byte[] src, int literalStart, int literals, byte[] dst, int op, int offset,
+			int matchLength) {
+		int tokenPosition = op++;
+		int token;
+		if (literals >= 15) {
+			token = 15 << 4;
+			op = writeLength(dst, op, literals - 15);
+		} else {
+			token = literals << 4;
+		}
+		System.arraycopy(src, literalStart, dst, op, literals);
+		op += literals;
+
+		if (matchLength > 0) {
+			dst[op++] = (byte) offset;
+			dst[op++] = (byte) (offset >>> 8);
+			int length = matchLength - MIN_MATCH;
+			if (length >= 15) {
+				token |= 15;
+				op = writeLength(dst, op, length - 15);
+			} else {
+				token |= length;
+			}
+		}
+		dst[tokenPosition] = (byte) token;
+		return op;
+	}
+
+	private static int writeLength(byte[] dst, int op, int length) {
+		while (length >= 255) {
+			dst[op++] = (byte) 255;
+			length -= 255;
+		}
+		dst[op++] = (byte) length;
+		return op;
+	}
+
+	private static int readInt(byte[] src, int position) {
+		return (src[position] & 0xFF) | (src[position + 1] & 0xFF) << 8 | (src[position + 2] & 0xFF) << 16
+				| (src[position + 3] & 0xFF) << 24;
+	}
+
+	private static int hash(int sequence) {
+		return (sequence * -1640531535) >>> (32 - HASH_LOG);
+	}
+
+	static final class LZOutputStream extends OutputStream {
+
+		private final DataOutputStream out;
+
+		private final byte[] block;
+
+		private final byte[] compressed;
+
+		private final int[] table = new int[1 << HASH_LOG];
+
+		private int position;
+
+		private boolean closed;
+
+		LZOutputStream(OutputStream outputStream, int blockSize) throws IOException {
+			this.out = new DataOutputStream(outputStream);
+			this.block = new byte[blockSize];
+			this.compressed = new byte[maxCompressedLength(blockSize)];
+			out.writeInt(MAGIC);
+			out.writeInt(blockSize);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (position == block.length) {
+				writeBlock();
+			}
+			block[position++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (position == block.length) {
+					writeBlock();
+				}
+				int count = Math.min(len, block.length - position);
+				System.arraycopy(b, off, block, position, count);
+				position += count;
+				off += count;
+				len -= count;
+			}
+		}
+
+		private void writeBlock() throws IOException {
+			if (position == 0) {
+				return;
+			}
+			int length = compress(block, position, compressed, table);
+			out.writeInt(position);
+			if (length < position) {
+				out.writeInt(length);
+				out.write(compressed, 0, length);
+			} else {
+				out.writeInt(position);
+				out.write(block, 0, position);
+			}
+			position = 0;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writeBlock();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				writeBlock();
+				out.writeInt(0);
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	static final class LZInputStream extends InputStream {
+
+		private final DataInputStream in;
+
+		private final byte[] block;
+
+		private byte[] compressed = new byte[0];
+
+		private int position;
+
+		private int limit;
+
+		private boolean finished;
+
+		LZInputStream(InputStream inputStream) throws IOException {
+			this.in = new DataInputStream(inputStream);
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not in lz format");
+			}
+			int blockSize = in.readInt();
+			if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+				throw new IOException("Invalid lz block size " + blockSize);
+			}
+			this.block = new byte[blockSize];
+		}
+
+		/**
+		 * @return false at end of stream
+		 */
+		private boolean readBlock() throws IOException {
+			if (finished) {
+				return false;
+			}
+			int length = in.readInt();
+			if (length == 0) {
+				finished = true;
+				return false;
+			}
+			int stored = in.readInt();
+			if (length < 0 || length > block.length || stored <= 0 || stored > length) {
+				throw new IOException("Corrupted lz block header");
+			}
+			if (stored == length) {
+				in.readFully(block, 0, length);
+			} else {
+				if (compressed.length < stored) {
+					compressed = new byte[maxCompressedLength(block.length)];
+				}
+				in.readFully(compressed, 0, stored);
+				if (decompress(compressed, stored, block, length) != length) {
+					throw new IOException("Corrupted lz block");
+				}
+			}
+			position = 0;
+			limit = length;
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (position == limit && !readBlock()) {
+				return -1;
+			}
+			return block[position++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (position == limit && !readBlock()) {
+				return -1;
+			}
+			int count = Math.min(len, limit - position);
+			System.arraycopy(block, position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return limit - position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+}
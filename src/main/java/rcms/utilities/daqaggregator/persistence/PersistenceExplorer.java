@@ -6,6 +6,7 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
@@ -31,6 +32,9 @@ public class PersistenceExplorer {
 
 	private static final Logger logger = Logger.getLogger(PersistenceExplorer.class);
 
+	/** Prefix of directories of downsampled tiers, followed by period in ms */
+	public static final String TIER_DIR_PREFIX = "tier-";
+
 	TimeZone tz = TimeZone.getTimeZone("UTC");
 	DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'");
 
@@ -224,6 +228,75 @@ public class PersistenceExplorer {
 		return entry;
 	}
 
+	/**
+	 * Explore snapshots with at least given resolution. The coarsest
+	 * downsampled tier with period not longer than the resolution is explored
+	 * first, periods not covered by it are explored in finer tiers and finally
+	 * in original snapshots. See {@link SnapshotCompactor}.
+	 * 
+	 * @param resolution
+	 *            requested resolution in ms, 0 for original snapshots only
+	 * @return tuple with chunk of explored files and timestamp of most recent
+	 *         one
+	 */
+	public Pair<Long, List<File>> explore(Long startTimestamp, Long endTimestamp, String dir, int chunkSize,
+			long resolution) throws IOException {
+		List<Long> periods = new ArrayList<>();
+		for (long period : getTierPeriods(dir)) {
+			if (period <= resolution) {
+				periods.add(period);
+			}
+		}
+		Collections.sort(periods, Collections.reverseOrder());
+		periods.add(0L);
+
+		List<File> result = new ArrayList<>();
+		long mostRecentExplored = 0L;
+		long start = startTimestamp;
+		for (long period : periods) {
+			String sourceDir = period == 0 ? dir : getTierDir(dir, period);
+			if (!new File(sourceDir).exists() || result.size() >= chunkSize) {
+				continue;
+			}
+			Pair<Long, List<File>> explored = explore(start, endTimestamp, sourceDir, chunkSize - result.size());
+			if (!explored.getRight().isEmpty()) {
+				logger.debug("Explored " + explored.getRight().size() + " snapshots with period " + period + "ms");
+				result.addAll(explored.getRight());
+				mostRecentExplored = explored.getLeft();
+				/* downsampled snapshot covers its whole period */
+				start = Math.max(start, explored.getLeft() + Math.max(period, 1) - 1);
+			}
+		}
+		return Pair.of(mostRecentExplored, result);
+	}
+
+	/**
+	 * @return directory of downsampled tier with given period
+	 */
+	public static String getTierDir(String dir, long period) {
+		return (dir.endsWith("/") ? dir : dir + "/") + TIER_DIR_PREFIX + period + "/";
+	}
+
+	/**
+	 * @return periods of downsampled tiers existing in given directory
+	 */
+	public static List<Long> getTierPeriods(String dir) {
+		List<Long> result = new ArrayList<>();
+		File[] files = new File(dir).listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory() && file.getName().startsWith(TIER_DIR_PREFIX)) {
+					try {
+						result.add(Long.parseLong(file.getName().substring(TIER_DIR_PREFIX.length())));
+					} catch (NumberFormatException e) {
+						// ignore directory
+					}
+				}
+			}
+		}
+		return result;
+	}
+
 	public FileSystemConnector getFileSystemConnector() {
 		return fileSystemConnector;
 	}
@@ -24,7 +24,10 @@ public enum PersistenceFormat {
 	JSONREFPREFIXED(".ref.json", true, new ObjectMapper()),
 
 	@Deprecated
-	JSONREFPREFIXEDUGLY(".ref.json",false, new ObjectMapper());
+	JSONREFPREFIXEDUGLY(".ref.json",false, new ObjectMapper()),
+
+	/** Snapshots only, see {@link BinarySnapshot} */
+	BINARY(".daqb", false, new ObjectMapper());
 
 	private final String extension;
 	private final boolean prettyPrint;
@@ -47,16 +50,86 @@ public enum PersistenceFormat {
 	public ObjectMapper getMapper() {
 		return mapper;
 	}
-	
+
+	/**
+	 * @return true if files of this format are compressed with a {@link Codec}
+	 */
+	public boolean isCompressed() {
+		return this == ZIPPED || this == SMILE_ZIPPED;
+	}
+
+	/**
+	 * @return true if this format is encoded with smile binary json
+	 */
+	public boolean isSmile() {
+		return this == SMILE || this == SMILE_ZIPPED;
+	}
+
+	/**
+	 * @return true if snapshots of this format are serialized with ref mixins,
+	 *         which prefix references with ref_
+	 */
+	public boolean isRefPrefixed() {
+		return this == JSONREFPREFIXED || this == JSONREFPREFIXEDUGLY;
+	}
+
+	/**
+	 * @return uncompressed counterpart of this format
+	 */
+	public PersistenceFormat getUncompressed() {
+		switch (this) {
+		case ZIPPED:
+			return JSON;
+		case SMILE_ZIPPED:
+			return SMILE;
+		default:
+			return this;
+		}
+	}
+
+	/**
+	 * @return media type of uncompressed content of this format
+	 */
+	public String getContentType() {
+		if (isSmile()) {
+			return "application/x-jackson-smile";
+		} else if (this == BINARY) {
+			return "application/octet-stream";
+		}
+		return "application/json";
+	}
+
+	/**
+	 * @return extension of files of this format compressed with given codec,
+	 *         e.g. .json.lz
+	 */
+	public String getExtension(Codec codec) {
+		if (!isCompressed()) {
+			return extension;
+		}
+		return extension.substring(0, extension.lastIndexOf('.')) + codec.getExtension();
+	}
+
+	/**
+	 * Compressed formats are recognized with extension of any {@link Codec}
+	 */
 	public static PersistenceFormat decodeFromFilename(String filename){
-		if(filename.toLowerCase().endsWith(ZIPPED.getExtension())){
-			return ZIPPED;
-		} else if(filename.toLowerCase().endsWith(SMILE_ZIPPED.getExtension())){
-			return SMILE_ZIPPED;
-		} else if(filename.toLowerCase().endsWith(JSON.getExtension())){
+		Codec codec = Codec.decodeFromFilename(filename);
+		if (codec != null) {
+			filename = filename.substring(0, filename.length() - codec.getExtension().length());
+			if (filename.toLowerCase().endsWith(JSON.getExtension())) {
+				return ZIPPED;
+			} else if (filename.toLowerCase().endsWith(SMILE.getExtension())) {
+				return SMILE_ZIPPED;
+			}
+			return null;
+		}
+		if(filename.toLowerCase().endsWith(JSON.getExtension())){
 			return JSON;
 		} else if(filename.toLowerCase().endsWith(SMILE.getExtension())){
 			return SMILE;
+		} else if(filename.toLowerCase().endsWith(BINARY.getExtension())){
+			return BINARY;
 		} else {
 			return null;
 		}
@@ -75,6 +148,8 @@ public enum PersistenceFormat {
 			return PersistenceFormat.JSONUGLY;
 		else if (PersistenceFormat.JSONREFPREFIXEDUGLY.name().equalsIgnoreCase(formatProperty))
 			return PersistenceFormat.JSONREFPREFIXEDUGLY;
+		else if (PersistenceFormat.BINARY.name().equalsIgnoreCase(formatProperty))
+			return PersistenceFormat.BINARY;
 		else {
 			return PersistenceFormat.SMILE;
 		}
@@ -1,23 +1,20 @@
 package rcms.utilities.daqaggregator.persistence;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import org.apache.log4j.Logger;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import rcms.utilities.daqaggregator.data.DAQ;
 import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistType;
+import rcms.utilities.daqaggregator.timeseries.TimeSeriesStore;
 
 /**
  * This class manages persistence
@@ -36,8 +33,40 @@ public class PersistorManager {
 	private final PersistenceFormat snapshotFormat;
 	private final PersistenceFormat flashlistFormat;
 
+	/** Codecs of compressed formats */
+	private Codec snapshotCodec = Codec.GZIP;
+	private Codec flashlistCodec = Codec.GZIP;
+
 	protected final StructureSerializer persistor;
 
+	/** Archive of metric time series, null if not kept */
+	private TimeSeriesStore timeSeriesStore;
+
+	/** Skip pretty printing of persisted snapshots and flashlists */
+	private boolean compact;
+
+	/**
+	 * Cycles of flashlists per segment file, flashlists are persisted in
+	 * separate files per type if 0
+	 */
+	private int flashlistSegmentSize;
+
+	/** Segment file bundles are appended to, null before first bundle */
+	private File flashlistSegment;
+
+	private int bundlesInSegment;
+
+	/** Types of flashlists which rows are stored in content store */
+	private Set<FlashlistType> flashlistDedup = EnumSet.noneOf(FlashlistType.class);
+
+	private FlashlistContentStore contentStore;
+
+	/**
+	 * Serialization buffer reused between persisted objects, file is written
+	 * with single write
+	 */
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 20);
+
 	/** Constructor */
 	public PersistorManager(String snapshotPersistenceDir, String flashlistPersistenceDir,
 			PersistenceFormat snapshotFormat, PersistenceFormat flashlistFormat) {
@@ -77,7 +106,7 @@ public class PersistorManager {
 
 			Date current = new Date(daq.getLastUpdate());
 			createTimeDirs(snapshotPersistenceDir, current);
-			String extension = snapshotFormat.getExtension();
+			String extension = snapshotFormat.getExtension(snapshotCodec);
 
 			String snapshotFilename = current.getTime() + extension;
 			String pathname = getTimeDir(snapshotPersistenceDir, current) + snapshotFilename;
@@ -85,9 +114,11 @@ public class PersistorManager {
 			File tmpfile = new File(tmpPathname);
 			File file = new File(pathname);
 
-			FileOutputStream fos = new FileOutputStream(tmpfile);
-
-			persistor.serialize(daq, fos, snapshotFormat);
+			synchronized (buffer) {
+				buffer.reset();
+				persistor.serialize(daq, buffer, snapshotFormat, snapshotCodec, compact);
+				writeBuffer(tmpfile);
+			}
 
 			boolean success = tmpfile.renameTo(file);
 			if(success){
@@ -106,6 +137,39 @@ public class PersistorManager {
 		}
 	}
 
+	/**
+	 * Append metrics of snapshot to time series archive, if configured
+	 * 
+	 * @param daq
+	 *            snapshot of which metrics are archived
+	 */
+	public void persistTimeSeries(DAQ daq) {
+		if (timeSeriesStore == null) {
+			return;
+		}
+		try {
+			long startTime = System.currentTimeMillis();
+			timeSeriesStore.append(daq);
+			logger.debug("Appended metrics to time series in " + (System.currentTimeMillis() - startTime) + "ms");
+		} catch (IOException e) {
+			logger.warn("Problem persisting time series " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Write open chunk of time series archive, e.g. before exit
+	 */
+	public void flushTimeSeries() {
+		if (timeSeriesStore == null) {
+			return;
+		}
+		try {
+			timeSeriesStore.flush();
+		} catch (IOException e) {
+			logger.warn("Problem persisting time series " + e.getMessage());
+		}
+	}
+
 	/**
 	 * 
 	 * Persist given flashlist. It will be persisted in time-based directory
@@ -129,41 +193,39 @@ public class PersistorManager {
 				+ flashlist.getRetrievalDate());
 		createTimeDirs(flashlistBase, flashlist.getRetrievalDate());
 
-		String flashlistFilename = flashlist.getRetrievalDate().getTime() + getFlashlistFormat().getExtension();
+		String flashlistFilename = flashlist.getRetrievalDate().getTime() + getFlashlistFormat().getExtension(flashlistCodec);
 		File file = new File(getTimeDir(flashlistBase, flashlist.getRetrievalDate()) + flashlistFilename);
 
-		ObjectMapper mapper = getFlashlistFormat().getMapper();
-		
-		OutputStream finalOutputStream  = new FileOutputStream(file);
-
-		PersistenceFormat format = getFlashlistFormat();
-		
-		switch (format) {
-
-		case JSON:
-			// nothing to do
-			break;
-		case ZIPPED:
-			GZIPOutputStream gzis = new GZIPOutputStream(finalOutputStream);
-			finalOutputStream = gzis;
-			break;
-		default:
-			logger.warn("Format of flashlist not available");
+		synchronized (buffer) {
+			flashlist = dedup(flashlist, base);
+			buffer.reset();
+			persistor.serializeFlashlist(flashlist, buffer, getFlashlistFormat(), flashlistCodec, compact);
+			writeBuffer(file);
 		}
-
-		// mapper.addMixIn(Flashlist.class,
-		// rcms.utilities.daqaggregator.FlashlistMixin.class);
-
-		mapper.writerWithDefaultPrettyPrinter().writeValue(finalOutputStream, flashlist);
 		return file.getAbsolutePath();
 	}
 
+	private void writeBuffer(File file) throws IOException {
+		try (FileOutputStream fos = new FileOutputStream(file)) {
+			buffer.writeTo(fos);
+		}
+	}
+
 	/**
 	 * Persist all flashlists. There will be one separate directory created for
-	 * each flashlist
+	 * each flashlist, unless flashlists are persisted in bundles
 	 */
 	public void persistFlashlists(Collection<Flashlist> flashlists) {
 
+		if (flashlistSegmentSize > 0) {
+			try {
+				persistFlashlistBundle(flashlists, getFlashlistPersistenceDir());
+			} catch (IOException e) {
+				logger.error("Problem persisting flashlist bundle", e);
+			}
+			return;
+		}
+
 		int success = 0, fail = 0;
 
 		Map<String, Long> flashlistPersistTimes = new HashMap<>(flashlists.size(), 1);
@@ -189,6 +251,72 @@ public class PersistorManager {
 		logger.info("Persisted " + success + " flashlists sucessfully, " + fail + " failures");
 	}
 
+	/**
+	 * Persist all flashlists of one cycle as single bundle appended to segment
+	 * file, see {@link FlashlistSegment}. New segment is started after
+	 * configured number of bundles and every hour.
+	 * 
+	 * @param base
+	 *            base directory for persistence
+	 * @return absolute path to segment file
+	 */
+	public String persistFlashlistBundle(Collection<Flashlist> flashlists, String base) throws IOException {
+		long startTime = System.currentTimeMillis();
+		Date timestamp = null;
+		for (Flashlist flashlist : flashlists) {
+			if (flashlist.getRetrievalDate() != null
+					&& (timestamp == null || timestamp.before(flashlist.getRetrievalDate()))) {
+				timestamp = flashlist.getRetrievalDate();
+			}
+		}
+		if (timestamp == null) {
+			timestamp = new Date();
+		}
+
+		String segmentBase = base + FlashlistSegment.DIR + "/";
+		String timeDir = getTimeDir(segmentBase, timestamp);
+		if (flashlistSegment == null || bundlesInSegment >= flashlistSegmentSize
+				|| !new File(timeDir).equals(flashlistSegment.getParentFile())) {
+			createTimeDirs(segmentBase, timestamp);
+			flashlistSegment = new File(timeDir,
+					timestamp.getTime() + FlashlistSegment.getExtension(getFlashlistFormat(), flashlistCodec));
+			bundlesInSegment = 0;
+		}
+
+		synchronized (buffer) {
+			if (!flashlistDedup.isEmpty()) {
+				List<Flashlist> deduplicated = new ArrayList<>(flashlists.size());
+				for (Flashlist flashlist : flashlists) {
+					deduplicated.add(dedup(flashlist, base));
+				}
+				flashlists = deduplicated;
+			}
+			buffer.reset();
+			persistor.serializeFlashlistBundle(flashlists, buffer, getFlashlistFormat(), flashlistCodec, compact);
+			FlashlistSegment.append(flashlistSegment, timestamp.getTime(), buffer);
+		}
+		bundlesInSegment++;
+		logger.info(String.format("Persisted bundle of %d flashlists in %d ms", flashlists.size(),
+				System.currentTimeMillis() - startTime));
+		return flashlistSegment.getAbsolutePath();
+	}
+
+	/**
+	 * Store rows of flashlist of deduplicated type in content store, see
+	 * {@link FlashlistContentStore}
+	 * 
+	 * @return flashlist to be persisted in place of given flashlist
+	 */
+	private Flashlist dedup(Flashlist flashlist, String base) throws IOException {
+		if (!flashlistDedup.contains(flashlist.getFlashlistType())) {
+			return flashlist;
+		}
+		if (contentStore == null || !contentStore.getFlashlistDir().equals(base)) {
+			contentStore = new FlashlistContentStore(base, getFlashlistFormat(), flashlistCodec);
+		}
+		return contentStore.store(flashlist);
+	}
+
 	/**
 	 * Create time-base directory structure for given date
 	 * 
@@ -219,18 +347,31 @@ public class PersistorManager {
 	 * @return absolute path to time-based directory
 	 */
 	public String getTimeDir(String baseDir, Date date) {
+		logger.trace("Date: " + date);
+		return getTimeDir(baseDir, date.getTime());
+	}
+
+	/**
+	 * Get the directory based on given timestamp, layout is year/month/day/hour
+	 * in UTC. All archives of snapshots, flashlists and time series use this
+	 * layout.
+	 * 
+	 * @param baseDir
+	 *            base directory where time-based directory will be situated
+	 * @param timestamp
+	 *            timestamp in milliseconds for which time directory will be
+	 *            returned
+	 * @return path to time-based directory
+	 */
+	public static String getTimeDir(String baseDir, long timestamp) {
 		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-		cal.setTime(date);
+		cal.setTimeInMillis(timestamp);
 		int year = cal.get(Calendar.YEAR);
 		int month = cal.get(Calendar.MONTH) + 1;
 		int day = cal.get(Calendar.DAY_OF_MONTH);
 		int hour = cal.get(Calendar.HOUR_OF_DAY);
 
-		logger.trace("Date: " + date);
-		logger.trace(year + ", " + month + ", " + day + ", " + hour);
-
-		String result = baseDir + year + "/" + month + "/" + day + "/" + hour + "/";
-		return result;
+		return baseDir + year + "/" + month + "/" + day + "/" + hour + "/";
 	}
 
 	public String getFlashlistPersistenceDir() {
@@ -245,4 +386,53 @@ public class PersistorManager {
 		return snapshotPersistenceDir;
 	}
 
+	public TimeSeriesStore getTimeSeriesStore() {
+		return timeSeriesStore;
+	}
+
+	public void setTimeSeriesStore(TimeSeriesStore timeSeriesStore) {
+		this.timeSeriesStore = timeSeriesStore;
+	}
+
+	public Codec getSnapshotCodec() {
+		return snapshotCodec;
+	}
+
+	public void setSnapshotCodec(Codec snapshotCodec) {
+		this.snapshotCodec = snapshotCodec;
+	}
+
+	public Codec getFlashlistCodec() {
+		return flashlistCodec;
+	}
+
+	public void setFlashlistCodec(Codec flashlistCodec) {
+		this.flashlistCodec = flashlistCodec;
+	}
+
+	public int getFlashlistSegmentSize() {
+		return flashlistSegmentSize;
+	}
+
+	public void setFlashlistSegmentSize(int flashlistSegmentSize) {
+		this.flashlistSegmentSize = flashlistSegmentSize;
+	}
+
+	public Set<FlashlistType> getFlashlistDedup() {
+		return flashlistDedup;
+	}
+
+	public void setFlashlistDedup(Set<FlashlistType> flashlistDedup) {
+		this.flashlistDedup = flashlistDedup;
+		this.contentStore = null;
+	}
+
+	public boolean isCompact() {
+		return compact;
+	}
+
+	public void setCompact(boolean compact) {
+		this.compact = compact;
+	}
+
 }
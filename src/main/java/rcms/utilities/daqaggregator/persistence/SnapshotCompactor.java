@@ -0,0 +1,388 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Background compaction of snapshot archive. Snapshots younger than the full
+ * resolution window are kept as they are. Older hours are downsampled into
+ * tiers (see {@link SnapshotDownsampler}), stored in tier directories next to
+ * the time-based directories of snapshots (see
+ * {@link PersistenceExplorer#getTierDir(String, long)}), and original
+ * snapshots are pruned. Tiers are pruned after their own retention period.
+ */
+public class SnapshotCompactor implements Runnable {
+
+	private static final Logger logger = Logger.getLogger(SnapshotCompactor.class);
+
+	private static final long HOUR = 3600000;
+
+	private final String dir;
+
+	private final long fullResolutionPeriod;
+
+	private final List<Tier> tiers;
+
+	private final boolean pruneOriginals;
+
+	private final FileSystemConnector fileSystemConnector = new FileSystemConnector();
+
+	private long compactedHours;
+
+	private long prunedSnapshots;
+
+	/**
+	 * @param dir
+	 *            snapshot persistence directory
+	 * @param fullResolutionPeriod
+	 *            period in ms for which original snapshots are kept
+	 * @param tiers
+	 *            downsampled tiers, periods must divide an hour
+	 * @param pruneOriginals
+	 *            delete original snapshots after they are downsampled
+	 */
+	public SnapshotCompactor(String dir, long fullResolutionPeriod, List<Tier> tiers, boolean pruneOriginals) {
+		this.dir = dir.endsWith("/") ? dir : dir + "/";
+		this.fullResolutionPeriod = fullResolutionPeriod;
+		this.tiers = new ArrayList<>(tiers);
+		this.pruneOriginals = pruneOriginals;
+		for (Tier tier : tiers) {
+			if (tier.period <= 0 || HOUR % tier.period != 0) {
+				throw new IllegalArgumentException("Period of tier " + tier.period + "ms does not divide an hour");
+			}
+		}
+		Collections.sort(this.tiers, new Comparator<Tier>() {
+			@Override
+			public int compare(Tier o1, Tier o2) {
+				return Long.compare(o1.period, o2.period);
+			}
+		});
+	}
+
+	@Override
+	public void run() {
+		try {
+			compact(System.currentTimeMillis());
+		} catch (Exception e) {
+			logger.error("Problem compacting snapshots in " + dir, e);
+		}
+	}
+
+	/**
+	 * Downsample hours older than the full resolution window and apply
+	 * retention of tiers
+	 * 
+	 * @param now
+	 *            current time
+	 */
+	public synchronized void compact(long now) throws IOException {
+		long startTime = System.currentTimeMillis();
+		long cutoff = now - fullResolutionPeriod;
+		int hours = 0;
+		for (File hourDir : getHourDirs(dir)) {
+			long hourStart = getHourStart(hourDir);
+			if (hourStart + HOUR > cutoff) {
+				continue;
+			}
+			if (compactHour(hourDir, hourStart)) {
+				hours++;
+			}
+		}
+
+		for (Tier tier : tiers) {
+			if (tier.retention > 0) {
+				pruneTier(tier, now - tier.retention);
+			}
+		}
+		if (hours > 0) {
+			logger.info("Compacted " + hours + " hours of snapshots in " + (System.currentTimeMillis() - startTime)
+					+ "ms, pruned " + prunedSnapshots + " snapshots in total");
+		}
+	}
+
+	/**
+	 * @return true if hour was compacted now
+	 */
+	private boolean compactHour(File hourDir, long hourStart) throws IOException {
+		List<File> snapshots = new ArrayList<>();
+		for (File file : fileSystemConnector.getFiles(hourDir.getAbsolutePath())) {
+			if (getTimestamp(file) != null && PersistenceFormat.decodeFromFilename(file.getName()) != null) {
+				snapshots.add(file);
+			}
+		}
+		if (snapshots.isEmpty()) {
+			deleteIfEmpty(hourDir);
+			return false;
+		}
+		if (!tiers.isEmpty() && isCompacted(tiers.get(0), hourStart)) {
+			return false;
+		}
+
+		SnapshotDownsampler[] downsamplers = new SnapshotDownsampler[tiers.size()];
+		PersistenceFormat format = null;
+		String extension = null;
+		int unreadable = 0;
+		for (File snapshot : snapshots) {
+			long timestamp = getTimestamp(snapshot);
+			JsonNode tree;
+			try {
+				PersistenceFormat snapshotFormat = PersistenceFormat.decodeFromFilename(snapshot.getName());
+				tree = read(snapshot, snapshotFormat);
+				format = snapshotFormat;
+				extension = snapshot.getName().substring(snapshot.getName().indexOf('.'));
+				if (format == PersistenceFormat.BINARY) {
+					/* downsampled snapshots are trees, written as json */
+					format = PersistenceFormat.ZIPPED;
+					extension = format.getExtension(Codec.GZIP);
+				} else if (Codec.decodeFromFilename(extension) == Codec.DICTIONARY) {
+					/* dictionary of originals is not known for writing */
+					extension = format.getExtension(Codec.GZIP);
+				}
+			} catch (IOException e) {
+				logger.warn("Skipping snapshot which could not be read: " + snapshot + ", " + e.getMessage());
+				unreadable++;
+				continue;
+			}
+			for (int i = 0; i < tiers.size(); i++) {
+				Tier tier = tiers.get(i);
+				long bucket = timestamp - timestamp % tier.period;
+				if (downsamplers[i] != null && downsamplers[i].getStart() != bucket) {
+					write(tier, downsamplers[i], format, extension);
+					downsamplers[i] = null;
+				}
+				if (downsamplers[i] == null) {
+					downsamplers[i] = new SnapshotDownsampler(bucket, tier.period);
+				}
+				downsamplers[i].add(tree);
+			}
+		}
+		for (int i = 0; i < tiers.size(); i++) {
+			if (downsamplers[i] != null) {
+				write(tiers.get(i), downsamplers[i], format, extension);
+			}
+		}
+
+		if (unreadable == snapshots.size()) {
+			logger.warn("No snapshot of " + hourDir + " could be read, hour is not compacted");
+			return false;
+		}
+
+		/* originals are pruned only if all of them are in written tiers */
+		if (unreadable > 0) {
+			logger.warn("Keeping original snapshots of " + hourDir + ", " + unreadable + " of "
+					+ snapshots.size() + " could not be read");
+		} else if (pruneOriginals) {
+			for (File snapshot : snapshots) {
+				if (snapshot.delete()) {
+					prunedSnapshots++;
+				} else {
+					logger.warn("Could not delete compacted snapshot " + snapshot);
+				}
+			}
+			deleteIfEmpty(hourDir);
+		}
+		compactedHours++;
+		return true;
+	}
+
+	private boolean isCompacted(Tier tier, long hourStart) {
+		File tierHourDir = new File(PersistorManager.getTimeDir(PersistenceExplorer.getTierDir(dir, tier.period), hourStart));
+		String[] files = tierHourDir.list();
+		return files != null && files.length > 0;
+	}
+
+	private void write(Tier tier, SnapshotDownsampler downsampler, PersistenceFormat format, String extension)
+			throws IOException {
+		File timeDir = new File(PersistorManager.getTimeDir(PersistenceExplorer.getTierDir(dir, tier.period), downsampler.getStart()));
+		if (!timeDir.exists() && !timeDir.mkdirs()) {
+			throw new IOException("Failed to create following dir: " + timeDir.getAbsolutePath());
+		}
+		File file = new File(timeDir, downsampler.getStart() + extension);
+		File tmpFile = new File(timeDir, downsampler.getStart() + extension + ".tmp");
+		ObjectMapper mapper = format.getMapper();
+		OutputStream out = new FileOutputStream(tmpFile);
+		if (format.isCompressed()) {
+			out = codec(file).compress(out);
+		}
+		try {
+			if (format.isPrettyPrint()) {
+				mapper.writerWithDefaultPrettyPrinter().writeValue(out, downsampler.build());
+			} else {
+				mapper.writeValue(out, downsampler.build());
+			}
+		} finally {
+			out.close();
+		}
+		if (!tmpFile.renameTo(file)) {
+			throw new IOException("Problem renaming file: " + tmpFile);
+		}
+	}
+
+	private void pruneTier(Tier tier, long cutoff) throws IOException {
+		String tierDir = PersistenceExplorer.getTierDir(dir, tier.period);
+		if (!new File(tierDir).exists()) {
+			return;
+		}
+		for (File hourDir : getHourDirs(tierDir)) {
+			if (getHourStart(hourDir) + HOUR <= cutoff) {
+				for (File file : fileSystemConnector.getFiles(hourDir.getAbsolutePath())) {
+					if (!file.delete()) {
+						logger.warn("Could not delete expired downsampled snapshot " + file);
+					}
+				}
+				deleteIfEmpty(hourDir);
+			}
+		}
+	}
+
+	static JsonNode read(File file, PersistenceFormat format) throws IOException {
+		if (format == PersistenceFormat.BINARY) {
+			TokenBuffer buffer = new TokenBuffer(format.getMapper(), false);
+			BinarySnapshot.open(file).writeJson(buffer);
+			return format.getMapper().readTree(buffer.asParser());
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			if (format.isCompressed()) {
+				in = codec(file).decompress(in);
+			}
+			return format.getMapper().readTree(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Codec codec(File file) {
+		Codec codec = Codec.decodeFromFilename(file.getName());
+		return codec != null ? codec : Codec.GZIP;
+	}
+
+	private List<File> getHourDirs(String base) throws IOException {
+		List<File> result = new ArrayList<>();
+		if (!new File(base).exists()) {
+			return result;
+		}
+		for (File year : fileSystemConnector.getDirs(base)) {
+			for (File month : fileSystemConnector.getDirs(year.getAbsolutePath())) {
+				for (File day : fileSystemConnector.getDirs(month.getAbsolutePath())) {
+					result.addAll(fileSystemConnector.getDirs(day.getAbsolutePath()));
+				}
+			}
+		}
+		return result;
+	}
+
+	private static long getHourStart(File hourDir) {
+		File day = hourDir.getParentFile();
+		File month = day.getParentFile();
+		File year = month.getParentFile();
+		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		cal.clear();
+		cal.set(Integer.parseInt(year.getName()), Integer.parseInt(month.getName()) - 1,
+				Integer.parseInt(day.getName()), Integer.parseInt(hourDir.getName()), 0, 0);
+		return cal.getTimeInMillis();
+	}
+
+	private static Long getTimestamp(File file) {
+		String name = file.getName();
+		int dotIdx = name.indexOf('.');
+		if (dotIdx == -1 || name.endsWith(".tmp")) {
+			return null;
+		}
+		try {
+			return Long.parseLong(name.substring(0, dotIdx));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Delete directory and its parents up to time-based base directory if
+	 * they are empty
+	 */
+	private static void deleteIfEmpty(File hourDir) {
+		File current = hourDir;
+		for (int i = 0; i < 4 && current != null; i++) {
+			String[] content = current.list();
+			if (content == null || content.length > 0 || !current.delete()) {
+				return;
+			}
+			current = current.getParentFile();
+		}
+	}
+
+	public long getCompactedHours() {
+		return compactedHours;
+	}
+
+	public long getPrunedSnapshots() {
+		return prunedSnapshots;
+	}
+
+	/**
+	 * Downsampled tier
+	 */
+	public static class Tier {
+
+		private final long period;
+
+		private final long retention;
+
+		/**
+		 * @param period
+		 *            period of downsampled snapshots in ms
+		 * @param retention
+		 *            period in ms for which downsampled snapshots are kept, 0
+		 *            to keep them forever
+		 */
+		public Tier(long period, long retention) {
+			this.period = period;
+			this.retention = retention;
+		}
+
+		public long getPeriod() {
+			return period;
+		}
+
+		public long getRetention() {
+			return retention;
+		}
+
+		/**
+		 * Parse tiers from comma separated period:retention pairs in minutes
+		 * and hours, e.g. 1:720,10:0
+		 */
+		public static List<Tier> parse(String value) {
+			List<Tier> result = new ArrayList<>();
+			for (String tier : value.split(",")) {
+				String[] parts = tier.trim().split(":");
+				long period = Long.parseLong(parts[0].trim()) * 60000;
+				long retention = parts.length > 1 ? Long.parseLong(parts[1].trim()) * HOUR : 0;
+				result.add(new Tier(period, retention));
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return "Tier [period=" + period + ", retention=" + retention + "]";
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Aggregates snapshots of one period into single downsampled snapshot.
+ * Downsampled snapshot is the last snapshot of the period with numeric
+ * fields replaced by their mean over the period (rounded for integral
+ * fields), so that it can be read as any other snapshot. Minimum and maximum
+ * of numeric fields are stored in the {@value #DOWNSAMPLING} property, in
+ * trees mirroring the snapshot structure.
+ */
+public class SnapshotDownsampler {
+
+	public static final String DOWNSAMPLING = "downsampling";
+
+	private static final JsonNodeFactory factory = JsonNodeFactory.instance;
+
+	private final long start;
+
+	private final long period;
+
+	/** Sum, minimum, maximum and count of numeric fields by path */
+	private final Map<String, double[]> statistics = new HashMap<>();
+
+	private JsonNode last;
+
+	private int count;
+
+	/**
+	 * @param start
+	 *            start of period, used as timestamp of downsampled snapshot
+	 * @param period
+	 *            length of period in ms
+	 */
+	public SnapshotDownsampler(long start, long period) {
+		this.start = start;
+		this.period = period;
+	}
+
+	public void add(JsonNode snapshot) {
+		accumulate(snapshot, "");
+		last = snapshot;
+		count++;
+	}
+
+	private void accumulate(JsonNode node, String path) {
+		if (node.isNumber()) {
+			double value = node.asDouble();
+			double[] stat = statistics.get(path);
+			if (stat == null) {
+				statistics.put(path, new double[] { value, value, value, 1 });
+			} else {
+				stat[0] += value;
+				stat[1] = Math.min(stat[1], value);
+				stat[2] = Math.max(stat[2], value);
+				stat[3]++;
+			}
+		} else if (node.isObject()) {
+			Iterator<Entry<String, JsonNode>> fields = node.fields();
+			while (fields.hasNext()) {
+				Entry<String, JsonNode> field = fields.next();
+				accumulate(field.getValue(), path + "/" + field.getKey());
+			}
+		} else if (node.isArray()) {
+			for (int i = 0; i < node.size(); i++) {
+				accumulate(node.get(i), path + "/" + i);
+			}
+		}
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * @return downsampled snapshot, null if no snapshot was added
+	 */
+	public JsonNode build() {
+		if (last == null) {
+			return null;
+		}
+		JsonNode result = mean(last, "");
+		if (result instanceof ObjectNode) {
+			ObjectNode snapshot = (ObjectNode) result;
+			if (snapshot.has("lastUpdate")) {
+				snapshot.put("lastUpdate", start);
+			}
+			ObjectNode downsampling = factory.objectNode();
+			downsampling.put("start", start);
+			downsampling.put("period", period);
+			downsampling.put("count", count);
+			downsampling.set("min", extreme(last, "", 1));
+			downsampling.set("max", extreme(last, "", 2));
+			snapshot.set(DOWNSAMPLING, downsampling);
+		}
+		return result;
+	}
+
+	private JsonNode mean(JsonNode node, String path) {
+		if (node.isNumber()) {
+			double[] stat = statistics.get(path);
+			double mean = stat[0] / stat[3];
+			return node.isIntegralNumber() ? factory.numberNode(Math.round(mean)) : factory.numberNode(mean);
+		} else if (node.isObject()) {
+			ObjectNode result = factory.objectNode();
+			Iterator<Entry<String, JsonNode>> fields = node.fields();
+			while (fields.hasNext()) {
+				Entry<String, JsonNode> field = fields.next();
+				result.set(field.getKey(), mean(field.getValue(), path + "/" + field.getKey()));
+			}
+			return result;
+		} else if (node.isArray()) {
+			ArrayNode result = factory.arrayNode();
+			for (int i = 0; i < node.size(); i++) {
+				result.add(mean(node.get(i), path + "/" + i));
+			}
+			return result;
+		}
+		return node;
+	}
+
+	/**
+	 * @return tree of minimums or maximums of numeric fields, null if node
+	 *         has no numeric fields. Objects keep their id.
+	 */
+	private JsonNode extreme(JsonNode node, String path, int index) {
+		if (node.isNumber()) {
+			double value = statistics.get(path)[index];
+			return node.isIntegralNumber() ? factory.numberNode((long) value) : factory.numberNode(value);
+		} else if (node.isObject()) {
+			ObjectNode result = factory.objectNode();
+			Iterator<Entry<String, JsonNode>> fields = node.fields();
+			while (fields.hasNext()) {
+				Entry<String, JsonNode> field = fields.next();
+				JsonNode value = extreme(field.getValue(), path + "/" + field.getKey(), index);
+				if (value != null) {
+					result.set(field.getKey(), value);
+				}
+			}
+			if (result.size() == 0) {
+				return null;
+			}
+			if (node.has("@id")) {
+				result.set("@id", node.get("@id"));
+			}
+			return result;
+		} else if (node.isArray()) {
+			ArrayNode result = factory.arrayNode();
+			boolean numeric = false;
+			for (int i = 0; i < node.size(); i++) {
+				JsonNode value = extreme(node.get(i), path + "/" + i, index);
+				numeric |= value != null;
+				result.add(value == null ? factory.nullNode() : value);
+			}
+			return numeric ? result : null;
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,567 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIdentityReference;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.ObjectIdInfo;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializer;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+import com.fasterxml.jackson.databind.ser.std.EnumSerializer;
+import com.fasterxml.jackson.databind.util.EnumValues;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.Identifiable;
+
+/**
+ * Serializes DAQ snapshots by walking the model and writing directly to a
+ * {@link JsonGenerator}. Output is the same as the output of the object mapper
+ * it is built from, token by token.
+ *
+ * Properties, their order and names, and identity information are taken once
+ * from the bean serializers and mixins of the object mapper and compiled into
+ * a plan of property writers using method handles, so that primitive values
+ * are not boxed. Object ids are taken from {@link Identifiable} objects
+ * instead of being generated during serialization, only objects already
+ * written in full are tracked so that later occurrences are written as ids.
+ */
+public class StreamingSnapshotSerializer {
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private static final MethodType INT_GETTER = MethodType.methodType(int.class, Object.class);
+	private static final MethodType LONG_GETTER = MethodType.methodType(long.class, Object.class);
+	private static final MethodType DOUBLE_GETTER = MethodType.methodType(double.class, Object.class);
+	private static final MethodType FLOAT_GETTER = MethodType.methodType(float.class, Object.class);
+	private static final MethodType BOOLEAN_GETTER = MethodType.methodType(boolean.class, Object.class);
+	private static final MethodType OBJECT_GETTER = MethodType.methodType(Object.class, Object.class);
+
+	/** Mapper used for values of types not covered by plans */
+	private final ObjectMapper mapper;
+
+	private final SerializationConfig config;
+
+	private final AnnotationIntrospector introspector;
+
+	private final Map<Class<?>, BeanPlan> plans = new HashMap<>();
+
+	private final BeanPlan root;
+
+	/**
+	 * @param mapper
+	 *            configured object mapper, must not be reconfigured afterwards
+	 * @throws IllegalArgumentException
+	 *             if serialization of DAQ with given mapper uses features not
+	 *             supported by plans
+	 */
+	public StreamingSnapshotSerializer(ObjectMapper mapper) {
+		this.mapper = mapper;
+		this.config = mapper.getSerializationConfig();
+		this.introspector = config.getAnnotationIntrospector();
+		for (SerializationFeature feature : new SerializationFeature[] { SerializationFeature.WRAP_ROOT_VALUE,
+				SerializationFeature.WRITE_ENUMS_USING_TO_STRING, SerializationFeature.WRITE_ENUMS_USING_INDEX,
+				SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, SerializationFeature.WRITE_SINGLE_ELEM_ARRAYS_UNWRAPPED,
+				SerializationFeature.USE_EQUALITY_FOR_OBJECT_ID }) {
+			if (config.isEnabled(feature)) {
+				throw new IllegalArgumentException("Serialization feature not supported " + feature);
+			}
+		}
+		if (!config.isEnabled(SerializationFeature.WRITE_NULL_MAP_VALUES)) {
+			throw new IllegalArgumentException("Null map values must be written");
+		}
+		this.root = plan(DAQ.class);
+	}
+
+	/**
+	 * Write snapshot to given generator. Generator is not closed.
+	 */
+	public void serialize(DAQ daq, JsonGenerator gen) throws IOException {
+		root.write(daq, gen, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+	}
+
+	private BeanPlan plan(Class<?> type) {
+		BeanPlan plan = plans.get(type);
+		if (plan != null) {
+			return plan;
+		}
+		JsonSerializer<Object> serializer;
+		try {
+			serializer = mapper.getSerializerProviderInstance().findValueSerializer(type);
+		} catch (JsonMappingException e) {
+			throw new IllegalArgumentException("No serializer for " + type, e);
+		}
+		if (serializer.getClass() != BeanSerializer.class) {
+			throw new IllegalArgumentException("Not a plain bean serializer for " + type + ": " + serializer);
+		}
+
+		AnnotatedClass annotatedClass = config.introspectClassAnnotations(type).getClassInfo();
+		ObjectIdInfo idInfo = introspector.findObjectIdInfo(annotatedClass);
+		SerializedString idName = null;
+		if (idInfo != null) {
+			idInfo = introspector.findObjectReferenceInfo(annotatedClass, idInfo);
+			if (idInfo.getAlwaysAsId() || !Identifiable.class.isAssignableFrom(type)) {
+				throw new IllegalArgumentException("Identity of " + type + " not supported");
+			}
+			idName = new SerializedString(idInfo.getPropertyName().getSimpleName());
+		}
+
+		plan = new BeanPlan(type, idName);
+		plans.put(type, plan);
+
+		Iterator<PropertyWriter> properties = ((BeanSerializerBase) serializer).properties();
+		while (properties.hasNext()) {
+			PropertyWriter property = properties.next();
+			if (!(property instanceof BeanPropertyWriter)) {
+				throw new IllegalArgumentException("Property not supported " + property);
+			}
+			plan.properties.add(property((BeanPropertyWriter) property));
+		}
+		return plan;
+	}
+
+	private Property property(BeanPropertyWriter writer) {
+		AnnotatedMember annotated = writer.getMember();
+		if (introspector.findSerializer(annotated) != null || introspector.findContentSerializer(annotated) != null
+				|| introspector.findKeySerializer(annotated) != null || writer.getTypeSerializer() != null
+				|| writer.willSuppressNulls() || writer.getViews() != null) {
+			throw new IllegalArgumentException("Property configuration not supported " + writer);
+		}
+		SerializableString name = writer.getSerializedName();
+		Member member = annotated.getMember();
+		((AccessibleObject) member).setAccessible(true);
+
+		MethodHandle getter;
+		Class<?> rawType;
+		try {
+			if (member instanceof Method) {
+				getter = lookup.unreflect((Method) member);
+				rawType = ((Method) member).getReturnType();
+			} else {
+				getter = lookup.unreflectGetter((Field) member);
+				rawType = ((Field) member).getType();
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Property not accessible " + writer, e);
+		}
+
+		if (rawType == int.class) {
+			return new IntProperty(name, getter.asType(INT_GETTER));
+		} else if (rawType == long.class) {
+			return new LongProperty(name, getter.asType(LONG_GETTER));
+		} else if (rawType == double.class) {
+			return new DoubleProperty(name, getter.asType(DOUBLE_GETTER));
+		} else if (rawType == float.class) {
+			return new FloatProperty(name, getter.asType(FLOAT_GETTER));
+		} else if (rawType == boolean.class) {
+			return new BooleanProperty(name, getter.asType(BOOLEAN_GETTER));
+		}
+
+		JsonIdentityReference reference = annotated.getAnnotation(JsonIdentityReference.class);
+		boolean alwaysAsId = reference != null && reference.alwaysAsId();
+		return new ObjectProperty(name, getter.asType(OBJECT_GETTER), value(writer.getType(), alwaysAsId));
+	}
+
+	private ValueWriter value(JavaType type, boolean alwaysAsId) {
+		Class<?> raw = type.getRawClass();
+		if (raw == String.class) {
+			return STRING;
+		} else if (raw == Integer.class || raw == Short.class || raw == Byte.class) {
+			return INTEGER;
+		} else if (raw == Long.class) {
+			return LONG;
+		} else if (raw == Double.class) {
+			return DOUBLE;
+		} else if (raw == Float.class) {
+			return FLOAT;
+		} else if (raw == Boolean.class) {
+			return BOOLEAN;
+		} else if (raw.isEnum()) {
+			return enumValue(raw);
+		} else if (type.isCollectionLikeType() && Collection.class.isAssignableFrom(raw)) {
+			return new CollectionValue(value(type.getContentType(), alwaysAsId));
+		} else if (type.isMapLikeType() && Map.class.isAssignableFrom(raw)) {
+			Class<?> key = type.getKeyType().getRawClass();
+			if (key != String.class && key != Integer.class && key != Long.class) {
+				return new FallbackValue();
+			}
+			return new MapValue(value(type.getContentType(), alwaysAsId));
+		} else if (raw.getName().startsWith("rcms.utilities.daqaggregator.data.")) {
+			BeanPlan plan = plan(raw);
+			if (plan.idName == null) {
+				return plan;
+			}
+			return new IdentifiedValue(plan, alwaysAsId);
+		}
+		return new FallbackValue();
+	}
+
+	@SuppressWarnings("unchecked")
+	private ValueWriter enumValue(Class<?> type) {
+		JsonSerializer<Object> serializer;
+		try {
+			serializer = mapper.getSerializerProviderInstance().findValueSerializer(type);
+		} catch (JsonMappingException e) {
+			throw new IllegalArgumentException("No serializer for " + type, e);
+		}
+		if (serializer.getClass() != EnumSerializer.class) {
+			return new FallbackValue();
+		}
+		JsonFormat.Value format = introspector.findFormat(config.introspectClassAnnotations(type).getClassInfo());
+		if (format != null && format.getShape().isNumeric()) {
+			return new FallbackValue();
+		}
+		EnumValues values = EnumValues.construct(config, (Class<Enum<?>>) type);
+		Object[] constants = type.getEnumConstants();
+		SerializableString[] names = new SerializableString[constants.length];
+		for (int i = 0; i < constants.length; i++) {
+			names[i] = values.serializedValueFor((Enum<?>) constants[i]);
+		}
+		return new EnumValue(names);
+	}
+
+	private static JsonMappingException problem(JsonGenerator gen, SerializableString name, Throwable cause) {
+		if (cause instanceof JsonMappingException) {
+			return (JsonMappingException) cause;
+		}
+		return new JsonMappingException(gen, "Problem serializing property " + name.getValue(), cause);
+	}
+
+	// ----------------------------------------
+	// properties
+	// ----------------------------------------
+
+	private abstract static class Property {
+
+		final SerializableString name;
+
+		final MethodHandle getter;
+
+		Property(SerializableString name, MethodHandle getter) {
+			this.name = name;
+			this.getter = getter;
+		}
+
+		abstract void write(Object bean, JsonGenerator gen, Set<Object> written) throws Throwable;
+	}
+
+	private static final class IntProperty extends Property {
+
+		IntProperty(SerializableString name, MethodHandle getter) {
+			super(name, getter);
+		}
+
+		@Override
+		void write(Object bean, JsonGenerator gen, Set<Object> written) throws Throwable {
+			int value = (int) getter.invokeExact(bean);
+			gen.writeFieldName(name);
+			gen.writeNumber(value);
+		}
+	}
+
+	private static final class LongProperty extends Property {
+
+		LongProperty(SerializableString name, MethodHandle getter) {
+			super(name, getter);
+		}
+
+		@Override
+		void write(Object bean, JsonGenerator gen, Set<Object> written) throws Throwable {
+			long value = (long) getter.invokeExact(bean);
+			gen.writeFieldName(name);
+			gen.writeNumber(value);
+		}
+	}
+
+	private static final class DoubleProperty extends Property {
+
+		DoubleProperty(SerializableString name, MethodHandle getter) {
+			super(name, getter);
+		}
+
+		@Override
+		void write(Object bean, JsonGenerator gen, Set<Object> written) throws Throwable {
+			double value = (double) getter.invokeExact(bean);
+			gen.writeFieldName(name);
+			gen.writeNumber(value);
+		}
+	}
+
+	private static final class FloatProperty extends Property {
+
+		FloatProperty(SerializableString name, MethodHandle getter) {
+			super(name, getter);
+		}
+
+		@Override
+		void write(Object bean, JsonGenerator gen, Set<Object> written) throws Throwable {
+			float value = (float) getter.invokeExact(bean);
+			gen.writeFieldName(name);
+			gen.writeNumber(value);
+		}
+	}
+
+	private static final class BooleanProperty extends Property {
+
+		BooleanProperty(SerializableString name, MethodHandle getter) {
+			super(name, getter);
+		}
+
+		@Override
+		void write(Object bean, JsonGenerator gen, Set<Object> written) throws Throwable {
+			boolean value = (boolean) getter.invokeExact(bean);
+			gen.writeFieldName(name);
+			gen.writeBoolean(value);
+		}
+	}
+
+	private static final class ObjectProperty extends Property {
+
+		final ValueWriter value;
+
+		ObjectProperty(SerializableString name, MethodHandle getter, ValueWriter value) {
+			super(name, getter);
+			this.value = value;
+		}
+
+		@Override
+		void write(Object bean, JsonGenerator gen, Set<Object> written) throws Throwable {
+			Object object = getter.invokeExact(bean);
+			gen.writeFieldName(name);
+			if (object == null) {
+				gen.writeNull();
+			} else {
+				value.write(object, gen, written);
+			}
+		}
+	}
+
+	// ----------------------------------------
+	// values
+	// ----------------------------------------
+
+	private abstract static class ValueWriter {
+
+		/**
+		 * Write non null value
+		 */
+		abstract void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException;
+	}
+
+	private static final ValueWriter STRING = new ValueWriter() {
+		@Override
+		void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException {
+			gen.writeString((String) value);
+		}
+	};
+
+	private static final ValueWriter INTEGER = new ValueWriter() {
+		@Override
+		void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException {
+			gen.writeNumber(((Number) value).intValue());
+		}
+	};
+
+	private static final ValueWriter LONG = new ValueWriter() {
+		@Override
+		void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException {
+			gen.writeNumber((Long) value);
+		}
+	};
+
+	private static final ValueWriter DOUBLE = new ValueWriter() {
+		@Override
+		void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException {
+			gen.writeNumber((Double) value);
+		}
+	};
+
+	private static final ValueWriter FLOAT = new ValueWriter() {
+		@Override
+		void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException {
+			gen.writeNumber((Float) value);
+		}
+	};
+
+	private static final ValueWriter BOOLEAN = new ValueWriter() {
+		@Override
+		void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException {
+			gen.writeBoolean((Boolean) value);
+		}
+	};
+
+	private static final class EnumValue extends ValueWriter {
+
+		final SerializableString[] names;
+
+		EnumValue(SerializableString[] names) {
+			this.names = names;
+		}
+
+		@Override
+		void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException {
+			gen.writeString(names[((Enum<?>) value).ordinal()]);
+		}
+	}
+
+	private static final class CollectionValue extends ValueWriter {
+
+		final ValueWriter element;
+
+		CollectionValue(ValueWriter element) {
+			this.element = element;
+		}
+
+		@Override
+		void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException {
+			gen.writeStartArray();
+			if (value instanceof List && value instanceof RandomAccess) {
+				List<?> list = (List<?>) value;
+				for (int i = 0; i < list.size(); i++) {
+					writeElement(list.get(i), gen, written);
+				}
+			} else {
+				for (Object item : (Collection<?>) value) {
+					writeElement(item, gen, written);
+				}
+			}
+			gen.writeEndArray();
+		}
+
+		private void writeElement(Object item, JsonGenerator gen, Set<Object> written) throws IOException {
+			if (item == null) {
+				gen.writeNull();
+			} else {
+				element.write(item, gen, written);
+			}
+		}
+	}
+
+	private static final class MapValue extends ValueWriter {
+
+		final ValueWriter value;
+
+		MapValue(ValueWriter value) {
+			this.value = value;
+		}
+
+		@Override
+		void write(Object map, JsonGenerator gen, Set<Object> written) throws IOException {
+			gen.writeStartObject();
+			for (Entry<?, ?> entry : ((Map<?, ?>) map).entrySet()) {
+				gen.writeFieldName(entry.getKey().toString());
+				if (entry.getValue() == null) {
+					gen.writeNull();
+				} else {
+					value.write(entry.getValue(), gen, written);
+				}
+			}
+			gen.writeEndObject();
+		}
+	}
+
+	/**
+	 * Plan of a bean, written in full
+	 */
+	private static final class BeanPlan extends ValueWriter {
+
+		final Class<?> type;
+
+		/** Name of id property, null if objects are not identified */
+		final SerializedString idName;
+
+		final List<Property> properties = new ArrayList<>();
+
+		BeanPlan(Class<?> type, SerializedString idName) {
+			this.type = type;
+			this.idName = idName;
+		}
+
+		@Override
+		void write(Object bean, JsonGenerator gen, Set<Object> written) throws IOException {
+			gen.writeStartObject();
+			if (idName != null) {
+				gen.writeFieldName(idName);
+				gen.writeString(((Identifiable) bean).getObjectId());
+			}
+			for (int i = 0; i < properties.size(); i++) {
+				Property property = properties.get(i);
+				try {
+					property.write(bean, gen, written);
+				} catch (IOException e) {
+					throw e;
+				} catch (Throwable t) {
+					throw problem(gen, property.name, t);
+				}
+			}
+			gen.writeEndObject();
+		}
+	}
+
+	/**
+	 * Identified object written in full or as its id
+	 */
+	private static final class IdentifiedValue extends ValueWriter {
+
+		final BeanPlan plan;
+
+		final boolean alwaysAsId;
+
+		IdentifiedValue(BeanPlan plan, boolean alwaysAsId) {
+			this.plan = plan;
+			this.alwaysAsId = alwaysAsId;
+		}
+
+		@Override
+		void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException {
+			if (!alwaysAsId && written.add(value)) {
+				plan.write(value, gen, written);
+			} else {
+				gen.writeString(((Identifiable) value).getObjectId());
+			}
+		}
+	}
+
+	/**
+	 * Value of type not covered by plans, written by the object mapper
+	 */
+	private final class FallbackValue extends ValueWriter {
+
+		@Override
+		void write(Object value, JsonGenerator gen, Set<Object> written) throws IOException {
+			mapper.writeValue(gen, value);
+		}
+	}
+
+}
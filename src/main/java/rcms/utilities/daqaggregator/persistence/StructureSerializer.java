@@ -1,21 +1,36 @@
 package rcms.utilities.daqaggregator.persistence;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.OutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.deser.UnresolvedForwardReference;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import rcms.utilities.daqaggregator.data.BU;
 import rcms.utilities.daqaggregator.data.BUSummary;
@@ -58,6 +73,146 @@ public class StructureSerializer {
 
 	private static final Logger logger = Logger.getLogger(StructureSerializer.class);
 
+	/*
+	 * Writers and mappers reading snapshots are built once per format on
+	 * mappers dedicated to them. Mixins are registered before first use and mappers are never
+	 * reconfigured afterwards, so that serializer caches stay valid.
+	 */
+	private static final Map<PersistenceFormat, ObjectWriter> writers = new EnumMap<>(PersistenceFormat.class);
+	private static final Map<PersistenceFormat, ObjectWriter> compactWriters = new EnumMap<>(PersistenceFormat.class);
+	private static final Map<PersistenceFormat, SnapshotMapper> mappers = new EnumMap<>(PersistenceFormat.class);
+	private static final Map<PersistenceFormat, JsonFactory> factories = new EnumMap<>(PersistenceFormat.class);
+	private static final Map<PersistenceFormat, StreamingSnapshotSerializer> streamingSerializers = new EnumMap<>(
+			PersistenceFormat.class);
+	private static final Map<PersistenceFormat, ObjectWriter> flashlistWriters = new EnumMap<>(PersistenceFormat.class);
+	private static final Map<PersistenceFormat, ObjectWriter> compactFlashlistWriters = new EnumMap<>(
+			PersistenceFormat.class);
+	private static final Map<PersistenceFormat, ObjectReader> flashlistReaders = new EnumMap<>(PersistenceFormat.class);
+	private static final Map<PersistenceFormat, ObjectReader> bundleReaders = new EnumMap<>(PersistenceFormat.class);
+
+	private static final BinarySnapshotWriter binaryWriter;
+
+	/** Number of snapshot files which properties are indexed */
+	private static final int INDEX_CACHE_SIZE = 1024;
+
+	private static final Map<String, Index> indexes = Collections
+			.synchronizedMap(new LinkedHashMap<String, Index>(INDEX_CACHE_SIZE, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Index> eldest) {
+					return size() > INDEX_CACHE_SIZE;
+				}
+			});
+
+	/**
+	 * Mapper reading snapshots, failing on references to objects which are
+	 * not read. Object reader does not check them and drops elements of
+	 * collections following unresolved reference.
+	 */
+	private static final class SnapshotMapper extends ObjectMapper {
+
+		private static final long serialVersionUID = 1L;
+
+		private SnapshotMapper(JsonFactory factory) {
+			super(factory);
+			disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		}
+
+		private DAQ readSnapshot(TokenBuffer buffer) throws IOException {
+			return readSnapshot(buffer.asParser());
+		}
+
+		private DAQ readSnapshot(InputStream in) throws IOException {
+			return readSnapshot(_jsonFactory.createParser(in));
+		}
+
+		private DAQ readSnapshot(JsonParser parser) throws IOException {
+			return (DAQ) _readMapAndClose(parser, constructType(DAQ.class));
+		}
+	}
+
+	/**
+	 * Top-level properties of uncompressed json snapshot file in order of the
+	 * file, byte offsets of objects and arrays and values of scalars. Parser
+	 * cannot start at root level scalar followed by a comma. Index is not
+	 * modified once cached.
+	 */
+	private static final class Index {
+
+		private final long modified;
+
+		private final long length;
+
+		private final Map<String, Object> entries = new LinkedHashMap<>();
+
+		/** True if all properties of the file are indexed */
+		private boolean complete;
+
+		private Index(File file) {
+			this.modified = file.lastModified();
+			this.length = file.length();
+		}
+
+		/**
+		 * @param parser
+		 *            parser at the value of property
+		 */
+		private void add(String name, JsonParser parser) throws IOException {
+			if (parser.getCurrentToken().isStructStart()) {
+				entries.put(name, parser.getTokenLocation().getByteOffset());
+			} else {
+				TokenBuffer value = new TokenBuffer(null, false);
+				value.copyCurrentEvent(parser);
+				entries.put(name, value);
+			}
+		}
+
+		private boolean isValid(File file) {
+			return modified == file.lastModified() && length == file.length();
+		}
+
+		private boolean covers(Set<String> properties) {
+			return complete || entries.keySet().containsAll(properties);
+		}
+	}
+
+	static {
+		ObjectMapper binaryMapper = new ObjectMapper(PersistenceFormat.BINARY.getMapper().getFactory().copy());
+		addMixins(binaryMapper);
+		binaryWriter = new BinarySnapshotWriter(binaryMapper);
+
+		for (PersistenceFormat format : PersistenceFormat.values()) {
+			if (format == PersistenceFormat.BINARY) {
+				continue;
+			}
+			SnapshotMapper mapper = new SnapshotMapper(format.getMapper().getFactory().copy());
+			if (format.isRefPrefixed()) {
+				addRefMixins(mapper);
+			} else {
+				addMixins(mapper);
+			}
+			ObjectWriter writer = mapper.writer();
+			compactWriters.put(format, writer);
+			writers.put(format, format.isPrettyPrint() ? writer.withDefaultPrettyPrinter() : writer);
+			factories.put(format, mapper.getFactory());
+			mappers.put(format, mapper);
+			try {
+				streamingSerializers.put(format, new StreamingSnapshotSerializer(mapper));
+			} catch (IllegalArgumentException e) {
+				logger.warn("Snapshots in format " + format + " will be serialized by object mapper: " + e.getMessage());
+			}
+
+			/* flashlists are always pretty printed unless compact */
+			ObjectMapper flashlistMapper = new ObjectMapper(format.getMapper().getFactory().copy());
+			compactFlashlistWriters.put(format, flashlistMapper.writer());
+			flashlistWriters.put(format, flashlistMapper.writerWithDefaultPrettyPrinter());
+			flashlistMapper.addMixIn(Flashlist.class, FlashlistMixin.class);
+			flashlistReaders.put(format, flashlistMapper.readerFor(Flashlist.class));
+			bundleReaders.put(format, flashlistMapper.readerFor(Flashlist[].class));
+		}
+	}
+
 	/**
 	 * Serialize DAQ snapshot object with given format
 	 * 
@@ -73,82 +228,246 @@ public class StructureSerializer {
 	 */
 	public void serialize(DAQ daqSnapshot, OutputStream outputStream, PersistenceFormat format)
 			throws JsonGenerationException, JsonMappingException, IOException {
+		serialize(daqSnapshot, outputStream, format, false);
+	}
 
-		ObjectMapper mapper = format.getMapper();
-		boolean prettyPrint = format.isPrettyPrint();
-
-		OutputStream finalOutputStream = outputStream;
-
-		switch (format) {
-
-		case JSON:
-			addMixins(mapper);
-			break;
-		case ZIPPED:
-			GZIPOutputStream gzipOS = new GZIPOutputStream(outputStream);
-			finalOutputStream = gzipOS;
-			addMixins(mapper);
-			break;
-		case SMILE:
-			addMixins(mapper);
-			break;
-		case SMILE_ZIPPED:
-			GZIPOutputStream smileGzipOs = new GZIPOutputStream(outputStream);
-			finalOutputStream = smileGzipOs;
-			addMixins(mapper);
-			break;
-		case JSONREFPREFIXED:
-			addRefMixins(mapper);
-			break;
-		case JSONUGLY:
-			addMixins(mapper);
-			break;
-		case JSONREFPREFIXEDUGLY:
-			addRefMixins(mapper);
-			break;
-		default:
-			logger.warn("Format of snapshot not available");
-		}
+	/**
+	 * Serialize DAQ snapshot object with given format. Output stream is closed
+	 * afterwards.
+	 * 
+	 * @param compact
+	 *            skip pretty printing of pretty printed formats. Output is
+	 *            read the same way, only whitespace differs.
+	 */
+	public void serialize(DAQ daqSnapshot, OutputStream outputStream, PersistenceFormat format, boolean compact)
+			throws JsonGenerationException, JsonMappingException, IOException {
+		serialize(daqSnapshot, outputStream, format, Codec.GZIP, compact);
+	}
 
+	/**
+	 * Serialize DAQ snapshot object with given format. Output stream is closed
+	 * afterwards.
+	 * 
+	 * @param codec
+	 *            codec of compressed formats, ignored by other formats
+	 * @param compact
+	 *            skip pretty printing of pretty printed formats
+	 */
+	public void serialize(DAQ daqSnapshot, OutputStream outputStream, PersistenceFormat format, Codec codec,
+			boolean compact) throws JsonGenerationException, JsonMappingException, IOException {
 		long startTime = System.currentTimeMillis();
-		if (prettyPrint)
-			mapper.writerWithDefaultPrettyPrinter().writeValue(finalOutputStream, daqSnapshot);
-		else
-			mapper.writeValue(finalOutputStream, daqSnapshot);
+		StreamingSnapshotSerializer streamingSerializer = streamingSerializers.get(format);
+		if (format == PersistenceFormat.BINARY) {
+			try (OutputStream out = outputStream) {
+				binaryWriter.write(daqSnapshot, out);
+			}
+		} else if (streamingSerializer != null) {
+			try (JsonGenerator generator = factories.get(format).createGenerator(wrap(outputStream, format, codec))) {
+				if (format.isPrettyPrint() && !compact) {
+					generator.setPrettyPrinter(new DefaultPrettyPrinter());
+				}
+				streamingSerializer.serialize(daqSnapshot, generator);
+			}
+		} else {
+			ObjectWriter writer = compact ? compactWriters.get(format) : writers.get(format);
+			writer.writeValue(wrap(outputStream, format, codec), daqSnapshot);
+		}
 		logger.info(String.format("Persisted snapshot to file in %d ms.", System.currentTimeMillis() - startTime));
-
 	}
 
-	public Flashlist deserializeFlashlist(File file, PersistenceFormat format) {
-		ObjectMapper mapper = format.getMapper();
+	/**
+	 * Serialize flashlist with given format. Output stream is closed
+	 * afterwards.
+	 * 
+	 * @param compact
+	 *            skip pretty printing
+	 */
+	public void serializeFlashlist(Flashlist flashlist, OutputStream outputStream, PersistenceFormat format,
+			boolean compact) throws JsonGenerationException, JsonMappingException, IOException {
+		serializeFlashlist(flashlist, outputStream, format, Codec.GZIP, compact);
+	}
 
-		mapper.addMixIn(Flashlist.class, FlashlistMixin.class);
+	/**
+	 * Serialize flashlist with given format. Output stream is closed
+	 * afterwards.
+	 * 
+	 * @param codec
+	 *            codec of compressed formats, ignored by other formats
+	 * @param compact
+	 *            skip pretty printing
+	 */
+	public void serializeFlashlist(Flashlist flashlist, OutputStream outputStream, PersistenceFormat format,
+			Codec codec, boolean compact) throws JsonGenerationException, JsonMappingException, IOException {
+		ObjectWriter writer = compact ? compactFlashlistWriters.get(format) : flashlistWriters.get(format);
+		if (writer == null) {
+			throw new IllegalArgumentException("Flashlists cannot be persisted in format " + format);
+		}
+		writer.writeValue(wrap(outputStream, format, codec), flashlist);
+	}
 
-		Flashlist flashlist = null;
+	/**
+	 * Serialize flashlists of one cycle as single bundle, see
+	 * {@link FlashlistSegment}. Output stream is closed afterwards.
+	 */
+	public void serializeFlashlistBundle(Collection<Flashlist> flashlists, OutputStream outputStream,
+			PersistenceFormat format, Codec codec, boolean compact) throws IOException {
+		ObjectWriter writer = compact ? compactFlashlistWriters.get(format) : flashlistWriters.get(format);
+		if (writer == null) {
+			throw new IllegalArgumentException("Flashlists cannot be persisted in format " + format);
+		}
+		writer.writeValue(wrap(outputStream, format, codec), flashlists.toArray(new Flashlist[flashlists.size()]));
+	}
 
-		ObjectInputStream in = null;
-		FileInputStream fileIn = null;
+	/**
+	 * Deserialize bundle of flashlists read from segment
+	 */
+	public List<Flashlist> deserializeFlashlistBundle(byte[] bundle, PersistenceFormat format, Codec codec)
+			throws IOException {
+		InputStream in = new ByteArrayInputStream(bundle);
+		if (format.isCompressed()) {
+			in = codec.decompress(in);
+		}
 		try {
-			logger.debug("Deserialize file: " + file.getAbsolutePath());
-			flashlist = mapper.readValue(file, Flashlist.class);
+			Flashlist[] flashlists = bundleReaders.get(format).readValue(in);
+			return Arrays.asList(flashlists);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Deserialize bundle of flashlists of segment record, rows stored in
+	 * {@link FlashlistContentStore} are resolved
+	 */
+	public List<Flashlist> deserializeFlashlistBundle(FlashlistSegment.Record record) throws IOException {
+		File file = record.getFile();
+		List<Flashlist> flashlists = deserializeFlashlistBundle(FlashlistSegment.read(record),
+				FlashlistSegment.getFormat(file), FlashlistSegment.getCodec(file));
+		for (Flashlist flashlist : flashlists) {
+			if (flashlist.getRowsHash() != null) {
+				FlashlistContentStore.resolve(flashlist, file);
+			}
+		}
+		return flashlists;
+	}
+
+	/**
+	 * Convert snapshot file to given format. Output stream is closed
+	 * afterwards. Binary snapshots are converted to json based formats
+	 * directly, without building the DAQ structure.
+	 * 
+	 * @throws IOException
+	 *             if the file could not be read or written
+	 */
+	public void convert(String filepath, OutputStream outputStream, PersistenceFormat format, boolean compact)
+			throws IOException {
+		convert(filepath, outputStream, format, Codec.GZIP, compact);
+	}
+
+	/**
+	 * Convert snapshot file to given format, compressed formats with given
+	 * codec. Format of the file is recognized by its extension. Output stream
+	 * is closed afterwards.
+	 * 
+	 * @throws IOException
+	 *             if the file could not be read or written
+	 */
+	public void convert(String filepath, OutputStream outputStream, PersistenceFormat format, Codec codec,
+			boolean compact) throws IOException {
+		convert(filepath, PersistenceFormat.decodeFromFilename(filepath), outputStream, format, codec, compact);
+	}
+
+	/**
+	 * Convert snapshot file of given format to given format, compressed
+	 * formats with given codec. Output stream is closed afterwards. Snapshots
+	 * are copied token by token between formats serialized with the same
+	 * mixins.
+	 * 
+	 * @param sourceFormat
+	 *            format of the file, extensions do not distinguish all
+	 *            formats, e.g. ref prefixed json
+	 * @throws IOException
+	 *             if the file could not be read or written
+	 */
+	public void convert(String filepath, PersistenceFormat sourceFormat, OutputStream outputStream,
+			PersistenceFormat format, Codec codec, boolean compact) throws IOException {
+		if (sourceFormat == null) {
+			outputStream.close();
+			throw new IOException("Unknown format of snapshot " + filepath);
+		}
+		if (sourceFormat != PersistenceFormat.BINARY && format != PersistenceFormat.BINARY
+				&& sourceFormat.isRefPrefixed() == format.isRefPrefixed()) {
+			try (JsonParser parser = factories.get(sourceFormat).createParser(open(filepath, sourceFormat));
+					JsonGenerator generator = factories.get(format)
+							.createGenerator(wrap(outputStream, format, codec))) {
+				if (format.isPrettyPrint() && !compact) {
+					generator.setPrettyPrinter(new DefaultPrettyPrinter());
+				}
+				if (parser.nextToken() == null) {
+					throw new IOException("Empty snapshot " + filepath);
+				}
+				generator.copyCurrentStructure(parser);
+			}
+			return;
+		}
+		if (sourceFormat == PersistenceFormat.BINARY && streamingSerializers.containsKey(format)) {
+			BinarySnapshot snapshot = BinarySnapshot.open(new File(filepath));
+			try (JsonGenerator generator = factories.get(format).createGenerator(wrap(outputStream, format, codec))) {
+				if (format.isPrettyPrint() && !compact) {
+					generator.setPrettyPrinter(new DefaultPrettyPrinter());
+				}
+				snapshot.writeJson(generator);
+			}
+			return;
+		}
+		DAQ daq = deserialize(filepath, sourceFormat);
+		if (daq == null) {
+			outputStream.close();
+			throw new IOException("Could not read snapshot " + filepath);
+		}
+		serialize(daq, outputStream, format, codec, compact);
+	}
+
+	private static OutputStream wrap(OutputStream outputStream, PersistenceFormat format, Codec codec)
+			throws IOException {
+		if (format.isCompressed()) {
+			return codec.compress(outputStream);
+		}
+		return outputStream;
+	}
+
+	public Flashlist deserializeFlashlist(File file, PersistenceFormat format) {
+		logger.debug("Deserialize file: " + file.getAbsolutePath());
+		try (InputStream in = open(file.getAbsolutePath(), format)) {
+			Flashlist flashlist = flashlistReaders.get(format).readValue(in);
+			if (flashlist != null && flashlist.getRowsHash() != null) {
+				FlashlistContentStore.resolve(flashlist, file);
+			}
 			return flashlist;
 		} catch (IOException i) {
 			logger.error("File incompatible: " + file.getAbsolutePath(), i);
 			return null;
-		} finally {
-			if (in != null)
-				try {
-					in.close();
-				} catch (IOException e1) {
-				}
-			if (fileIn != null)
-				try {
-					fileIn.close();
-				} catch (IOException e1) {
-				}
 		}
 	}
 
+	/**
+	 * Codec of compressed formats is recognized by filename, files without
+	 * codec extension are read as gzip
+	 */
+	private static InputStream open(String filepath, PersistenceFormat format) throws IOException {
+		InputStream in = new FileInputStream(filepath);
+		if (format.isCompressed()) {
+			Codec codec = Codec.decodeFromFilename(filepath);
+			try {
+				return (codec != null ? codec : Codec.GZIP).decompress(in);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+		return in;
+	}
+
 	public DAQ deserialize(String filepath) {
 		PersistenceFormat format = PersistenceFormat.decodeFromFilename(filepath);
 		return deserialize(filepath, format);
@@ -156,64 +475,192 @@ public class StructureSerializer {
 
 	public DAQ deserialize(String filepath, PersistenceFormat format) {
 
-		ObjectMapper mapper = format.getMapper();
-		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
-		try {
-			InputStream finalInputStream = new FileInputStream(filepath);
-
-			switch (format) {
-
-			case JSON:
-				addMixins(mapper);
-				break;
-			case ZIPPED:
-				GZIPInputStream gzis = new GZIPInputStream(finalInputStream);
-				finalInputStream = gzis;
-				addMixins(mapper);
-				break;
-			case SMILE:
-				addMixins(mapper);
-				break;
-			case SMILE_ZIPPED:
-				GZIPInputStream gzisSmile = new GZIPInputStream(finalInputStream);
-				finalInputStream = gzisSmile;
-				addMixins(mapper);
-				break;
-			case JSONREFPREFIXED:
-				addRefMixins(mapper);
-				break;
-			case JSONUGLY:
-				addMixins(mapper);
-				break;
-			case JSONREFPREFIXEDUGLY:
-				addRefMixins(mapper);
-				break;
-			default:
-				logger.warn("Format of snapshot not available");
-			}
-
-			DAQ daq = null;
-
+		if (format == PersistenceFormat.BINARY) {
 			try {
-				daq = mapper.readValue(finalInputStream, DAQ.class);
-				return daq;
+				BinarySnapshot snapshot = BinarySnapshot.open(new File(filepath));
+				TokenBuffer buffer = new TokenBuffer(null, false);
+				snapshot.writeJson(buffer);
+				return mappers.get(PersistenceFormat.JSON).readSnapshot(buffer);
 			} catch (IOException i) {
 				logger.error("File incompatible: " + filepath, i);
 				return null;
-			} finally {
-				if (finalInputStream != null)
-					try {
-						finalInputStream.close();
-					} catch (IOException e1) {
-					}
 			}
+		}
 
+		InputStream finalInputStream;
+		try {
+			finalInputStream = open(filepath, format);
 		} catch (IOException e) {
 			logger.error("Problem accessing file: " + filepath, e);
 			return null;
 		}
 
+		try {
+			return mappers.get(format).readSnapshot(finalInputStream);
+		} catch (IOException i) {
+			logger.error("File incompatible: " + filepath, i);
+			return null;
+		} finally {
+			try {
+				finalInputStream.close();
+			} catch (IOException e1) {
+			}
+		}
+	}
+
+	/**
+	 * Deserialize given top-level properties of snapshot only, e.g. lastUpdate,
+	 * buSummary or feds. Other properties are skipped by the parser without
+	 * building objects and reading stops once all given properties are read.
+	 * 
+	 * Objects are serialized where first referenced, so properties may
+	 * reference objects of properties preceding them. Only if they do, all
+	 * properties preceding the given ones are read as well.
+	 * 
+	 * Top-level properties of uncompressed json files are indexed, repeated
+	 * reads of the same file seek to the given properties.
+	 * 
+	 * @param properties
+	 *            json names of top-level properties of {@link DAQ}
+	 * @return snapshot with given properties, null if file could not be read
+	 */
+	public DAQ deserialize(String filepath, Set<String> properties) {
+		PersistenceFormat format = PersistenceFormat.decodeFromFilename(filepath);
+		return deserialize(filepath, format, properties);
+	}
+
+	public DAQ deserialize(String filepath, PersistenceFormat format, Set<String> properties) {
+		try {
+			if (format == PersistenceFormat.BINARY) {
+				/* objects are written where first referenced by given properties */
+				TokenBuffer buffer = new TokenBuffer(null, false);
+				BinarySnapshot.open(new File(filepath)).writeJson(buffer, properties);
+				return mappers.get(PersistenceFormat.JSON).readSnapshot(buffer);
+			}
+			try {
+				return mappers.get(format).readSnapshot(copy(filepath, format, properties, false));
+			} catch (UnresolvedForwardReference e) {
+				logger.debug("Properties " + properties + " reference preceding properties of " + filepath);
+				return mappers.get(format).readSnapshot(copy(filepath, format, properties, true));
+			}
+		} catch (IOException i) {
+			logger.error("File incompatible: " + filepath, i);
+			return null;
+		}
+	}
+
+	/**
+	 * Copy given properties and id of snapshot
+	 * 
+	 * @param preceding
+	 *            true to copy all properties preceding the given ones too
+	 */
+	private static TokenBuffer copy(String filepath, PersistenceFormat format, Set<String> properties,
+			boolean preceding) throws IOException {
+		if (!isIndexed(format)) {
+			return copyProperties(filepath, format, properties, preceding, null);
+		}
+		File file = new File(filepath);
+		Index index = indexes.get(file.getAbsolutePath());
+		if (index != null && index.isValid(file) && index.covers(properties)) {
+			return copyIndexedProperties(file, format, properties, preceding, index);
+		}
+		index = new Index(file);
+		TokenBuffer buffer = copyProperties(filepath, format, properties, preceding, index);
+		indexes.put(file.getAbsolutePath(), index);
+		return buffer;
+	}
+
+	/**
+	 * Only uncompressed json is indexed, parsers of other formats cannot start
+	 * in the middle of the file
+	 */
+	private static boolean isIndexed(PersistenceFormat format) {
+		return !format.isCompressed() && !format.isSmile() && format != PersistenceFormat.BINARY;
+	}
+
+	/**
+	 * Copy properties reading the file from the start, other properties are
+	 * skipped
+	 * 
+	 * @param index
+	 *            index to record properties in, null if not indexed
+	 */
+	private static TokenBuffer copyProperties(String filepath, PersistenceFormat format, Set<String> properties,
+			boolean preceding, Index index) throws IOException {
+		TokenBuffer buffer = new TokenBuffer(null, false);
+		buffer.writeStartObject();
+		try (InputStream in = open(filepath, format); JsonParser parser = factories.get(format).createParser(in)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new JsonParseException(parser, "Snapshot is not an object");
+			}
+			int remaining = properties.size();
+			while (remaining > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if (index != null) {
+					index.add(name, parser);
+				}
+				boolean requested = properties.contains(name);
+				if (requested) {
+					remaining--;
+				}
+				if (requested || preceding || BinarySnapshotSchema.ID.equals(name)) {
+					buffer.writeFieldName(name);
+					buffer.copyCurrentStructure(parser);
+				} else if (token.isStructStart()) {
+					parser.skipChildren();
+				}
+			}
+			if (index != null) {
+				index.complete = parser.getCurrentToken() == JsonToken.END_OBJECT;
+			}
+		}
+		buffer.writeEndObject();
+		return buffer;
+	}
+
+	/**
+	 * Copy properties parsing objects and arrays from their offsets, scalars
+	 * are copied from the index
+	 */
+	private static TokenBuffer copyIndexedProperties(File file, PersistenceFormat format, Set<String> properties,
+			boolean preceding, Index index) throws IOException {
+		TokenBuffer buffer = new TokenBuffer(null, false);
+		buffer.writeStartObject();
+		try (FileInputStream in = new FileInputStream(file)) {
+			int remaining = properties.size();
+			for (Map.Entry<String, Object> entry : index.entries.entrySet()) {
+				if (remaining == 0) {
+					break;
+				}
+				String name = entry.getKey();
+				boolean requested = properties.contains(name);
+				if (requested) {
+					remaining--;
+				}
+				if (!requested && !preceding && !BinarySnapshotSchema.ID.equals(name)) {
+					continue;
+				}
+				JsonParser parser;
+				if (entry.getValue() instanceof TokenBuffer) {
+					parser = ((TokenBuffer) entry.getValue()).asParser();
+				} else {
+					in.getChannel().position((Long) entry.getValue());
+					parser = factories.get(format).createParser(in);
+					parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+				}
+				try {
+					parser.nextToken();
+					buffer.writeFieldName(name);
+					buffer.copyCurrentStructure(parser);
+				} finally {
+					parser.close();
+				}
+			}
+		}
+		buffer.writeEndObject();
+		return buffer;
 	}
 
 	/**
@@ -221,7 +668,7 @@ public class StructureSerializer {
 	 * 
 	 * @param objectMapper
 	 */
-	private void addRefMixins(ObjectMapper objectMapper) {
+	static void addRefMixins(ObjectMapper objectMapper) {
 		objectMapper.addMixIn(BU.class, rcms.utilities.daqaggregator.data.mixin.ref.BUMixIn.class);
 		objectMapper.addMixIn(BUSummary.class, rcms.utilities.daqaggregator.data.mixin.ref.BUSummaryMixIn.class);
 		objectMapper.addMixIn(DAQ.class, rcms.utilities.daqaggregator.data.mixin.ref.DAQMixIn.class);
@@ -246,7 +693,7 @@ public class StructureSerializer {
 	 * 
 	 * @param objectMapper
 	 */
-	private void addMixins(ObjectMapper objectMapper) {
+	public static void addMixins(ObjectMapper objectMapper) {
 		objectMapper.addMixIn(BU.class, BUMixIn.class);
 		objectMapper.addMixIn(BUSummary.class, BUSummaryMixIn.class);
 		objectMapper.addMixIn(DAQ.class, DAQMixIn.class);
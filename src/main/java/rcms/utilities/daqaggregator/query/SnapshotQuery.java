@@ -0,0 +1,274 @@
+package rcms.utilities.daqaggregator.query;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.data.FMM;
+import rcms.utilities.daqaggregator.data.SubFEDBuilder;
+import rcms.utilities.daqaggregator.data.SubSystem;
+import rcms.utilities.daqaggregator.data.TTCPartition;
+import rcms.utilities.daqaggregator.persistence.StructureSerializer;
+
+/**
+ * Query selecting part of DAQ snapshot. Query is evaluated against the object
+ * graph, only selected objects are serialized.
+ * 
+ * Query parameters:
+ * <ul>
+ * <li>select - path of json properties from DAQ, e.g. feds or
+ * tcdsGlobalInfo, nested properties separated with dot, collections are
+ * flattened. Whole DAQ if missing</li>
+ * <li>subsystem - keep only objects belonging to subsystem (subsystems, TTC
+ * partitions, FMMs, sub-FED builders and FEDs)</li>
+ * <li>fields - comma separated properties to keep in selected objects, all if
+ * missing</li>
+ * <li>any other property - keep only objects with property equal to given
+ * value, e.g. ttsState=B</li>
+ * </ul>
+ */
+public class SnapshotQuery {
+
+	public static final String SELECT = "select";
+
+	public static final String SUBSYSTEM = "subsystem";
+
+	public static final String FIELDS = "fields";
+
+	private static final String ID_PROPERTY = "@id";
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	/** Json properties of classes of DAQ model */
+	private static final Map<Class<?>, Map<String, AnnotatedMember>> properties = new ConcurrentHashMap<>();
+
+	static {
+		StructureSerializer.addMixins(mapper);
+	}
+
+	private final List<String> path;
+
+	private final String subsystem;
+
+	private final Map<String, String> filters;
+
+	private final Set<String> fields;
+
+	/**
+	 * @param select
+	 *            path of properties, null to select DAQ
+	 * @param subsystem
+	 *            name of subsystem, null for all
+	 * @param filters
+	 *            required values of properties
+	 * @param fields
+	 *            properties kept in result, null for all
+	 */
+	public SnapshotQuery(String select, String subsystem, Map<String, String> filters, Collection<String> fields) {
+		this.path = select == null || select.isEmpty() ? Collections.<String> emptyList()
+				: Arrays.asList(select.split("\\."));
+		this.subsystem = subsystem;
+		this.filters = filters == null ? Collections.<String, String> emptyMap() : filters;
+		this.fields = fields == null ? null : new LinkedHashSet<>(fields);
+	}
+
+	/**
+	 * Parse query from url query string, e.g.
+	 * select=feds&subsystem=ECAL&fields=percentBackpressure,ttsState
+	 */
+	public static SnapshotQuery parse(String queryString) {
+		Map<String, String> parameters = new LinkedHashMap<>();
+		if (queryString != null && !queryString.isEmpty()) {
+			for (String parameter : queryString.split("&")) {
+				if (parameter.isEmpty()) {
+					continue;
+				}
+				int separator = parameter.indexOf('=');
+				if (separator < 0) {
+					throw new IllegalArgumentException("Missing value of query parameter " + parameter);
+				}
+				parameters.put(decode(parameter.substring(0, separator)), decode(parameter.substring(separator + 1)));
+			}
+		}
+		return parse(parameters);
+	}
+
+	public static SnapshotQuery parse(Map<String, String> parameters) {
+		Map<String, String> filters = new LinkedHashMap<>(parameters);
+		String select = filters.remove(SELECT);
+		String subsystem = filters.remove(SUBSYSTEM);
+		String fields = filters.remove(FIELDS);
+		return new SnapshotQuery(select, subsystem, filters,
+				fields == null || fields.isEmpty() ? null : Arrays.asList(fields.split(",")));
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Evaluate query against object graph
+	 * 
+	 * @return selected objects
+	 * @throws IllegalArgumentException
+	 *             if query refers to unknown property
+	 */
+	public List<Object> select(DAQ daq) {
+		List<Object> current = new ArrayList<>();
+		current.add(daq);
+		for (String property : path) {
+			List<Object> next = new ArrayList<>();
+			for (Object object : current) {
+				Object value = get(object, property);
+				if (value instanceof Collection) {
+					next.addAll((Collection<?>) value);
+				} else if (value != null) {
+					next.add(value);
+				}
+			}
+			current = next;
+		}
+
+		List<Object> result = new ArrayList<>();
+		for (Object object : current) {
+			if (matches(object)) {
+				result.add(object);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if query selects single object, not a collection
+	 */
+	public boolean isSingle(DAQ daq) {
+		Object current = daq;
+		for (String property : path) {
+			current = get(current, property);
+			if (current == null || current instanceof Collection) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluate query and serialize selected objects
+	 * 
+	 * @return selected object if query selects single object, array
+	 *         otherwise
+	 */
+	public JsonNode execute(DAQ daq) {
+		List<Object> selected = select(daq);
+		ArrayNode result = mapper.valueToTree(selected);
+		if (fields != null) {
+			for (JsonNode node : result) {
+				if (node instanceof ObjectNode) {
+					Set<String> kept = new LinkedHashSet<>(fields);
+					kept.add(ID_PROPERTY);
+					((ObjectNode) node).retain(kept);
+				}
+			}
+		}
+		if (isSingle(daq)) {
+			return result.size() > 0 ? result.get(0) : mapper.getNodeFactory().nullNode();
+		}
+		return result;
+	}
+
+	private boolean matches(Object object) {
+		if (subsystem != null) {
+			SubSystem owner = getSubsystem(object);
+			if (owner == null || !subsystem.equalsIgnoreCase(owner.getName())) {
+				return false;
+			}
+		}
+		for (Entry<String, String> filter : filters.entrySet()) {
+			Object value = get(object, filter.getKey());
+			if (!filter.getValue().equals(String.valueOf(value))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return subsystem the object belongs to, null if not known
+	 */
+	private static SubSystem getSubsystem(Object object) {
+		if (object instanceof SubSystem) {
+			return (SubSystem) object;
+		} else if (object instanceof TTCPartition) {
+			return ((TTCPartition) object).getSubsystem();
+		} else if (object instanceof FED) {
+			return getSubsystem(((FED) object).getTtcp());
+		} else if (object instanceof FMM) {
+			return getSubsystem(((FMM) object).getTtcPartition());
+		} else if (object instanceof SubFEDBuilder) {
+			return getSubsystem(((SubFEDBuilder) object).getTtcPartition());
+		}
+		return null;
+	}
+
+	/**
+	 * @return value of json property of object
+	 * @throws IllegalArgumentException
+	 *             if object has no such property
+	 */
+	private static Object get(Object object, String property) {
+		AnnotatedMember accessor = getProperties(object.getClass()).get(property);
+		if (accessor == null) {
+			throw new IllegalArgumentException(
+					"Unknown property " + property + " of " + object.getClass().getSimpleName());
+		}
+		return accessor.getValue(object);
+	}
+
+	private static Map<String, AnnotatedMember> getProperties(Class<?> type) {
+		Map<String, AnnotatedMember> result = properties.get(type);
+		if (result == null) {
+			result = new LinkedHashMap<>();
+			BeanDescription description = mapper.getSerializationConfig().introspect(mapper.constructType(type));
+			for (BeanPropertyDefinition property : description.findProperties()) {
+				AnnotatedMember accessor = property.getAccessor();
+				if (accessor != null) {
+					accessor.fixAccess(true);
+					result.put(property.getName(), accessor);
+				}
+			}
+			properties.put(type, result);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "SnapshotQuery [path=" + path + ", subsystem=" + subsystem + ", filters=" + filters + ", fields="
+				+ fields + "]";
+	}
+
+}
@@ -0,0 +1,51 @@
+package rcms.utilities.daqaggregator.query;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.persistence.StructureSerializer;
+
+/**
+ * Standalone reader of persisted snapshots evaluating {@link SnapshotQuery}.
+ * 
+ * use e.g. as
+ * 
+ * <pre>
+ *   java -cp target/DAQAggregator-...-jar-with-dependencies.jar \
+ *     rcms.utilities.daqaggregator.query.SnapshotQueryTool \
+ *     "select=feds&subsystem=ECAL&fields=percentBackpressure,ttsState" \
+ *     1496217954303.json.gz [...]
+ * </pre>
+ * 
+ * Prints json object with results of each snapshot by its timestamp.
+ */
+public class SnapshotQueryTool {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: SnapshotQueryTool query snapshotFile [snapshotFile ...]");
+			System.exit(1);
+		}
+
+		SnapshotQuery query = SnapshotQuery.parse(args[0]);
+		StructureSerializer serializer = new StructureSerializer();
+		ObjectMapper outputMapper = new ObjectMapper();
+		outputMapper.enable(SerializationFeature.INDENT_OUTPUT);
+
+		ObjectNode result = outputMapper.createObjectNode();
+		for (int i = 1; i < args.length; i++) {
+			DAQ daq = serializer.deserialize(args[i]);
+			if (daq == null) {
+				System.err.println("Could not read snapshot " + args[i]);
+				continue;
+			}
+			result.set(Long.toString(daq.getLastUpdate()), query.execute(daq));
+		}
+		outputMapper.writeValue(System.out, result);
+	}
+
+}
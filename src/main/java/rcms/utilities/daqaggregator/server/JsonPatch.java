@@ -0,0 +1,145 @@
+package rcms.utilities.daqaggregator.server;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * JSON patch (RFC 6902) between two json trees. Only add, remove and replace
+ * operations are produced. Arrays are compared element by element, elements
+ * are added or removed at the end.
+ */
+public class JsonPatch {
+
+	private static final JsonNodeFactory factory = JsonNodeFactory.instance;
+
+	/**
+	 * @return operations transforming source into target, empty if trees are
+	 *         equal
+	 */
+	public static ArrayNode diff(JsonNode source, JsonNode target) {
+		ArrayNode operations = factory.arrayNode();
+		diff(source, target, "", operations);
+		return operations;
+	}
+
+	private static void diff(JsonNode source, JsonNode target, String path, ArrayNode operations) {
+		if (source.isObject() && target.isObject()) {
+			Iterator<String> sourceFields = source.fieldNames();
+			while (sourceFields.hasNext()) {
+				String field = sourceFields.next();
+				if (!target.has(field)) {
+					operations.add(operation("remove", path + "/" + escape(field), null));
+				}
+			}
+			Iterator<Entry<String, JsonNode>> targetFields = target.fields();
+			while (targetFields.hasNext()) {
+				Entry<String, JsonNode> field = targetFields.next();
+				String fieldPath = path + "/" + escape(field.getKey());
+				JsonNode sourceValue = source.get(field.getKey());
+				if (sourceValue == null) {
+					operations.add(operation("add", fieldPath, field.getValue()));
+				} else {
+					diff(sourceValue, field.getValue(), fieldPath, operations);
+				}
+			}
+		} else if (source.isArray() && target.isArray()) {
+			int common = Math.min(source.size(), target.size());
+			for (int i = 0; i < common; i++) {
+				diff(source.get(i), target.get(i), path + "/" + i, operations);
+			}
+			for (int i = common; i < target.size(); i++) {
+				operations.add(operation("add", path + "/" + i, target.get(i)));
+			}
+			for (int i = source.size() - 1; i >= common; i--) {
+				operations.add(operation("remove", path + "/" + i, null));
+			}
+		} else if (!source.equals(target)) {
+			operations.add(operation("replace", path, target));
+		}
+	}
+
+	/**
+	 * Apply operations produced by {@link #diff(JsonNode, JsonNode)}
+	 * 
+	 * @return patched copy of source
+	 */
+	public static JsonNode apply(JsonNode source, ArrayNode operations) {
+		JsonNode result = source.deepCopy();
+		for (JsonNode operation : operations) {
+			String op = operation.get("op").asText();
+			String path = operation.get("path").asText();
+			JsonNode value = operation.get("value");
+			if (path.isEmpty()) {
+				if (!"replace".equals(op)) {
+					throw new IllegalArgumentException("Unsupported operation " + op + " of whole document");
+				}
+				result = value.deepCopy();
+				continue;
+			}
+
+			int separator = path.lastIndexOf('/');
+			JsonNode parent = resolve(result, path.substring(0, separator));
+			String key = unescape(path.substring(separator + 1));
+			if (parent instanceof ObjectNode) {
+				ObjectNode object = (ObjectNode) parent;
+				if ("remove".equals(op)) {
+					object.remove(key);
+				} else {
+					object.set(key, value.deepCopy());
+				}
+			} else if (parent instanceof ArrayNode) {
+				ArrayNode array = (ArrayNode) parent;
+				int index = "-".equals(key) ? array.size() : Integer.parseInt(key);
+				if ("add".equals(op)) {
+					array.insert(index, value.deepCopy());
+				} else if ("remove".equals(op)) {
+					array.remove(index);
+				} else {
+					array.set(index, value.deepCopy());
+				}
+			} else {
+				throw new IllegalArgumentException("Path " + path + " does not point into container");
+			}
+		}
+		return result;
+	}
+
+	private static JsonNode resolve(JsonNode root, String path) {
+		JsonNode current = root;
+		if (path.isEmpty()) {
+			return current;
+		}
+		for (String token : path.substring(1).split("/", -1)) {
+			String key = unescape(token);
+			current = current.isArray() ? current.get(Integer.parseInt(key)) : current.get(key);
+			if (current == null) {
+				throw new IllegalArgumentException("Path " + path + " not found");
+			}
+		}
+		return current;
+	}
+
+	private static ObjectNode operation(String op, String path, JsonNode value) {
+		ObjectNode operation = factory.objectNode();
+		operation.put("op", op);
+		operation.put("path", path);
+		if (value != null) {
+			operation.set("value", value);
+		}
+		return operation;
+	}
+
+	static String escape(String token) {
+		return token.replace("~", "~0").replace("/", "~1");
+	}
+
+	static String unescape(String token) {
+		return token.replace("~1", "/").replace("~0", "~");
+	}
+
+}
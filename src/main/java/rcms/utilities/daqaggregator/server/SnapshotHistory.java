@@ -0,0 +1,168 @@
+package rcms.utilities.daqaggregator.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Memory bounded ring buffer of recent snapshots. Snapshots are kept gzip
+ * compressed, oldest snapshots are evicted when they are older than the
+ * configured period (relative to the newest snapshot) or when the total size
+ * exceeds the memory cap.
+ */
+public class SnapshotHistory {
+
+	private static final Logger logger = Logger.getLogger(SnapshotHistory.class);
+
+	private final long maxAge;
+
+	private final long maxBytes;
+
+	private final Deque<Entry> entries = new ArrayDeque<>();
+
+	private long bytes;
+
+	private long evictedByAge;
+
+	private long evictedByMemory;
+
+	/**
+	 * @param maxAge
+	 *            period of kept snapshots in ms
+	 * @param maxBytes
+	 *            maximum total size of kept compressed snapshots
+	 */
+	public SnapshotHistory(long maxAge, long maxBytes) {
+		this.maxAge = maxAge;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Add snapshot. Snapshots not older than the given one are dropped (e.g.
+	 * replay restarted).
+	 * 
+	 * @param compressed
+	 *            gzip compressed snapshot, must not be modified afterwards
+	 */
+	public synchronized void add(long timestamp, byte[] compressed) {
+		while (!entries.isEmpty() && entries.peekLast().timestamp >= timestamp) {
+			bytes -= entries.pollLast().compressed.length;
+		}
+		entries.addLast(new Entry(timestamp, compressed));
+		bytes += compressed.length;
+
+		while (entries.size() > 1 && entries.peekFirst().timestamp < timestamp - maxAge) {
+			bytes -= entries.pollFirst().compressed.length;
+			evictedByAge++;
+		}
+		while (entries.size() > 1 && bytes > maxBytes) {
+			bytes -= entries.pollFirst().compressed.length;
+			evictedByMemory++;
+			logger.debug("Snapshot history over memory cap of " + maxBytes + " bytes, evicted oldest snapshot");
+		}
+	}
+
+	/**
+	 * @return snapshot valid at given time, i.e. the newest one not newer
+	 *         than given timestamp, null if none
+	 */
+	public synchronized Entry get(long timestamp) {
+		Iterator<Entry> iterator = entries.descendingIterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.timestamp <= timestamp) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return snapshots with timestamps in given range, inclusive, oldest
+	 *         first
+	 */
+	public synchronized List<Entry> getRange(long from, long to) {
+		List<Entry> result = new ArrayList<>();
+		for (Entry entry : entries) {
+			if (entry.timestamp >= from && entry.timestamp <= to) {
+				result.add(entry);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return timestamps of kept snapshots, oldest first
+	 */
+	public synchronized List<Long> getTimestamps() {
+		List<Long> result = new ArrayList<>(entries.size());
+		for (Entry entry : entries) {
+			result.add(entry.timestamp);
+		}
+		return result;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return total size of kept compressed snapshots
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized long getEvictedByAge() {
+		return evictedByAge;
+	}
+
+	public synchronized long getEvictedByMemory() {
+		return evictedByMemory;
+	}
+
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SnapshotHistory [snapshots=" + entries.size() + ", bytes=" + bytes + ", evictedByAge=" + evictedByAge
+				+ ", evictedByMemory=" + evictedByMemory + "]";
+	}
+
+	/**
+	 * Kept snapshot
+	 */
+	public static final class Entry {
+
+		private final long timestamp;
+
+		private final byte[] compressed;
+
+		private Entry(long timestamp, byte[] compressed) {
+			this.timestamp = timestamp;
+			this.compressed = compressed;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * @return gzip compressed snapshot, must not be modified
+		 */
+		public byte[] getCompressed() {
+			return compressed;
+		}
+	}
+
+}
@@ -0,0 +1,537 @@
+package rcms.utilities.daqaggregator.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
+import rcms.utilities.daqaggregator.persistence.StructureSerializer;
+import rcms.utilities.daqaggregator.query.SnapshotQuery;
+
+/**
+ * Embedded HTTP server serving the latest DAQ snapshot from memory. The
+ * snapshot is serialized once per cycle into a plain and a gzip buffer, all
+ * requests are answered from these buffers. Clients polling with
+ * If-None-Match get 304 Not Modified until the next snapshot is published.
+ * Changes of snapshot are streamed at {@value #STREAM_PATH}, see
+ * {@link SnapshotStream}. Parts of snapshot are selected at
+ * {@value #QUERY_PATH} with {@link SnapshotQuery} evaluated against the latest
+ * DAQ object, while it is not being updated. Recent snapshots are kept in
+ * {@link SnapshotHistory} and served at {@value #HISTORY_PATH} if enabled.
+ */
+public class SnapshotServer {
+
+	private static final Logger logger = Logger.getLogger(SnapshotServer.class);
+
+	public static final String SNAPSHOT_PATH = "/snapshot";
+
+	public static final String STREAM_PATH = "/stream";
+
+	public static final String QUERY_PATH = "/query";
+
+	public static final String HISTORY_PATH = "/history";
+
+	public static final int DEFAULT_THREADS = 8;
+
+	public static final int DEFAULT_STREAM_SUBSCRIBERS = 16;
+
+	private final int port;
+
+	private final int threads;
+
+	/** Format of served snapshot, compressed formats are served with gzip encoding */
+	private final PersistenceFormat format;
+
+	private final StructureSerializer serializer;
+
+	private final SnapshotStream stream;
+
+	/** Recent snapshots, null if not kept */
+	private SnapshotHistory history;
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	/** Latest published snapshot, null before first publish */
+	private volatile ServedSnapshot snapshot;
+
+	/** Latest published DAQ object, queried only with read lock held */
+	private volatile DAQ daq;
+
+	/** Write lock is held while DAQ object is updated */
+	private final ReadWriteLock updateLock = new ReentrantReadWriteLock();
+
+	private final ObjectMapper queryMapper = new ObjectMapper();
+
+	private final AtomicLong served = new AtomicLong();
+
+	private final AtomicLong notModified = new AtomicLong();
+
+	/**
+	 * @param port
+	 *            port to listen on, 0 for any free port
+	 * @param threads
+	 *            number of threads handling requests
+	 * @param format
+	 *            format of snapshot, see {@link #getServedFormat(PersistenceFormat)}
+	 */
+	public SnapshotServer(int port, int threads, PersistenceFormat format) {
+		this(port, threads, DEFAULT_STREAM_SUBSCRIBERS, format);
+	}
+
+	/**
+	 * @param streamSubscribers
+	 *            maximum number of subscribers of snapshot stream
+	 */
+	public SnapshotServer(int port, int threads, int streamSubscribers, PersistenceFormat format) {
+		this.port = port;
+		this.threads = threads;
+		this.format = getServedFormat(format);
+		this.serializer = new StructureSerializer();
+		this.stream = new SnapshotStream(streamSubscribers);
+	}
+
+	/**
+	 * Snapshot is served uncompressed, compression is negotiated with client.
+	 * Binary snapshots are served as json, clients, patches of the stream and
+	 * ranges of history need json based formats.
+	 * 
+	 * @return uncompressed json based counterpart of given format
+	 */
+	public static PersistenceFormat getServedFormat(PersistenceFormat format) {
+		if (format == PersistenceFormat.BINARY) {
+			return PersistenceFormat.JSON;
+		}
+		return format.getUncompressed();
+	}
+
+	/**
+	 * Keep recent snapshots in given history, must be set before start
+	 */
+	public void setHistory(SnapshotHistory history) {
+		this.history = history;
+	}
+
+	public SnapshotHistory getHistory() {
+		return history;
+	}
+
+	public void start() throws IOException {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "snapshot-server-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.setExecutor(executor);
+		server.createContext(SNAPSHOT_PATH, new SnapshotHandler());
+		server.createContext(STREAM_PATH, stream);
+		server.createContext(QUERY_PATH, new QueryHandler());
+		if (history != null) {
+			server.createContext(HISTORY_PATH, new HistoryHandler());
+		}
+		server.start();
+		logger.info("Snapshot server listening on port " + getPort() + ", serving " + format + " at " + SNAPSHOT_PATH
+				+ ", changes at " + STREAM_PATH + ", queries at " + QUERY_PATH);
+	}
+
+	public void stop() {
+		if (server != null) {
+			stream.stop();
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	/**
+	 * @return port the server listens on
+	 */
+	public int getPort() {
+		return server != null ? server.getAddress().getPort() : port;
+	}
+
+	/**
+	 * Must be called before published DAQ object is updated, queries wait
+	 * until {@link #endUpdate()}
+	 */
+	public void beginUpdate() {
+		updateLock.writeLock().lock();
+	}
+
+	public void endUpdate() {
+		updateLock.writeLock().unlock();
+	}
+
+	/**
+	 * Serialize given snapshot and serve it from now on. Should be called
+	 * from the thread producing snapshots, once per cycle.
+	 */
+	public void publish(DAQ daq) {
+		this.daq = daq;
+		try {
+			long startTime = System.currentTimeMillis();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			serializer.serialize(daq, out, format);
+			publish(out.toByteArray(), daq.getSessionId(), daq.getLastUpdate());
+			logger.debug("Snapshot " + daq.getLastUpdate() + " published in "
+					+ (System.currentTimeMillis() - startTime) + "ms");
+		} catch (IOException e) {
+			logger.warn("Problem serializing snapshot for snapshot server: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Serve given serialized snapshot from now on
+	 * 
+	 * @param body
+	 *            serialized snapshot, must not be modified afterwards
+	 * @param sessionId
+	 *            session of snapshot, stream subscribers receive full
+	 *            snapshot when it changes
+	 * @param timestamp
+	 *            timestamp of snapshot
+	 */
+	public void publish(byte[] body, int sessionId, long timestamp) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 8 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write(body);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		String etag = "\"" + Long.toHexString(timestamp) + "-" + Long.toHexString(crc.getValue()) + "\"";
+		snapshot = new ServedSnapshot(body, compressed.toByteArray(), etag, timestamp);
+		if (history != null) {
+			history.add(timestamp, snapshot.gzip);
+		}
+		stream.publish(body, format.getMapper(), sessionId, timestamp);
+	}
+
+	/**
+	 * @return number of responses with snapshot body
+	 */
+	public long getServed() {
+		return served.get();
+	}
+
+	/**
+	 * @return number of responses 304 Not Modified
+	 */
+	public long getNotModified() {
+		return notModified.get();
+	}
+
+	public SnapshotStream getStream() {
+		return stream;
+	}
+
+	private String getContentType() {
+		return format.getContentType();
+	}
+
+	/**
+	 * Serialized snapshot with its compressed form. Buffers are never
+	 * modified, they are shared by all requests.
+	 */
+	private static final class ServedSnapshot {
+
+		private final byte[] plain;
+
+		private final byte[] gzip;
+
+		private final String etag;
+
+		private final long timestamp;
+
+		private ServedSnapshot(byte[] plain, byte[] gzip, String etag, long timestamp) {
+			this.plain = plain;
+			this.gzip = gzip;
+			this.etag = etag;
+			this.timestamp = timestamp;
+		}
+	}
+
+	private class SnapshotHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				String method = exchange.getRequestMethod();
+				boolean head = "HEAD".equalsIgnoreCase(method);
+				if (!head && !"GET".equalsIgnoreCase(method)) {
+					exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+
+				ServedSnapshot current = snapshot;
+				if (current == null) {
+					exchange.sendResponseHeaders(503, -1);
+					return;
+				}
+
+				Headers headers = exchange.getResponseHeaders();
+				headers.set("ETag", current.etag);
+				headers.set("Cache-Control", "no-cache");
+				headers.set("Vary", "Accept-Encoding");
+				headers.set("X-Snapshot-Timestamp", Long.toString(current.timestamp));
+
+				if (matches(exchange.getRequestHeaders().get("If-None-Match"), current.etag)) {
+					notModified.incrementAndGet();
+					exchange.sendResponseHeaders(304, -1);
+					return;
+				}
+
+				byte[] body = current.plain;
+				if (acceptsGzip(exchange.getRequestHeaders().get("Accept-Encoding"))) {
+					body = current.gzip;
+					headers.set("Content-Encoding", "gzip");
+				}
+				headers.set("Content-Type", getContentType());
+
+				served.incrementAndGet();
+				if (head) {
+					headers.set("Content-Length", Integer.toString(body.length));
+					exchange.sendResponseHeaders(200, -1);
+					return;
+				}
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(body);
+				os.close();
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private class QueryHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+					exchange.getResponseHeaders().set("Allow", "GET");
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				DAQ current = daq;
+				if (current == null) {
+					exchange.sendResponseHeaders(503, -1);
+					return;
+				}
+
+				byte[] body;
+				int code = 200;
+				try {
+					SnapshotQuery query = SnapshotQuery.parse(exchange.getRequestURI().getRawQuery());
+					updateLock.readLock().lock();
+					try {
+						body = queryMapper.writeValueAsBytes(query.execute(current));
+					} finally {
+						updateLock.readLock().unlock();
+					}
+				} catch (IllegalArgumentException e) {
+					code = 400;
+					body = e.getMessage().getBytes(StandardCharsets.UTF_8);
+				}
+
+				exchange.getResponseHeaders().set("Content-Type", code == 200 ? "application/json" : "text/plain");
+				exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+				exchange.sendResponseHeaders(code, body.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(body);
+				os.close();
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * Serves kept snapshots: statistics and timestamps without parameters,
+	 * snapshot valid at given time with timestamp parameter, json array of
+	 * snapshots with from and to parameters (json formats only)
+	 */
+	private class HistoryHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+					exchange.getResponseHeaders().set("Allow", "GET");
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				Map<String, String> parameters = new HashMap<>();
+				String query = exchange.getRequestURI().getRawQuery();
+				if (query != null) {
+					for (String parameter : query.split("&")) {
+						String[] pair = parameter.split("=", 2);
+						parameters.put(pair[0], pair.length > 1 ? pair[1] : "");
+					}
+				}
+				boolean gzip = acceptsGzip(exchange.getRequestHeaders().get("Accept-Encoding"));
+				Headers headers = exchange.getResponseHeaders();
+				headers.set("Vary", "Accept-Encoding");
+
+				try {
+					if (parameters.containsKey("timestamp")) {
+						SnapshotHistory.Entry entry = history.get(Long.parseLong(parameters.get("timestamp")));
+						if (entry == null) {
+							exchange.sendResponseHeaders(404, -1);
+							return;
+						}
+						headers.set("Content-Type", getContentType());
+						headers.set("X-Snapshot-Timestamp", Long.toString(entry.getTimestamp()));
+						if (gzip) {
+							headers.set("Content-Encoding", "gzip");
+							exchange.sendResponseHeaders(200, entry.getCompressed().length);
+							OutputStream os = exchange.getResponseBody();
+							os.write(entry.getCompressed());
+							os.close();
+						} else {
+							exchange.sendResponseHeaders(200, 0);
+							try (OutputStream os = exchange.getResponseBody()) {
+								copy(entry, os);
+							}
+						}
+					} else if (parameters.containsKey("from") || parameters.containsKey("to")) {
+						long from = parameters.containsKey("from") ? Long.parseLong(parameters.get("from")) : 0;
+						long to = parameters.containsKey("to") ? Long.parseLong(parameters.get("to")) : Long.MAX_VALUE;
+						if (format.isSmile()) {
+							sendText(exchange, 400, "Range of snapshots is available only for json formats");
+							return;
+						}
+						headers.set("Content-Type", "application/json");
+						if (gzip) {
+							headers.set("Content-Encoding", "gzip");
+						}
+						exchange.sendResponseHeaders(200, 0);
+						OutputStream os = exchange.getResponseBody();
+						if (gzip) {
+							os = new GZIPOutputStream(os);
+						}
+						try {
+							os.write('[');
+							boolean first = true;
+							for (SnapshotHistory.Entry entry : history.getRange(from, to)) {
+								if (!first) {
+									os.write(',');
+								}
+								first = false;
+								copy(entry, os);
+							}
+							os.write(']');
+						} finally {
+							os.close();
+						}
+					} else {
+						Map<String, Object> statistics = new LinkedHashMap<>();
+						statistics.put("snapshots", history.size());
+						statistics.put("bytes", history.getBytes());
+						statistics.put("maxBytes", history.getMaxBytes());
+						statistics.put("maxAge", history.getMaxAge());
+						statistics.put("evictedByAge", history.getEvictedByAge());
+						statistics.put("evictedByMemory", history.getEvictedByMemory());
+						statistics.put("timestamps", history.getTimestamps());
+						byte[] body = queryMapper.writeValueAsBytes(statistics);
+						headers.set("Content-Type", "application/json");
+						exchange.sendResponseHeaders(200, body.length);
+						OutputStream os = exchange.getResponseBody();
+						os.write(body);
+						os.close();
+					}
+				} catch (NumberFormatException e) {
+					sendText(exchange, 400, "Could not parse timestamp: " + e.getMessage());
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+
+		private void copy(SnapshotHistory.Entry entry, OutputStream os) throws IOException {
+			try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(entry.getCompressed()))) {
+				byte[] buffer = new byte[8192];
+				int n;
+				while ((n = in.read(buffer)) != -1) {
+					os.write(buffer, 0, n);
+				}
+			}
+		}
+	}
+
+	private static void sendText(HttpExchange exchange, int code, String message) throws IOException {
+		byte[] body = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain");
+		exchange.sendResponseHeaders(code, body.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(body);
+		os.close();
+	}
+
+	static boolean matches(List<String> ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String header : ifNoneMatch) {
+			for (String candidate : header.split(",")) {
+				String tag = candidate.trim();
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+				if (tag.equals(etag) || tag.equals("*")) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	static boolean acceptsGzip(List<String> acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String header : acceptEncoding) {
+			for (String coding : header.split(",")) {
+				String[] parts = coding.trim().split(";");
+				if ("gzip".equalsIgnoreCase(parts[0].trim())) {
+					return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+				}
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,248 @@
+package rcms.utilities.daqaggregator.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Server-sent events stream of snapshot changes. Subscriber receives full
+ * snapshot (event "snapshot") on connect and whenever session changes,
+ * otherwise json patches (event "patch", RFC 6902) from previously sent
+ * snapshot.
+ * 
+ * Slow subscribers are not queued: when subscriber finishes writing, it
+ * continues with the latest snapshot and receives single patch covering all
+ * skipped snapshots.
+ */
+public class SnapshotStream implements HttpHandler {
+
+	private static final Logger logger = Logger.getLogger(SnapshotStream.class);
+
+	/** Period of keepalive comments sent when no snapshot is published */
+	private static final long KEEPALIVE_MS = 15000;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final int maxSubscribers;
+
+	private final ExecutorService executor;
+
+	private final AtomicInteger subscribers = new AtomicInteger();
+
+	/** Number of patches computed for subscribers which skipped snapshots */
+	private final AtomicLong coalesced = new AtomicLong();
+
+	private final Object lock = new Object();
+
+	/** Latest published snapshot, guarded by lock */
+	private Version latest;
+
+	public SnapshotStream(int maxSubscribers) {
+		this.maxSubscribers = maxSubscribers;
+		final AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(maxSubscribers, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "snapshot-stream-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Publish snapshot to subscribers. Patch from previous snapshot is
+	 * computed once and shared by all subscribers.
+	 * 
+	 * @param body
+	 *            serialized snapshot
+	 * @param reader
+	 *            mapper reading serialized snapshot
+	 */
+	public void publish(byte[] body, ObjectMapper reader, int sessionId, long timestamp) {
+		synchronized (lock) {
+			Version previous = latest;
+			long number = previous == null ? 1 : previous.number + 1;
+			Version version = new Version(number, sessionId, timestamp, body, reader);
+			if (subscribers.get() > 0 && previous != null && previous.sessionId == sessionId) {
+				try {
+					version.patch = JsonPatch.diff(previous.getTree(), version.getTree());
+				} catch (IOException e) {
+					logger.warn("Problem computing snapshot patch: " + e.getMessage());
+				}
+			}
+			latest = version;
+			lock.notifyAll();
+		}
+	}
+
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return number of connected subscribers
+	 */
+	public int getSubscribers() {
+		return subscribers.get();
+	}
+
+	/**
+	 * @return number of patches computed for subscribers which skipped
+	 *         snapshots
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	@Override
+	public void handle(final HttpExchange exchange) throws IOException {
+		if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Allow", "GET");
+			exchange.sendResponseHeaders(405, -1);
+			exchange.close();
+			return;
+		}
+		if (subscribers.incrementAndGet() > maxSubscribers) {
+			subscribers.decrementAndGet();
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+			return;
+		}
+		try {
+			/* stream is written from its own thread, not blocking snapshot requests */
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					stream(exchange);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			subscribers.decrementAndGet();
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+		}
+	}
+
+	private void stream(HttpExchange exchange) {
+		try {
+			exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream out = exchange.getResponseBody();
+			out.flush();
+
+			Version sent = null;
+			while (!Thread.currentThread().isInterrupted()) {
+				Version next = awaitNewer(sent);
+				if (next == null) {
+					out.write(":keepalive\n\n".getBytes(StandardCharsets.UTF_8));
+				} else if (sent == null || sent.sessionId != next.sessionId) {
+					write(out, next.number, "snapshot", next.getTree());
+					sent = next;
+				} else {
+					ArrayNode patch = next.patch;
+					if (patch == null || next.number != sent.number + 1) {
+						if (next.number != sent.number + 1) {
+							coalesced.incrementAndGet();
+						}
+						patch = JsonPatch.diff(sent.getTree(), next.getTree());
+					}
+					write(out, next.number, "patch", patch);
+					sent = next;
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			logger.debug("Snapshot stream subscriber disconnected: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			subscribers.decrementAndGet();
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @return latest snapshot if newer than given one, null if none was
+	 *         published within keepalive period
+	 */
+	private Version awaitNewer(Version sent) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + KEEPALIVE_MS;
+		synchronized (lock) {
+			while (latest == null || latest == sent) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return null;
+				}
+				lock.wait(remaining);
+			}
+			return latest;
+		}
+	}
+
+	private void write(OutputStream out, long id, String event, JsonNode data) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("id: ").append(id).append('\n');
+		sb.append("event: ").append(event).append('\n');
+		sb.append("data: ").append(mapper.writeValueAsString(data)).append("\n\n");
+		out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Published snapshot. Tree is read on first use and shared, it must not
+	 * be modified.
+	 */
+	private static final class Version {
+
+		private final long number;
+
+		private final int sessionId;
+
+		private final long timestamp;
+
+		private final byte[] body;
+
+		private final ObjectMapper reader;
+
+		private JsonNode tree;
+
+		/** Patch from previous version, null if not computed */
+		private volatile ArrayNode patch;
+
+		private Version(long number, int sessionId, long timestamp, byte[] body, ObjectMapper reader) {
+			this.number = number;
+			this.sessionId = sessionId;
+			this.timestamp = timestamp;
+			this.body = body;
+			this.reader = reader;
+		}
+
+		private synchronized JsonNode getTree() throws IOException {
+			if (tree == null) {
+				tree = reader.readTree(body);
+			}
+			return tree;
+		}
+
+		@Override
+		public String toString() {
+			return "Version [number=" + number + ", sessionId=" + sessionId + ", timestamp=" + timestamp + "]";
+		}
+	}
+
+}
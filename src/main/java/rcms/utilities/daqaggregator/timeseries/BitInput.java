@@ -0,0 +1,33 @@
+package rcms.utilities.daqaggregator.timeseries;
+
+/**
+ * Reader of bits written by {@link BitOutput}
+ */
+class BitInput {
+
+	private final byte[] data;
+
+	private long position;
+
+	BitInput(byte[] data) {
+		this.data = data;
+	}
+
+	boolean readBit() {
+		if ((position >>> 3) >= data.length) {
+			throw new IllegalStateException("Reading past end of encoded data");
+		}
+		boolean bit = (data[(int) (position >>> 3)] & (0x80 >>> (position & 7))) != 0;
+		position++;
+		return bit;
+	}
+
+	long readBits(int n) {
+		long value = 0;
+		for (int i = 0; i < n; i++) {
+			value = (value << 1) | (readBit() ? 1 : 0);
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,53 @@
+package rcms.utilities.daqaggregator.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Growing buffer of bits, most significant bit first
+ */
+class BitOutput {
+
+	private byte[] buffer = new byte[64];
+
+	private long bits;
+
+	void writeBit(boolean bit) {
+		ensureCapacity(1);
+		if (bit) {
+			buffer[(int) (bits >>> 3)] |= 0x80 >>> (bits & 7);
+		}
+		bits++;
+	}
+
+	/**
+	 * Write lowest n bits of value
+	 */
+	void writeBits(long value, int n) {
+		ensureCapacity(n);
+		for (int i = n - 1; i >= 0; i--) {
+			if (((value >>> i) & 1) != 0) {
+				buffer[(int) (bits >>> 3)] |= 0x80 >>> (bits & 7);
+			}
+			bits++;
+		}
+	}
+
+	private void ensureCapacity(int n) {
+		long required = (bits + n + 7) >>> 3;
+		if (required > buffer.length) {
+			buffer = Arrays.copyOf(buffer, (int) Math.max(required, buffer.length * 2L));
+		}
+	}
+
+	long getBits() {
+		return bits;
+	}
+
+	/**
+	 * @return copy of written bytes, buffer can still be written to
+	 */
+	byte[] toByteArray() {
+		return Arrays.copyOf(buffer, (int) ((bits + 7) >>> 3));
+	}
+
+}
@@ -0,0 +1,74 @@
+package rcms.utilities.daqaggregator.timeseries;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import rcms.utilities.daqaggregator.data.BU;
+import rcms.utilities.daqaggregator.data.BUSummary;
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.data.RU;
+import rcms.utilities.daqaggregator.data.TCDSGlobalInfo;
+
+/**
+ * Curated set of numeric metrics archived as time series. Series are named
+ * after the object and its json property, e.g. fed.1234.percentBackpressure,
+ * ru.ru-c2e12-35-01.rate, tcds.deadTimes.total.
+ */
+public class MetricExtractor {
+
+	public Map<String, Double> extract(DAQ daq) {
+		Map<String, Double> result = new LinkedHashMap<>();
+
+		if (daq.getFeds() != null) {
+			for (FED fed : daq.getFeds()) {
+				String prefix = "fed." + fed.getId() + ".";
+				result.put(prefix + "percentBackpressure", (double) fed.getPercentBackpressure());
+				result.put(prefix + "percentBusy", (double) fed.getPercentBusy());
+				result.put(prefix + "percentWarning", (double) fed.getPercentWarning());
+			}
+		}
+
+		if (daq.getRus() != null) {
+			for (RU ru : daq.getRus()) {
+				if (ru.getHostname() != null) {
+					String prefix = "ru." + ru.getHostname() + ".";
+					result.put(prefix + "rate", (double) ru.getRate());
+					result.put(prefix + "throughput", (double) ru.getThroughput());
+				}
+			}
+		}
+
+		if (daq.getBus() != null) {
+			for (BU bu : daq.getBus()) {
+				if (bu.getHostname() != null) {
+					String prefix = "bu." + bu.getHostname() + ".";
+					result.put(prefix + "rate", (double) bu.getRate());
+					result.put(prefix + "throughput", (double) bu.getThroughput());
+				}
+			}
+		}
+
+		BUSummary buSummary = daq.getBuSummary();
+		if (buSummary != null) {
+			result.put("buSummary.rate", (double) buSummary.getRate());
+			result.put("buSummary.throughput", (double) buSummary.getThroughput());
+		}
+
+		TCDSGlobalInfo tcds = daq.getTcdsGlobalInfo();
+		if (tcds != null) {
+			result.put("tcds.trg_rate_total", tcds.getTrg_rate_total());
+			result.put("tcds.trg_rate_beamactive_total", tcds.getTrg_rate_beamactive_total());
+			result.put("tcds.sup_trg_rate_total", tcds.getSup_trg_rate_total());
+			result.put("tcds.sup_trg_rate_beamactive_total", tcds.getSup_trg_rate_beamactive_total());
+			if (tcds.getDeadTimes() != null) {
+				for (Entry<String, Double> deadTime : tcds.getDeadTimes().entrySet()) {
+					result.put("tcds.deadTimes." + deadTime.getKey(), deadTime.getValue());
+				}
+			}
+		}
+		return result;
+	}
+
+}
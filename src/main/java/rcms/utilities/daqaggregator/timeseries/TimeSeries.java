@@ -0,0 +1,71 @@
+package rcms.utilities.daqaggregator.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Points of single series, ordered by time. Missing values are not included.
+ */
+public class TimeSeries {
+
+	private final String name;
+
+	private final long[] timestamps;
+
+	private final double[] values;
+
+	public TimeSeries(String name, long[] timestamps, double[] values) {
+		this.name = name;
+		this.timestamps = timestamps;
+		this.values = values;
+	}
+
+	/**
+	 * @return series of points in range, inclusive, without missing values
+	 */
+	static TimeSeries of(String name, long[] timestamps, double[] values, long from, long to) {
+		int count = 0;
+		long[] selectedTimestamps = new long[timestamps.length];
+		double[] selectedValues = new double[timestamps.length];
+		for (int i = 0; i < timestamps.length; i++) {
+			if (timestamps[i] >= from && timestamps[i] <= to && !Double.isNaN(values[i])) {
+				selectedTimestamps[count] = timestamps[i];
+				selectedValues[count] = values[i];
+				count++;
+			}
+		}
+		return new TimeSeries(name, Arrays.copyOf(selectedTimestamps, count), Arrays.copyOf(selectedValues, count));
+	}
+
+	/**
+	 * @return series with points of this one followed by points of given one
+	 */
+	TimeSeries concat(TimeSeries other) {
+		long[] mergedTimestamps = Arrays.copyOf(timestamps, timestamps.length + other.timestamps.length);
+		System.arraycopy(other.timestamps, 0, mergedTimestamps, timestamps.length, other.timestamps.length);
+		double[] mergedValues = Arrays.copyOf(values, values.length + other.values.length);
+		System.arraycopy(other.values, 0, mergedValues, values.length, other.values.length);
+		return new TimeSeries(name, mergedTimestamps, mergedValues);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long[] getTimestamps() {
+		return timestamps;
+	}
+
+	public double[] getValues() {
+		return values;
+	}
+
+	public int size() {
+		return timestamps.length;
+	}
+
+	@Override
+	public String toString() {
+		return "TimeSeries [name=" + name + ", points=" + timestamps.length + "]";
+	}
+
+}
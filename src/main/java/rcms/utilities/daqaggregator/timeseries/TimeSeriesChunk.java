@@ -0,0 +1,209 @@
+package rcms.utilities.daqaggregator.timeseries;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Columnar chunk of time series covering one period. All series share the
+ * timestamp column, missing values are stored as NaN. Columns are encoded
+ * while points are appended, see {@link TimeSeriesCodec}.
+ * 
+ * File layout: magic, version, start of period, number of points, encoded
+ * timestamp column, index of series (name and length of encoded column),
+ * encoded value columns in order of the index. Reading single series reads
+ * only the header and its column.
+ */
+public class TimeSeriesChunk {
+
+	private static final int MAGIC = 0x44415453;
+
+	private static final int VERSION = 1;
+
+	private final long start;
+
+	private final TimeSeriesCodec.TimestampEncoder timestamps = new TimeSeriesCodec.TimestampEncoder();
+
+	private final Map<String, TimeSeriesCodec.ValueEncoder> columns = new LinkedHashMap<>();
+
+	private long lastTimestamp = Long.MIN_VALUE;
+
+	/**
+	 * @param start
+	 *            start of period covered by the chunk
+	 */
+	public TimeSeriesChunk(long start) {
+		this.start = start;
+	}
+
+	/**
+	 * Append values of all series at given time. Series missing in values get
+	 * NaN, new series get NaN for previous points.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if timestamp is not after the last appended one
+	 */
+	public void append(long timestamp, Map<String, Double> values) {
+		if (timestamp <= lastTimestamp) {
+			throw new IllegalArgumentException(
+					"Timestamp " + timestamp + " is not after last appended timestamp " + lastTimestamp);
+		}
+		int points = timestamps.getCount();
+		for (Entry<String, Double> value : values.entrySet()) {
+			TimeSeriesCodec.ValueEncoder column = columns.get(value.getKey());
+			if (column == null) {
+				column = new TimeSeriesCodec.ValueEncoder();
+				for (int i = 0; i < points; i++) {
+					column.append(Double.NaN);
+				}
+				columns.put(value.getKey(), column);
+			}
+			column.append(value.getValue() == null ? Double.NaN : value.getValue());
+		}
+		for (TimeSeriesCodec.ValueEncoder column : columns.values()) {
+			if (column.getCount() == points) {
+				column.append(Double.NaN);
+			}
+		}
+		timestamps.append(timestamp);
+		lastTimestamp = timestamp;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public int getPoints() {
+		return timestamps.getCount();
+	}
+
+	public Collection<String> getSeriesNames() {
+		return columns.keySet();
+	}
+
+	/**
+	 * @return series with points in given range, inclusive, series without
+	 *         such points are not returned
+	 */
+	public Map<String, TimeSeries> read(Collection<String> names, long from, long to) {
+		long[] decodedTimestamps = TimeSeriesCodec.decodeTimestamps(timestamps.toByteArray(), getPoints());
+		Map<String, TimeSeries> result = new LinkedHashMap<>();
+		for (String name : names) {
+			TimeSeriesCodec.ValueEncoder column = columns.get(name);
+			if (column != null) {
+				double[] values = TimeSeriesCodec.decodeValues(column.toByteArray(), getPoints());
+				TimeSeries series = TimeSeries.of(name, decodedTimestamps, values, from, to);
+				if (series.size() > 0) {
+					result.put(name, series);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Write chunk to file, existing file is replaced atomically
+	 */
+	public void write(File file) throws IOException {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(start);
+			out.writeInt(getPoints());
+			byte[] encodedTimestamps = timestamps.toByteArray();
+			out.writeInt(encodedTimestamps.length);
+			out.write(encodedTimestamps);
+
+			List<byte[]> encodedColumns = new ArrayList<>(columns.size());
+			out.writeInt(columns.size());
+			for (Entry<String, TimeSeriesCodec.ValueEncoder> column : columns.entrySet()) {
+				byte[] encoded = column.getValue().toByteArray();
+				encodedColumns.add(encoded);
+				out.writeUTF(column.getKey());
+				out.writeInt(encoded.length);
+			}
+			for (byte[] encoded : encodedColumns) {
+				out.write(encoded);
+			}
+		}
+		if (!tmpFile.renameTo(file)) {
+			throw new IOException("Problem renaming file: " + tmpFile);
+		}
+	}
+
+	/**
+	 * Read series from chunk file. Only the header and columns of requested
+	 * series are read.
+	 * 
+	 * @param names
+	 *            series to read, null to read only names of series
+	 * @return series with points in given range, inclusive
+	 */
+	public static Map<String, TimeSeries> read(File file, Collection<String> names, long from, long to)
+			throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a time series chunk: " + file);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version " + version + " of time series chunk: " + file);
+			}
+			in.readLong();
+			int points = in.readInt();
+			byte[] encodedTimestamps = new byte[in.readInt()];
+			in.readFully(encodedTimestamps);
+
+			int seriesCount = in.readInt();
+			Map<String, long[]> index = new HashMap<>();
+			List<String> order = new ArrayList<>(seriesCount);
+			long offset = 0;
+			for (int i = 0; i < seriesCount; i++) {
+				String name = in.readUTF();
+				int length = in.readInt();
+				index.put(name, new long[] { offset, length });
+				order.add(name);
+				offset += length;
+			}
+			long dataStart = in.getFilePointer();
+
+			Map<String, TimeSeries> result = new LinkedHashMap<>();
+			if (names == null) {
+				for (String name : order) {
+					result.put(name, null);
+				}
+				return result;
+			}
+
+			long[] timestamps = TimeSeriesCodec.decodeTimestamps(encodedTimestamps, points);
+			for (String name : names) {
+				long[] position = index.get(name);
+				if (position == null) {
+					continue;
+				}
+				byte[] encoded = new byte[(int) position[1]];
+				in.seek(dataStart + position[0]);
+				in.readFully(encoded);
+				TimeSeries series = TimeSeries.of(name, timestamps, TimeSeriesCodec.decodeValues(encoded, points),
+						from, to);
+				if (series.size() > 0) {
+					result.put(name, series);
+				}
+			}
+			return result;
+		}
+	}
+
+}
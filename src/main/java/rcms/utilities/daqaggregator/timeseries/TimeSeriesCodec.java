@@ -0,0 +1,190 @@
+package rcms.utilities.daqaggregator.timeseries;
+
+/**
+ * Encoding of time series columns. Timestamps are encoded as delta-of-delta,
+ * values as XOR with the previous value, as described in "Gorilla: A Fast,
+ * Scalable, In-Memory Time Series Database" (Pelkonen et al.). Regular
+ * sampling and slowly changing values take few bits per point.
+ */
+public class TimeSeriesCodec {
+
+	/**
+	 * Encoder of timestamps. First timestamp is written raw, following as
+	 * difference of consecutive deltas in buckets of 7, 9, 12 or 64 bits.
+	 */
+	static final class TimestampEncoder {
+
+		private final BitOutput out = new BitOutput();
+
+		private long previous;
+
+		private long previousDelta;
+
+		private int count;
+
+		void append(long timestamp) {
+			if (count == 0) {
+				out.writeBits(timestamp, 64);
+			} else {
+				long delta = timestamp - previous;
+				long deltaOfDelta = delta - previousDelta;
+				if (deltaOfDelta == 0) {
+					out.writeBit(false);
+				} else if (fits(deltaOfDelta, 7)) {
+					out.writeBits(0b10, 2);
+					out.writeBits(deltaOfDelta, 7);
+				} else if (fits(deltaOfDelta, 9)) {
+					out.writeBits(0b110, 3);
+					out.writeBits(deltaOfDelta, 9);
+				} else if (fits(deltaOfDelta, 12)) {
+					out.writeBits(0b1110, 4);
+					out.writeBits(deltaOfDelta, 12);
+				} else {
+					out.writeBits(0b1111, 4);
+					out.writeBits(deltaOfDelta, 64);
+				}
+				previousDelta = delta;
+			}
+			previous = timestamp;
+			count++;
+		}
+
+		int getCount() {
+			return count;
+		}
+
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Encoder of values. Values equal to the previous one take one bit, others
+	 * store only the meaningful bits of XOR with the previous value.
+	 */
+	static final class ValueEncoder {
+
+		private final BitOutput out = new BitOutput();
+
+		private long previous;
+
+		private int previousLeading = -1;
+
+		private int previousTrailing;
+
+		private int count;
+
+		void append(double value) {
+			long bits = Double.doubleToLongBits(value);
+			if (count == 0) {
+				out.writeBits(bits, 64);
+			} else {
+				long xor = bits ^ previous;
+				if (xor == 0) {
+					out.writeBit(false);
+				} else {
+					out.writeBit(true);
+					int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+					int trailing = Long.numberOfTrailingZeros(xor);
+					if (previousLeading != -1 && leading >= previousLeading && trailing >= previousTrailing) {
+						out.writeBit(false);
+						out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+					} else {
+						int meaningful = 64 - leading - trailing;
+						out.writeBit(true);
+						out.writeBits(leading, 5);
+						out.writeBits(meaningful - 1, 6);
+						out.writeBits(xor >>> trailing, meaningful);
+						previousLeading = leading;
+						previousTrailing = trailing;
+					}
+				}
+			}
+			previous = bits;
+			count++;
+		}
+
+		int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return number of bits of encoded values
+		 */
+		long getBits() {
+			return out.getBits();
+		}
+
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+	}
+
+	private static boolean fits(long value, int bits) {
+		long limit = 1L << (bits - 1);
+		return value >= -limit && value < limit;
+	}
+
+	private static long signExtend(long value, int bits) {
+		return (value << (64 - bits)) >> (64 - bits);
+	}
+
+	/**
+	 * Decode given number of timestamps written by {@link TimestampEncoder}
+	 */
+	public static long[] decodeTimestamps(byte[] data, int count) {
+		long[] result = new long[count];
+		BitInput in = new BitInput(data);
+		long previous = 0;
+		long previousDelta = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0) {
+				previous = in.readBits(64);
+			} else {
+				long deltaOfDelta;
+				if (!in.readBit()) {
+					deltaOfDelta = 0;
+				} else if (!in.readBit()) {
+					deltaOfDelta = signExtend(in.readBits(7), 7);
+				} else if (!in.readBit()) {
+					deltaOfDelta = signExtend(in.readBits(9), 9);
+				} else if (!in.readBit()) {
+					deltaOfDelta = signExtend(in.readBits(12), 12);
+				} else {
+					deltaOfDelta = in.readBits(64);
+				}
+				previousDelta += deltaOfDelta;
+				previous += previousDelta;
+			}
+			result[i] = previous;
+		}
+		return result;
+	}
+
+	/**
+	 * Decode given number of values written by {@link ValueEncoder}
+	 */
+	public static double[] decodeValues(byte[] data, int count) {
+		double[] result = new double[count];
+		BitInput in = new BitInput(data);
+		long previous = 0;
+		int leading = 0;
+		int trailing = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0) {
+				previous = in.readBits(64);
+			} else if (in.readBit()) {
+				if (in.readBit()) {
+					leading = (int) in.readBits(5);
+					int meaningful = (int) in.readBits(6) + 1;
+					trailing = 64 - leading - meaningful;
+				}
+				long xor = in.readBits(64 - leading - trailing) << trailing;
+				previous ^= xor;
+			}
+			result[i] = Double.longBitsToDouble(previous);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,193 @@
+package rcms.utilities.daqaggregator.timeseries;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.persistence.FileSystemConnector;
+import rcms.utilities.daqaggregator.persistence.PersistenceExplorer;
+import rcms.utilities.daqaggregator.persistence.PersistorManager;
+
+/**
+ * Archive of metric time series in columnar chunks. Chunks cover at most one
+ * hour and are stored in the time-based directory structure used for
+ * snapshots, named after their first timestamp. The open chunk is kept in
+ * memory and written out periodically and when the hour ends.
+ * 
+ * Store can be queried offline by creating it over existing directory.
+ */
+public class TimeSeriesStore {
+
+	private static final Logger logger = Logger.getLogger(TimeSeriesStore.class);
+
+	public static final String EXTENSION = ".ts";
+
+	public static final long CHUNK_PERIOD = 3600000;
+
+	public static final long DEFAULT_FLUSH_PERIOD = 300000;
+
+	private final String dir;
+
+	private final long flushPeriod;
+
+	private final PersistenceExplorer explorer;
+
+	private final MetricExtractor extractor = new MetricExtractor();
+
+	/** Chunk being appended to, null if none */
+	private TimeSeriesChunk current;
+
+	private File currentFile;
+
+	private long currentLast;
+
+	private long lastFlush;
+
+	public TimeSeriesStore(String dir) {
+		this(dir, DEFAULT_FLUSH_PERIOD);
+	}
+
+	/**
+	 * @param dir
+	 *            base directory of the archive
+	 * @param flushPeriod
+	 *            period of writing the open chunk, in time of appended points
+	 */
+	public TimeSeriesStore(String dir, long flushPeriod) {
+		this.dir = dir.endsWith("/") ? dir : dir + "/";
+		this.flushPeriod = flushPeriod;
+		this.explorer = new PersistenceExplorer(new FileSystemConnector());
+	}
+
+	/**
+	 * Append metrics of snapshot
+	 */
+	public void append(DAQ daq) throws IOException {
+		append(daq.getLastUpdate(), extractor.extract(daq));
+	}
+
+	public synchronized void append(long timestamp, Map<String, Double> values) throws IOException {
+		long chunkStart = timestamp - timestamp % CHUNK_PERIOD;
+		if (current != null && (current.getStart() / CHUNK_PERIOD != chunkStart / CHUNK_PERIOD
+				|| timestamp <= currentLast)) {
+			flush();
+			current = null;
+		}
+		if (current == null) {
+			current = new TimeSeriesChunk(timestamp);
+			currentFile = new File(PersistorManager.getTimeDir(dir, timestamp), timestamp + EXTENSION);
+			lastFlush = timestamp;
+		}
+		current.append(timestamp, values);
+		currentLast = timestamp;
+		if (timestamp - lastFlush >= flushPeriod) {
+			flush();
+		}
+	}
+
+	/**
+	 * Write the open chunk
+	 */
+	public synchronized void flush() throws IOException {
+		if (current == null || current.getPoints() == 0) {
+			return;
+		}
+		File timeDir = currentFile.getParentFile();
+		if (!timeDir.exists() && !timeDir.mkdirs()) {
+			throw new IOException("Failed to create following dir: " + timeDir.getAbsolutePath());
+		}
+		long startTime = System.currentTimeMillis();
+		current.write(currentFile);
+		lastFlush = currentLast;
+		logger.debug("Time series chunk with " + current.getPoints() + " points of "
+				+ current.getSeriesNames().size() + " series written to " + currentFile + " in "
+				+ (System.currentTimeMillis() - startTime) + "ms");
+	}
+
+	/**
+	 * Read requested series in given range, inclusive. Only columns of
+	 * requested series are read from chunk files.
+	 * 
+	 * @return series with at least one point in range
+	 */
+	public synchronized Map<String, TimeSeries> query(Collection<String> names, long from, long to)
+			throws IOException {
+		Map<String, TimeSeries> result = new LinkedHashMap<>();
+		for (Map<String, TimeSeries> chunk : readChunks(names, from, to)) {
+			for (Entry<String, TimeSeries> series : chunk.entrySet()) {
+				TimeSeries previous = result.get(series.getKey());
+				result.put(series.getKey(), previous == null ? series.getValue() : previous.concat(series.getValue()));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return names of series in chunks overlapping given range
+	 */
+	public synchronized Set<String> getSeriesNames(long from, long to) throws IOException {
+		Set<String> result = new LinkedHashSet<>();
+		for (Map<String, TimeSeries> chunk : readChunks(null, from, to)) {
+			result.addAll(chunk.keySet());
+		}
+		return result;
+	}
+
+	private List<Map<String, TimeSeries>> readChunks(Collection<String> names, long from, long to)
+			throws IOException {
+		List<Map<String, TimeSeries>> result = new ArrayList<>();
+		boolean currentRead = false;
+		for (File file : findChunks(from, to)) {
+			if (current != null && file.equals(currentFile)) {
+				result.add(readCurrent(names, from, to));
+				currentRead = true;
+			} else {
+				result.add(TimeSeriesChunk.read(file, names, from, to));
+			}
+		}
+		if (current != null && !currentRead && current.getStart() <= to && currentLast >= from) {
+			result.add(readCurrent(names, from, to));
+		}
+		return result;
+	}
+
+	private Map<String, TimeSeries> readCurrent(Collection<String> names, long from, long to) {
+		if (names != null) {
+			return current.read(names, from, to);
+		}
+		Map<String, TimeSeries> result = new LinkedHashMap<>();
+		for (String name : current.getSeriesNames()) {
+			result.put(name, null);
+		}
+		return result;
+	}
+
+	private List<File> findChunks(long from, long to) throws IOException {
+		if (!new File(dir).exists()) {
+			return Collections.emptyList();
+		}
+		List<File> result = new ArrayList<>();
+		for (File file : explorer.explore(from - CHUNK_PERIOD, to, dir, Integer.MAX_VALUE).getRight()) {
+			if (file.getName().endsWith(EXTENSION)) {
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+	public String getDir() {
+		return dir;
+	}
+
+}
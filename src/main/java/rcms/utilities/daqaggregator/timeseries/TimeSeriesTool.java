@@ -0,0 +1,69 @@
+package rcms.utilities.daqaggregator.timeseries;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.xml.bind.DatatypeConverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Offline query of time series archive.
+ * 
+ * use e.g. as
+ * 
+ * <pre>
+ *   java -cp target/DAQAggregator-...-jar-with-dependencies.jar \
+ *     rcms.utilities.daqaggregator.timeseries.TimeSeriesTool \
+ *     /daqdata/timeseries/ 2017-05-31T08:00:00Z 2017-05-31T14:00:00Z fed.1234.percentBackpressure
+ * </pre>
+ * 
+ * Times are given as timestamps in ms or ISO 8601 dates. Without series names
+ * the names of available series are printed.
+ */
+public class TimeSeriesTool {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("usage: TimeSeriesTool dir from to [series ...]");
+			System.exit(1);
+		}
+
+		TimeSeriesStore store = new TimeSeriesStore(args[0]);
+		long from = parseTime(args[1]);
+		long to = parseTime(args[2]);
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.enable(SerializationFeature.INDENT_OUTPUT);
+
+		if (args.length == 3) {
+			mapper.writeValue(System.out, store.getSeriesNames(from, to));
+			return;
+		}
+
+		Collection<String> names = Arrays.asList(args).subList(3, args.length);
+		ObjectNode result = mapper.createObjectNode();
+		for (Map.Entry<String, TimeSeries> series : store.query(names, from, to).entrySet()) {
+			ArrayNode points = result.putArray(series.getKey());
+			long[] timestamps = series.getValue().getTimestamps();
+			double[] values = series.getValue().getValues();
+			for (int i = 0; i < timestamps.length; i++) {
+				points.addArray().add(timestamps[i]).add(values[i]);
+			}
+		}
+		mapper.writeValue(System.out, result);
+	}
+
+	private static long parseTime(String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return DatatypeConverter.parseDateTime(value).getTimeInMillis();
+		}
+	}
+
+}
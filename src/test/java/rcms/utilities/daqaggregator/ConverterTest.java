@@ -0,0 +1,177 @@
+package rcms.utilities.daqaggregator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.persistence.Codec;
+import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
+import rcms.utilities.daqaggregator.persistence.StructureSerializer;
+
+/**
+ * Converted files are read the same as source files, conversion resumes from
+ * checkpoint and does not convert existing files again
+ */
+public class ConverterTest {
+
+	private static final String SNAPSHOTS_DIR = "src/test/resources/compatibility/1.8.0/snapshots/";
+
+	private static final String SNAPSHOT = "2017/5/8/8/1494233773794";
+
+	private static final String FLASHLISTS_DIR = "src/test/resources/compatibility/1.4.0/";
+
+	private final StructureSerializer serializer = new StructureSerializer();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void snapshotTest() throws IOException, InterruptedException {
+		DAQ expected = serializer.deserialize(SNAPSHOTS_DIR + SNAPSHOT + ".json");
+		String sourceDir = folder.newFolder().getAbsolutePath() + "/";
+		File source = new File(sourceDir + SNAPSHOT + ".json");
+		source.getParentFile().mkdirs();
+		Files.copy(new File(SNAPSHOTS_DIR + SNAPSHOT + ".json").toPath(), source.toPath());
+		for (PersistenceFormat format : new PersistenceFormat[] { PersistenceFormat.ZIPPED, PersistenceFormat.SMILE,
+				PersistenceFormat.JSONREFPREFIXED, PersistenceFormat.BINARY }) {
+			String targetDir = folder.newFolder().getAbsolutePath() + "/";
+			Converter converter = new Converter(PersistenceFormat.JSON, format, Codec.LZ, 2);
+			converter.convertSnapshots(sourceDir, targetDir, 0, Long.MAX_VALUE);
+			Assert.assertEquals(1, converter.getConverted());
+			Assert.assertEquals(0, converter.getFailed());
+			Assert.assertEquals(0, converter.getSkipped());
+
+			File converted = new File(targetDir + SNAPSHOT + format.getExtension(Codec.LZ));
+			Assert.assertTrue(format.toString(), converted.exists());
+			Assert.assertArrayEquals(format.toString(), serialize(expected),
+					serialize(serializer.deserialize(converted.getAbsolutePath(), format)));
+			Assert.assertTrue(new File(targetDir, Converter.CHECKPOINT).exists());
+		}
+	}
+
+	/**
+	 * Files are matched by full extension of source format, ref prefixed json
+	 * is not json. Files of other formats fail the conversion.
+	 */
+	@Test
+	public void sourceFormatTest() throws IOException, InterruptedException {
+		DAQ expected = serializer.deserialize(SNAPSHOTS_DIR + SNAPSHOT + ".json");
+		String sourceDir = folder.newFolder().getAbsolutePath() + "/";
+		File source = new File(sourceDir + SNAPSHOT + PersistenceFormat.JSONREFPREFIXED.getExtension());
+		source.getParentFile().mkdirs();
+		serializer.serialize(expected, new FileOutputStream(source), PersistenceFormat.JSONREFPREFIXED);
+
+		String targetDir = folder.newFolder().getAbsolutePath() + "/";
+		Converter converter = new Converter(PersistenceFormat.JSON, PersistenceFormat.ZIPPED, Codec.GZIP, 2);
+		converter.convertSnapshots(sourceDir, targetDir, 0, Long.MAX_VALUE);
+		Assert.assertEquals(0, converter.getConverted());
+		Assert.assertEquals(1, converter.getFailed());
+		Assert.assertEquals(0, files(new File(targetDir)).size());
+		Assert.assertFalse(new File(targetDir, Converter.CHECKPOINT).exists());
+
+		converter = new Converter(PersistenceFormat.JSONREFPREFIXED, PersistenceFormat.JSON, Codec.GZIP, 2);
+		converter.convertSnapshots(sourceDir, targetDir, 0, Long.MAX_VALUE);
+		Assert.assertEquals(1, converter.getConverted());
+		Assert.assertEquals(0, converter.getFailed());
+		File converted = new File(targetDir + SNAPSHOT + ".json");
+		Assert.assertArrayEquals(serialize(expected), serialize(serializer.deserialize(converted.getAbsolutePath())));
+		Assert.assertTrue(new File(targetDir, Converter.CHECKPOINT).exists());
+	}
+
+	@Test
+	public void flashlistTest() throws IOException, InterruptedException {
+		String targetDir = folder.newFolder().getAbsolutePath() + "/";
+		Converter converter = new Converter(PersistenceFormat.JSON, PersistenceFormat.SMILE, Codec.GZIP, 4);
+		converter.convertFlashlists(FLASHLISTS_DIR, targetDir, 0, Long.MAX_VALUE);
+		Assert.assertEquals(0, converter.getFailed());
+
+		List<File> sources = files(new File(FLASHLISTS_DIR));
+		Assert.assertEquals(sources.size(), converter.getConverted());
+		for (File source : sources) {
+			String path = source.getAbsolutePath().substring(new File(FLASHLISTS_DIR).getAbsolutePath().length());
+			File converted = new File(targetDir + path.replace(".json", ".smile"));
+			Assert.assertTrue(path, converted.exists());
+			Flashlist expected = serializer.deserializeFlashlist(source, PersistenceFormat.JSON);
+			Flashlist actual = serializer.deserializeFlashlist(converted, PersistenceFormat.SMILE);
+			Assert.assertEquals(path, expected.getRowsNode(), actual.getRowsNode());
+			Assert.assertEquals(path, expected.getRetrievalDate(), actual.getRetrievalDate());
+		}
+	}
+
+	/**
+	 * Conversion resumes after the checkpoint, files which exist are not
+	 * converted again
+	 */
+	@Test
+	public void resumeTest() throws IOException, InterruptedException {
+		String targetDir = folder.newFolder().getAbsolutePath() + "/";
+		long start = DatatypeConverter.parseDateTime("2016-09-01T15:00:00Z").getTimeInMillis();
+		long middle = 1472743080834L;
+
+		Converter first = new Converter(PersistenceFormat.JSON, PersistenceFormat.ZIPPED, Codec.GZIP, 2);
+		first.convertFlashlists(FLASHLISTS_DIR, targetDir, start, middle);
+		int converted = first.getConverted();
+		Assert.assertTrue(converted > 0);
+		File checkpoint = new File(targetDir + "LEVEL_ZERO_FM_DYNAMIC/", Converter.CHECKPOINT);
+		Assert.assertTrue(Files.readAllLines(checkpoint.toPath(), StandardCharsets.ISO_8859_1)
+				.contains("timestamp=" + middle));
+
+		/* interrupted conversion left temporary file */
+		File next = new File(targetDir + "LEVEL_ZERO_FM_DYNAMIC/2016/9/1/15/1472743088565.json.gz");
+		Assert.assertFalse(next.exists());
+		Files.write(new File(next.getPath() + ".tmp").toPath(), new byte[] { 1 });
+
+		Converter second = new Converter(PersistenceFormat.JSON, PersistenceFormat.ZIPPED, Codec.GZIP, 2);
+		second.convertFlashlists(FLASHLISTS_DIR, targetDir, start, Long.MAX_VALUE);
+		Assert.assertEquals(0, second.getFailed());
+		Assert.assertEquals(0, second.getSkipped());
+		Assert.assertEquals(files(new File(FLASHLISTS_DIR)).size(), converted + second.getConverted());
+		Assert.assertNotNull(serializer.deserializeFlashlist(next, PersistenceFormat.ZIPPED));
+
+		/* without checkpoint existing files are not converted again */
+		Assert.assertTrue(checkpoint.delete());
+		Converter third = new Converter(PersistenceFormat.JSON, PersistenceFormat.ZIPPED, Codec.GZIP, 2);
+		third.convertFlashlists(FLASHLISTS_DIR, targetDir, start, Long.MAX_VALUE);
+		Assert.assertEquals(0, third.getConverted());
+		Assert.assertEquals(0, third.getFailed());
+		Assert.assertEquals(5, third.getSkipped());
+	}
+
+	private byte[] serialize(DAQ daq) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serializer.serialize(daq, out, PersistenceFormat.JSON);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return files of flashlists of known types
+	 */
+	private List<File> files(File dir) {
+		List<File> result = new ArrayList<>();
+		for (File file : dir.listFiles()) {
+			if (file.getName().contains("DEAD_TIME") || file.getName().equals("FRL_MONITORING")) {
+				continue;
+			} else if (file.isDirectory()) {
+				result.addAll(files(file));
+			} else {
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+}
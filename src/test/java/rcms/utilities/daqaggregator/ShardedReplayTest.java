@@ -0,0 +1,289 @@
+package rcms.utilities.daqaggregator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.lang3.tuple.Triple;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.datasource.FileFlashlistRetriever;
+import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistManager;
+import rcms.utilities.daqaggregator.datasource.FlashlistRetriever;
+import rcms.utilities.daqaggregator.datasource.FlashlistType;
+import rcms.utilities.daqaggregator.datasource.MonitorManager;
+import rcms.utilities.daqaggregator.datasource.SessionRetriever;
+import rcms.utilities.daqaggregator.datasource.TCDSFMInfoRetriever;
+import rcms.utilities.daqaggregator.mappers.MappingManager;
+import rcms.utilities.daqaggregator.mappers.MappingReporter;
+import rcms.utilities.daqaggregator.mappers.ObjectMapper;
+import rcms.utilities.daqaggregator.mappers.PostProcessor;
+import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
+import rcms.utilities.daqaggregator.persistence.PersistorManager;
+import rcms.utilities.daqaggregator.persistence.StructureSerializer;
+
+/**
+ * Shards of replay start at session boundaries, warm-up cycles are not
+ * persisted and all cycles are persisted once
+ */
+public class ShardedReplayTest {
+
+	private static final String TEST_FLASHLISTS_DIR = "src/test/resources/compatibility/1.4.0/";
+
+	private static final String TEST_SNAPSHOT = "src/test/resources/compatibility/1.8.0/snapshots/2017/5/8/8/1494233773794.json";
+
+	/** Retrieval date of first flashlist of the second session */
+	private static final long SECOND_SESSION = 1472743088565L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replayTest() throws IOException, InterruptedException {
+		ShardedReplay replay = new ShardedReplay(prepare(), new TestSessionRetriever(), 1);
+		List<ShardedReplay.Shard> shards = replay.plan(5);
+		Assert.assertEquals(2, shards.size());
+		Assert.assertEquals(0, shards.get(0).getFrom());
+		Assert.assertEquals(2, shards.get(0).getTo());
+		Assert.assertEquals(Collections.singleton(1), shards.get(0).getSessions());
+		Assert.assertEquals(2, shards.get(1).getFrom());
+		Assert.assertEquals(5, shards.get(1).getTo());
+		Assert.assertEquals(Collections.singleton(2), shards.get(1).getSessions());
+
+		File snapshotDir = folder.newFolder();
+		ShardedReplay.Report report = replay.run(shards, 2, new TestEnvironment(snapshotDir));
+		Assert.assertTrue(report.toString(), report.isConsistent());
+		Assert.assertEquals(5, report.getPersisted());
+		Assert.assertEquals(5, count(snapshotDir));
+
+		Assert.assertEquals(0, shards.get(0).getWarmup());
+		Assert.assertEquals(1, shards.get(1).getWarmup());
+		Assert.assertEquals(1472743080834L, shards.get(0).getLastSnapshot());
+		Assert.assertEquals(SECOND_SESSION, shards.get(1).getFirstSnapshot());
+	}
+
+	/**
+	 * Sessions are not split
+	 */
+	@Test
+	public void singleShardTest() throws IOException {
+		ShardedReplay replay = new ShardedReplay(prepare(), new TestSessionRetriever(), 1);
+		List<ShardedReplay.Shard> shards = replay.plan(2);
+		Assert.assertEquals(1, shards.size());
+		Assert.assertEquals(5, shards.get(0).getCycles());
+		Assert.assertEquals(Arrays.asList(1, 2), Arrays.asList(shards.get(0).getSessions().toArray()));
+	}
+
+	@Test
+	public void failedShardTest() throws IOException, InterruptedException {
+		ShardedReplay replay = new ShardedReplay(prepare(), new TestSessionRetriever(), 1);
+		List<ShardedReplay.Shard> shards = replay.plan(5);
+		ShardedReplay.Report report = replay.run(shards, 2, new TestEnvironment(null));
+		Assert.assertFalse(report.isConsistent());
+		Assert.assertEquals(2, report.getProblems().size());
+		Assert.assertNotNull(shards.get(0).getError());
+	}
+
+	/**
+	 * Shards dispatching flashlists in parallel report the same as replay on
+	 * a single thread
+	 */
+	@Test
+	public void dispatchTest() throws IOException, InterruptedException {
+		Map<Long, Map<String, Integer>> sequential = new ConcurrentHashMap<>();
+		ShardedReplay replay = new ShardedReplay(prepare(), new TestSessionRetriever(), 1);
+		ShardedReplay.Report report = replay.run(replay.plan(5), 1,
+				new TestEnvironment(folder.newFolder(), sequential));
+		Assert.assertTrue(report.toString(), report.isConsistent());
+		Assert.assertEquals(5, sequential.size());
+		Assert.assertFalse(sequential.get(SECOND_SESSION).isEmpty());
+
+		for (int i = 0; i < 5; i++) {
+			Map<Long, Map<String, Integer>> parallel = new ConcurrentHashMap<>();
+			replay = new ShardedReplay(prepare(), new TestSessionRetriever(), 1);
+			report = replay.run(replay.plan(5), 2, new TestEnvironment(folder.newFolder(), parallel));
+			Assert.assertTrue(report.toString(), report.isConsistent());
+			Assert.assertEquals(5, report.getPersisted());
+			Assert.assertEquals(sequential, parallel);
+		}
+	}
+
+	private FileFlashlistRetriever prepare() throws IOException {
+		FileFlashlistRetriever retriever = new FileFlashlistRetriever(TEST_FLASHLISTS_DIR, PersistenceFormat.JSON);
+		retriever.prepare(DatatypeConverter.parseDateTime("2016-09-01T15:00:00Z").getTimeInMillis());
+		Assert.assertEquals(5, retriever.getCycleCount());
+		return retriever;
+	}
+
+	private int count(File dir) {
+		int result = 0;
+		for (File file : dir.listFiles()) {
+			result += file.isDirectory() ? count(file) : 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Session changes in the third cycle
+	 */
+	private static class TestSessionRetriever extends SessionRetriever {
+
+		TestSessionRetriever() {
+			super("toppro", "toppro");
+		}
+
+		@Override
+		public Triple<String, Integer, Long> retrieveSession(Flashlist flashlist) {
+			long timestamp = flashlist.getRetrievalDate().getTime();
+			return Triple.of("/daq2/test", timestamp < SECOND_SESSION ? 1 : 2, timestamp);
+		}
+	}
+
+	/**
+	 * Returns test snapshot with time of last update of flashlists,
+	 * independently of hardware database
+	 */
+	private static class TestMonitorManager extends MonitorManager {
+
+		private final FlashlistRetriever flashlistRetriever;
+
+		TestMonitorManager(FlashlistRetriever flashlistRetriever) {
+			super(flashlistRetriever, new TestSessionRetriever(), null, null);
+			this.flashlistRetriever = flashlistRetriever;
+		}
+
+		@Override
+		public Triple<DAQ, Collection<Flashlist>, Boolean> getSystemSnapshot() {
+			Map<FlashlistType, Flashlist> flashlists = flashlistRetriever.retrieveAllFlashlists(0);
+			long lastUpdate = 0;
+			for (Flashlist flashlist : flashlists.values()) {
+				lastUpdate = Math.max(lastUpdate, flashlist.getRetrievalDate().getTime());
+			}
+			DAQ daq = new StructureSerializer().deserialize(TEST_SNAPSHOT);
+			daq.setLastUpdate(lastUpdate);
+			return Triple.of(daq, flashlists.values(), false);
+		}
+	}
+
+	/**
+	 * Dispatches flashlists to test snapshot with flashlist manager and post
+	 * processor, independently of hardware database. Keeps mapping report of
+	 * each cycle.
+	 */
+	private static class DispatchingMonitorManager extends MonitorManager {
+
+		private final FlashlistRetriever flashlistRetriever;
+
+		private final DAQ daq;
+
+		private final FlashlistManager flashlistManager;
+
+		private final Map<Long, Map<String, Integer>> reports;
+
+		DispatchingMonitorManager(FlashlistRetriever flashlistRetriever, Map<Long, Map<String, Integer>> reports) {
+			super(flashlistRetriever, new TestSessionRetriever(), null, null);
+			this.flashlistRetriever = flashlistRetriever;
+			this.reports = reports;
+			daq = new StructureSerializer().deserialize(TEST_SNAPSHOT);
+
+			MappingManager mappingManager = new MappingManager(null, new TCDSFMInfoRetriever(flashlistRetriever));
+			ObjectMapper objects = mappingManager.getObjectMapper();
+			objects.daq = daq;
+			objects.feds = index(daq.getFeds());
+			objects.bus = index(daq.getBus());
+			objects.rus = index(daq.getRus());
+			objects.fmms = index(daq.getFmms());
+			objects.frls = index(daq.getFrls());
+			objects.frlPcs = index(daq.getFrlPcs());
+			objects.fmmApplications = index(daq.getFmmApplications());
+			objects.subSystems = index(daq.getSubSystems());
+			objects.ttcPartitions = index(daq.getTtcPartitions());
+			objects.fedsById = new HashMap<>();
+			objects.fedsByExpectedId = new HashMap<>();
+			for (FED fed : daq.getFeds()) {
+				objects.fedsById.put(fed.getId(), fed);
+				objects.fedsByExpectedId.put(fed.getSrcIdExpected(), fed);
+			}
+			flashlistManager = new FlashlistManager(mappingManager);
+		}
+
+		@Override
+		public Triple<DAQ, Collection<Flashlist>, Boolean> getSystemSnapshot() {
+			Map<FlashlistType, Flashlist> flashlists = flashlistRetriever.retrieveAllFlashlists(0);
+			List<Flashlist> flashlistsInOrder = new ArrayList<>();
+			long lastUpdate = 0;
+			for (FlashlistType flashlistType : FlashlistType.values()) {
+				Flashlist flashlist = flashlists.get(flashlistType);
+				if (flashlist != null) {
+					flashlistsInOrder.add(flashlist);
+					lastUpdate = Math.max(lastUpdate, flashlist.getRetrievalDate().getTime());
+				}
+			}
+			flashlistManager.mapFlashlists(flashlistsInOrder);
+			daq.setLastUpdate(lastUpdate);
+			new PostProcessor(daq).postProcess();
+			reports.put(lastUpdate, new HashMap<>(MappingReporter.get().getTotalObjects()));
+			return Triple.of(daq, flashlists.values(), false);
+		}
+
+		private static <T> Map<Integer, T> index(Collection<T> objects) {
+			Map<Integer, T> result = new HashMap<>();
+			for (T object : objects) {
+				result.put(result.size(), object);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Fails to create persistor manager if snapshot dir is not given
+	 */
+	private static class TestEnvironment implements ShardedReplay.Environment {
+
+		private final File snapshotDir;
+
+		/** Mapping reports of cycles, null to skip dispatching */
+		private final Map<Long, Map<String, Integer>> reports;
+
+		TestEnvironment(File snapshotDir) {
+			this(snapshotDir, null);
+		}
+
+		TestEnvironment(File snapshotDir, Map<Long, Map<String, Integer>> reports) {
+			this.snapshotDir = snapshotDir;
+			this.reports = reports;
+		}
+
+		@Override
+		public MonitorManager createMonitorManager(FlashlistRetriever flashlistRetriever) {
+			if (reports != null) {
+				return new DispatchingMonitorManager(flashlistRetriever, reports);
+			}
+			return new TestMonitorManager(flashlistRetriever);
+		}
+
+		@Override
+		public PersistorManager createPersistorManager() {
+			if (snapshotDir == null) {
+				throw new IllegalStateException("No snapshot dir");
+			}
+			return new PersistorManager(snapshotDir.getAbsolutePath() + "/", null, PersistenceFormat.JSON, null);
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests compressed transfer against stub LAS server
+ */
+public class ConnectorTest {
+
+	private static final String LINE;
+
+	static {
+		StringBuilder sb = new StringBuilder("{\"table\":{\"rows\":[");
+		for (int i = 0; i < 1000; i++) {
+			sb.append(i > 0 ? "," : "").append("{\"context\":\"http://host-").append(i).append(".cms:1234\"}");
+		}
+		LINE = sb.append("]}}").toString();
+	}
+
+	private HttpServer server;
+
+	private String base;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/gzip", new StubHandler(true));
+		server.createContext("/plain", new StubHandler(false));
+		server.start();
+		base = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void compressedTransferTest() throws IOException {
+		Connector connector = new Connector(false);
+		Pair<Integer, List<String>> result = connector.retrieveLines(base + "/gzip");
+
+		Assert.assertEquals(200, (int) result.getLeft());
+		Assert.assertEquals(1, result.getRight().size());
+		Assert.assertEquals(LINE, result.getRight().get(0));
+		Assert.assertEquals(LINE.length() + 1, connector.getDecodedBytes());
+		Assert.assertTrue(connector.getWireBytes() < connector.getDecodedBytes() / 5);
+	}
+
+	@Test
+	public void uncompressedTransferTest() throws IOException {
+		Connector connector = new Connector(false);
+		Pair<Integer, List<String>> result = connector.retrieveLines(base + "/plain");
+
+		Assert.assertEquals(LINE, result.getRight().get(0));
+		Assert.assertEquals(connector.getDecodedBytes(), connector.getWireBytes());
+	}
+
+	/**
+	 * Responds with gzip content encoding if requested and enabled
+	 */
+	private static class StubHandler implements HttpHandler {
+
+		private final boolean gzipSupported;
+
+		public StubHandler(boolean gzipSupported) {
+			this.gzipSupported = gzipSupported;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			byte[] body = (LINE + "\n").getBytes("UTF-8");
+			if (gzipSupported && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream os = new GZIPOutputStream(exchange.getResponseBody());
+				os.write(body);
+				os.close();
+			} else {
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(body);
+				os.close();
+			}
+		}
+	}
+
+}
@@ -2,7 +2,9 @@ package rcms.utilities.daqaggregator.datasource;
 
 import static org.hamcrest.CoreMatchers.is;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Date;
 import java.util.Map;
 
@@ -12,6 +14,7 @@ import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
 
@@ -24,6 +27,9 @@ public class FileFlashlistRetrieverTest {
 	@Rule
 	public ExpectedException thrown = ExpectedException.none();
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void noFlashlistTest() {
 		thrown.expect(RuntimeException.class);
@@ -99,4 +105,110 @@ public class FileFlashlistRetrieverTest {
 		Assert.assertEquals(18, retriever.retrieveAllFlashlists(dummySessionId).size());
 
 	}
+
+	/**
+	 * Cycles read ahead in parallel are returned in order and equal to cycles
+	 * read on demand, also when memory budget allows only one cycle ahead
+	 */
+	@Test
+	public void readAheadTest() throws IOException {
+		long start = DatatypeConverter.parseDateTime("2016-09-01T15:00:00Z").getTimeInMillis();
+		for (long memoryBudget : new long[] { 1, 1L << 30 }) {
+			FileFlashlistRetriever expected = new FileFlashlistRetriever(TEST_FLASHLISTS_DIR, PersistenceFormat.JSON);
+			expected.prepare(start);
+			FileFlashlistRetriever retriever = new FileFlashlistRetriever(TEST_FLASHLISTS_DIR, PersistenceFormat.JSON);
+			retriever.prepare(start);
+			retriever.setReadAhead(3, 2, memoryBudget);
+
+			for (int i = 0; i < 5; i++) {
+				Assert.assertEquals(FlashlistType.LEVEL_ZERO_FM_STATIC,
+						retriever.retrieveFlashlist(FlashlistType.LEVEL_ZERO_FM_STATIC).getLeft().getFlashlistType());
+				if (i == 2) {
+					expected.skip();
+					retriever.skip();
+					continue;
+				}
+				Map<FlashlistType, Flashlist> expectedCycle = expected.retrieveAllFlashlists(dummySessionId);
+				Map<FlashlistType, Flashlist> cycle = retriever.retrieveAllFlashlists(dummySessionId);
+				Assert.assertEquals(18, cycle.size());
+				for (FlashlistType type : expectedCycle.keySet()) {
+					Assert.assertEquals(expectedCycle.get(type).getRetrievalDate(), cycle.get(type).getRetrievalDate());
+					Assert.assertEquals(expectedCycle.get(type).getRowsNode(), cycle.get(type).getRowsNode());
+				}
+			}
+
+			try {
+				retriever.retrieveAllFlashlists(dummySessionId);
+				Assert.fail("All cycles should be retrieved");
+			} catch (RuntimeException e) {
+				Assert.assertEquals(FileFlashlistRetriever.EXCEPTION_NO_FLASHLISTS_AVAILABLE, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Flashlists are merged into cycles by retrieval timestamp. Missing file
+	 * does not shift later cycles, previous flashlist of the type is reused
+	 */
+	@Test
+	public void missingFileTest() throws IOException {
+		File dir = copy(new File(TEST_FLASHLISTS_DIR), folder.newFolder());
+		String hourDir = "/2016/9/1/15/";
+		Assert.assertTrue(new File(dir, "RU" + hourDir + "1472743080834.json").delete());
+		/* retrieved later than other flashlists of the cycle */
+		File hostInfo = new File(dir, "HOST_INFO" + hourDir + "1472743088565.json");
+		Assert.assertTrue(hostInfo.renameTo(new File(dir, "HOST_INFO" + hourDir + "1472743089065.json")));
+
+		FileFlashlistRetriever retriever = new FileFlashlistRetriever(dir.getAbsolutePath() + "/",
+				PersistenceFormat.JSON);
+		retriever.prepare(DatatypeConverter.parseDateTime("2016-09-01T15:00:00Z").getTimeInMillis());
+		Map<FlashlistType, Flashlist> first = retriever.retrieveAllFlashlists(dummySessionId);
+		Map<FlashlistType, Flashlist> second = retriever.retrieveAllFlashlists(dummySessionId);
+		Assert.assertEquals(18, second.size());
+		Assert.assertEquals(1472743080834L, second.get(FlashlistType.BU).getRetrievalDate().getTime());
+		Assert.assertSame(first.get(FlashlistType.RU), second.get(FlashlistType.RU));
+
+		Map<FlashlistType, Flashlist> third = retriever.retrieveAllFlashlists(dummySessionId);
+		Assert.assertEquals(1472743088565L, third.get(FlashlistType.BU).getRetrievalDate().getTime());
+		Assert.assertEquals(1472743088565L, third.get(FlashlistType.RU).getRetrievalDate().getTime());
+		Assert.assertNotSame(second.get(FlashlistType.HOST_INFO), third.get(FlashlistType.HOST_INFO));
+
+		Assert.assertEquals(18, retriever.retrieveAllFlashlists(dummySessionId).size());
+		Assert.assertEquals(18, retriever.retrieveAllFlashlists(dummySessionId).size());
+		Assert.assertEquals(5, retriever.getCycleCount());
+	}
+
+	/**
+	 * Flashlists retrieved further apart than tolerance are in separate cycles
+	 */
+	@Test
+	public void toleranceTest() throws IOException {
+		File dir = copy(new File(TEST_FLASHLISTS_DIR), folder.newFolder());
+		File hostInfo = new File(dir, "HOST_INFO/2016/9/1/15/1472743088565.json");
+		Assert.assertTrue(hostInfo.renameTo(new File(dir, "HOST_INFO/2016/9/1/15/1472743090565.json")));
+
+		FileFlashlistRetriever retriever = new FileFlashlistRetriever(dir.getAbsolutePath() + "/",
+				PersistenceFormat.JSON);
+		retriever.setTolerance(1000);
+		retriever.prepare(DatatypeConverter.parseDateTime("2016-09-01T15:00:00Z").getTimeInMillis());
+		Assert.assertEquals(6, retriever.getCycleCount());
+
+		retriever = new FileFlashlistRetriever(dir.getAbsolutePath() + "/", PersistenceFormat.JSON);
+		retriever.setTolerance(3000);
+		retriever.prepare(DatatypeConverter.parseDateTime("2016-09-01T15:00:00Z").getTimeInMillis());
+		Assert.assertEquals(5, retriever.getCycleCount());
+	}
+
+	private File copy(File source, File target) throws IOException {
+		for (File file : source.listFiles()) {
+			File copy = new File(target, file.getName());
+			if (file.isDirectory()) {
+				copy.mkdir();
+				copy(file, copy);
+			} else {
+				Files.copy(file.toPath(), copy.toPath());
+			}
+		}
+		return target;
+	}
 }
@@ -0,0 +1,251 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests flashlist catalog resolution against stub LAS servers
+ */
+public class FlashlistCatalogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+
+	private String las1;
+
+	private String las2;
+
+	private String flaky;
+
+	private CatalogHandler flakyHandler;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/las1", new CatalogHandler(FlashlistType.values().length));
+		server.createContext("/las2", new CatalogHandler(1));
+		flakyHandler = new CatalogHandler(1);
+		server.createContext("/flaky", flakyHandler);
+		server.start();
+
+		String base = "http://localhost:" + server.getAddress().getPort();
+		las1 = base + "/las1";
+		las2 = base + "/las2";
+		flaky = base + "/flaky";
+	}
+
+	@After
+	public void stopServer() {
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void allHostingLasesKeptInOrderTest() {
+		FlashlistCatalog catalog = new FlashlistCatalog(urls(las2, las1), false, null);
+		Map<String, List<String>> result = catalog.resolve();
+
+		Assert.assertEquals(FlashlistType.values().length, result.size());
+		Assert.assertEquals(urls(las2, las1), result.get(FlashlistType.values()[0].getFlashlistName()));
+		Assert.assertEquals(urls(las1), result.get(FlashlistType.values()[1].getFlashlistName()));
+	}
+
+	@Test
+	public void unreachableLasSkippedTest() {
+		FlashlistCatalog catalog = new FlashlistCatalog(urls("http://localhost:1/none", las1), false, null);
+		Map<String, List<String>> result = catalog.resolve();
+
+		Assert.assertEquals(FlashlistType.values().length, result.size());
+		Assert.assertEquals(urls(las1), result.get(FlashlistType.values()[0].getFlashlistName()));
+	}
+
+	@Test
+	public void cacheUsedWhenLasUnavailableTest() throws IOException {
+		String cacheFile = new File(folder.getRoot(), "catalog.json").getAbsolutePath();
+
+		Map<String, List<String>> explored = new FlashlistCatalog(urls(las1), false, cacheFile).resolve();
+		Assert.assertTrue(new File(cacheFile).exists());
+
+		server.stop(0);
+		server = null;
+
+		Map<String, List<String>> cached = new FlashlistCatalog(urls(las1), false, cacheFile).resolve();
+		Assert.assertEquals(explored, cached);
+	}
+
+	@Test
+	public void cacheIgnoredForDifferentLasTest() throws IOException {
+		String cacheFile = new File(folder.getRoot(), "catalog.json").getAbsolutePath();
+
+		new FlashlistCatalog(urls(las1), false, cacheFile).resolve();
+
+		Map<String, List<String>> result = new FlashlistCatalog(urls(las2), false, cacheFile).resolve();
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals(urls(las2), result.get(FlashlistType.values()[0].getFlashlistName()));
+	}
+
+	/**
+	 * Cached urls are applied at once, fresh urls from background
+	 * revalidation override them and are written to cache
+	 */
+	@Test
+	public void backgroundRevalidationTest() throws Exception {
+		String cacheFile = new File(folder.getRoot(), "catalog.json").getAbsolutePath();
+		writeCache(cacheFile, urls(las1), "http://localhost:1/stale");
+
+		FlashlistCatalog catalog = new FlashlistCatalog(urls(las1), false, cacheFile);
+		Map<String, List<String>> result = catalog.resolve();
+		Assert.assertEquals(urls("http://localhost:1/stale"), result.get(FlashlistType.BU.getFlashlistName()));
+
+		waitForResolution(catalog);
+		Assert.assertEquals(urls(las1), FlashlistType.BU.getUrls());
+		Assert.assertEquals(urls(las1), catalog.readCache().get(FlashlistType.BU.getFlashlistName()));
+	}
+
+	/**
+	 * Flashlist failing repeatedly at its url triggers re-resolution
+	 */
+	@Test
+	public void failureTriggersReresolutionTest() throws Exception {
+		FlashlistCatalog catalog = new FlashlistCatalog(urls(las1), false, null, 0);
+		catalog.resolve();
+		Assert.assertEquals(urls(las1), FlashlistType.BU.getUrls());
+
+		FlashlistType.BU.setUrl("http://localhost:1/moved");
+		for (int i = 1; i < FlashlistCatalog.FAILURES_TO_RERESOLVE; i++) {
+			catalog.reportFailure(FlashlistType.BU);
+		}
+		Assert.assertFalse(catalog.isResolving());
+		Assert.assertEquals(urls("http://localhost:1/moved"), FlashlistType.BU.getUrls());
+
+		catalog.reportFailure(FlashlistType.BU);
+		waitForResolution(catalog);
+		Assert.assertEquals(urls(las1), FlashlistType.BU.getUrls());
+	}
+
+	/**
+	 * Success resets the count of consecutive failures
+	 */
+	@Test
+	public void successResetsFailuresTest() throws Exception {
+		FlashlistCatalog catalog = new FlashlistCatalog(urls(las1), false, null, 0);
+		catalog.resolve();
+
+		for (int i = 1; i < FlashlistCatalog.FAILURES_TO_RERESOLVE; i++) {
+			catalog.reportFailure(FlashlistType.BU);
+		}
+		catalog.reportSuccess(FlashlistType.BU);
+		catalog.reportFailure(FlashlistType.BU);
+		Assert.assertFalse(catalog.isResolving());
+	}
+
+	/**
+	 * LAS not answering in revalidation keeps its flashlists as alternatives,
+	 * partial result is not cached
+	 */
+	@Test
+	public void partialExplorationKeepsAlternativesTest() throws Exception {
+		File cacheFile = new File(folder.getRoot(), "catalog.json");
+		FlashlistType flashlistType = FlashlistType.values()[0];
+
+		FlashlistCatalog catalog = new FlashlistCatalog(urls(flaky, las1), false, cacheFile.getAbsolutePath());
+		catalog.resolve();
+		Assert.assertEquals(urls(flaky, las1), flashlistType.getUrls());
+		Assert.assertTrue(cacheFile.delete());
+
+		flakyHandler.failing = true;
+		catalog.resolveInBackground();
+		waitForResolution(catalog);
+
+		Assert.assertEquals(urls(flaky, las1), flashlistType.getUrls());
+		Assert.assertEquals(urls(las1), FlashlistType.values()[1].getUrls());
+		Assert.assertFalse(cacheFile.exists());
+	}
+
+	private static void waitForResolution(FlashlistCatalog catalog) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		do {
+			Thread.sleep(20);
+		} while (catalog.isResolving() && System.currentTimeMillis() < deadline);
+		Assert.assertFalse(catalog.isResolving());
+	}
+
+	private static void writeCache(String cacheFile, List<String> lasUrls, String url) throws IOException {
+		Map<String, List<String>> flashlists = new HashMap<>();
+		for (FlashlistType flashlistType : FlashlistType.values()) {
+			flashlists.put(flashlistType.getFlashlistName(), urls(url));
+		}
+		FlashlistCatalog.CatalogCache cache = new FlashlistCatalog.CatalogCache();
+		cache.setLasUrls(lasUrls);
+		cache.setFlashlists(flashlists);
+		new ObjectMapper().writeValue(new File(cacheFile), cache);
+	}
+
+	private static List<String> urls(String... urls) {
+		List<String> result = new ArrayList<>();
+		for (String url : urls) {
+			result.add(url);
+		}
+		return result;
+	}
+
+	/**
+	 * Serves LAS catalog with given number of flashlists
+	 */
+	private static class CatalogHandler implements HttpHandler {
+
+		private final int count;
+
+		private volatile boolean failing;
+
+		public CatalogHandler(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if (failing) {
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+				return;
+			}
+			StringBuilder sb = new StringBuilder("{\"table\":{\"rows\":[");
+			for (int i = 0; i < count; i++) {
+				if (i > 0) {
+					sb.append(",");
+				}
+				sb.append("{\"Name\":\"urn:xdaq-flashlist:").append(FlashlistType.values()[i].getFlashlistName())
+						.append("\"}");
+			}
+			sb.append("]}}");
+
+			byte[] body = sb.toString().getBytes("UTF-8");
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream os = exchange.getResponseBody();
+			os.write(body);
+			os.close();
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import rcms.utilities.daqaggregator.mappers.FlashlistUpdatable;
+
+/**
+ * Tests replay of recorded flashlist dispatch on cleaned objects
+ */
+public class FlashlistDispatchRecordTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void replayTest() throws IOException {
+		Updatable a = new Updatable();
+		Updatable b = new Updatable();
+		JsonNode row1 = mapper.readTree("{\"context\":\"a\"}");
+		JsonNode row2 = mapper.readTree("{\"context\":\"b\"}");
+
+		FlashlistDispatchRecord record = new FlashlistDispatchRecord(FlashlistType.BU, 42);
+		a.updateFromFlashlist(FlashlistType.BU, row1);
+		record.recordUpdate(a, row1);
+		b.updateFromFlashlist(FlashlistType.BU, row2);
+		record.recordUpdate(b, row2);
+		record.recordReport(1, 3);
+
+		a.clean();
+		b.clean();
+		record.replay();
+
+		Assert.assertEquals(2, record.size());
+		Assert.assertEquals(42, record.getFingerprint());
+		Assert.assertEquals(1, a.rows.size());
+		Assert.assertSame(row1, a.rows.get(0));
+		Assert.assertSame(row2, b.rows.get(0));
+	}
+
+	@Test
+	public void replayableTypesTest() {
+		Assert.assertTrue(FlashlistDispatcher.isReplayable(FlashlistType.FEROL_CONFIGURATION));
+		Assert.assertTrue(FlashlistDispatcher.isReplayable(FlashlistType.JOB_CONTROL));
+		/* depend on TCDS service, not only on the structure */
+		Assert.assertFalse(FlashlistDispatcher.isReplayable(FlashlistType.TCDS_CPM_RATES));
+		Assert.assertFalse(FlashlistDispatcher.isReplayable(FlashlistType.TCDS_PM_TTS_CHANNEL));
+	}
+
+	private static class Updatable implements FlashlistUpdatable {
+
+		private final List<JsonNode> rows = new ArrayList<>();
+
+		@Override
+		public void updateFromFlashlist(FlashlistType flashlistType, JsonNode flashlistRow) {
+			rows.add(flashlistRow);
+		}
+
+		@Override
+		public void clean() {
+			rows.clear();
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import rcms.utilities.daqaggregator.data.BU;
+import rcms.utilities.daqaggregator.data.RU;
+
+/**
+ * Tests streaming parsing of flashlists with column projection
+ */
+public class FlashlistParserTest {
+
+	private static final String RESPONSE = "{\"table\":{\"properties\":{\"LastOriginator\":\"\"},"
+			+ "\"definition\":[{\"key\":\"context\",\"type\":\"string\"},{\"key\":\"eventRate\",\"type\":\"unsigned int\"}],"
+			+ "\"rows\":[{\"context\":\"http://bu-1.cms:11100\",\"eventRate\":563,\"payloadPerRU\":[1,{\"a\":2}],\"errorMsg\":null},"
+			+ "{\"context\":\"http://bu-2.cms:11100\",\"eventRate\":468,\"payloadPerRU\":[],\"errorMsg\":\"\"}]}}";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void fullParseTest() throws IOException {
+		FlashlistParser parser = parse(RESPONSE, null);
+
+		JsonNode expected = mapper.readTree(RESPONSE).get("table");
+		Assert.assertTrue(parser.isComplete());
+		Assert.assertEquals(expected.get("definition"), parser.getDefinitionNode());
+		Assert.assertEquals(expected.get("rows"), parser.getTable().toRowsNode());
+		Assert.assertEquals(0, parser.getSkippedValues());
+	}
+
+	@Test
+	public void projectionTest() throws IOException {
+		FlashlistParser parser = parse(RESPONSE, new HashSet<>(Arrays.asList("context", "errorMsg")));
+
+		FlashlistTable table = parser.getTable();
+		Assert.assertEquals(2, table.size());
+		Assert.assertEquals(new HashSet<>(Arrays.asList("context", "errorMsg")), new HashSet<>(table.getKeys()));
+		Assert.assertEquals("http://bu-2.cms:11100", table.getRow(1).getText("context"));
+		Assert.assertTrue(table.getRow(0).has("errorMsg"));
+		Assert.assertFalse(table.getRow(0).hasValue("errorMsg"));
+		Assert.assertFalse(table.getRow(0).has("eventRate"));
+		Assert.assertEquals(4, parser.getSkippedValues());
+		Assert.assertEquals(2, parser.getDefinitionNode().size());
+	}
+
+	@Test
+	public void nonTabularRowsTest() throws IOException {
+		FlashlistParser parser = parse("{\"table\":{\"definition\":[],\"rows\":[{\"a\":1},\"b\",{\"c\":2}]}}", null);
+		Assert.assertNull(parser.getTable());
+		Assert.assertEquals(mapper.readTree("[{\"a\":1},\"b\",{\"c\":2}]"), parser.getRawRowsNode());
+
+		parser = parse("{\"table\":{\"definition\":[],\"rows\":null}}", null);
+		Assert.assertNull(parser.getTable());
+		Assert.assertTrue(parser.getRawRowsNode().isNull());
+	}
+
+	@Test
+	public void incompleteResponseTest() {
+		FlashlistParser parser = new FlashlistParser(null);
+		try {
+			parser.read(new ByteArrayInputStream(RESPONSE.substring(0, 200).getBytes(StandardCharsets.UTF_8)));
+			Assert.fail("Incomplete response should not be parsed");
+		} catch (IOException e) {
+			Assert.assertFalse(parser.isComplete());
+		}
+	}
+
+	/**
+	 * Session id column is always kept, flashlists without consumers keep
+	 * only it
+	 */
+	@Test
+	public void projectionRegistryTest() {
+		FlashlistProjection projection = FlashlistProjection.create();
+
+		Assert.assertEquals(new HashSet<>(Arrays.asList("sessionid")), projection.getColumns(FlashlistType.HOST_INFO));
+		Assert.assertTrue(projection.getColumns(FlashlistType.BU).contains("sessionid"));
+		Assert.assertTrue(projection.getColumns(FlashlistType.BU).contains("context"));
+		Assert.assertTrue(projection.getColumns(FlashlistType.LEVEL_ZERO_FM_STATIC).contains("FED_ENABLE_MASK"));
+		Assert.assertNull(projection.getColumns(FlashlistType.TCDS_CPM_COUNTS));
+		Assert.assertNull(projection.getColumns(FlashlistType.TCDS_PM_TTS_CHANNEL));
+	}
+
+	/**
+	 * Objects updated from projected rows must be the same as updated from
+	 * full rows
+	 */
+	@Test
+	public void projectedUpdateTest() throws IOException {
+		FlashlistProjection projection = FlashlistProjection.create();
+
+		JsonNode bu = read("BU");
+		JsonNode projectedBu = parseTable(bu, projection.getColumns(FlashlistType.BU));
+		Assert.assertTrue(bu.get("rows").size() > 0);
+		for (int i = 0; i < bu.get("rows").size(); i++) {
+			BU full = new BU();
+			full.updateFromFlashlist(FlashlistType.BU, bu.get("rows").get(i));
+			BU projected = new BU();
+			projected.updateFromFlashlist(FlashlistType.BU, projectedBu.get(i));
+			Assert.assertEquals(mapper.writeValueAsString(full), mapper.writeValueAsString(projected));
+		}
+
+		JsonNode ru = read("RU");
+		JsonNode projectedRu = parseTable(ru, projection.getColumns(FlashlistType.RU));
+		Assert.assertTrue(ru.get("rows").size() > 0);
+		for (int i = 0; i < ru.get("rows").size(); i++) {
+			RU full = new RU();
+			full.updateFromFlashlist(FlashlistType.RU, ru.get("rows").get(i));
+			RU projected = new RU();
+			projected.updateFromFlashlist(FlashlistType.RU, projectedRu.get(i));
+			Assert.assertEquals(mapper.writeValueAsString(full), mapper.writeValueAsString(projected));
+		}
+	}
+
+	/**
+	 * Read persisted flashlist as LAS table
+	 */
+	private JsonNode read(String flashlistType) throws IOException {
+		File dir = new File("src/test/resources/compatibility/1.12.1/flashlists/" + flashlistType + "/2017/6/6/6");
+		JsonNode flashlist = mapper.readTree(new File(dir, "1496730497780.json"));
+		ObjectNode table = mapper.createObjectNode();
+		table.set("definition", flashlist.get("definitionNode"));
+		table.set("rows", flashlist.get("rowsNode"));
+		return table;
+	}
+
+	private JsonNode parseTable(JsonNode table, Set<String> columns) throws IOException {
+		ObjectNode response = mapper.createObjectNode();
+		response.set("table", table);
+		return parse(mapper.writeValueAsString(response), columns).getTable().toRowsNode();
+	}
+
+	private FlashlistParser parse(String response, Set<String> columns) throws IOException {
+		FlashlistParser parser = new FlashlistParser(columns);
+		parser.read(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)));
+		return parser;
+	}
+
+}
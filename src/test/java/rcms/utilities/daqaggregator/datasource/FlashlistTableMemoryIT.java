@@ -0,0 +1,101 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Compares heap retained by flashlist rows kept as json trees and in columnar
+ * form. All compatibility flashlists are loaded several times in both forms,
+ * heap used is measured after garbage collection.
+ */
+public class FlashlistTableMemoryIT {
+
+	private static final Logger logger = Logger.getLogger(FlashlistTableMemoryIT.class);
+
+	private static final int COPIES = 20;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void heapComparisonTest() throws IOException {
+		List<byte[]> responses = new ArrayList<>();
+		for (File file : listJsonFiles(new File("src/test/resources/compatibility/1.12.1/flashlists"))) {
+			JsonNode rows = mapper.readTree(file).get("rowsNode");
+			if (FlashlistTable.isTabular(rows)) {
+				ObjectNode table = mapper.createObjectNode();
+				table.set("definition", mapper.createArrayNode());
+				table.set("rows", rows);
+				ObjectNode response = mapper.createObjectNode();
+				response.set("table", table);
+				responses.add(mapper.writeValueAsBytes(response));
+			}
+		}
+		Assert.assertFalse(responses.isEmpty());
+
+		List<Object> trees = new ArrayList<>();
+		long before = usedHeap();
+		for (int i = 0; i < COPIES; i++) {
+			for (byte[] response : responses) {
+				trees.add(mapper.readTree(response).get("table").get("rows"));
+			}
+		}
+		long treeHeap = usedHeap() - before;
+		trees.clear();
+
+		List<Object> tables = new ArrayList<>();
+		before = usedHeap();
+		for (int i = 0; i < COPIES; i++) {
+			for (byte[] response : responses) {
+				FlashlistParser parser = new FlashlistParser(null);
+				parser.read(new ByteArrayInputStream(response));
+				tables.add(parser.getTable());
+			}
+		}
+		long tableHeap = usedHeap() - before;
+
+		logger.info(responses.size() + " flashlists x " + COPIES + ": json trees " + (treeHeap / 1024)
+				+ "kB, columnar " + (tableHeap / 1024) + "kB");
+		Assert.assertEquals(responses.size() * COPIES, tables.size());
+		Assert.assertTrue("Columnar rows should take less heap than json trees", tableHeap < treeHeap);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static List<File> listJsonFiles(File dir) {
+		List<File> result = new ArrayList<>();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					result.addAll(listJsonFiles(file));
+				} else if (file.getName().endsWith(".json")) {
+					result.add(file);
+				}
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,177 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests columnar representation of flashlist rows
+ */
+public class FlashlistTableTest {
+
+	private static final String ROWS = "[{\"context\":\"http://bu-1.cms:11100\",\"eventRate\":563,\"throughput\":4322758660,"
+			+ "\"ramDiskUsed\":0.0274,\"enabled\":true,\"payloadPerRU\":[1,2],\"errorMsg\":\"\",\"sessionid\":\"294356\"},"
+			+ "{\"context\":\"http://bu-2.cms:11100\",\"eventRate\":468,\"throughput\":1,"
+			+ "\"ramDiskUsed\":1.0,\"enabled\":false,\"payloadPerRU\":[],\"errorMsg\":null},"
+			+ "{\"context\":\"http://bu-1.cms:11100\",\"eventRate\":1.5,\"throughput\":2,"
+			+ "\"ramDiskUsed\":2.5,\"enabled\":true,\"payloadPerRU\":[3],\"errorMsg\":\"\"}]";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void roundTripTest() throws IOException {
+		JsonNode rows = mapper.readTree(ROWS);
+		FlashlistTable table = FlashlistTable.fromRows(rows);
+
+		Assert.assertEquals(3, table.size());
+		Assert.assertEquals(rows, table.toRowsNode());
+		Assert.assertEquals(mapper.writeValueAsString(rows), mapper.writeValueAsString(table.toRowsNode()));
+	}
+
+	@Test
+	public void rowAccessTest() throws IOException {
+		FlashlistTable table = FlashlistTable.fromRows(mapper.readTree(ROWS));
+
+		FlashlistRow row = table.getRow(0);
+		Assert.assertEquals("http://bu-1.cms:11100", row.getText("context"));
+		Assert.assertEquals(563, row.getInt("eventRate"));
+		Assert.assertEquals(4322758660L, row.getLong("throughput"));
+		Assert.assertEquals(0.0274, row.getDouble("ramDiskUsed"), 0);
+		Assert.assertTrue(row.getBoolean("enabled"));
+		Assert.assertEquals(294356, row.getInt("sessionid"));
+		Assert.assertEquals(2, row.get("payloadPerRU").size());
+
+		row = table.getRow(1);
+		Assert.assertFalse(row.has("sessionid"));
+		Assert.assertNull(row.getText("sessionid"));
+		Assert.assertTrue(row.has("errorMsg"));
+		Assert.assertFalse(row.hasValue("errorMsg"));
+		Assert.assertEquals("null", row.getText("errorMsg"));
+
+		row = table.getRow(2);
+		Assert.assertEquals(1, row.getInt("eventRate"));
+		Assert.assertEquals(1.5, row.getDouble("eventRate"), 0);
+
+		int count = 0;
+		for (FlashlistRow r : table) {
+			Assert.assertEquals(count++, r.getIndex());
+		}
+		Assert.assertEquals(3, count);
+	}
+
+	/**
+	 * Columns built from parser tokens must reproduce rows exactly, also when
+	 * types are mixed and the column falls back to json nodes
+	 */
+	@Test
+	public void tokenBuildTest() throws IOException {
+		String rows = "[{\"a\":1,\"b\":\"x\",\"c\":12345678901234567890,\"d\":null},"
+				+ "{\"a\":\"2\",\"b\":\"x\",\"c\":1,\"d\":true},{\"a\":4294967296,\"b\":null,\"d\":false}]";
+
+		FlashlistTable.Builder builder = new FlashlistTable.Builder();
+		JsonParser parser = mapper.getFactory().createParser(rows);
+		parser.nextToken();
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			builder.nextRow();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String key = parser.getCurrentName();
+				parser.nextToken();
+				builder.add(key, parser);
+			}
+		}
+		FlashlistTable table = builder.build();
+
+		Assert.assertEquals(mapper.readTree(rows), table.toRowsNode());
+		Assert.assertEquals(mapper.writeValueAsString(mapper.readTree(rows)), mapper.writeValueAsString(table));
+		Assert.assertEquals(2, table.getRow(1).getInt("a"));
+		Assert.assertFalse(table.getRow(2).getBoolean("d"));
+	}
+
+	/**
+	 * Conversions of values out of int range are the same as of json nodes
+	 */
+	@Test
+	public void intRangeTest() throws IOException {
+		String rows = "[{\"a\":4294967297,\"b\":\"4294967297\",\"c\":1.0E12,\"d\":\"1.0E12\"}]";
+		JsonNode node = mapper.readTree(rows).get(0);
+		FlashlistRow row = FlashlistTable.fromRows(mapper.readTree(rows)).getRow(0);
+
+		for (String key : new String[] { "a", "b", "c", "d" }) {
+			Assert.assertEquals(key, node.get(key).asInt(), row.getInt(key));
+			Assert.assertEquals(key, node.get(key).asLong(), row.getLong(key));
+		}
+		Assert.assertEquals(1, row.getInt("a"));
+		Assert.assertEquals(0, row.getInt("b"));
+		Assert.assertEquals(Integer.MAX_VALUE, row.getInt("c"));
+		Assert.assertEquals(4294967297L, row.getLong("b"));
+	}
+
+	@Test
+	public void fingerprintTest() throws IOException {
+		FlashlistTable table = FlashlistTable.fromRows(mapper.readTree(ROWS));
+
+		Assert.assertEquals(table.fingerprint(), FlashlistTable.fromRows(mapper.readTree(ROWS)).fingerprint());
+		Assert.assertNotEquals(table.fingerprint(),
+				FlashlistTable.fromRows(mapper.readTree(ROWS.replace("563", "564"))).fingerprint());
+		Assert.assertNotEquals(table.fingerprint(),
+				FlashlistTable.fromRows(mapper.readTree(ROWS.replace("\"errorMsg\":null", "\"errorMsg\":\"\""))).fingerprint());
+
+		FlashlistTable changed = FlashlistTable.fromRows(mapper.readTree(ROWS.replace("bu-2", "bu-3")));
+		Assert.assertEquals(table.getRow(0).fingerprint(), changed.getRow(0).fingerprint());
+		Assert.assertNotEquals(table.getRow(1).fingerprint(), changed.getRow(1).fingerprint());
+	}
+
+	/**
+	 * Columnar representation must reproduce rows of real flashlists exactly
+	 */
+	@Test
+	public void persistedFlashlistsTest() throws IOException {
+		List<File> files = listJsonFiles(new File("src/test/resources/compatibility/1.12.1/flashlists"));
+		Assert.assertFalse(files.isEmpty());
+
+		List<String> failed = new ArrayList<>();
+		for (File file : files) {
+			JsonNode rows = mapper.readTree(file).get("rowsNode");
+			if (!FlashlistTable.isTabular(rows)) {
+				continue;
+			}
+			if (!rows.equals(FlashlistTable.fromRows(rows).toRowsNode())) {
+				failed.add(file.getName());
+			}
+		}
+		Assert.assertEquals("Flashlists not reproduced: " + failed, 0, failed.size());
+	}
+
+	@Test
+	public void flashlistSerializationTest() throws IOException {
+		File file = listJsonFiles(new File("src/test/resources/compatibility/1.12.1/flashlists/BU")).get(0);
+
+		Flashlist flashlist = mapper.readValue(file, Flashlist.class);
+		Assert.assertEquals(mapper.readTree(file), mapper.readTree(mapper.writeValueAsString(flashlist)));
+	}
+
+	private static List<File> listJsonFiles(File dir) {
+		List<File> result = new ArrayList<>();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					result.addAll(listJsonFiles(file));
+				} else if (file.getName().endsWith(".json")) {
+					result.add(file);
+				}
+			}
+		}
+		return result;
+	}
+
+}
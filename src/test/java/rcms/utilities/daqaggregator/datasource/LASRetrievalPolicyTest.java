@@ -0,0 +1,216 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests retrieval policy for redundant LASes. Stub LAS servers inject delays
+ * and errors.
+ */
+public class LASRetrievalPolicyTest {
+
+	private static final String FLASHLIST = "{\"table\":{\"definition\":[{\"key\":\"context\",\"type\":\"string\"}],"
+			+ "\"rows\":[{\"context\":\"http://host.cms:1234\"}]}}";
+
+	private static final FlashlistType FLASHLIST_TYPE = FlashlistType.JOB_CONTROL;
+
+	private HttpServer server;
+
+	private String fast;
+
+	private String slow;
+
+	private String failing;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/fast", new StubLASHandler(0, 200));
+		server.createContext("/slow", new StubLASHandler(3000, 200));
+		server.createContext("/failing", new StubLASHandler(0, 500));
+		server.start();
+
+		String base = "http://localhost:" + server.getAddress().getPort();
+		fast = base + "/fast";
+		slow = base + "/slow";
+		failing = base + "/failing";
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+		FLASHLIST_TYPE.setUrl(null);
+	}
+
+	@Test
+	public void hedgedRequestTest() {
+		FLASHLIST_TYPE.setUrls(Arrays.asList(slow, fast));
+		LASFlashlistRetriever retriever = new LASFlashlistRetriever(false, null, new LASRetrievalPolicy(95, 3, 30000, 100));
+
+		long start = System.currentTimeMillis();
+		Pair<Flashlist, String> result = retriever.retrieveFlashlist(FLASHLIST_TYPE);
+		long time = System.currentTimeMillis() - start;
+
+		Assert.assertTrue("Hedged request should not wait for slow LAS, took " + time + "ms", time < 2000);
+		Assert.assertTrue(result.getRight().startsWith("HTTP-200"));
+		Assert.assertTrue(result.getLeft().getAddress().startsWith(fast));
+		Assert.assertEquals(1, result.getLeft().getRowsNode().size());
+	}
+
+	@Test
+	public void failoverTest() {
+		FLASHLIST_TYPE.setUrls(Arrays.asList(failing, fast));
+		LASFlashlistRetriever retriever = new LASFlashlistRetriever(false, null, new LASRetrievalPolicy());
+
+		Pair<Flashlist, String> result = retriever.retrieveFlashlist(FLASHLIST_TYPE);
+
+		Assert.assertTrue(result.getRight().startsWith("HTTP-200"));
+		Assert.assertTrue(result.getLeft().getAddress().startsWith(fast));
+	}
+
+	@Test
+	public void allFailingTest() {
+		FLASHLIST_TYPE.setUrls(Arrays.asList(failing));
+		LASFlashlistRetriever retriever = new LASFlashlistRetriever(true, null, new LASRetrievalPolicy());
+
+		Pair<Flashlist, String> result = retriever.retrieveFlashlist(FLASHLIST_TYPE);
+
+		Assert.assertEquals("HTTP-500", result.getRight());
+		Assert.assertTrue(result.getLeft().isUnknownAtLAS());
+	}
+
+	/**
+	 * Hung LAS is counted as failed after request timeout
+	 */
+	@Test
+	public void hungRequestTimeoutTest() {
+		FLASHLIST_TYPE.setUrls(Arrays.asList(slow));
+		LASRetrievalPolicy policy = new LASRetrievalPolicy(95, 1, 60000, 100, 300);
+		LASFlashlistRetriever retriever = new LASFlashlistRetriever(true, null, policy);
+
+		long start = System.currentTimeMillis();
+		Pair<Flashlist, String> result = retriever.retrieveFlashlist(FLASHLIST_TYPE);
+		long time = System.currentTimeMillis() - start;
+
+		Assert.assertTrue("Request should time out, took " + time + "ms", time < 2000);
+		Assert.assertTrue(result.getLeft().isTimedOut());
+		Assert.assertTrue(policy.isOpen(slow));
+	}
+
+	/**
+	 * Hedged request cancelled because other LAS answered first is still
+	 * counted as failed when it times out
+	 */
+	@Test
+	public void cancelledHungRequestCountedTest() throws InterruptedException {
+		FLASHLIST_TYPE.setUrls(Arrays.asList(slow, fast));
+		LASRetrievalPolicy policy = new LASRetrievalPolicy(95, 1, 60000, 100, 500);
+		LASFlashlistRetriever retriever = new LASFlashlistRetriever(false, null, policy);
+
+		Pair<Flashlist, String> result = retriever.retrieveFlashlist(FLASHLIST_TYPE);
+		Assert.assertTrue(result.getLeft().getAddress().startsWith(fast));
+		Assert.assertFalse(policy.isOpen(slow));
+
+		long deadline = System.currentTimeMillis() + 2000;
+		while (!policy.isOpen(slow) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		Assert.assertTrue(policy.isOpen(slow));
+		Assert.assertEquals(Arrays.asList(fast), policy.order(Arrays.asList(slow, fast)));
+	}
+
+	@Test
+	public void circuitBreakerTest() {
+		LASRetrievalPolicy policy = new LASRetrievalPolicy(95, 3, 60000, 1000);
+		List<String> urls = Arrays.asList("a", "b");
+
+		policy.recordFailure("a");
+		policy.recordFailure("a");
+		Assert.assertFalse(policy.isOpen("a"));
+		Assert.assertEquals(Arrays.asList("b", "a"), policy.order(urls));
+
+		policy.recordFailure("a");
+		Assert.assertTrue(policy.isOpen("a"));
+		Assert.assertEquals(Arrays.asList("b"), policy.order(urls));
+
+		policy.recordSuccess("a", 10);
+		Assert.assertFalse(policy.isOpen("a"));
+	}
+
+	@Test
+	public void allCircuitsOpenTest() {
+		LASRetrievalPolicy policy = new LASRetrievalPolicy(95, 1, 60000, 1000);
+		policy.recordFailure("a");
+		policy.recordFailure("b");
+
+		Assert.assertEquals(Arrays.asList("a"), policy.order(Arrays.asList("a", "b")));
+	}
+
+	@Test
+	public void fasterLasPreferredTest() {
+		LASRetrievalPolicy policy = new LASRetrievalPolicy();
+		List<String> urls = Arrays.asList("a", "b");
+
+		Assert.assertEquals(urls, policy.order(urls));
+
+		policy.recordSuccess("a", 500);
+		policy.recordSuccess("b", 50);
+		Assert.assertEquals(Arrays.asList("b", "a"), policy.order(urls));
+	}
+
+	@Test
+	public void hedgeDelayPercentileTest() {
+		LASRetrievalPolicy policy = new LASRetrievalPolicy(90, 3, 60000, 1000);
+		Assert.assertEquals(1000, policy.getHedgeDelay("a"));
+
+		for (int i = 1; i <= 20; i++) {
+			policy.recordSuccess("a", i * 10);
+		}
+		Assert.assertEquals(180, policy.getHedgeDelay("a"));
+	}
+
+	/**
+	 * Serves flashlist after given delay with given http status
+	 */
+	private static class StubLASHandler implements HttpHandler {
+
+		private final long delay;
+
+		private final int status;
+
+		public StubLASHandler(long delay, int status) {
+			this.delay = delay;
+			this.status = status;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] body = (status == 200 ? FLASHLIST : "error").getBytes("UTF-8");
+			exchange.sendResponseHeaders(status, body.length);
+			OutputStream os = exchange.getResponseBody();
+			os.write(body);
+			os.close();
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import rcms.utilities.daqaggregator.mappers.helper.ContextHelper;
+
+/**
+ * Measures bytes allocated per cycle of parsing all compatibility flashlists
+ * and normalizing their contexts to hostnames, and heap retained by parsed
+ * cycles kept in memory. Strings shared by {@link StringPool} reduce both.
+ */
+public class StringPoolMemoryIT {
+
+	private static final Logger logger = Logger.getLogger(StringPoolMemoryIT.class);
+
+	private static final int WARMUP = 20;
+
+	private static final int CYCLES = 50;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void memoryTest() throws IOException {
+		List<byte[]> responses = new ArrayList<>();
+		for (File file : listJsonFiles(new File("src/test/resources/compatibility/1.12.1/flashlists"))) {
+			JsonNode rows = mapper.readTree(file).get("rowsNode");
+			if (FlashlistTable.isTabular(rows)) {
+				ObjectNode table = mapper.createObjectNode();
+				table.set("definition", mapper.createArrayNode());
+				table.set("rows", rows);
+				ObjectNode response = mapper.createObjectNode();
+				response.set("table", table);
+				responses.add(mapper.writeValueAsBytes(response));
+			}
+		}
+		Assert.assertFalse(responses.isEmpty());
+
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		List<Object> retained = new ArrayList<>();
+		for (int i = 0; i < WARMUP; i++) {
+			cycle(responses, retained);
+		}
+		retained.clear();
+
+		long heapBefore = usedHeap();
+		long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < CYCLES; i++) {
+			cycle(responses, retained);
+		}
+		long allocated = (threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / CYCLES;
+		long heap = (usedHeap() - heapBefore) / CYCLES;
+
+		logger.info(responses.size() + " flashlists per cycle: allocated " + (allocated / 1024) + "kB/cycle, retained "
+				+ (heap / 1024) + "kB/cycle");
+		Assert.assertEquals(responses.size() * CYCLES * 2, retained.size());
+	}
+
+	/**
+	 * Parse responses and normalize contexts, keeping tables and hostnames
+	 */
+	private void cycle(List<byte[]> responses, List<Object> retained) throws IOException {
+		for (byte[] response : responses) {
+			FlashlistParser parser = new FlashlistParser(null);
+			parser.read(new ByteArrayInputStream(response));
+			FlashlistTable table = parser.getTable();
+			List<String> hostnames = new ArrayList<>();
+			for (FlashlistRow row : table) {
+				String context = row.getText("context");
+				if (context != null) {
+					hostnames.add(ContextHelper.getHostnameFromContext(context));
+				}
+			}
+			retained.add(table);
+			retained.add(hostnames);
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static List<File> listJsonFiles(File dir) {
+		List<File> result = new ArrayList<>();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					result.addAll(listJsonFiles(file));
+				} else if (file.getName().endsWith(".json")) {
+					result.add(file);
+				}
+			}
+		}
+		return result;
+	}
+
+}
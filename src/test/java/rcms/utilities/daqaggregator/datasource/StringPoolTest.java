@@ -0,0 +1,55 @@
+package rcms.utilities.daqaggregator.datasource;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import rcms.utilities.daqaggregator.mappers.helper.ContextHelper;
+
+/**
+ * Repeated values of flashlists and hostnames share one instance
+ */
+public class StringPoolTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void internTest() {
+		String value = StringPool.intern(new String("Enabled"));
+		Assert.assertSame(value, StringPool.intern(new String("Enabled")));
+		Assert.assertNull(StringPool.intern(null));
+
+		String long1 = new String(new char[StringPool.MAX_LENGTH + 1]);
+		String long2 = new String(new char[StringPool.MAX_LENGTH + 1]);
+		StringPool.intern(long1);
+		Assert.assertSame(long2, StringPool.intern(long2));
+	}
+
+	@Test
+	public void flashlistTest() throws IOException {
+		String rows = "[{\"context\":\"http://ru-c2e12-35-01.cms:11100\",\"stateName\":\"Enabled\"},"
+				+ "{\"context\":\"http://ru-c2e12-36-01.cms:11100\",\"stateName\":\"Enabled\"}]";
+		FlashlistTable first = FlashlistTable.fromRows(mapper.readTree(rows));
+		FlashlistTable second = FlashlistTable.fromRows(mapper.readTree(rows));
+		for (int i = 0; i < 2; i++) {
+			Assert.assertSame(first.getRow(i).getText("context"), second.getRow(i).getText("context"));
+			Assert.assertSame(first.getRow(i).getText("stateName"), second.getRow(i).getText("stateName"));
+		}
+
+		JsonNode row = second.getRow(0).get("stateName");
+		Assert.assertSame(first.getRow(0).getText("stateName"), row.asText());
+	}
+
+	@Test
+	public void hostnameTest() {
+		String hostname = ContextHelper.getHostnameFromContext(new String("http://ru-c2e12-35-01:11100"));
+		Assert.assertEquals("ru-c2e12-35-01.cms", hostname);
+		Assert.assertSame(hostname, ContextHelper.getHostnameFromContext(new String("http://ru-c2e12-35-01.cms:11100")));
+		Assert.assertEquals(Integer.valueOf(11100), ContextHelper.getPortFromContext("http://ru-c2e12-35-01:11100"));
+	}
+
+}
@@ -1,5 +1,7 @@
 package rcms.utilities.daqaggregator.mappers.helper;
 
+import java.util.Map;
+
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Assert;
 import org.junit.Test;
@@ -55,4 +57,17 @@ public class FEDEnableMaskParserTest {
 		Assert.assertEquals(false, femp.decodeFrlMasked(1, 1));
 	}
 
+	@Test
+	public void unchangedMaskNotParsedAgainTest() {
+		Map<Integer, Pair<Boolean, Boolean>> first = FEDEnableMaskParser.parseMask("1&3%2&0%");
+		Assert.assertEquals(Pair.of(false, false), first.get(1));
+		Assert.assertEquals(Pair.of(true, true), first.get(2));
+
+		Assert.assertSame(first, FEDEnableMaskParser.parseMask("1&3%2&0%"));
+
+		Map<Integer, Pair<Boolean, Boolean>> changed = FEDEnableMaskParser.parseMask("1&3%2&3%");
+		Assert.assertNotSame(first, changed);
+		Assert.assertEquals(Pair.of(false, false), changed.get(2));
+	}
+
 }
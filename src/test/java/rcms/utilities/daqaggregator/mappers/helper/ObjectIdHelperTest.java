@@ -0,0 +1,106 @@
+package rcms.utilities.daqaggregator.mappers.helper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.data.FRL;
+import rcms.utilities.daqaggregator.data.Identifiable;
+import rcms.utilities.daqaggregator.data.SubFEDBuilder;
+import rcms.utilities.daqaggregator.data.TTCPartition;
+import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
+import rcms.utilities.daqaggregator.persistence.StructureSerializer;
+
+/**
+ * Tests ids of objects of DAQ structure, assigned when mapped and restored
+ * when deserialized
+ */
+public class ObjectIdHelperTest {
+
+	private static final String SNAPSHOT = "src/test/resources/format/1496217954303.json";
+
+	private final StructureSerializer serializer = new StructureSerializer();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void objectIdTest() {
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		FED fed = daq.getFeds().iterator().next();
+		Assert.assertEquals("FED_" + fed.getId(), ObjectIdHelper.objectId(fed));
+
+		FRL frl = daq.getFrls().get(0);
+		Assert.assertEquals("FRL_" + frl.getGeoSlot() + "$"
+				+ ContextHelper.removeSuffixFromHostname(frl.getFrlPc().getHostname(), ".cms"),
+				ObjectIdHelper.objectId(frl));
+
+		for (SubFEDBuilder subFedBuilder : daq.getSubFEDBuilders()) {
+			Assert.assertEquals(subFedBuilder.getObjectId(), ObjectIdHelper.objectId(subFedBuilder));
+		}
+	}
+
+	/**
+	 * Ids are read from snapshot, not computed again
+	 */
+	@Test
+	public void restoredIdTest() {
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		TTCPartition ttcPartition = daq.getTtcPartitions().get(0);
+		String name = ttcPartition.getName();
+		ttcPartition.setName("renamed");
+		Assert.assertEquals("TTCP_" + name, ttcPartition.getObjectId());
+	}
+
+	/**
+	 * Ids are the same after serialization in any format, objects can be
+	 * matched by id across snapshots
+	 */
+	@Test
+	public void stableIdTest() throws IOException {
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		List<String> expected = objectIds(daq);
+		for (PersistenceFormat format : new PersistenceFormat[] { PersistenceFormat.JSON,
+				PersistenceFormat.JSONREFPREFIXED, PersistenceFormat.SMILE }) {
+			File file = new File(folder.getRoot(), "snapshot" + format.getExtension());
+			serializer.serialize(daq, new FileOutputStream(file), format);
+			DAQ read = serializer.deserialize(file.getAbsolutePath(), format);
+			Assert.assertEquals(format.name(), expected, objectIds(read));
+		}
+	}
+
+	private List<String> objectIds(DAQ daq) {
+		List<Identifiable> objects = new ArrayList<>();
+		objects.add(daq);
+		objects.add(daq.getBuSummary());
+		objects.add(daq.getFedBuilderSummary());
+		objects.addAll(daq.getSubSystems());
+		objects.addAll(daq.getTtcPartitions());
+		objects.addAll(daq.getBus());
+		objects.addAll(daq.getRus());
+		objects.addAll(daq.getFedBuilders());
+		objects.addAll(daq.getSubFEDBuilders());
+		objects.addAll(daq.getFmmApplications());
+		objects.addAll(daq.getFmms());
+		objects.addAll(daq.getFrlPcs());
+		objects.addAll(daq.getFrls());
+		objects.addAll(daq.getFeds());
+
+		List<String> result = new ArrayList<>();
+		for (Identifiable object : objects) {
+			Assert.assertNotNull(object.getObjectId());
+			result.add(object.getObjectId());
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,125 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.persistence.BinarySnapshot.Record;
+
+/**
+ * Tests binary snapshot format against compatibility snapshots
+ */
+public class BinarySnapshotTest {
+
+	private static final String[] SNAPSHOTS = {
+			"src/test/resources/compatibility/1.5.0/snapshots/2016/10/27/8/1477557890932.json",
+			"src/test/resources/compatibility/1.6.0/snapshots/2017/5/30/9/1496135196681.json",
+			"src/test/resources/compatibility/1.8.0/snapshots/2017/5/8/8/1494233773794.json.gz",
+			"src/test/resources/compatibility/1.12.0/snapshots/2017/5/31/8/1496217954303.json",
+			"src/test/resources/compatibility/1.12.1/snapshots/2017/6/6/6/1496730497780.smile" };
+
+	private final StructureSerializer serializer = new StructureSerializer();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Json written from binary snapshot is the same as json written from the
+	 * snapshot the binary one was created from
+	 */
+	@Test
+	public void losslessTest() throws IOException {
+		for (String path : SNAPSHOTS) {
+			DAQ daq = serializer.deserialize(path);
+			Assert.assertNotNull(path, daq);
+			File binary = writeBinary(daq);
+
+			for (PersistenceFormat format : new PersistenceFormat[] { PersistenceFormat.JSON,
+					PersistenceFormat.SMILE }) {
+				ByteArrayOutputStream expected = new ByteArrayOutputStream();
+				serializer.serialize(daq, expected, format);
+
+				ByteArrayOutputStream converted = new ByteArrayOutputStream();
+				serializer.convert(binary.getAbsolutePath(), converted, format, false);
+				Assert.assertArrayEquals(path, expected.toByteArray(), converted.toByteArray());
+
+				ByteArrayOutputStream deserialized = new ByteArrayOutputStream();
+				serializer.serialize(serializer.deserialize(binary.getAbsolutePath()), deserialized, format);
+				Assert.assertArrayEquals(path, expected.toByteArray(), deserialized.toByteArray());
+			}
+		}
+	}
+
+	@Test
+	public void partialReadTest() throws IOException {
+		DAQ daq = serializer.deserialize(SNAPSHOTS[3]);
+		BinarySnapshot snapshot = BinarySnapshot.open(writeBinary(daq));
+
+		Record root = snapshot.getRoot();
+		Assert.assertEquals("DAQ", root.getObjectId());
+		Assert.assertEquals(daq.getRunNumber(), root.getInt("runNumber"));
+		Assert.assertEquals(daq.getFedBuilderSummary().getRate(),
+				root.getRecord("fedBuilderSummary").getFloat("rate"), 0);
+		Assert.assertEquals(daq.getFeds().size(), snapshot.getCount("FED"));
+
+		FED fed = daq.getFeds().iterator().next();
+		Record record = snapshot.find("FED", fed.getObjectId());
+		Assert.assertEquals(fed.getId(), record.getInt("id"));
+		Assert.assertEquals(fed.getPercentBackpressure(), record.getFloat("percentBackpressure"), 0);
+		Assert.assertEquals(fed.getNumTriggers(), record.getLong("numTriggers"));
+		Assert.assertEquals(fed.getTtsState(), record.getString("ttsState"));
+		Assert.assertEquals(fed.getTtcp().getObjectId(), record.getRecord("ttcp").getObjectId());
+		Assert.assertEquals(fed.getFrl() == null, record.isNull("frl"));
+		Assert.assertNull(snapshot.find("FED", "FED_unknown"));
+
+		List<?> feds = (List<?>) snapshot.find("TTCPartition", fed.getTtcp().getObjectId()).getValue("feds");
+		Assert.assertEquals(fed.getTtcp().getFeds().size(), feds.size());
+
+		try {
+			record.getDouble("id");
+			Assert.fail("Field of other type should not be read");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void invalidFileTest() throws IOException {
+		File file = folder.newFile("invalid.daqb");
+		Files.write(file.toPath(), "{\"sessionId\":1}".getBytes());
+		try {
+			BinarySnapshot.open(file);
+			Assert.fail("Json file should not be read as binary snapshot");
+		} catch (IOException e) {
+		}
+		Assert.assertNull(serializer.deserialize(file.getAbsolutePath()));
+
+		File truncated = folder.newFile("truncated.daqb");
+		byte[] bytes = Files.readAllBytes(writeBinary(serializer.deserialize(SNAPSHOTS[0])).toPath());
+		Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+		Assert.assertNull(serializer.deserialize(truncated.getAbsolutePath()));
+	}
+
+	@Test
+	public void formatTest() {
+		Assert.assertEquals(PersistenceFormat.BINARY, PersistenceFormat.decodeFromFilename("/tmp/1496217954303.daqb"));
+		Assert.assertEquals(PersistenceFormat.BINARY, PersistenceFormat.decode("binary"));
+	}
+
+	private File writeBinary(DAQ daq) throws IOException {
+		File file = File.createTempFile("snapshot", PersistenceFormat.BINARY.getExtension(), folder.getRoot());
+		serializer.serialize(daq, new FileOutputStream(file), PersistenceFormat.BINARY);
+		return file;
+	}
+
+}
@@ -0,0 +1,99 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares ratio, write and read throughput of codecs on snapshots and
+ * flashlists of test resources. Dictionaries are trained on every other file
+ * and measured on all files.
+ */
+public class CodecBenchmarkIT {
+
+	private static final Logger logger = Logger.getLogger(CodecBenchmarkIT.class);
+
+	private static final String RESOURCES = "src/test/resources/compatibility";
+
+	private static final int ROUNDS = 5;
+
+	@Test
+	public void benchmark() throws IOException {
+		List<byte[]> snapshots = new ArrayList<>();
+		List<byte[]> flashlists = new ArrayList<>();
+		collect(new File(RESOURCES), snapshots, flashlists);
+		Assert.assertFalse(snapshots.isEmpty());
+		Assert.assertFalse(flashlists.isEmpty());
+
+		measure("snapshots", snapshots);
+		measure("flashlists", flashlists);
+	}
+
+	private void measure(String name, List<byte[]> files) throws IOException {
+		List<byte[]> samples = new ArrayList<>();
+		for (int i = 0; i < files.size(); i += 2) {
+			samples.add(files.get(i));
+		}
+		long start = System.nanoTime();
+		CompressionDictionary dictionary = CompressionDictionary.train(samples, CompressionDictionary.MAX_SIZE);
+		logger.info("Trained dictionary on " + samples.size() + " " + name + " in "
+				+ (System.nanoTime() - start) / 1000000 + "ms");
+
+		Codec[] codecs = { Codec.GZIP, Codec.GZIP_BEST, Codec.LZ, Codec.dictionary(dictionary) };
+		/* first round warms up */
+		for (int round = 0; round < 2; round++) {
+			for (Codec codec : codecs) {
+				measure(name, files, codec);
+			}
+		}
+	}
+
+	private void measure(String name, List<byte[]> files, Codec codec) throws IOException {
+		long raw = 0;
+		long compressed = 0;
+		long writeTime = 0;
+		long readTime = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			for (byte[] content : files) {
+				long start = System.nanoTime();
+				byte[] result = CodecTest.compress(codec, content);
+				writeTime += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				Assert.assertEquals(content.length, CodecTest.decompress(codec, result).length);
+				readTime += System.nanoTime() - start;
+
+				raw += content.length;
+				compressed += result.length;
+			}
+		}
+		logger.info(String.format("%-10s %d %s with %-20s ratio %5.2f, write %6.1f MB/s, read %6.1f MB/s", name,
+				files.size(), name, codec, (double) raw / compressed, raw * 1000.0 / writeTime,
+				raw * 1000.0 / readTime));
+	}
+
+	private void collect(File dir, List<byte[]> snapshots, List<byte[]> flashlists) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				collect(file, snapshots, flashlists);
+			} else if (PersistenceFormat.decodeFromFilename(file.getName()) != null) {
+				byte[] content = DictionaryTool.read(file);
+				if (file.getAbsolutePath().contains("/snapshots/")) {
+					snapshots.add(content);
+				} else {
+					flashlists.add(content);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,191 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+
+public class CodecTest {
+
+	private static final String SNAPSHOT = "src/test/resources/format/1496217954303.json";
+
+	private static final String[] SAMPLES = {
+			"src/test/resources/compatibility/1.5.0/snapshots/2016/10/27/8/1477557890932.json",
+			"src/test/resources/compatibility/1.6.0/snapshots/2017/5/30/9/1496135196681.json",
+			"src/test/resources/compatibility/1.8.0/snapshots/2017/5/8/8/1494233773794.json.gz" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTripTest() throws IOException {
+		Random random = new Random(1);
+		byte[] noise = new byte[300000];
+		random.nextBytes(noise);
+		byte[] repeated = new byte[LZCodec.BLOCK_SIZE * 2 + 17];
+		Arrays.fill(repeated, (byte) 'a');
+		byte[] snapshot = DictionaryTool.read(new File(SNAPSHOT));
+
+		List<Codec> codecs = Arrays.asList(Codec.GZIP, Codec.GZIP_BEST, Codec.LZ, Codec.dictionary(train()));
+		for (Codec codec : codecs) {
+			for (byte[] content : Arrays.asList(new byte[0], new byte[] { 1, 2, 3 }, noise, repeated, snapshot)) {
+				byte[] compressed = compress(codec, content);
+				Assert.assertArrayEquals(codec + " " + content.length, content, decompress(codec, compressed));
+				Assert.assertArrayEquals(content,
+						decompress(Codec.decodeFromFilename("1.json" + codec.getExtension()), compressed));
+				if (content == snapshot) {
+					Assert.assertTrue(codec.toString(), compressed.length < snapshot.length / 5);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void singleByteTest() throws IOException {
+		byte[] snapshot = DictionaryTool.read(new File(SNAPSHOT));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream compressing = Codec.LZ.compress(out)) {
+			for (byte b : snapshot) {
+				compressing.write(b);
+			}
+		}
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (InputStream in = Codec.LZ.decompress(new ByteArrayInputStream(out.toByteArray()))) {
+			int b;
+			while ((b = in.read()) != -1) {
+				result.write(b);
+			}
+		}
+		Assert.assertArrayEquals(snapshot, result.toByteArray());
+	}
+
+	@Test
+	public void dictionaryTest() throws IOException {
+		CompressionDictionary dictionary = train();
+		Assert.assertTrue(dictionary.getSize() <= CompressionDictionary.MAX_SIZE);
+
+		/* snapshot of other session than the samples */
+		byte[] snapshot = DictionaryTool.read(new File(SNAPSHOT));
+		Codec codec = Codec.dictionary(dictionary);
+		Assert.assertTrue(compress(codec, snapshot).length < compress(Codec.GZIP, snapshot).length);
+
+		File file = dictionary.write(folder.getRoot());
+		Assert.assertEquals(dictionary.getId(), CompressionDictionary.load(file).getId());
+		Codec decoded = Codec.decode("dictionary:" + file.getName(), folder.getRoot().getAbsolutePath());
+		Assert.assertArrayEquals(snapshot, decompress(codec, compress(decoded, snapshot)));
+	}
+
+	@Test
+	public void corruptedTest() throws IOException {
+		byte[] snapshot = DictionaryTool.read(new File(SNAPSHOT));
+		List<Codec> codecs = Arrays.asList(Codec.GZIP, Codec.LZ, Codec.dictionary(train()));
+		for (Codec codec : codecs) {
+			byte[] compressed = compress(codec, snapshot);
+			try {
+				decompress(codec, Arrays.copyOf(compressed, compressed.length - 3));
+				Assert.fail("Truncated stream should not be read with " + codec);
+			} catch (IOException e) {
+			}
+			compressed[compressed.length / 2] ^= 0x55;
+			try {
+				Assert.assertFalse(Arrays.equals(snapshot, decompress(codec, compressed)));
+			} catch (IOException e) {
+			}
+			try {
+				decompress(codec, snapshot);
+				Assert.fail("Uncompressed content should not be read with " + codec);
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	@Test
+	public void decodeTest() throws IOException {
+		Assert.assertEquals(Codec.GZIP, Codec.decode(null, null));
+		Assert.assertEquals(Codec.GZIP_BEST, Codec.decode(" GZIP-best", null));
+		Assert.assertEquals(Codec.LZ, Codec.decode("lz", null));
+		try {
+			Codec.decode("xz", null);
+			Assert.fail("Unknown codec should not be decoded");
+		} catch (IllegalArgumentException e) {
+		}
+
+		Assert.assertEquals(Codec.LZ, Codec.decodeFromFilename("1496217954303.json.lz"));
+		Assert.assertEquals(Codec.DICTIONARY, Codec.decodeFromFilename("1496217954303.smile.dz"));
+		Assert.assertNull(Codec.decodeFromFilename("1496217954303.json"));
+
+		Assert.assertEquals(PersistenceFormat.ZIPPED, PersistenceFormat.decodeFromFilename("1496217954303.json.gz"));
+		Assert.assertEquals(PersistenceFormat.ZIPPED, PersistenceFormat.decodeFromFilename("1496217954303.json.lz"));
+		Assert.assertEquals(PersistenceFormat.SMILE_ZIPPED,
+				PersistenceFormat.decodeFromFilename("1496217954303.smile.dz"));
+		Assert.assertNull(PersistenceFormat.decodeFromFilename("1496217954303.lz"));
+		Assert.assertEquals(".json.lz", PersistenceFormat.ZIPPED.getExtension(Codec.LZ));
+		Assert.assertEquals(".smile.gz", PersistenceFormat.SMILE_ZIPPED.getExtension(Codec.GZIP_BEST));
+		Assert.assertEquals(".json", PersistenceFormat.JSON.getExtension(Codec.LZ));
+	}
+
+	/**
+	 * Snapshots persisted with any codec are deserialized by filename
+	 */
+	@Test
+	public void persistedTest() throws IOException {
+		StructureSerializer serializer = new StructureSerializer();
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		serializer.serialize(daq, expected, PersistenceFormat.JSON);
+
+		for (Codec codec : Arrays.asList(Codec.GZIP_BEST, Codec.LZ, Codec.dictionary(train()))) {
+			for (PersistenceFormat format : new PersistenceFormat[] { PersistenceFormat.ZIPPED,
+					PersistenceFormat.SMILE_ZIPPED }) {
+				File file = new File(folder.getRoot(), daq.getLastUpdate() + format.getExtension(codec));
+				serializer.serialize(daq, new FileOutputStream(file), format, codec, false);
+				ByteArrayOutputStream result = new ByteArrayOutputStream();
+				serializer.serialize(serializer.deserialize(file.getAbsolutePath()), result, PersistenceFormat.JSON);
+				Assert.assertArrayEquals(file.getName(), expected.toByteArray(), result.toByteArray());
+			}
+		}
+	}
+
+	private CompressionDictionary train() throws IOException {
+		List<byte[]> samples = new ArrayList<>();
+		for (String sample : SAMPLES) {
+			samples.add(DictionaryTool.read(new File(sample)));
+		}
+		return CompressionDictionary.train(samples, 16384);
+	}
+
+	static byte[] compress(Codec codec, byte[] content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream compressing = codec.compress(out)) {
+			compressing.write(content);
+		}
+		return out.toByteArray();
+	}
+
+	static byte[] decompress(Codec codec, byte[] compressed) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+		}
+		return out.toByteArray();
+	}
+
+}
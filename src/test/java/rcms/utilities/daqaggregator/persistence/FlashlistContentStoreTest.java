@@ -0,0 +1,131 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rcms.utilities.daqaggregator.datasource.FileFlashlistRetriever;
+import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistType;
+
+/**
+ * Flashlists which rows are stored once per content are replayed the same as
+ * flashlists persisted with rows
+ */
+public class FlashlistContentStoreTest {
+
+	private static final String TEST_FLASHLISTS_DIR = "src/test/resources/compatibility/1.4.0/";
+
+	private static final int CYCLES = 5;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replayTest() throws IOException {
+		List<Map<FlashlistType, Flashlist>> expected = readCycles(TEST_FLASHLISTS_DIR, PersistenceFormat.JSON);
+		Assert.assertEquals(CYCLES, expected.size());
+		int flashlists = 0;
+		for (Map<FlashlistType, Flashlist> cycle : expected) {
+			flashlists += cycle.size();
+		}
+
+		for (int segmentSize : new int[] { 0, 2 }) {
+			for (PersistenceFormat format : new PersistenceFormat[] { PersistenceFormat.JSON,
+					PersistenceFormat.ZIPPED }) {
+				String dir = folder.newFolder().getAbsolutePath() + "/";
+				PersistorManager persistorManager = new PersistorManager(null, dir, null, format);
+				persistorManager.setFlashlistCodec(Codec.LZ);
+				persistorManager.setFlashlistSegmentSize(segmentSize);
+				persistorManager.setFlashlistDedup(EnumSet.allOf(FlashlistType.class));
+				for (Map<FlashlistType, Flashlist> cycle : expected) {
+					if (segmentSize > 0) {
+						persistorManager.persistFlashlistBundle(cycle.values(), dir);
+					} else {
+						for (Flashlist flashlist : cycle.values()) {
+							persistorManager.persistFlashlist(flashlist, dir);
+						}
+					}
+				}
+
+				int stored = count(new File(dir + FlashlistContentStore.DIR));
+				Assert.assertTrue(stored > 0);
+				Assert.assertTrue(stored < flashlists);
+
+				List<Map<FlashlistType, Flashlist>> replayed = readCycles(dir, format);
+				Assert.assertEquals(CYCLES, replayed.size());
+				for (int i = 0; i < CYCLES; i++) {
+					Assert.assertEquals(expected.get(i).keySet(), replayed.get(i).keySet());
+					for (FlashlistType type : expected.get(i).keySet()) {
+						Flashlist expectedFlashlist = expected.get(i).get(type);
+						Flashlist replayedFlashlist = replayed.get(i).get(type);
+						Assert.assertEquals(expectedFlashlist.getRetrievalDate(), replayedFlashlist.getRetrievalDate());
+						Assert.assertEquals(expectedFlashlist.getRowsNode(), replayedFlashlist.getRowsNode());
+						Assert.assertNull(replayedFlashlist.getRowsHash());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rows of unchanged flashlist are stored once and parsed once
+	 */
+	@Test
+	public void unchangedRowsTest() throws IOException {
+		Flashlist flashlist = readCycles(TEST_FLASHLISTS_DIR, PersistenceFormat.JSON).get(0)
+				.get(FlashlistType.LEVEL_ZERO_FM_STATIC);
+		Assert.assertNotNull(flashlist);
+
+		String dir = folder.newFolder().getAbsolutePath() + "/";
+		FlashlistContentStore store = new FlashlistContentStore(dir, PersistenceFormat.ZIPPED, Codec.GZIP);
+		Flashlist first = store.store(flashlist);
+		Flashlist second = store.store(flashlist);
+		Assert.assertNotNull(first.getRowsHash());
+		Assert.assertEquals(first.getRowsHash(), second.getRowsHash());
+		Assert.assertNull(first.getRowsNode());
+		Assert.assertEquals(1, count(new File(dir + FlashlistContentStore.DIR)));
+
+		File file = new File(dir + "LEVEL_ZERO_FM_STATIC/2016/9/1/15/1.json.gz");
+		FlashlistContentStore.resolve(first, file);
+		FlashlistContentStore.resolve(second, file);
+		Assert.assertEquals(flashlist.getRowsNode(), first.getRowsNode());
+		Assert.assertSame(first.getSerializedRows(), second.getSerializedRows());
+	}
+
+	private int count(File dir) {
+		int result = 0;
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				result += file.isDirectory() ? count(file) : 1;
+			}
+		}
+		return result;
+	}
+
+	private List<Map<FlashlistType, Flashlist>> readCycles(String dir, PersistenceFormat format) throws IOException {
+		FileFlashlistRetriever retriever = new FileFlashlistRetriever(dir, format);
+		retriever.prepare(DatatypeConverter.parseDateTime("2016-09-01T15:00:00Z").getTimeInMillis());
+		List<Map<FlashlistType, Flashlist>> result = new ArrayList<>();
+		try {
+			while (true) {
+				result.add(retriever.retrieveAllFlashlists(0));
+			}
+		} catch (RuntimeException e) {
+			/* no more flashlists */
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,109 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rcms.utilities.daqaggregator.datasource.FileFlashlistRetriever;
+import rcms.utilities.daqaggregator.datasource.Flashlist;
+import rcms.utilities.daqaggregator.datasource.FlashlistType;
+
+/**
+ * Flashlists persisted in bundles are replayed the same as flashlists
+ * persisted in separate files
+ */
+public class FlashlistSegmentTest {
+
+	private static final String TEST_FLASHLISTS_DIR = "src/test/resources/compatibility/1.4.0/";
+
+	private static final int CYCLES = 5;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replayTest() throws IOException {
+		List<Map<FlashlistType, Flashlist>> expected = readCycles(TEST_FLASHLISTS_DIR, PersistenceFormat.JSON);
+		Assert.assertEquals(CYCLES, expected.size());
+
+		for (Codec codec : new Codec[] { Codec.GZIP, Codec.LZ }) {
+			for (PersistenceFormat format : new PersistenceFormat[] { PersistenceFormat.JSON,
+					PersistenceFormat.ZIPPED }) {
+				String dir = folder.newFolder().getAbsolutePath() + "/";
+				PersistorManager persistorManager = new PersistorManager(null, dir, null, format);
+				persistorManager.setFlashlistCodec(codec);
+				persistorManager.setFlashlistSegmentSize(2);
+				persistorManager.setCompact(true);
+				List<String> segments = new ArrayList<>();
+				for (Map<FlashlistType, Flashlist> cycle : expected) {
+					String segment = persistorManager.persistFlashlistBundle(cycle.values(), dir);
+					if (!segments.contains(segment)) {
+						segments.add(segment);
+					}
+				}
+				Assert.assertEquals(3, segments.size());
+				Assert.assertTrue(segments.get(0).endsWith(FlashlistSegment.getExtension(format, codec)));
+				Assert.assertFalse(new File(dir + FlashlistType.RU.name()).exists());
+
+				List<Map<FlashlistType, Flashlist>> replayed = readCycles(dir, format);
+				Assert.assertEquals(CYCLES, replayed.size());
+				for (int i = 0; i < CYCLES; i++) {
+					Assert.assertEquals(expected.get(i).keySet(), replayed.get(i).keySet());
+					for (FlashlistType type : expected.get(i).keySet()) {
+						Flashlist expectedFlashlist = expected.get(i).get(type);
+						Flashlist replayedFlashlist = replayed.get(i).get(type);
+						Assert.assertEquals(expectedFlashlist.getRetrievalDate(), replayedFlashlist.getRetrievalDate());
+						Assert.assertEquals(expectedFlashlist.getRowsNode(), replayedFlashlist.getRowsNode());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bundle not completely written is skipped
+	 */
+	@Test
+	public void incompleteBundleTest() throws IOException {
+		List<Map<FlashlistType, Flashlist>> expected = readCycles(TEST_FLASHLISTS_DIR, PersistenceFormat.JSON);
+		String dir = folder.newFolder().getAbsolutePath() + "/";
+		PersistorManager persistorManager = new PersistorManager(null, dir, null, PersistenceFormat.JSON);
+		persistorManager.setFlashlistSegmentSize(10);
+		String segment = null;
+		for (Map<FlashlistType, Flashlist> cycle : expected) {
+			segment = persistorManager.persistFlashlistBundle(cycle.values(), dir);
+		}
+		Assert.assertEquals(CYCLES, FlashlistSegment.index(new File(segment)).size());
+
+		try (FileOutputStream out = new FileOutputStream(segment, true)) {
+			out.write(new byte[] { 0, 0, 1, 2, 3, 4, 5, 6, 0, 0, 1, 0, '[' });
+		}
+		Assert.assertEquals(CYCLES, FlashlistSegment.index(new File(segment)).size());
+		Assert.assertEquals(CYCLES, readCycles(dir, PersistenceFormat.JSON).size());
+	}
+
+	private List<Map<FlashlistType, Flashlist>> readCycles(String dir, PersistenceFormat format) throws IOException {
+		FileFlashlistRetriever retriever = new FileFlashlistRetriever(dir, format);
+		retriever.prepare(DatatypeConverter.parseDateTime("2016-09-01T15:00:00Z").getTimeInMillis());
+		List<Map<FlashlistType, Flashlist>> result = new ArrayList<>();
+		try {
+			while (true) {
+				result.add(retriever.retrieveAllFlashlists(0));
+			}
+		} catch (RuntimeException e) {
+			/* no more flashlists */
+		}
+		return result;
+	}
+
+}
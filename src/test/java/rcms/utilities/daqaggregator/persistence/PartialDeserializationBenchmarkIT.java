@@ -0,0 +1,63 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+
+/**
+ * Compares time of reading summaries of a snapshot by full and partial
+ * deserialization, the latter with and without index of the file.
+ */
+public class PartialDeserializationBenchmarkIT {
+
+	private static final Logger logger = Logger.getLogger(PartialDeserializationBenchmarkIT.class);
+
+	private static final String SNAPSHOT = "src/test/resources/format/1496217954303";
+
+	private static final int WARMUP = 20;
+
+	private static final int ITERATIONS = 100;
+
+	private static final Set<String> SUMMARY = new HashSet<>(
+			Arrays.asList("lastUpdate", "runNumber", "buSummary", "fedBuilderSummary"));
+
+	private final StructureSerializer serializer = new StructureSerializer();
+
+	@Test
+	public void benchmark() {
+		for (String extension : new String[] { ".json", ".json.gz", ".smile" }) {
+			String file = SNAPSHOT + extension;
+			long full = measure(file, null);
+			long partial = measure(file, SUMMARY);
+			Assert.assertTrue(partial < full);
+			logger.info(String.format("%-10s full %8d us, summary %8d us", extension, full, partial));
+		}
+
+		/* properties following collections */
+		Set<String> last = new HashSet<>(Arrays.asList("lastUpdate", "runStart", "tcdsGlobalInfo"));
+		logger.info(String.format("%-10s full %8d us, last properties %8d us", ".json", measure(SNAPSHOT + ".json", null),
+				measure(SNAPSHOT + ".json", last)));
+	}
+
+	/**
+	 * @return micros per snapshot
+	 */
+	private long measure(String file, Set<String> properties) {
+		long start = 0;
+		for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+			if (i == WARMUP) {
+				start = System.nanoTime();
+			}
+			DAQ daq = properties == null ? serializer.deserialize(file) : serializer.deserialize(file, properties);
+			Assert.assertNotNull(daq);
+		}
+		return (System.nanoTime() - start) / 1000 / ITERATIONS;
+	}
+
+}
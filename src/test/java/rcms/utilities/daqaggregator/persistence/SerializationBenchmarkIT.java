@@ -0,0 +1,109 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+
+/**
+ * Compares serialize time and bytes per snapshot of the previous way of
+ * serializing (mixins added to the mapper and pretty printer created on every
+ * call, new buffer per snapshot) with prebuilt writers, reused buffer and
+ * compact mode, and the prebuilt object writer with the streaming serializer.
+ */
+public class SerializationBenchmarkIT {
+
+	private static final Logger logger = Logger.getLogger(SerializationBenchmarkIT.class);
+
+	private static final int WARMUP = 50;
+
+	private static final int ITERATIONS = 200;
+
+	private final StructureSerializer serializer = new StructureSerializer();
+
+	@Test
+	public void benchmark() throws IOException {
+		DAQ daq = serializer.deserialize("src/test/resources/format/1496217954303.json");
+		Assert.assertNotNull(daq);
+
+		/* per snapshot log of serializer is not measured */
+		Logger.getLogger(StructureSerializer.class).setLevel(Level.WARN);
+
+		/* first round warms up all code paths */
+		for (int round = 0; round < 2; round++) {
+			logger.info("Round " + round);
+			int legacy = measureLegacy(daq, false);
+			measureLegacy(daq, true);
+			Assert.assertEquals(legacy, measureObjectWriter(daq));
+			Assert.assertEquals(legacy, measure(daq, PersistenceFormat.JSON, false));
+			Assert.assertTrue(measure(daq, PersistenceFormat.JSON, true) < legacy);
+			measure(daq, PersistenceFormat.ZIPPED, false);
+			measure(daq, PersistenceFormat.ZIPPED, true);
+		}
+		Logger.getLogger(StructureSerializer.class).setLevel(null);
+	}
+
+	private int measureLegacy(DAQ daq, boolean zipped) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		int bytes = 0;
+		long start = 0;
+		for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+			if (i == WARMUP) {
+				start = System.nanoTime();
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			StructureSerializer.addMixins(mapper);
+			mapper.writerWithDefaultPrettyPrinter().writeValue(zipped ? new GZIPOutputStream(out) : out, daq);
+			bytes = out.size();
+		}
+		return report("legacy " + (zipped ? "zipped" : "json"), start, bytes);
+	}
+
+	private int measureObjectWriter(DAQ daq) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		StructureSerializer.addMixins(mapper);
+		ObjectWriter writer = mapper.writerWithDefaultPrettyPrinter();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long start = 0;
+		for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+			if (i == WARMUP) {
+				start = System.nanoTime();
+			}
+			out.reset();
+			writer.writeValue(out, daq);
+		}
+		return report("object writer json", start, out.size());
+	}
+
+	private int measure(DAQ daq, PersistenceFormat format, boolean compact) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long start = 0;
+		for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+			if (i == WARMUP) {
+				start = System.nanoTime();
+			}
+			out.reset();
+			serializer.serialize(daq, out, format, compact);
+		}
+		return report("streaming " + format + (compact ? " compact" : ""), start, out.size());
+	}
+
+	/**
+	 * @return bytes per snapshot
+	 */
+	private int report(String name, long start, int bytes) {
+		long micros = (System.nanoTime() - start) / 1000 / ITERATIONS;
+		logger.info(String.format("%-25s %8d us/snapshot %10d bytes/snapshot", name, micros, bytes));
+		return bytes;
+	}
+
+}
@@ -0,0 +1,203 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+
+/**
+ * Tests downsampling and retention of snapshot archive
+ */
+public class SnapshotCompactorTest {
+
+	/** 2017-05-31T07:00:00Z */
+	private static final long HOUR = 1496214000000L;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String dir;
+
+	@Before
+	public void createSnapshots() throws IOException {
+		dir = folder.getRoot().getAbsolutePath() + "/";
+		/* two hours of snapshots every 2 seconds */
+		for (long t = HOUR; t < HOUR + 7200000; t += 2000) {
+			ObjectNode snapshot = mapper.createObjectNode();
+			snapshot.put("lastUpdate", t);
+			snapshot.put("runNumber", 294339);
+			snapshot.put("daqState", "Running");
+			ObjectNode fed = snapshot.putArray("feds").addObject();
+			fed.put("@id", "FED_1");
+			fed.put("percentBackpressure", (double) ((t - HOUR) / 2000 % 30));
+			fed.put("ttsState", "R");
+			File hourDir = new File(dir + "2017/5/31/" + (7 + (t - HOUR) / 3600000));
+			hourDir.mkdirs();
+			mapper.writeValue(new File(hourDir, t + ".json"), snapshot);
+		}
+	}
+
+	@Test
+	public void downsampleTest() throws IOException {
+		SnapshotCompactor compactor = new SnapshotCompactor(dir, 3600000,
+				SnapshotCompactor.Tier.parse("1:0,10:0"), true);
+
+		/* only the first hour is out of full resolution window */
+		compactor.compact(HOUR + 7200000);
+		Assert.assertEquals(1, compactor.getCompactedHours());
+		Assert.assertEquals(1800, compactor.getPrunedSnapshots());
+		Assert.assertFalse(new File(dir + "2017/5/31/7").exists());
+		Assert.assertEquals(1800, new File(dir + "2017/5/31/8").list().length);
+
+		String minuteTier = PersistenceExplorer.getTierDir(dir, 60000);
+		Assert.assertEquals(60, new File(minuteTier + "2017/5/31/7").list().length);
+		Assert.assertEquals(6, new File(PersistenceExplorer.getTierDir(dir, 600000) + "2017/5/31/7").list().length);
+
+		JsonNode minute = mapper.readTree(new File(minuteTier + "2017/5/31/7/" + (HOUR + 60000) + ".json"));
+		Assert.assertEquals(HOUR + 60000, minute.get("lastUpdate").asLong());
+		Assert.assertEquals(294339, minute.get("runNumber").asInt());
+		Assert.assertEquals("Running", minute.get("daqState").asText());
+		Assert.assertEquals(14.5, minute.get("feds").get(0).get("percentBackpressure").asDouble(), 0.0001);
+		Assert.assertEquals("R", minute.get("feds").get(0).get("ttsState").asText());
+		JsonNode downsampling = minute.get(SnapshotDownsampler.DOWNSAMPLING);
+		Assert.assertEquals(30, downsampling.get("count").asInt());
+		Assert.assertEquals(0, downsampling.get("min").get("feds").get(0).get("percentBackpressure").asDouble(), 0);
+		Assert.assertEquals(29, downsampling.get("max").get("feds").get(0).get("percentBackpressure").asDouble(), 0);
+		Assert.assertEquals("FED_1", downsampling.get("max").get("feds").get(0).get("@id").asText());
+
+		/* running again does not compact the same hour */
+		compactor.compact(HOUR + 7200000);
+		Assert.assertEquals(1, compactor.getCompactedHours());
+	}
+
+	/**
+	 * Originals are not pruned if some of them could not be downsampled
+	 */
+	@Test
+	public void unreadableTest() throws IOException {
+		File hourDir = new File(dir + "2017/5/31/7");
+		File unreadable = new File(hourDir, (HOUR + 1) + ".json");
+		Files.write(unreadable.toPath(), new byte[] { '{' });
+		SnapshotCompactor compactor = new SnapshotCompactor(dir, 3600000,
+				SnapshotCompactor.Tier.parse("1:0,10:0"), true);
+
+		compactor.compact(HOUR + 7200000);
+		Assert.assertEquals(1, compactor.getCompactedHours());
+		Assert.assertEquals(0, compactor.getPrunedSnapshots());
+		Assert.assertEquals(1801, hourDir.list().length);
+		Assert.assertEquals(60, new File(PersistenceExplorer.getTierDir(dir, 60000) + "2017/5/31/7").list().length);
+
+		/* hour without any readable snapshot is kept and no tier is written */
+		File nextHourDir = new File(dir + "2017/5/31/8");
+		for (File file : nextHourDir.listFiles()) {
+			Assert.assertTrue(file.delete());
+		}
+		File nextUnreadable = new File(nextHourDir, (HOUR + 3600000) + ".json");
+		Files.write(nextUnreadable.toPath(), new byte[] { '{' });
+		compactor.compact(HOUR + 3 * 3600000);
+		Assert.assertEquals(1, compactor.getCompactedHours());
+		Assert.assertEquals(0, compactor.getPrunedSnapshots());
+		Assert.assertTrue(nextUnreadable.exists());
+		Assert.assertFalse(new File(PersistenceExplorer.getTierDir(dir, 60000) + "2017/5/31/8").exists());
+	}
+
+	/**
+	 * Binary snapshots are downsampled into json tiers
+	 */
+	@Test
+	public void binaryTest() throws IOException {
+		StructureSerializer serializer = new StructureSerializer();
+		DAQ daq = serializer.deserialize("src/test/resources/format/1496217954303.json");
+		File hourDir = new File(dir + "2017/5/31/9");
+		hourDir.mkdirs();
+		long hour = HOUR + 7200000;
+		for (long t = hour; t < hour + 120000; t += 20000) {
+			daq.setLastUpdate(t);
+			serializer.serialize(daq, new FileOutputStream(new File(hourDir, t + PersistenceFormat.BINARY.getExtension())),
+					PersistenceFormat.BINARY);
+		}
+		SnapshotCompactor compactor = new SnapshotCompactor(dir, 3600000, SnapshotCompactor.Tier.parse("1:0"), true);
+
+		compactor.compact(hour + 7200000);
+		Assert.assertEquals(3, compactor.getCompactedHours());
+		Assert.assertFalse(hourDir.exists());
+		File minute = new File(PersistenceExplorer.getTierDir(dir, 60000) + "2017/5/31/9/" + (hour + 60000)
+				+ PersistenceFormat.ZIPPED.getExtension(Codec.GZIP));
+		DAQ downsampled = serializer.deserialize(minute.getAbsolutePath());
+		Assert.assertNotNull(downsampled);
+		Assert.assertEquals(hour + 60000, downsampled.getLastUpdate());
+		Assert.assertEquals(daq.getFeds().size(), downsampled.getFeds().size());
+	}
+
+	@Test
+	public void retentionTest() throws IOException {
+		SnapshotCompactor compactor = new SnapshotCompactor(dir, 0, SnapshotCompactor.Tier.parse("1:1,10:0"), false);
+		compactor.compact(HOUR + 7200000);
+		Assert.assertEquals(2, compactor.getCompactedHours());
+		Assert.assertEquals(1800, new File(dir + "2017/5/31/7").list().length);
+
+		/* minute tier of the first hour expires, ten minute tier is kept */
+		compactor.compact(HOUR + 7200000 + 1);
+		Assert.assertFalse(new File(PersistenceExplorer.getTierDir(dir, 60000) + "2017/5/31/7").exists());
+		Assert.assertTrue(new File(PersistenceExplorer.getTierDir(dir, 60000) + "2017/5/31/8").exists());
+		Assert.assertEquals(6, new File(PersistenceExplorer.getTierDir(dir, 600000) + "2017/5/31/7").list().length);
+	}
+
+	@Test
+	public void exploreByResolutionTest() throws IOException {
+		new SnapshotCompactor(dir, 3600000, SnapshotCompactor.Tier.parse("1:0,10:0"), true).compact(HOUR + 7200000);
+		PersistenceExplorer explorer = new PersistenceExplorer(new FileSystemConnector());
+
+		/* ten minute tier for the compacted hour, originals afterwards */
+		Pair<Long, List<File>> result = explorer.explore(HOUR - 1, HOUR + 3700000, dir, 10000, 900000);
+		Assert.assertEquals(6 + 51, result.getRight().size());
+		Assert.assertTrue(result.getRight().get(0).getPath().contains(PersistenceExplorer.TIER_DIR_PREFIX + 600000));
+		Assert.assertEquals(HOUR + 3700000, (long) result.getLeft());
+
+		/* minute tier when ten minutes are too coarse */
+		result = explorer.explore(HOUR - 1, HOUR + 3600001, dir, 10000, 120000);
+		Assert.assertEquals(60 + 1, result.getRight().size());
+
+		/* originals only, compacted hour is gone */
+		result = explorer.explore(HOUR - 1, HOUR + 3600001, dir, 10000, 0);
+		Assert.assertEquals(1, result.getRight().size());
+
+		/* chunk size is respected across tiers */
+		result = explorer.explore(HOUR - 1, HOUR + 7200000, dir, 10, 900000);
+		Assert.assertEquals(10, result.getRight().size());
+	}
+
+	@Test
+	public void downsampledSnapshotReadableTest() throws IOException {
+		JsonNode snapshot = mapper.readTree(new File("src/test/resources/format/1496217954303.json"));
+		SnapshotDownsampler downsampler = new SnapshotDownsampler(1496217900000L, 60000);
+		downsampler.add(snapshot);
+		downsampler.add(snapshot);
+		File file = folder.newFile("1496217900000.json");
+		mapper.writeValue(file, downsampler.build());
+
+		DAQ daq = new StructureSerializer().deserialize(file.getAbsolutePath());
+		Assert.assertNotNull(daq);
+		Assert.assertEquals(1496217900000L, daq.getLastUpdate());
+		Assert.assertEquals(snapshot.get("feds").size(), daq.getFeds().size());
+		Assert.assertEquals(Arrays.asList(snapshot.get("runNumber").asInt()), Arrays.asList(daq.getRunNumber()));
+	}
+
+}
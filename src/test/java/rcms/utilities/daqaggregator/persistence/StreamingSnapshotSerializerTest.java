@@ -0,0 +1,89 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.data.SubFEDBuilder;
+
+/**
+ * Tests that snapshots written by {@link StreamingSnapshotSerializer} are the
+ * same, byte by byte, as snapshots written by the object mapper
+ */
+public class StreamingSnapshotSerializerTest {
+
+	private static final String SNAPSHOT = "src/test/resources/format/1496217954303.json";
+
+	private final StructureSerializer serializer = new StructureSerializer();
+
+	@Test
+	public void sameAsObjectMapperTest() throws IOException {
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		for (PersistenceFormat format : PersistenceFormat.values()) {
+			if (format == PersistenceFormat.BINARY) {
+				continue;
+			}
+			Assert.assertArrayEquals(format.name(), objectMapper(daq, format, false), streaming(daq, format, false));
+			Assert.assertArrayEquals(format.name(), objectMapper(daq, format, true), streaming(daq, format, true));
+		}
+	}
+
+	/**
+	 * Object reachable from more than one collection is written in full only
+	 * on first occurrence
+	 */
+	@Test
+	public void sharedObjectTest() throws IOException {
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		SubFEDBuilder first = daq.getSubFEDBuilders().get(0);
+		SubFEDBuilder last = daq.getSubFEDBuilders().get(daq.getSubFEDBuilders().size() - 1);
+		FED shared = daq.getFeds().iterator().next();
+		first.getFeds().add(shared);
+		last.getFeds().add(shared);
+
+		Assert.assertArrayEquals(objectMapper(daq, PersistenceFormat.JSON, false),
+				streaming(daq, PersistenceFormat.JSON, false));
+		Assert.assertArrayEquals(objectMapper(daq, PersistenceFormat.JSONREFPREFIXED, false),
+				streaming(daq, PersistenceFormat.JSONREFPREFIXED, false));
+	}
+
+	private byte[] streaming(DAQ daq, PersistenceFormat format, boolean compact) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serializer.serialize(daq, out, format, compact);
+		if (format == PersistenceFormat.ZIPPED || format == PersistenceFormat.SMILE_ZIPPED) {
+			try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+				ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+				byte[] buffer = new byte[65536];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					unzipped.write(buffer, 0, read);
+				}
+				return unzipped.toByteArray();
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private byte[] objectMapper(DAQ daq, PersistenceFormat format, boolean compact) throws IOException {
+		ObjectMapper mapper = new ObjectMapper(format.getMapper().getFactory().copy());
+		if (format == PersistenceFormat.JSONREFPREFIXED || format == PersistenceFormat.JSONREFPREFIXEDUGLY) {
+			StructureSerializer.addRefMixins(mapper);
+		} else {
+			StructureSerializer.addMixins(mapper);
+		}
+		ObjectWriter writer = format.isPrettyPrint() && !compact ? mapper.writerWithDefaultPrettyPrinter()
+				: mapper.writer();
+		return writer.writeValueAsBytes(daq);
+	}
+
+}
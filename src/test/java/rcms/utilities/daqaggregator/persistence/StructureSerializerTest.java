@@ -0,0 +1,192 @@
+package rcms.utilities.daqaggregator.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.datasource.Flashlist;
+
+/**
+ * Tests serialization with prebuilt writers and compact mode
+ */
+public class StructureSerializerTest {
+
+	private static final String SNAPSHOT = "src/test/resources/format/1496217954303.json";
+
+	/** Snapshot with one sub-FED builder missing, it is only referenced */
+	private static final String UNRESOLVED = "src/test/resources/id-generator/case/problematic-snapshot/1499335390070.json";
+
+	private static final String FLASHLIST = "src/test/resources/compatibility/1.12.1/flashlists/BU/2017/6/6/6/1496730497780.json";
+
+	private final StructureSerializer serializer = new StructureSerializer();
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Output must not depend on formats used before
+	 */
+	@Test
+	public void repeatedSerializationTest() throws IOException {
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		byte[] first = serialize(daq, PersistenceFormat.JSON, false);
+		serialize(daq, PersistenceFormat.JSONREFPREFIXED, false);
+		serialize(daq, PersistenceFormat.SMILE, false);
+		Assert.assertArrayEquals(first, serialize(daq, PersistenceFormat.JSON, false));
+	}
+
+	@Test
+	public void compactTest() throws IOException {
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		byte[] pretty = serialize(daq, PersistenceFormat.JSON, false);
+		byte[] compact = serialize(daq, PersistenceFormat.JSON, true);
+		Assert.assertTrue(compact.length < pretty.length);
+		Assert.assertEquals(mapper.readTree(pretty), mapper.readTree(compact));
+		Assert.assertArrayEquals(compact, serialize(daq, PersistenceFormat.JSONUGLY, false));
+	}
+
+	@Test
+	public void compactPersistenceTest() throws IOException {
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		String dir = folder.getRoot().getAbsolutePath() + "/";
+		PersistorManager persistorManager = new PersistorManager(dir + "snapshots/", dir + "flashlists/",
+				PersistenceFormat.ZIPPED, PersistenceFormat.ZIPPED);
+		persistorManager.setCompact(true);
+
+		String persisted = persistorManager.persistSnapshot(daq);
+		Assert.assertNotNull(persisted);
+		DAQ read = serializer.deserialize(persisted);
+		Assert.assertArrayEquals(serialize(daq, PersistenceFormat.JSON, true),
+				serialize(read, PersistenceFormat.JSON, true));
+
+		/* buffer is reused for the next snapshot */
+		daq.setLastUpdate(daq.getLastUpdate() + 1);
+		String next = persistorManager.persistSnapshot(daq);
+		Assert.assertEquals(daq.getLastUpdate(), serializer.deserialize(next).getLastUpdate());
+
+		Flashlist flashlist = serializer.deserializeFlashlist(new File(FLASHLIST), PersistenceFormat.JSON);
+		String persistedFlashlist = persistorManager.persistFlashlist(flashlist, dir + "flashlists/");
+		Flashlist readFlashlist = serializer.deserializeFlashlist(new File(persistedFlashlist), PersistenceFormat.ZIPPED);
+		Assert.assertEquals(flashlist.getRowsNode(), readFlashlist.getRowsNode());
+		Assert.assertEquals(flashlist.getRetrievalDate(), readFlashlist.getRetrievalDate());
+	}
+
+	/**
+	 * Given properties are read the same as by full deserialization in all
+	 * formats, other properties are not read
+	 */
+	/**
+	 * Snapshot referencing a missing object must fail instead of dropping
+	 * elements of collections
+	 */
+	@Test
+	public void unresolvedReferenceTest() throws IOException {
+		Assert.assertNull(serializer.deserialize(UNRESOLVED));
+
+		File zipped = folder.newFile("snapshot" + PersistenceFormat.ZIPPED.getExtension());
+		try (OutputStream out = Codec.GZIP.compress(new FileOutputStream(zipped))) {
+			Files.copy(new File(UNRESOLVED).toPath(), out);
+		}
+		Assert.assertNull(serializer.deserialize(zipped.getAbsolutePath()));
+	}
+
+	@Test
+	public void partialTest() throws IOException {
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		File binary = folder.newFile("snapshot" + PersistenceFormat.BINARY.getExtension());
+		try (OutputStream out = new FileOutputStream(binary)) {
+			serializer.serialize(daq, out, PersistenceFormat.BINARY);
+		}
+		Set<String> properties = new HashSet<>(
+				Arrays.asList("lastUpdate", "runNumber", "buSummary", "fedBuilderSummary", "runStart"));
+
+		for (String file : new String[] { SNAPSHOT, SNAPSHOT + ".gz", SNAPSHOT.replace(".json", ".smile"),
+				SNAPSHOT.replace(".json", ".smile.gz"), binary.getAbsolutePath() }) {
+			DAQ partial = serializer.deserialize(file, properties);
+			Assert.assertNotNull(file, partial);
+			Assert.assertEquals(file, daq.getLastUpdate(), partial.getLastUpdate());
+			Assert.assertEquals(file, daq.getRunNumber(), partial.getRunNumber());
+			Assert.assertEquals(file, daq.getRunStart(), partial.getRunStart());
+			Assert.assertEquals(file, daq.getBuSummary().getRate(), partial.getBuSummary().getRate(), 0);
+			Assert.assertSame(file, partial, partial.getBuSummary().getDaq());
+			Assert.assertEquals(file, daq.getFedBuilderSummary().getSumRequests(),
+					partial.getFedBuilderSummary().getSumRequests());
+			Assert.assertNull(file, partial.getFeds());
+			Assert.assertNull(file, partial.getDaqState());
+		}
+	}
+
+	/**
+	 * Properties referencing objects serialized in preceding properties are
+	 * read with the preceding properties
+	 */
+	@Test
+	public void partialReferencesTest() throws IOException {
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+		DAQ partial = serializer.deserialize(SNAPSHOT, Collections.singleton("feds"));
+		Assert.assertEquals(daq.getFeds().size(), partial.getFeds().size());
+		FED fed = daq.getFeds().iterator().next();
+		FED partialFed = partial.getFeds().iterator().next();
+		Assert.assertEquals(fed.getSrcIdExpected(), partialFed.getSrcIdExpected());
+		Assert.assertEquals(fed.getFrl().getObjectId(), partialFed.getFrl().getObjectId());
+		Assert.assertNotNull(partial.getFrls());
+		Assert.assertNull(partial.getTcdsGlobalInfo());
+	}
+
+	/**
+	 * Repeated reads of indexed file return current content of the file
+	 */
+	@Test
+	public void partialIndexTest() throws IOException {
+		File file = folder.newFile("snapshot.json");
+		Files.copy(new File(SNAPSHOT).toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		DAQ daq = serializer.deserialize(SNAPSHOT);
+
+		Set<String> properties = new HashSet<>(Arrays.asList("lastUpdate", "runStart", "tcdsGlobalInfo"));
+		for (int i = 0; i < 3; i++) {
+			DAQ partial = serializer.deserialize(file.getAbsolutePath(), properties);
+			Assert.assertEquals(daq.getLastUpdate(), partial.getLastUpdate());
+			Assert.assertEquals(daq.getRunStart(), partial.getRunStart());
+			Assert.assertEquals(mapper.valueToTree(daq.getTcdsGlobalInfo()),
+					mapper.valueToTree(partial.getTcdsGlobalInfo()));
+		}
+		Assert.assertEquals(daq.getRunNumber(),
+				serializer.deserialize(file.getAbsolutePath(), Collections.singleton("runNumber")).getRunNumber());
+
+		/* modified file is indexed again */
+		daq.setLastUpdate(daq.getLastUpdate() + 1);
+		daq.setRunStart(daq.getRunStart() + 1000);
+		try (OutputStream out = new FileOutputStream(file)) {
+			serializer.serialize(daq, out, PersistenceFormat.JSON, true);
+		}
+		DAQ partial = serializer.deserialize(file.getAbsolutePath(), properties);
+		Assert.assertEquals(daq.getLastUpdate(), partial.getLastUpdate());
+		Assert.assertEquals(daq.getRunStart(), partial.getRunStart());
+	}
+
+	private byte[] serialize(DAQ daq, PersistenceFormat format, boolean compact) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serializer.serialize(daq, out, format, compact);
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,91 @@
+package rcms.utilities.daqaggregator.query;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.persistence.StructureSerializer;
+
+/**
+ * Tests selecting parts of snapshot
+ */
+public class SnapshotQueryTest {
+
+	private static DAQ daq;
+
+	@BeforeClass
+	public static void readSnapshot() {
+		daq = new StructureSerializer().deserialize("src/test/resources/format/1496217954303.json");
+		Assert.assertNotNull(daq);
+	}
+
+	@Test
+	public void subsystemFedsTest() {
+		SnapshotQuery query = SnapshotQuery.parse("select=feds&subsystem=ECAL&fields=percentBackpressure,ttsState");
+
+		List<Object> selected = query.select(daq);
+		Assert.assertFalse(selected.isEmpty());
+		Assert.assertTrue(selected.size() < daq.getFeds().size());
+		for (Object object : selected) {
+			Assert.assertEquals("ECAL", ((FED) object).getTtcp().getSubsystem().getName());
+		}
+
+		JsonNode result = query.execute(daq);
+		Assert.assertTrue(result.isArray());
+		Assert.assertEquals(selected.size(), result.size());
+		JsonNode fed = result.get(0);
+		Assert.assertEquals(new HashSet<>(Arrays.asList("@id", "percentBackpressure", "ttsState")), fieldNames(fed));
+		Assert.assertEquals("FED_" + ((FED) selected.get(0)).getId(), fed.get("@id").asText());
+	}
+
+	@Test
+	public void propertyFilterTest() {
+		JsonNode result = SnapshotQuery.parse("select=ttcPartitions&name=EB%2B").execute(daq);
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals("TTCP_EB+", result.get(0).get("@id").asText());
+		Assert.assertEquals("SS_ECAL", result.get(0).get("subsystem").asText());
+	}
+
+	@Test
+	public void singleObjectTest() {
+		JsonNode result = SnapshotQuery.parse("select=tcdsGlobalInfo").execute(daq);
+		Assert.assertTrue(result.isObject());
+
+		result = SnapshotQuery.parse("fields=sessionId,runNumber").execute(daq);
+		Assert.assertEquals(daq.getSessionId(), result.get("sessionId").asInt());
+		Assert.assertEquals(daq.getRunNumber(), result.get("runNumber").asInt());
+		Assert.assertEquals(3, result.size());
+	}
+
+	@Test
+	public void nestedPathTest() {
+		List<Object> selected = SnapshotQuery.parse("select=subSystems.ttcPartitions&subsystem=ECAL").select(daq);
+		Assert.assertFalse(selected.isEmpty());
+		Assert.assertTrue(selected.size() < daq.getTtcPartitions().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownPropertyTest() {
+		SnapshotQuery.parse("select=nonexisting").execute(daq);
+	}
+
+	private static Set<String> fieldNames(JsonNode node) {
+		Set<String> names = new HashSet<>();
+		Iterator<String> iterator = node.fieldNames();
+		while (iterator.hasNext()) {
+			names.add(iterator.next());
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,59 @@
+package rcms.utilities.daqaggregator.server;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Tests json patch between snapshots
+ */
+public class JsonPatchTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void simpleDiffTest() throws IOException {
+		JsonNode source = mapper.readTree("{\"a\":1,\"b\":[1,2,3],\"c\":{\"d\":\"x\"},\"e/f\":true}");
+		JsonNode target = mapper.readTree("{\"a\":2,\"b\":[1,5],\"c\":{\"g\":null},\"e/f\":true,\"h\":[]}");
+
+		ArrayNode patch = JsonPatch.diff(source, target);
+		Assert.assertEquals(mapper.readTree("[{\"op\":\"replace\",\"path\":\"/a\",\"value\":2},"
+				+ "{\"op\":\"replace\",\"path\":\"/b/1\",\"value\":5},{\"op\":\"remove\",\"path\":\"/b/2\"},"
+				+ "{\"op\":\"remove\",\"path\":\"/c/d\"},{\"op\":\"add\",\"path\":\"/c/g\",\"value\":null},"
+				+ "{\"op\":\"add\",\"path\":\"/h\",\"value\":[]}]"), patch);
+		Assert.assertEquals(target, JsonPatch.apply(source, patch));
+		Assert.assertEquals(0, JsonPatch.diff(target, target.deepCopy()).size());
+	}
+
+	@Test
+	public void escapeTest() throws IOException {
+		JsonNode source = mapper.readTree("{\"a/b\":{\"~c\":1}}");
+		JsonNode target = mapper.readTree("{\"a/b\":{\"~c\":2}}");
+		ArrayNode patch = JsonPatch.diff(source, target);
+		Assert.assertEquals("/a~1b/~0c", patch.get(0).get("path").asText());
+		Assert.assertEquals(target, JsonPatch.apply(source, patch));
+	}
+
+	@Test
+	public void snapshotDiffTest() throws IOException {
+		JsonNode source = mapper.readTree(new File("src/test/resources/format/1496217954303.json"));
+		ObjectNode target = source.deepCopy();
+		target.put("lastUpdate", 1496217956303L);
+		ArrayNode fedBuilders = (ArrayNode) target.get("fedBuilders");
+		((ObjectNode) fedBuilders.get(0)).put("name", "changed");
+		fedBuilders.remove(fedBuilders.size() - 1);
+
+		ArrayNode patch = JsonPatch.diff(source, target);
+		Assert.assertEquals(3, patch.size());
+		Assert.assertEquals(target, JsonPatch.apply(source, patch));
+		Assert.assertTrue(mapper.writeValueAsBytes(patch).length < mapper.writeValueAsBytes(target).length / 10);
+	}
+
+}
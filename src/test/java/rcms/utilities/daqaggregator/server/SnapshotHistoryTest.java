@@ -0,0 +1,65 @@
+package rcms.utilities.daqaggregator.server;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests eviction and lookup of recent snapshots
+ */
+public class SnapshotHistoryTest {
+
+	@Test
+	public void ageEvictionTest() {
+		SnapshotHistory history = new SnapshotHistory(10000, 1000);
+		for (long timestamp = 0; timestamp <= 20000; timestamp += 2000) {
+			history.add(timestamp, new byte[10]);
+		}
+		Assert.assertEquals(Arrays.asList(10000L, 12000L, 14000L, 16000L, 18000L, 20000L), history.getTimestamps());
+		Assert.assertEquals(5, history.getEvictedByAge());
+		Assert.assertEquals(0, history.getEvictedByMemory());
+		Assert.assertEquals(60, history.getBytes());
+	}
+
+	@Test
+	public void memoryEvictionTest() {
+		SnapshotHistory history = new SnapshotHistory(60000, 100);
+		for (long timestamp = 0; timestamp < 10; timestamp++) {
+			history.add(timestamp, new byte[30]);
+		}
+		Assert.assertEquals(3, history.size());
+		Assert.assertEquals(90, history.getBytes());
+		Assert.assertEquals(7, history.getEvictedByMemory());
+
+		/* the newest snapshot is kept even if it exceeds the cap */
+		history.add(10, new byte[200]);
+		Assert.assertEquals(Arrays.asList(10L), history.getTimestamps());
+	}
+
+	@Test
+	public void lookupTest() {
+		SnapshotHistory history = new SnapshotHistory(60000, 1000);
+		for (long timestamp = 1000; timestamp <= 9000; timestamp += 2000) {
+			history.add(timestamp, new byte[] { (byte) (timestamp / 1000) });
+		}
+		Assert.assertNull(history.get(999));
+		Assert.assertEquals(1000, history.get(1000).getTimestamp());
+		Assert.assertEquals(3000, history.get(4999).getTimestamp());
+		Assert.assertEquals(9000, history.get(Long.MAX_VALUE).getTimestamp());
+		Assert.assertEquals(2, history.getRange(2000, 6000).size());
+		Assert.assertEquals(3, history.getRange(2000, 6000).get(0).getCompressed()[0]);
+	}
+
+	@Test
+	public void restartTest() {
+		SnapshotHistory history = new SnapshotHistory(60000, 1000);
+		history.add(1000, new byte[10]);
+		history.add(2000, new byte[10]);
+		history.add(3000, new byte[10]);
+		history.add(2000, new byte[5]);
+		Assert.assertEquals(Arrays.asList(1000L, 2000L), history.getTimestamps());
+		Assert.assertEquals(15, history.getBytes());
+	}
+
+}
@@ -0,0 +1,276 @@
+package rcms.utilities.daqaggregator.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
+import rcms.utilities.daqaggregator.persistence.StructureSerializer;
+
+/**
+ * Tests serving snapshot from memory to concurrent clients
+ */
+public class SnapshotServerTest {
+
+	private static final int CLIENTS = 32;
+
+	private static final int REQUESTS_PER_CLIENT = 20;
+
+	private SnapshotServer server;
+
+	private byte[] snapshot;
+
+	@Before
+	public void startServer() throws IOException {
+		snapshot = Files.readAllBytes(Paths.get("src/test/resources/format/1496217954303.json"));
+		server = new SnapshotServer(0, 4, PersistenceFormat.ZIPPED);
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop();
+	}
+
+	@Test
+	public void noSnapshotTest() throws IOException {
+		HttpURLConnection connection = open(null, false);
+		Assert.assertEquals(503, connection.getResponseCode());
+	}
+
+	@Test
+	public void methodNotAllowedTest() throws IOException {
+		server.publish(snapshot, 1, 1496217954303L);
+		HttpURLConnection connection = open(null, false);
+		connection.setRequestMethod("POST");
+		Assert.assertEquals(405, connection.getResponseCode());
+	}
+
+	@Test
+	public void notModifiedTest() throws IOException {
+		server.publish(snapshot, 1, 1496217954303L);
+		HttpURLConnection connection = open(null, false);
+		Assert.assertEquals(200, connection.getResponseCode());
+		String etag = connection.getHeaderField("ETag");
+		Assert.assertNotNull(etag);
+		Assert.assertArrayEquals(snapshot, read(connection));
+
+		connection = open(etag, false);
+		Assert.assertEquals(304, connection.getResponseCode());
+
+		server.publish(Arrays.copyOf(snapshot, snapshot.length - 1), 1, 1496217954304L);
+		connection = open(etag, false);
+		Assert.assertEquals(200, connection.getResponseCode());
+		Assert.assertNotEquals(etag, connection.getHeaderField("ETag"));
+	}
+
+	@Test
+	public void gzipTest() throws IOException {
+		server.publish(snapshot, 1, 1496217954303L);
+		HttpURLConnection connection = open(null, true);
+		Assert.assertEquals(200, connection.getResponseCode());
+		Assert.assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+		Assert.assertEquals("application/json", connection.getHeaderField("Content-Type"));
+		Assert.assertArrayEquals(snapshot, read(new GZIPInputStream(connection.getInputStream())));
+	}
+
+	@Test
+	public void acceptEncodingTest() {
+		Assert.assertTrue(SnapshotServer.acceptsGzip(Arrays.asList("deflate, gzip;q=0.5")));
+		Assert.assertFalse(SnapshotServer.acceptsGzip(Arrays.asList("gzip;q=0")));
+		Assert.assertFalse(SnapshotServer.acceptsGzip(Arrays.asList("identity")));
+		Assert.assertTrue(SnapshotServer.matches(Arrays.asList("\"a\", W/\"b\""), "\"b\""));
+		Assert.assertFalse(SnapshotServer.matches(Arrays.asList("\"a\""), "\"b\""));
+	}
+
+	/**
+	 * Swarm of clients polling the server while snapshots are published, each
+	 * response must be one of published snapshots
+	 */
+	@Test
+	public void clientSwarmTest() throws Exception {
+		final byte[] first = snapshot;
+		final byte[] second = new String(snapshot, StandardCharsets.UTF_8).replace("1496217954303", "1496217956303")
+				.getBytes(StandardCharsets.UTF_8);
+		server.publish(first, 1, 1496217954303L);
+
+		ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+		List<Future<int[]>> results = new ArrayList<>();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < CLIENTS; i++) {
+			final boolean gzip = i % 2 == 0;
+			results.add(clients.submit(new Callable<int[]>() {
+				@Override
+				public int[] call() throws Exception {
+					int[] counts = new int[2];
+					String etag = null;
+					for (int j = 0; j < REQUESTS_PER_CLIENT; j++) {
+						HttpURLConnection connection = open(etag, gzip);
+						int code = connection.getResponseCode();
+						if (code == 304) {
+							counts[1]++;
+							continue;
+						}
+						Assert.assertEquals(200, code);
+						etag = connection.getHeaderField("ETag");
+						byte[] body = read(gzip ? new GZIPInputStream(connection.getInputStream())
+								: connection.getInputStream());
+						Assert.assertTrue(Arrays.equals(first, body) || Arrays.equals(second, body));
+						counts[0]++;
+					}
+					return counts;
+				}
+			}));
+		}
+		server.publish(second, 1, 1496217956303L);
+
+		int served = 0;
+		int notModified = 0;
+		for (Future<int[]> result : results) {
+			served += result.get()[0];
+			notModified += result.get()[1];
+		}
+		clients.shutdown();
+		long time = System.currentTimeMillis() - start;
+		System.out.println("Served " + served + " snapshots, " + notModified + " not modified to " + CLIENTS
+				+ " clients in " + time + "ms");
+
+		Assert.assertEquals(CLIENTS * REQUESTS_PER_CLIENT, served + notModified);
+		Assert.assertEquals(served, server.getServed());
+		Assert.assertEquals(notModified, server.getNotModified());
+		Assert.assertTrue(notModified > 0);
+	}
+
+	@Test
+	public void historyTest() throws IOException {
+		server.stop();
+		server = new SnapshotServer(0, 2, PersistenceFormat.JSON);
+		server.setHistory(new SnapshotHistory(60000, 1024 * 1024));
+		server.start();
+		byte[] second = "{\"lastUpdate\":2}".getBytes(StandardCharsets.UTF_8);
+		server.publish(snapshot, 1, 1000L);
+		server.publish(second, 1, 3000L);
+
+		String base = "http://localhost:" + server.getPort() + SnapshotServer.HISTORY_PATH;
+		HttpURLConnection connection = (HttpURLConnection) new URL(base + "?timestamp=2999").openConnection();
+		Assert.assertEquals(200, connection.getResponseCode());
+		Assert.assertEquals("1000", connection.getHeaderField("X-Snapshot-Timestamp"));
+		Assert.assertArrayEquals(snapshot, read(connection));
+
+		connection = (HttpURLConnection) new URL(base + "?timestamp=3000").openConnection();
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		Assert.assertArrayEquals(second, read(new GZIPInputStream(connection.getInputStream())));
+
+		connection = (HttpURLConnection) new URL(base + "?timestamp=999").openConnection();
+		Assert.assertEquals(404, connection.getResponseCode());
+
+		connection = (HttpURLConnection) new URL(base + "?from=0&to=5000").openConnection();
+		JsonNode range = new ObjectMapper().readTree(read(connection));
+		Assert.assertEquals(2, range.size());
+		Assert.assertEquals(2, range.get(1).get("lastUpdate").asInt());
+
+		connection = (HttpURLConnection) new URL(base).openConnection();
+		JsonNode statistics = new ObjectMapper().readTree(read(connection));
+		Assert.assertEquals(2, statistics.get("snapshots").asInt());
+		Assert.assertEquals(3000, statistics.get("timestamps").get(1).asLong());
+	}
+
+	@Test
+	public void queryTest() throws IOException {
+		DAQ daq = new StructureSerializer().deserialize("src/test/resources/format/1496217954303.json");
+		server.publish(daq);
+
+		URL url = new URL("http://localhost:" + server.getPort() + SnapshotServer.QUERY_PATH
+				+ "?select=feds&subsystem=ECAL&fields=percentBackpressure,ttsState");
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		Assert.assertEquals(200, connection.getResponseCode());
+		JsonNode result = new ObjectMapper().readTree(read(connection));
+		Assert.assertTrue(result.size() > 0);
+		Assert.assertTrue(result.size() < daq.getFeds().size());
+		Assert.assertEquals(3, result.get(0).size());
+
+		url = new URL("http://localhost:" + server.getPort() + SnapshotServer.QUERY_PATH + "?select=nonexisting");
+		connection = (HttpURLConnection) url.openConnection();
+		Assert.assertEquals(400, connection.getResponseCode());
+	}
+
+	/**
+	 * Snapshots persisted in binary format are served as json
+	 */
+	@Test
+	public void binaryFormatTest() throws IOException {
+		server.stop();
+		server = new SnapshotServer(0, 2, PersistenceFormat.BINARY);
+		server.setHistory(new SnapshotHistory(60000, 1024 * 1024));
+		server.start();
+		DAQ daq = new StructureSerializer().deserialize("src/test/resources/format/1496217954303.json");
+		server.publish(daq);
+		daq.setLastUpdate(daq.getLastUpdate() + 2000);
+		server.publish(daq);
+
+		HttpURLConnection connection = open(null, false);
+		Assert.assertEquals(200, connection.getResponseCode());
+		Assert.assertEquals("application/json", connection.getContentType());
+		JsonNode served = new ObjectMapper().readTree(read(connection));
+		Assert.assertEquals(daq.getLastUpdate(), served.get("lastUpdate").asLong());
+
+		connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + SnapshotServer.HISTORY_PATH
+				+ "?from=0").openConnection();
+		JsonNode range = new ObjectMapper().readTree(read(connection));
+		Assert.assertEquals(2, range.size());
+		Assert.assertEquals(daq.getLastUpdate(), range.get(1).get("lastUpdate").asLong());
+	}
+
+	private HttpURLConnection open(String etag, boolean gzip) throws IOException {
+		URL url = new URL("http://localhost:" + server.getPort() + SnapshotServer.SNAPSHOT_PATH);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		if (etag != null) {
+			connection.setRequestProperty("If-None-Match", etag);
+		}
+		if (gzip) {
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+		}
+		return connection;
+	}
+
+	private byte[] read(HttpURLConnection connection) throws IOException {
+		return read(connection.getInputStream());
+	}
+
+	private byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		try {
+			while ((n = in.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+}
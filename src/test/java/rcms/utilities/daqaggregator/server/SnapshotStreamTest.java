@@ -0,0 +1,124 @@
+package rcms.utilities.daqaggregator.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import rcms.utilities.daqaggregator.persistence.PersistenceFormat;
+
+/**
+ * Tests streaming of snapshot changes to subscribers
+ */
+public class SnapshotStreamTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private SnapshotServer server;
+
+	private ObjectNode snapshot;
+
+	@Before
+	public void startServer() throws IOException {
+		snapshot = (ObjectNode) mapper.readTree(new File("src/test/resources/format/1496217954303.json"));
+		server = new SnapshotServer(0, 2, 2, PersistenceFormat.JSON);
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop();
+	}
+
+	@Test
+	public void streamTest() throws Exception {
+		server.publish(mapper.writeValueAsBytes(snapshot), 1, 1496217954303L);
+		BufferedReader reader = subscribe();
+
+		Event event = next(reader);
+		Assert.assertEquals("snapshot", event.name);
+		Assert.assertEquals(snapshot, event.data);
+		JsonNode current = event.data;
+
+		/* patches applied by subscriber must give published snapshots */
+		for (int i = 1; i <= 5; i++) {
+			snapshot.put("lastUpdate", 1496217954303L + i * 2000);
+			((ObjectNode) snapshot.get("fedBuilders").get(i)).put("name", "changed-" + i);
+			server.publish(mapper.writeValueAsBytes(snapshot), 1, 1496217954303L + i * 2000);
+		}
+		while (!current.equals(snapshot)) {
+			event = next(reader);
+			Assert.assertEquals("patch", event.name);
+			current = JsonPatch.apply(current, (ArrayNode) event.data);
+		}
+
+		/* new session starts with full snapshot */
+		snapshot.put("sessionId", 2);
+		server.publish(mapper.writeValueAsBytes(snapshot), 2, 1496217966303L);
+		event = next(reader);
+		Assert.assertEquals("snapshot", event.name);
+		Assert.assertEquals(snapshot, event.data);
+		reader.close();
+	}
+
+	@Test
+	public void subscriberLimitTest() throws Exception {
+		server.publish(mapper.writeValueAsBytes(snapshot), 1, 1496217954303L);
+		BufferedReader first = subscribe();
+		BufferedReader second = subscribe();
+		next(first);
+		next(second);
+		Assert.assertEquals(2, server.getStream().getSubscribers());
+
+		HttpURLConnection connection = (HttpURLConnection) url().openConnection();
+		Assert.assertEquals(503, connection.getResponseCode());
+		first.close();
+		second.close();
+	}
+
+	private URL url() throws IOException {
+		return new URL("http://localhost:" + server.getPort() + SnapshotServer.STREAM_PATH);
+	}
+
+	private BufferedReader subscribe() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url().openConnection();
+		connection.setReadTimeout(10000);
+		Assert.assertEquals(200, connection.getResponseCode());
+		Assert.assertEquals("text/event-stream", connection.getHeaderField("Content-Type"));
+		return new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+	}
+
+	private Event next(BufferedReader reader) throws IOException {
+		Event event = new Event();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty() && event.data != null) {
+				return event;
+			} else if (line.startsWith("event: ")) {
+				event.name = line.substring(7);
+			} else if (line.startsWith("data: ")) {
+				event.data = mapper.readTree(line.substring(6));
+			}
+		}
+		throw new IOException("Stream closed");
+	}
+
+	private static class Event {
+		private String name;
+		private JsonNode data;
+	}
+
+}
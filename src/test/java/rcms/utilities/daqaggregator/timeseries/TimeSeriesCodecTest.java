@@ -0,0 +1,88 @@
+package rcms.utilities.daqaggregator.timeseries;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests encoding of timestamp and value columns
+ */
+public class TimeSeriesCodecTest {
+
+	@Test
+	public void timestampsTest() {
+		Random random = new Random(1);
+		long[] timestamps = new long[2000];
+		long timestamp = 1496217954303L;
+		for (int i = 0; i < timestamps.length; i++) {
+			/* regular period with jitter, occasional gaps */
+			timestamp += 2000 + random.nextInt(100) - 50 + (i % 500 == 499 ? 600000 : 0);
+			timestamps[i] = timestamp;
+		}
+
+		TimeSeriesCodec.TimestampEncoder encoder = new TimeSeriesCodec.TimestampEncoder();
+		for (long t : timestamps) {
+			encoder.append(t);
+		}
+		byte[] encoded = encoder.toByteArray();
+		Assert.assertArrayEquals(timestamps, TimeSeriesCodec.decodeTimestamps(encoded, timestamps.length));
+		Assert.assertTrue("encoded in " + encoded.length + " bytes", encoded.length < timestamps.length * 2);
+	}
+
+	@Test
+	public void regularTimestampsTest() {
+		TimeSeriesCodec.TimestampEncoder encoder = new TimeSeriesCodec.TimestampEncoder();
+		for (int i = 0; i < 1800; i++) {
+			encoder.append(1496217954303L + i * 2000L);
+		}
+		/* one bit per point after the first two */
+		Assert.assertTrue(encoder.toByteArray().length < 8 + 2 + 1800 / 8 + 2);
+	}
+
+	@Test
+	public void valuesTest() {
+		Random random = new Random(2);
+		double[] values = new double[3000];
+		for (int i = 0; i < values.length; i++) {
+			switch (i / 500) {
+			case 0:
+				values[i] = 0;
+				break;
+			case 1:
+				values[i] = random.nextDouble() * 100;
+				break;
+			case 2:
+				values[i] = (float) (50 + random.nextGaussian());
+				break;
+			case 3:
+				values[i] = i % 7 == 0 ? Double.NaN : 100000 + i;
+				break;
+			case 4:
+				values[i] = random.nextLong();
+				break;
+			default:
+				values[i] = i % 2 == 0 ? Double.MAX_VALUE : -Double.MIN_VALUE;
+			}
+		}
+
+		TimeSeriesCodec.ValueEncoder encoder = new TimeSeriesCodec.ValueEncoder();
+		for (double value : values) {
+			encoder.append(value);
+		}
+		double[] decoded = TimeSeriesCodec.decodeValues(encoder.toByteArray(), values.length);
+		for (int i = 0; i < values.length; i++) {
+			Assert.assertEquals("value " + i, Double.doubleToLongBits(values[i]), Double.doubleToLongBits(decoded[i]));
+		}
+	}
+
+	@Test
+	public void constantValuesTest() {
+		TimeSeriesCodec.ValueEncoder encoder = new TimeSeriesCodec.ValueEncoder();
+		for (int i = 0; i < 1800; i++) {
+			encoder.append(12.5);
+		}
+		Assert.assertEquals(64 + 1799, encoder.getBits());
+	}
+
+}
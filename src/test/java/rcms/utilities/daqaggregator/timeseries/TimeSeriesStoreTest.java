@@ -0,0 +1,120 @@
+package rcms.utilities.daqaggregator.timeseries;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rcms.utilities.daqaggregator.data.DAQ;
+import rcms.utilities.daqaggregator.data.FED;
+import rcms.utilities.daqaggregator.persistence.StructureSerializer;
+
+/**
+ * Tests appending and range queries of time series archive
+ */
+public class TimeSeriesStoreTest {
+
+	/** 2017-05-31T07:00:00Z */
+	private static final long HOUR = 1496214000000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void rangeQueryTest() throws IOException {
+		String dir = folder.getRoot().getAbsolutePath();
+		TimeSeriesStore store = new TimeSeriesStore(dir, 60000);
+
+		/* two and a half hours, series b appears later, c disappears */
+		for (long t = HOUR; t < HOUR + 9000000; t += 2000) {
+			Map<String, Double> values = new HashMap<>();
+			values.put("a", (double) (t - HOUR) / 1000);
+			if (t >= HOUR + 1000000) {
+				values.put("b", 1.5);
+			}
+			if (t < HOUR + 4000000) {
+				values.put("c", 2.5);
+			}
+			store.append(t, values);
+		}
+
+		Map<String, TimeSeries> result = store.query(Arrays.asList("a", "b", "c", "d"), HOUR + 3000000,
+				HOUR + 7300000);
+		Assert.assertEquals(3, result.size());
+		TimeSeries a = result.get("a");
+		Assert.assertEquals(2151, a.size());
+		Assert.assertEquals(HOUR + 3000000, a.getTimestamps()[0]);
+		Assert.assertEquals(HOUR + 7300000, a.getTimestamps()[a.size() - 1]);
+		for (int i = 0; i < a.size(); i++) {
+			Assert.assertEquals((a.getTimestamps()[i] - HOUR) / 1000.0, a.getValues()[i], 0);
+		}
+		Assert.assertEquals(2151, result.get("b").size());
+		Assert.assertEquals(500, result.get("c").size());
+
+		/* offline query of flushed chunks gives the same result as the open store */
+		store.flush();
+		TimeSeriesStore offline = new TimeSeriesStore(dir);
+		Map<String, TimeSeries> offlineResult = offline.query(Arrays.asList("a", "b", "c"), HOUR + 3000000,
+				HOUR + 7300000);
+		for (String name : Arrays.asList("a", "b", "c")) {
+			Assert.assertArrayEquals(result.get(name).getTimestamps(), offlineResult.get(name).getTimestamps());
+			Assert.assertArrayEquals(result.get(name).getValues(), offlineResult.get(name).getValues(), 0);
+		}
+		Assert.assertEquals(3, offline.getSeriesNames(HOUR, HOUR + 9000000).size());
+	}
+
+	@Test
+	public void restartTest() throws IOException {
+		String dir = folder.getRoot().getAbsolutePath();
+		TimeSeriesStore store = new TimeSeriesStore(dir);
+		for (long t = HOUR; t < HOUR + 100000; t += 2000) {
+			store.append(t, singleValue(1));
+		}
+		store.flush();
+
+		/* restarted aggregator writes new chunk in the same hour */
+		store = new TimeSeriesStore(dir);
+		for (long t = HOUR + 200000; t < HOUR + 300000; t += 2000) {
+			store.append(t, singleValue(2));
+		}
+		store.flush();
+
+		TimeSeries series = new TimeSeriesStore(dir).query(Arrays.asList("a"), HOUR, HOUR + 300000).get("a");
+		Assert.assertEquals(100, series.size());
+		Assert.assertEquals(1, series.getValues()[0], 0);
+		Assert.assertEquals(2, series.getValues()[99], 0);
+		Assert.assertEquals(2, new File(folder.getRoot(), "2017/5/31/7").list().length);
+	}
+
+	@Test
+	public void snapshotMetricsTest() throws IOException {
+		DAQ daq = new StructureSerializer().deserialize("src/test/resources/format/1496217954303.json");
+		Map<String, Double> metrics = new MetricExtractor().extract(daq);
+		FED fed = daq.getFeds().iterator().next();
+		Assert.assertEquals(fed.getPercentBackpressure(),
+				metrics.get("fed." + fed.getId() + ".percentBackpressure"), 0);
+		Assert.assertEquals(daq.getRus().get(0).getRate(),
+				metrics.get("ru." + daq.getRus().get(0).getHostname() + ".rate"), 0);
+		Assert.assertTrue(metrics.containsKey("tcds.trg_rate_total"));
+
+		TimeSeriesStore store = new TimeSeriesStore(folder.getRoot().getAbsolutePath());
+		store.append(daq);
+		store.flush();
+		Map<String, TimeSeries> result = new TimeSeriesStore(folder.getRoot().getAbsolutePath())
+				.query(Arrays.asList("buSummary.rate"), daq.getLastUpdate(), daq.getLastUpdate());
+		Assert.assertEquals(daq.getBuSummary().getRate(), result.get("buSummary.rate").getValues()[0], 0);
+	}
+
+	private Map<String, Double> singleValue(double value) {
+		Map<String, Double> values = new HashMap<>();
+		values.put("a", value);
+		return values;
+	}
+
+}